@@ -0,0 +1,263 @@
+package com.example.apfeed;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs many merchant feeds in one JVM over a shared {@link BrowserPool} and the
+ * already-loaded {@link ProductTypeDetector} dictionary.
+ *
+ * Manifest (JSON), relative paths resolve against the manifest's directory:
+ * <pre>
+ * {
+ *   "workers": 4,
+ *   "jobs": [
+ *     {"company": "Grandpas Goody Getter", "currency": "GBP",
+ *      "urls": "ggg-urls.txt", "output": "ggg.xlsx"},
+ *     {"company": "Big Shop", "currency": "EUR",
+ *      "urls": "big-urls.txt", "output": "big.tsv.gz", "partition": "type,mb=100"}
+ *   ]
+ * }
+ * </pre>
+ *
+ * Workers pick work round-robin across jobs, one URL at a time, so a merchant
+ * with 50k products cannot starve one with 20.
+ */
+public class BatchRunner {
+
+    /** Shape of the JSON job manifest. */
+    public static class Manifest {
+        public int workers;
+        public List<FeedJob> jobs = new ArrayList<>();
+    }
+
+    private enum State { NEW, COLLECTING, SCRAPING, DONE }
+
+    private static final class Entry {
+        final FeedJobRun run;
+        State state = State.NEW;
+        int inFlight;
+        boolean failed;
+
+        Entry(FeedJobRun run) {
+            this.run = run;
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+    private int rr;
+
+    private final ScrapeOptions options;
+
+    private BatchRunner(List<FeedJob> jobs, ScrapeOptions options) {
+        this.options = options;
+        for (FeedJob job : jobs) {
+            entries.add(new Entry(new FeedJobRun(job, "[" + job.company + "] ")));
+        }
+    }
+
+    /**
+     * @param manifestPath JSON manifest
+     * @param workersOverride worker count from the command line, or 0 to use the manifest
+     * @param options scraping flags shared by all jobs
+     * @return process exit code
+     */
+    public static int run(String manifestPath, int workersOverride, ScrapeOptions options) {
+        Manifest m;
+        File mf = new File(manifestPath);
+        try {
+            m = new ObjectMapper()
+                    .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                    .readValue(mf, Manifest.class);
+        } catch (Exception e) {
+            System.err.println("ERROR reading batch manifest: " + e.getMessage());
+            return 1;
+        }
+
+        List<FeedJob> jobs = new ArrayList<>();
+        File baseDir = mf.getAbsoluteFile().getParentFile();
+        for (FeedJob j : m.jobs) {
+            if (j.company == null || j.company.isBlank() || j.urls == null || j.output == null) {
+                System.err.println("WARNING: skipping incomplete job entry (company/urls/output required)");
+                continue;
+            }
+            j.company = j.company.trim();
+            j.currency = j.currencyCode();
+            j.urls = resolve(baseDir, j.urls);
+            j.output = resolve(baseDir, j.output);
+            if (!FeedJobRun.hasAnyUrl(j.urls)) {
+                System.err.println("WARNING: skipping " + j.company + ": no URLs in " + j.urls);
+                continue;
+            }
+            jobs.add(j);
+        }
+        if (jobs.isEmpty()) {
+            System.err.println("ERROR: No runnable jobs in " + manifestPath);
+            return 1;
+        }
+
+        int workers = workersOverride > 0 ? workersOverride
+                : m.workers > 0 ? m.workers
+                : Math.min(4, jobs.size());
+
+        System.out.println("Batch: " + jobs.size() + " job(s) on " + workers + " worker(s).");
+        return new BatchRunner(jobs, options).execute(workers);
+    }
+
+    private int execute(int workers) {
+        long start = System.currentTimeMillis();
+        ExecutorService exec = Executors.newFixedThreadPool(workers);
+
+        ProductTypeDetector.preloadInBackground();
+        try (BrowserPool pool = BrowserPool.create(options)) {
+            pool.startInBackground();
+            ProductScraper scraper = new ProductScraper(pool, options);
+            for (int i = 0; i < workers; i++) {
+                exec.submit(() -> workLoop(scraper));
+            }
+            exec.shutdown();
+            exec.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exec.shutdownNow();
+            for (Entry e : entries) e.run.close();
+        }
+
+        printSummary((System.currentTimeMillis() - start) / 1000);
+
+        for (Entry e : entries) {
+            if (e.failed) return 1;
+        }
+        return 0;
+    }
+
+    // -----------------------------
+    // Fair scheduling
+    // -----------------------------
+
+    private void workLoop(ProductScraper scraper) {
+        while (true) {
+            Entry e;
+            FeedJobRun.Target t = null;
+            boolean collect = false;
+
+            synchronized (this) {
+                e = pick();
+                while (e == null && !allDone()) {
+                    try {
+                        // retries become due without anyone calling notify()
+                        wait(Math.max(50, Math.min(1000, nextReadyIn())));
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    e = pick();
+                }
+                if (e == null) return;
+
+                if (e.state == State.NEW) {
+                    e.state = State.COLLECTING;
+                    collect = true;
+                } else {
+                    t = e.run.next();
+                }
+                e.inFlight++;
+            }
+
+            try {
+                if (collect) {
+                    e.run.collectLinks(scraper);
+                } else if (t != null) {
+                    e.run.scrapeOne(scraper, t);
+                }
+            } catch (Exception ex) {
+                System.err.println("[" + e.run.job.company + "] ERROR: " + ex.getMessage());
+            }
+
+            boolean finish;
+            synchronized (this) {
+                e.inFlight--;
+                if (e.state == State.COLLECTING) e.state = State.SCRAPING;
+                finish = e.state == State.SCRAPING && e.inFlight == 0 && !e.run.hasNext();
+                if (finish) e.state = State.DONE;
+                notifyAll();
+            }
+
+            if (finish) finishJob(e);
+        }
+    }
+
+    /**
+     * Next job with work ready now, round-robin from where the last pick left
+     * off. Jobs whose remaining URLs are all waiting on a retry or an open
+     * circuit are skipped, so one failing merchant does not hold up the rest.
+     */
+    private Entry pick() {
+        int n = entries.size();
+        for (int k = 0; k < n; k++) {
+            Entry e = entries.get((rr + k) % n);
+            boolean runnable = e.state == State.NEW
+                    || (e.state == State.SCRAPING && e.run.millisUntilReady() == 0);
+            if (runnable) {
+                rr = (rr + k + 1) % n;
+                return e;
+            }
+        }
+        return null;
+    }
+
+    private long nextReadyIn() {
+        long min = Long.MAX_VALUE;
+        for (Entry e : entries) {
+            if (e.state == State.SCRAPING) min = Math.min(min, e.run.millisUntilReady());
+        }
+        return min;
+    }
+
+    private boolean allDone() {
+        for (Entry e : entries) {
+            if (e.state != State.DONE) return false;
+        }
+        return true;
+    }
+
+    private void finishJob(Entry e) {
+        e.run.markFinished();
+        try {
+            e.run.finishOutput();
+        } catch (Exception ex) {
+            e.failed = true;
+            System.err.println("[" + e.run.job.company + "] ERROR writing feed: " + ex.getMessage());
+        }
+    }
+
+    // -----------------------------
+    // Summary
+    // -----------------------------
+
+    private void printSummary(long elapsed) {
+        System.out.println("\n--- Batch summary ---");
+        System.out.printf("%-30s %8s %8s %8s %8s %8s  %s%n",
+                "Company", "URLs", "Rows", "Errors", "Retries", "Secs", "Output");
+        for (Entry e : entries) {
+            FeedJobRun r = e.run;
+            System.out.printf("%-30s %8d %8d %8d %8d %8d  %s%s%n",
+                    r.job.company, r.totalUrls(), r.scrapedCount(), r.errorCount(),
+                    r.retryCount(), r.elapsedSeconds(), r.job.output, e.failed ? " (FAILED)" : "");
+        }
+        System.out.println("Total time: " + elapsed + " seconds.");
+        System.out.println("----------------------");
+    }
+
+    private static String resolve(File baseDir, String path) {
+        File f = new File(path);
+        return f.isAbsolute() ? path : new File(baseDir, path).getPath();
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.apfeed;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.jsoup.Jsoup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * BigCommerce storefront GraphQL. The API needs the short-lived storefront
+ * token that Stencil themes embed in every page, so the adapter first reads
+ * it from the listing HTML; without it the adapter returns nothing and the
+ * generic path is used.
+ */
+public class BigCommerceAdapter implements PlatformAdapter {
+    private static final int PAGE_SIZE = 50;
+    private static final Pattern TOKEN = Pattern.compile(
+            "\"(?:storefront_api|storefrontAPIToken|storefrontApiToken)\"\\s*:\\s*(?:\\{\\s*\"token\"\\s*:\\s*)?\"([A-Za-z0-9._-]{20,})\"");
+
+    private static final String NODE_FIELDS =
+            "name sku path description " +
+            "prices { price { value currencyCode } } " +
+            "defaultImage { url(width: 1200) } " +
+            "availabilityV2 { status } " +
+            "categories { edges { node { name } } }";
+
+    // storefront tokens are per site and valid for days; one page read per run is enough
+    private static final Map<String, String> TOKENS = new ConcurrentHashMap<>();
+
+    @Override
+    public String name() {
+        return "bigcommerce";
+    }
+
+    @Override
+    public List<JsonProductCapture.Captured> discover(String listingUrl, int maxProducts) {
+        List<JsonProductCapture.Captured> out = new ArrayList<>();
+        String origin = JsonHttp.origin(listingUrl);
+        String token = origin == null ? null : token(listingUrl);
+        if (token == null) return out;
+
+        String after = null;
+        while (out.size() < maxProducts) {
+            String cursor = after == null ? "" : ", after: \"" + after + "\"";
+            JsonNode root = JsonHttp.post(origin + "/graphql", Map.of("query",
+                    "{ site { products(first: " + PAGE_SIZE + cursor + ") { " +
+                    "pageInfo { hasNextPage endCursor } edges { node { " + NODE_FIELDS + " } } } } }"), token);
+            JsonNode products = root == null ? null : root.path("data").path("site").path("products");
+            if (products == null || products.isMissingNode()) break;
+            for (JsonNode e : products.path("edges")) {
+                if (out.size() >= maxProducts) break;
+                out.add(toCaptured(e.path("node"), origin));
+            }
+            JsonNode info = products.path("pageInfo");
+            if (!info.path("hasNextPage").asBoolean(false)) break;
+            after = JsonHttp.text(info, "endCursor");
+            if (after.isEmpty()) break;
+        }
+        return out;
+    }
+
+    @Override
+    public JsonProductCapture.Captured fetch(String productUrl) {
+        String origin = JsonHttp.origin(productUrl);
+        String token = origin == null ? null : token(productUrl);
+        if (token == null) return null;
+
+        String path = JsonHttp.path(productUrl).replace("\"", "");
+        JsonNode root = JsonHttp.post(origin + "/graphql", Map.of("query",
+                "{ site { route(path: \"" + path + "\") { node { ... on Product { " + NODE_FIELDS + " } } } } }"), token);
+        JsonNode node = root == null ? null : root.path("data").path("site").path("route").path("node");
+        if (node == null || !node.has("name")) return null;
+        return toCaptured(node, origin);
+    }
+
+    private static String token(String pageUrl) {
+        String origin = JsonHttp.origin(pageUrl);
+        String cached = TOKENS.get(origin);
+        if (cached != null) return cached;
+        try {
+            String html = Jsoup.connect(pageUrl)
+                    .userAgent(BrowserPool.USER_AGENT)
+                    .timeout(20000)
+                    .execute()
+                    .body();
+            Matcher m = TOKEN.matcher(html);
+            if (!m.find()) return null;
+            TOKENS.put(origin, m.group(1));
+            return m.group(1);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static JsonProductCapture.Captured toCaptured(JsonNode n, String origin) {
+        JsonProductCapture.Captured c = new JsonProductCapture.Captured();
+        c.title = JsonHttp.text(n, "name");
+        c.sku = JsonHttp.text(n, "sku");
+        String path = JsonHttp.text(n, "path");
+        if (!path.isEmpty()) c.url = origin + path;
+        JsonNode price = n.path("prices").path("price");
+        c.price = JsonHttp.text(price, "value");
+        c.currency = JsonHttp.text(price, "currencyCode");
+        c.imageUrl = JsonHttp.text(n.path("defaultImage"), "url");
+        String html = JsonHttp.text(n, "description");
+        if (!html.isEmpty()) c.description = Jsoup.parse(html).text().replaceAll("\\s+", " ").trim();
+        String status = JsonHttp.text(n.path("availabilityV2"), "status");
+        c.availability = switch (status) {
+            case "Available" -> "in stock";
+            case "Unavailable" -> "out of stock";
+            default -> StructuredData.mapAvailability(status);
+        };
+        for (JsonNode e : n.path("categories").path("edges")) {
+            String name = JsonHttp.text(e.path("node"), "name");
+            if (!name.isEmpty()) c.categories.add(name);
+        }
+        return c;
+    }
+}
@@ -0,0 +1,269 @@
+package com.example.apfeed;
+
+import com.microsoft.playwright.Page;
+import org.jsoup.nodes.DataNode;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.util.*;
+
+/**
+ * Product extraction that runs inside the rendered page.
+ *
+ * The classic browser path ships the whole serialised DOM (page.content(),
+ * often megabytes) over the Playwright pipe and re-parses it with Jsoup to
+ * compute a handful of fields. Here one evaluate() call walks the live DOM with
+ * the same selectors and rules as {@link DomExtractor} and returns only what
+ * is needed: title, price candidates with their element context, description
+ * paragraphs, breadcrumbs, image candidates with natural sizes, SKU and the
+ * page's JSON-LD / microdata / OpenGraph offer tags.
+ *
+ * Scoring stays in Java (shared with DomExtractor) so both paths agree.
+ * Deliberate differences: struck-through "was" prices are ignored, and images
+ * that loaded smaller than 100x100 are ranked last.
+ */
+public class BrowserExtractor {
+    private static final int MIN_IMAGE_SIDE = 100;
+
+    private static final String SCRIPT = """
+            (opts) => {
+              const clean = s => (s || '').replace(/\\s+/g, ' ').trim();
+              const out = {};
+
+              const h1 = document.querySelector('h1');
+              out.title = clean(h1 ? h1.textContent : '') || clean(document.title);
+
+              // ----- price candidates: smallest elements showing the currency symbol next to a number
+              const sym = opts.symbol;
+              const prices = [];
+              if (sym) {
+                const seen = new Set();
+                const walker = document.createTreeWalker(document.body || document.documentElement, NodeFilter.SHOW_TEXT);
+                let node;
+                while ((node = walker.nextNode()) && prices.length < 200) {
+                  if (!node.data.includes(sym) && !/\\d/.test(node.data)) continue;
+                  let el = node.parentElement;
+                  if (!el || el.closest('script,style,noscript')) continue;
+                  // climb until the element shows both symbol and digits ("<span>$</span><span>12</span>")
+                  for (let k = 0; k < 3 && el.parentElement; k++) {
+                    const t = el.innerText || '';
+                    if (t.includes(sym) && /\\d/.test(t)) break;
+                    el = el.parentElement;
+                  }
+                  const text = clean(el.innerText);
+                  if (!text || text.length > 80 || !text.includes(sym) || !/\\d/.test(text) || seen.has(el)) continue;
+                  seen.add(el);
+                  const cs = getComputedStyle(el);
+                  prices.push({
+                    text,
+                    tag: el.tagName.toLowerCase(),
+                    cls: (typeof el.className === 'string' ? el.className : '').slice(0, 80),
+                    itemprop: el.getAttribute('itemprop') || '',
+                    struck: !!el.closest('del,s,strike') || cs.textDecorationLine.includes('line-through'),
+                    fontSize: parseFloat(cs.fontSize) || 0
+                  });
+                }
+              }
+              out.prices = prices;
+              if (!sym) out.bodyText = document.body ? document.body.innerText : '';
+
+              // ----- description: same selector cascade and filters as DomExtractor
+              const badDesc = /(cookies?|(accept|close).{0,15}cookies?)/i;
+              const ok = t => t.length >= 40 && t.length <= 600 && !badDesc.test(t);
+              let paras = [];
+              for (const sel of opts.descSelectors) {
+                for (const p of document.querySelectorAll(sel)) {
+                  const t = clean(p.textContent);
+                  if (ok(t)) paras.push(t);
+                }
+                if (paras.length) break;
+              }
+              if (!paras.length) {
+                for (const p of document.querySelectorAll('p')) {
+                  const t = clean(p.textContent);
+                  if (ok(t)) paras.push(t);
+                }
+              }
+              out.paragraphs = paras;
+              const firstP = document.querySelector('p');
+              out.firstParagraph = firstP ? clean(firstP.textContent) : '';
+
+              // ----- breadcrumbs
+              const crumbs = [];
+              const addCrumbs = (roots, inner) => {
+                for (const root of roots) {
+                  for (const e of root.querySelectorAll(inner)) {
+                    const t = clean(e.textContent);
+                    if (t.length > 2 && !crumbs.includes(t)) crumbs.push(t);
+                  }
+                }
+              };
+              addCrumbs(document.querySelectorAll('nav[aria-label*=crumb i], nav.breadcrumb'), 'a, span');
+              if (!crumbs.length) {
+                addCrumbs(document.querySelectorAll('.breadcrumb, .breadcrumbs, [class*=breadcrumb]'), 'a, span, li');
+              }
+              out.breadcrumbs = crumbs;
+
+              // ----- images, in selector order, with the size they actually rendered at
+              const badImg = /(logo|placeholder|sprite|icon|avatar|brand)/i;
+              const collect = (imgs, into, seen) => {
+                for (const img of imgs) {
+                  const srcset = img.getAttribute('srcset');
+                  const src = clean(srcset !== null ? srcset.split(/\\s+/)[0] : img.getAttribute('src'));
+                  if (!src || badImg.test(src) || seen.has(src)) continue;
+                  seen.add(src);
+                  into.push({src, w: img.naturalWidth || 0, h: img.naturalHeight || 0});
+                }
+              };
+              const images = [], seenImg = new Set();
+              for (const sel of opts.imageSelectors) collect(document.querySelectorAll(sel), images, seenImg);
+              if (!images.length) collect(document.querySelectorAll('img'), images, seenImg);
+              out.images = images;
+
+              // ----- SKU, same order as DomExtractor.extractSkuFromDocument
+              let sku = '';
+              const skuEl = document.querySelector('[itemprop=sku]');
+              if (skuEl) sku = clean(skuEl.hasAttribute('content') ? skuEl.getAttribute('content') : skuEl.textContent);
+              if (!sku) {
+                const ds = document.querySelector('[data-product-sku], [data-sku]');
+                if (ds) sku = clean(ds.getAttribute('data-product-sku') ?? ds.getAttribute('data-sku'));
+              }
+              if (!sku) {
+                for (const el of document.querySelectorAll('.product-sku, .sku, [class*=sku]')) {
+                  let t = clean(el.textContent);
+                  if (t.toLowerCase().startsWith('sku')) t = t.replace(/^sku[:#\\s]*/i, '');
+                  if (t.length >= 2 && t.length <= 64) { sku = t; break; }
+                }
+              }
+              if (!sku && document.body) {
+                const m = /SKU[:#\\s]+([A-Z0-9\\-_/]+)/i.exec(document.body.textContent);
+                if (m) sku = clean(m[1]);
+              }
+              out.sku = sku;
+
+              // ----- structured offer data, rebuilt on the Java side for StructuredData
+              out.jsonLd = [...document.querySelectorAll('script[type="application/ld+json"]')].map(s => s.textContent);
+              out.tags = [...document.querySelectorAll(
+                  '[itemprop=price], [itemprop=priceCurrency], [itemprop=availability], ' +
+                  'meta[property^="product:"], meta[property^="og:"]')].slice(0, 50).map(e => ({
+                tag: e.tagName.toLowerCase(),
+                attrs: Object.fromEntries([...e.attributes]
+                    .filter(a => ['itemprop', 'content', 'href', 'property'].includes(a.name))
+                    .map(a => [a.name, a.value])),
+                text: e.hasAttribute('content') ? '' : clean(e.textContent).slice(0, 200)
+              }));
+              return out;
+            }
+            """;
+
+    /**
+     * Extracts the product shown on page. Throws if the script fails, in
+     * which case the caller should use {@link DomExtractor#extractFromDom}.
+     */
+    public static DomExtractor.ExtractResult extract(Page page, String url, String currencyCode) {
+        return fromScript(runScript(page, currencyCode), url, currencyCode);
+    }
+
+    /** The script's raw result on page (also recorded by {@link FixtureCheck}). */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> runScript(Page page, String currencyCode) {
+        Object raw = page.evaluate(SCRIPT, Map.of(
+                "symbol", DomExtractor.getCurrencySymbol(currencyCode),
+                "descSelectors", Arrays.asList(DomExtractor.DESCRIPTION_SELECTORS),
+                "imageSelectors", Arrays.asList(DomExtractor.IMAGE_SELECTORS)));
+        if (!(raw instanceof Map)) throw new IllegalStateException("extraction script returned nothing");
+        return (Map<String, Object>) raw;
+    }
+
+    /** Scores one script result (also used by {@link FixtureCheck} with recorded results). */
+    @SuppressWarnings("unchecked")
+    static DomExtractor.ExtractResult fromScript(Map<String, Object> m, String url, String currencyCode) {
+        String symbol = DomExtractor.getCurrencySymbol(currencyCode);
+        DomExtractor.ExtractResult er = new DomExtractor.ExtractResult();
+        er.title = str(m.get("title"));
+
+        // Price: the same "largest amount" rule as the text path, over current (not struck) prices
+        if (symbol.isEmpty()) {
+            er.price = DomExtractor.extractPriceFromText(str(m.get("bodyText")), currencyCode);
+        } else {
+            StringBuilder current = new StringBuilder();
+            StringBuilder all = new StringBuilder();
+            for (Map<String, Object> c : list(m.get("prices"))) {
+                String text = str(c.get("text"));
+                all.append(text).append('\n');
+                if (!Boolean.TRUE.equals(c.get("struck"))) current.append(text).append('\n');
+            }
+            er.price = DomExtractor.extractPriceFromText(current.toString(), currencyCode);
+            if (er.price.isEmpty()) er.price = DomExtractor.extractPriceFromText(all.toString(), currencyCode);
+        }
+
+        List<String> paras = new ArrayList<>();
+        for (Object o : (List<Object>) m.getOrDefault("paragraphs", List.of())) paras.add(str(o));
+        er.description = DomExtractor.chooseDescription(paras, str(m.get("firstParagraph")), er.title);
+
+        er.breadcrumbs = new ArrayList<>();
+        for (Object o : (List<Object>) m.getOrDefault("breadcrumbs", List.of())) er.breadcrumbs.add(str(o));
+
+        // Images: absolutise and rank like the Jsoup path, then push known-tiny ones to the end
+        Set<String> found = new LinkedHashSet<>();
+        Set<String> tiny = new HashSet<>();
+        for (Map<String, Object> img : list(m.get("images"))) {
+            String abs = DomExtractor.absolutizeUrl(url, str(img.get("src")));
+            if (abs.isEmpty()) continue;
+            found.add(abs);
+            int w = num(img.get("w"));
+            int h = num(img.get("h"));
+            if (w > 0 && h > 0 && (w < MIN_IMAGE_SIDE || h < MIN_IMAGE_SIDE)) tiny.add(abs);
+        }
+        List<String> images = DomExtractor.rankByTitle(new ArrayList<>(found), er.title);
+        images.sort(Comparator.comparingInt(u -> tiny.contains(u) ? 1 : 0));
+        er.imageCandidates = images;
+        er.imageUrl = images.isEmpty() ? "" : images.get(0);
+
+        er.sku = str(m.get("sku"));
+        er.availability = StructuredData.readAvailability(offerDocument(m, url));
+        return er;
+    }
+
+    /** A tiny document holding only the page's JSON-LD and offer tags, for {@link StructuredData}. */
+    @SuppressWarnings("unchecked")
+    private static Document offerDocument(Map<String, Object> m, String url) {
+        Document doc = Document.createShell(url);
+        for (Object o : (List<Object>) m.getOrDefault("jsonLd", List.of())) {
+            doc.body().appendElement("script")
+                    .attr("type", "application/ld+json")
+                    .appendChild(new DataNode(str(o)));
+        }
+        for (Map<String, Object> t : list(m.get("tags"))) {
+            Element el = doc.body().appendElement(str(t.get("tag")));
+            Object attrs = t.get("attrs");
+            if (attrs instanceof Map) {
+                for (Map.Entry<String, Object> a : ((Map<String, Object>) attrs).entrySet()) {
+                    el.attr(a.getKey(), str(a.getValue()));
+                }
+            }
+            String text = str(t.get("text"));
+            if (!text.isEmpty()) el.text(text);
+        }
+        return doc;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> list(Object o) {
+        List<Map<String, Object>> out = new ArrayList<>();
+        if (o instanceof List) {
+            for (Object e : (List<Object>) o) {
+                if (e instanceof Map) out.add((Map<String, Object>) e);
+            }
+        }
+        return out;
+    }
+
+    private static String str(Object o) {
+        return o == null ? "" : o.toString();
+    }
+
+    private static int num(Object o) {
+        return o instanceof Number ? ((Number) o).intValue() : 0;
+    }
+}
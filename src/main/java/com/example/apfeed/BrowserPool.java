@@ -2,42 +2,239 @@ package com.example.apfeed;
 
 import com.microsoft.playwright.*;
 
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shared browser fleet.
+ *
+ * Playwright objects are not thread-safe, so every thread that asks for a page
+ * gets its own Playwright/Chromium/context "slot", launched on first use and
+ * reused for the rest of the run. A single-threaded caller therefore sees
+ * exactly one browser, while a worker pool of N threads shares N browsers.
+ *
+ * With {@link BrowserProfiles}, pages for a URL open in a persistent context
+ * for that URL's host instead (HTTP cache and cookies kept between runs).
+ * Each thread keeps its most recently used hosts' contexts open and closes
+ * older ones, releasing their profile slots.
+ *
+ * {@link #startInBackground()} launches one slot on a helper thread while the
+ * caller gets on with other start-up work; the first thread that needs a
+ * browser adopts it (Playwright objects may change threads as long as only
+ * one thread uses them at a time).
+ */
 public class BrowserPool implements AutoCloseable {
-    private Playwright playwright;
-    private Browser browser;
-    private BrowserContext context;
-
-    public synchronized void start() {
-        if (browser != null) return;
-        playwright = Playwright.create();
-        browser = playwright.chromium().launch(
+    static final String USER_AGENT =
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) " +
+            "AppleWebKit/537.36 (KHTML, like Gecko) " +
+            "Chrome/124.0.0.0 Safari/537.36";
+
+    // persistent contexts each thread keeps open (one Chromium process each)
+    private static final int PROFILES_PER_THREAD = 2;
+
+    private static final class Slot {
+        Playwright playwright;
+        Browser browser;
+        BrowserContext context;
+        // host -> persistent context, least recently used first
+        final LinkedHashMap<String, Persistent> persistent = new LinkedHashMap<>(4, 0.75f, true);
+    }
+
+    private static final class Persistent {
+        BrowserContext context;
+        BrowserProfiles.Lease lease;
+
+        void close() {
+            try {
+                context.close();
+            } catch (Exception ignored) {}
+            lease.close();
+        }
+    }
+
+    private final ThreadLocal<Slot> current = new ThreadLocal<>();
+    private final List<Slot> slots = new ArrayList<>();
+    private final BrowserProfiles profiles;
+    private volatile boolean closed;
+    // slot launched by startInBackground(), until a thread adopts it
+    private volatile CompletableFuture<Slot> warm;
+    private final AtomicBoolean warmTaken = new AtomicBoolean();
+
+    /** Ephemeral contexts only (nothing kept on disk). */
+    public BrowserPool() {
+        this(null);
+    }
+
+    /** @param profiles persistent per-host profiles, or null for ephemeral contexts */
+    public BrowserPool(BrowserProfiles profiles) {
+        this.profiles = profiles;
+    }
+
+    /** Pool configured from the command-line options (--profile-dir). */
+    public static BrowserPool create(ScrapeOptions options) {
+        if (options == null || options.profileDir == null) return new BrowserPool();
+        return new BrowserPool(new BrowserProfiles(Path.of(options.profileDir), options.profileMaxMb << 20));
+    }
+
+    /** Launches the browser for the calling thread (no-op if already running). */
+    public void start() {
+        Slot s = slot();
+        if (profiles == null) ephemeral(s);
+    }
+
+    /**
+     * Starts the Playwright driver and (without profiles) Chromium on a
+     * helper thread and returns at once. The next thread without a browser
+     * takes this one instead of launching its own. A failed launch is only
+     * reported; that thread then launches normally.
+     */
+    public void startInBackground() {
+        if (warm != null || closed) return;
+        CompletableFuture<Slot> f = new CompletableFuture<>();
+        warm = f;
+        Thread t = new Thread(() -> {
+            Slot s = new Slot();
+            try {
+                s.playwright = Playwright.create();
+                if (profiles == null) ephemeral(s);
+                f.complete(s);
+            } catch (RuntimeException e) {
+                closeSlot(s);
+                f.completeExceptionally(e);
+            }
+        }, "apfeed-browser-start");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public Page newPage() {
+        return ephemeral(slot()).newPage();
+    }
+
+    /** A page in the persistent profile for url's host, or an ephemeral one without profiles. */
+    public Page newPage(String url) {
+        if (profiles == null) return newPage();
+        String host;
+        try {
+            host = URI.create(url).getHost();
+        } catch (Exception e) {
+            host = null;
+        }
+        if (host == null) return newPage();
+        return persistent(slot(), BrowserProfiles.safeName(host)).newPage();
+    }
+
+    /** Number of browsers launched so far. */
+    public int size() {
+        synchronized (slots) {
+            return slots.size();
+        }
+    }
+
+    private Slot slot() {
+        if (closed) throw new IllegalStateException("BrowserPool is closed");
+        Slot s = current.get();
+        if (s != null) return s;
+
+        s = adoptWarm();
+        if (s == null) {
+            s = new Slot();
+            s.playwright = Playwright.create();
+        }
+        current.set(s);
+        synchronized (slots) {
+            slots.add(s);
+        }
+        return s;
+    }
+
+    /** The background-launched slot if no thread has taken it yet and it started, else null. */
+    private Slot adoptWarm() {
+        CompletableFuture<Slot> f = warm;
+        if (f == null || !warmTaken.compareAndSet(false, true)) return null;
+        try {
+            return f.join();
+        } catch (CompletionException e) {
+            System.err.println("Background browser start failed: " + e.getCause().getMessage());
+            return null;
+        }
+    }
+
+    private BrowserContext ephemeral(Slot s) {
+        if (s.context != null) return s.context;
+        s.browser = s.playwright.chromium().launch(
                 new BrowserType.LaunchOptions().setHeadless(true)
         );
-        context = browser.newContext(
+        s.context = s.browser.newContext(
                 new Browser.NewContextOptions()
-                        .setUserAgent("Mozilla/5.0 (Windows NT 10.0; Win64; x64) " +
-                                      "AppleWebKit/537.36 (KHTML, like Gecko) " +
-                                      "Chrome/124.0.0.0 Safari/537.36")
+                        .setUserAgent(USER_AGENT)
                         .setIgnoreHTTPSErrors(true)
         );
+        return s.context;
     }
 
-    public synchronized Page newPage() {
-        if (browser == null) start();
-        return context.newPage();
+    private BrowserContext persistent(Slot s, String host) {
+        Persistent p = s.persistent.get(host);
+        if (p != null) return p.context;
+
+        if (s.persistent.size() >= PROFILES_PER_THREAD) {
+            Iterator<Persistent> it = s.persistent.values().iterator();
+            it.next().close();
+            it.remove();
+        }
+
+        p = new Persistent();
+        p.lease = profiles.acquire(host);
+        try {
+            p.context = s.playwright.chromium().launchPersistentContext(p.lease.dir,
+                    new BrowserType.LaunchPersistentContextOptions()
+                            .setHeadless(true)
+                            .setUserAgent(USER_AGENT)
+                            .setIgnoreHTTPSErrors(true)
+                            .setArgs(List.of("--disk-cache-size=" + profiles.cacheBytesPerProfile())));
+        } catch (RuntimeException e) {
+            p.lease.close();
+            throw e;
+        }
+        s.persistent.put(host, p);
+        return p.context;
     }
 
     @Override
-    public synchronized void close() {
+    public void close() {
+        closed = true;
+        List<Slot> all;
+        synchronized (slots) {
+            all = new ArrayList<>(slots);
+            slots.clear();
+        }
+        // a background launch nobody adopted: wait for it, then shut it down
+        CompletableFuture<Slot> f = warm;
+        if (f != null && warmTaken.compareAndSet(false, true)) {
+            try {
+                all.add(f.join());
+            } catch (CompletionException ignored) {}
+        }
+        for (Slot s : all) closeSlot(s);
+        current.remove();
+        if (profiles != null) profiles.cleanup();
+    }
+
+    private static void closeSlot(Slot s) {
+        for (Persistent p : s.persistent.values()) p.close();
+        s.persistent.clear();
         try {
-            if (context != null) context.close();
+            if (s.context != null) s.context.close();
         } catch (Exception ignored) {}
         try {
-            if (browser != null) browser.close();
+            if (s.browser != null) s.browser.close();
         } catch (Exception ignored) {}
         try {
-            if (playwright != null) playwright.close();
+            if (s.playwright != null) s.playwright.close();
         } catch (Exception ignored) {}
     }
 }
-
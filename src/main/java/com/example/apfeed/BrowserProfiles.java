@@ -0,0 +1,198 @@
+package com.example.apfeed;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * On-disk Chromium profiles, one family per shop host, so the HTTP cache,
+ * service workers and consent cookies survive between runs.
+ *
+ * Layout: {root}/{host}/slot-{n}/. Chromium refuses to share a user-data dir
+ * between processes, so every concurrently open context gets its own slot,
+ * claimed with an OS file lock on slot-{n}/.apfeed.lock (which also guards
+ * against a second apfeed process). The lock file's mtime records when the slot
+ * was last used.
+ *
+ * Disk use is bounded twice: each profile's HTTP cache is capped through
+ * Chromium's --disk-cache-size, and {@link #cleanup()} (run on open) deletes
+ * slots unused for {@link #MAX_IDLE_DAYS} days, then least-recently-used
+ * unlocked slots until the whole root fits under maxBytes.
+ */
+public class BrowserProfiles {
+    static final int MAX_IDLE_DAYS = 30;
+    private static final String LOCK_FILE = ".apfeed.lock";
+    private static final long MAX_CACHE_PER_PROFILE = 256L << 20;
+
+    private final Path root;
+    private final long maxBytes;
+
+    /** A claimed profile directory; close() releases it for other contexts. */
+    public static final class Lease implements AutoCloseable {
+        public final Path dir;
+        private final FileChannel channel;
+        private final FileLock lock;
+
+        Lease(Path dir, FileChannel channel, FileLock lock) {
+            this.dir = dir;
+            this.channel = channel;
+            this.lock = lock;
+        }
+
+        @Override
+        public void close() {
+            try {
+                lock.release();
+            } catch (IOException ignored) {}
+            try {
+                channel.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    public BrowserProfiles(Path root, long maxBytes) {
+        this.root = root;
+        this.maxBytes = Math.max(64L << 20, maxBytes);
+        try {
+            Files.createDirectories(root);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create profile directory " + root, e);
+        }
+        cleanup();
+    }
+
+    /** Chromium disk-cache cap for each profile. */
+    public long cacheBytesPerProfile() {
+        return Math.min(MAX_CACHE_PER_PROFILE, maxBytes / 8);
+    }
+
+    /** Claims a free slot for host, creating a new one if all are in use. */
+    public Lease acquire(String host) {
+        Path dir = root.resolve(safeName(host));
+        for (int n = 0; ; n++) {
+            Path slot = dir.resolve("slot-" + n);
+            Lease lease = tryLock(slot);
+            if (lease != null) return lease;
+        }
+    }
+
+    private static Lease tryLock(Path slot) {
+        FileChannel ch = null;
+        try {
+            Files.createDirectories(slot);
+            Path lockFile = slot.resolve(LOCK_FILE);
+            ch = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock = ch.tryLock();
+            if (lock == null) {
+                ch.close();
+                return null;
+            }
+            Files.setLastModifiedTime(lockFile, FileTime.fromMillis(System.currentTimeMillis()));
+            return new Lease(slot, ch, lock);
+        } catch (OverlappingFileLockException e) {
+            // held by another context in this JVM
+            try {
+                ch.close();
+            } catch (IOException ignored) {}
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot lock browser profile " + slot, e);
+        }
+    }
+
+    /**
+     * Deletes stale slots, then least-recently-used ones until the root is
+     * under the size cap. Slots locked by a running browser are never touched.
+     */
+    public void cleanup() {
+        List<Path> slots = new ArrayList<>();
+        try (DirectoryStream<Path> hosts = Files.newDirectoryStream(root, Files::isDirectory)) {
+            for (Path h : hosts) {
+                try (DirectoryStream<Path> ss = Files.newDirectoryStream(h, p -> p.getFileName().toString().startsWith("slot-"))) {
+                    ss.forEach(slots::add);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("WARNING: profile cleanup skipped: " + e.getMessage());
+            return;
+        }
+
+        slots.sort(Comparator.comparingLong(BrowserProfiles::lastUsed));
+        Map<Path, Long> sizes = new HashMap<>();
+        long total = 0;
+        for (Path s : slots) {
+            long size = sizeOf(s);
+            sizes.put(s, size);
+            total += size;
+        }
+
+        long staleBefore = System.currentTimeMillis() - MAX_IDLE_DAYS * 86_400_000L;
+        int removed = 0;
+        long freed = 0;
+        for (Path s : slots) {
+            boolean stale = lastUsed(s) < staleBefore;
+            if (!stale && total <= maxBytes) break; // oldest first: nothing further qualifies
+            Lease lease = tryLock(s);
+            if (lease == null) continue; // in use
+            lease.close();
+            if (deleteTree(s)) {
+                total -= sizes.get(s);
+                freed += sizes.get(s);
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            System.out.printf("Browser profiles: removed %d slot(s), freed %d MB, %d MB in use.%n",
+                    removed, freed >> 20, total >> 20);
+        }
+    }
+
+    private static long lastUsed(Path slot) {
+        try {
+            return Files.getLastModifiedTime(slot.resolve(LOCK_FILE)).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long sizeOf(Path dir) {
+        try (Stream<Path> s = Files.walk(dir)) {
+            return s.filter(Files::isRegularFile).mapToLong(p -> {
+                try {
+                    return Files.size(p);
+                } catch (IOException e) {
+                    return 0;
+                }
+            }).sum();
+        } catch (IOException | UncheckedIOException e) {
+            return 0;
+        }
+    }
+
+    private static boolean deleteTree(Path dir) {
+        try (Stream<Path> s = Files.walk(dir)) {
+            s.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException ignored) {}
+            });
+        } catch (IOException | UncheckedIOException e) {
+            return false;
+        }
+        return !Files.exists(dir);
+    }
+
+    /** "www.Shop.example.com" -> "shop.example.com", safe as a directory name. */
+    static String safeName(String host) {
+        String h = host == null ? "" : host.toLowerCase(Locale.ROOT);
+        if (h.startsWith("www.")) h = h.substring(4);
+        h = h.replaceAll("[^a-z0-9.\\-]", "_");
+        return h.isEmpty() ? "_default" : h;
+    }
+}
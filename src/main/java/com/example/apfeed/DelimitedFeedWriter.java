@@ -0,0 +1,80 @@
+package com.example.apfeed;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streaming TSV/CSV feed writer.
+ *
+ * The header row uses the Merchant attribute names
+ * ({@link ExcelExporter#MERCHANT_HEADERS}). TSV follows the Merchant Center
+ * convention of no quoting: tabs and line breaks inside values are replaced
+ * by spaces. CSV uses RFC 4180 quoting.
+ */
+public class DelimitedFeedWriter implements FeedWriter {
+    private final Writer out;
+    private final char sep;
+    private final String[] cells = new String[ExcelExporter.HEADERS.length];
+    private long rows;
+
+    public DelimitedFeedWriter(OutputStream stream, char separator) throws IOException {
+        this.out = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+        this.sep = separator;
+        writeLine(ExcelExporter.MERCHANT_HEADERS);
+    }
+
+    @Override
+    public void write(Product p) throws IOException {
+        ExcelExporter.toColumns(p, cells);
+        writeLine(cells);
+        rows++;
+    }
+
+    @Override
+    public long rows() {
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writeLine(String[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) out.write(sep);
+            if (sep == '\t') writeTsv(values[i]);
+            else writeCsv(values[i]);
+        }
+        out.write('\n');
+    }
+
+    private void writeTsv(String v) throws IOException {
+        for (int i = 0; i < v.length(); i++) {
+            char c = v.charAt(i);
+            out.write(c == '\t' || c == '\n' || c == '\r' ? ' ' : c);
+        }
+    }
+
+    private void writeCsv(String v) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < v.length() && !quote; i++) {
+            char c = v.charAt(i);
+            quote = c == sep || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(v);
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < v.length(); i++) {
+            char c = v.charAt(i);
+            if (c == '"') out.write('"');
+            out.write(c);
+        }
+        out.write('"');
+    }
+}
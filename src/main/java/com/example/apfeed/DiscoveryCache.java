@@ -0,0 +1,141 @@
+package com.example.apfeed;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Remembers what browser discovery found on each listing, so repeat runs can
+ * skip the scroll when the listing has not changed.
+ *
+ * A listing's fingerprint is a hash of the product links visible right after
+ * the first page load (before any scrolling) plus the product count the page
+ * shows ("245 products"), if any. When a run sees the same fingerprint as the
+ * stored entry, the stored links are reused. Entries older than
+ * {@link #MAX_AGE_DAYS} days are refreshed anyway, since products added
+ * further down a listing do not change its first screen. A discovery that
+ * stopped early (link limit reached or the scroll ran out of time) is only
+ * reused for requests it holds enough links for.
+ *
+ * Layout: {dir}/{sha256(listing url)}.json, one small JSON file per listing.
+ */
+public class DiscoveryCache {
+    static final int MAX_AGE_DAYS = 7;
+    private static final ObjectMapper JSON = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private static final Pattern PRODUCT_COUNT = Pattern.compile(
+            "(\\d[\\d,.]*)\\s+(?:products?|items?|results?|styles?)\\b",
+            Pattern.CASE_INSENSITIVE
+    );
+
+    /** One stored listing. */
+    public static class Entry {
+        public String url = "";
+        public String fingerprint = "";
+        public long savedAt;
+        /** The scroll reached the end of the listing within the link limit. */
+        public boolean complete;
+        /** Link limit of the discovery that was stored. */
+        public int limit;
+        public List<String> links = new ArrayList<>();
+    }
+
+    private final Path dir;
+
+    public DiscoveryCache(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Fingerprint of a listing's first screen, or null when there is nothing
+     * to go on (no product links and no count yet, e.g. a grid still loading).
+     */
+    public static String fingerprint(List<String> firstScreenLinks, String pageText) {
+        String count = "";
+        if (pageText != null) {
+            Matcher m = PRODUCT_COUNT.matcher(pageText);
+            if (m.find()) count = m.group(1).replaceAll("[,.]", "");
+        }
+        if (firstScreenLinks.isEmpty() && count.isEmpty()) return null;
+        StringBuilder sb = new StringBuilder(count).append('\n');
+        for (String l : firstScreenLinks) sb.append(l).append('\n');
+        return sha256(sb.toString()).substring(0, 32);
+    }
+
+    /**
+     * Up to maxLinks stored links if url was stored with this fingerprint
+     * recently enough and the entry covers maxLinks, else null.
+     */
+    public List<String> lookup(String url, String fingerprint, int maxLinks) {
+        if (fingerprint == null) return null;
+        Entry e = read(url);
+        if (e == null || !e.url.equals(url) || !e.fingerprint.equals(fingerprint)) return null;
+        long ageMs = System.currentTimeMillis() - e.savedAt;
+        if (ageMs > MAX_AGE_DAYS * 86_400_000L) return null;
+        // a cut-short discovery only answers for as many links as it found
+        if (!e.complete && (maxLinks > e.limit || maxLinks > e.links.size())) return null;
+        return new ArrayList<>(e.links.subList(0, Math.min(e.links.size(), maxLinks)));
+    }
+
+    /** When url's entry was saved, or null if there is none. */
+    public Instant savedAt(String url) {
+        Entry e = read(url);
+        return e == null ? null : Instant.ofEpochMilli(e.savedAt);
+    }
+
+    /**
+     * @param complete the whole listing was seen (not cut short by limit or time)
+     * @param limit link limit the discovery ran with
+     */
+    public void store(String url, String fingerprint, List<String> links, boolean complete, int limit) {
+        if (fingerprint == null || links.isEmpty()) return;
+        Entry e = new Entry();
+        e.url = url;
+        e.fingerprint = fingerprint;
+        e.savedAt = System.currentTimeMillis();
+        e.complete = complete;
+        e.limit = limit;
+        e.links = new ArrayList<>(links);
+        try {
+            Files.createDirectories(dir);
+            Path target = file(url);
+            Path tmp = Files.createTempFile(dir, "listing", ".tmp");
+            JSON.writeValue(tmp.toFile(), e);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            System.err.println("  Could not save discovery cache for " + url + ": " + ex.getMessage());
+        }
+    }
+
+    private Entry read(String url) {
+        Path f = file(url);
+        if (!Files.isRegularFile(f)) return null;
+        try {
+            return JSON.readValue(f.toFile(), Entry.class);
+        } catch (IOException e) {
+            return null;    // half-written or from an older version: just rediscover
+        }
+    }
+
+    private Path file(String url) {
+        return dir.resolve(sha256(url).substring(0, 40) + ".json");
+    }
+
+    private static String sha256(String s) {
+        try {
+            byte[] d = MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(d);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package com.example.apfeed;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.microsoft.playwright.Page;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
+import org.jsoup.nodes.Node;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
 
 import java.net.URI;
 import java.util.*;
@@ -42,8 +45,70 @@ public class DomExtractor {
         public String imageUrl;
         public String description;
         public List<String> breadcrumbs;
+        /** Feed availability from structured data, or "" when the page does not say. */
+        public String availability;
+        /** Every image candidate, best guess first (imageUrl is the first one). */
+        public List<String> imageCandidates = new ArrayList<>();
+        /** SKU from itemprop, data-* attributes, sku classes or "SKU:" text; "" when none. */
+        public String sku = "";
     }
 
+    // Prefer product-ish containers first, then general content
+    static final String[] DESCRIPTION_SELECTORS = {
+            "[class*=product-description] p",
+            ".product__description p",
+            ".product-single__description p",
+            "[data-product-description] p",
+            "[class*=product] p",
+            "[class*=description] p",
+            "main p",
+            "article p",
+            "section p",
+            ".prose p"
+    };
+
+    static final String[] IMAGE_SELECTORS = {
+            "main img", "article img",
+            "[class*=product] img",
+            "[class*=gallery] img",
+            "[class*=image] img"
+    };
+
+    private static final Pattern SKU_TEXT_RE = Pattern.compile("(?i)SKU[:#\\s]+([A-Z0-9\\-_/]+)");
+
+    // Container flags set by Candidates.scan; an element's mask is the OR of
+    // its ancestors' flags, so "X p" matches when the p's mask has X's bit.
+    private static final int IN_PRODUCT_DESCRIPTION = 1;        // [class*=product-description]
+    private static final int IN_PRODUCT__DESCRIPTION = 1 << 1;  // .product__description
+    private static final int IN_PRODUCT_SINGLE = 1 << 2;        // .product-single__description
+    private static final int IN_DATA_DESCRIPTION = 1 << 3;      // [data-product-description]
+    private static final int IN_PRODUCT = 1 << 4;               // [class*=product]
+    private static final int IN_DESCRIPTION = 1 << 5;           // [class*=description]
+    private static final int IN_MAIN = 1 << 6;
+    private static final int IN_ARTICLE = 1 << 7;
+    private static final int IN_SECTION = 1 << 8;
+    private static final int IN_PROSE = 1 << 9;                 // .prose
+    private static final int IN_GALLERY = 1 << 10;              // [class*=gallery]
+    private static final int IN_IMAGE = 1 << 11;                // [class*=image]
+    private static final int IN_CRUMB_NAV = 1 << 12;            // nav[aria-label*=crumb], nav.breadcrumb
+    private static final int IN_CRUMB_CLASS = 1 << 13;          // [class*=breadcrumb]
+    private static final int IN_OFFER_TAG = 1 << 14;            // copied whole into the offer document
+
+    /** Same order as DESCRIPTION_SELECTORS (which the in-page script uses). */
+    private static final int[] DESCRIPTION_BITS = {
+            IN_PRODUCT_DESCRIPTION, IN_PRODUCT__DESCRIPTION, IN_PRODUCT_SINGLE, IN_DATA_DESCRIPTION,
+            IN_PRODUCT, IN_DESCRIPTION, IN_MAIN, IN_ARTICLE, IN_SECTION, IN_PROSE
+    };
+
+    /** Same order as IMAGE_SELECTORS. */
+    private static final int[] IMAGE_BITS = {IN_MAIN, IN_ARTICLE, IN_PRODUCT, IN_GALLERY, IN_IMAGE};
+
+    private static final Set<String> OFFER_ITEMPROPS = Set.of("price", "pricecurrency", "availability");
+    private static final Set<String> OFFER_META_PROPERTIES = Set.of(
+            "product:price:amount", "og:price:amount",
+            "product:price:currency", "og:price:currency",
+            "product:availability", "og:availability");
+
     // ----------------------------------------------------
     // Public entry points
     // ----------------------------------------------------
@@ -68,13 +133,46 @@ public class DomExtractor {
         return extractFromHtmlInternal(html, null, url, currencyCode);
     }
 
+    /**
+     * --head-first: the product straight from the JSON-LD in the rendered
+     * &lt;head&gt;, without serialising or parsing the body; null when that is
+     * not enough for a row (the caller then extracts from the whole page).
+     */
+    public static ExtractResult extractFromHead(Page page, String url, String currencyCode) {
+        try {
+            String head = (String) page.evaluate("() => document.head ? document.head.outerHTML : ''");
+            return extractFromHead(head, url, currencyCode);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * The same from HTML. Title, price and image must all be there; description,
+     * categories, SKU and availability are what the JSON-LD says (no DOM
+     * heuristics, image ranking or breadcrumb trail).
+     */
+    public static ExtractResult extractFromHead(String html, String url, String currencyCode) {
+        for (JsonNode product : StructuredData.jsonLdProducts(HtmlPruner.headJsonLd(html))) {
+            for (JsonProductCapture.Captured c : JsonProductCapture.extract(product, url)) {
+                if (!c.sufficient()) continue;
+                ExtractResult er = c.toExtractResult(currencyCode);
+                if (er.price.isEmpty()) continue;
+                er.sku = c.sku;
+                if (er.availability.isEmpty()) er.availability = StructuredData.jsonLdOffer(List.of(product)).availability;
+                return er;
+            }
+        }
+        return null;
+    }
+
     /**
      * Public helper for SKU: can be called from anywhere.
      */
     public static String extractSkuFromHtml(String html, String url) {
         if (html == null) return "";
-        Document doc = Jsoup.parse(html, url);
-        return extractSkuFromDocument(doc);
+        Document doc = Jsoup.parse(HtmlPruner.prune(html), url);
+        return extractSku(Candidates.scan(doc));
     }
 
     // ----------------------------------------------------
@@ -86,74 +184,85 @@ public class DomExtractor {
                                                          String url,
                                                          String currencyCode) {
         if (html == null) html = "";
-        Document doc = Jsoup.parse(html, url);
+        // script/style bodies and comments never reach the extractor; leave them out of the tree
+        Document doc = Jsoup.parse(HtmlPruner.prune(html), url);
+        Candidates c = Candidates.scan(doc);
 
         ExtractResult result = new ExtractResult();
 
         // ----- TITLE -----
         String title = "";
-        Element h1 = doc.selectFirst("h1");
-        if (h1 != null) {
-            title = cleanText(h1.text());
+        if (c.h1 != null) {
+            title = cleanText(c.h1.text());
         }
         if (title.isEmpty()) {
             String dt = doc.title();
             if (dt != null) title = cleanText(dt);
         }
-        if (title.isEmpty()) {
-            title = "";
-        }
 
         // ----- PRICE -----
         String textForPrice;
         if (bodyText != null && !bodyText.isBlank()) {
             textForPrice = bodyText;
         } else {
-            textForPrice = doc.text();
+            textForPrice = c.docText();
         }
         String price = extractPriceFromText(textForPrice, currencyCode);
 
         // ----- DESCRIPTION (improved heuristic) -----
-        String description = "";
         List<String> paras = new ArrayList<>();
 
-        // Prefer product-ish containers first, then general content
-        String[] sels = {
-                "[class*=product-description] p",
-                ".product__description p",
-                ".product-single__description p",
-                "[data-product-description] p",
-                "[class*=product] p",
-                "[class*=description] p",
-                "main p",
-                "article p",
-                "section p",
-                ".prose p"
-        };
-
-        for (String sel : sels) {
-            Elements ps = doc.select(sel);
-            for (Element p : ps) {
-                String t = cleanText(p.text());
-                if (t.length() < 40) continue;              // too short
-                if (t.length() > 600) continue;             // probably long blog/help text
-                if (BAD_DESC.matcher(t).find()) continue;   // cookie banners etc.
-                paras.add(t);
+        for (int bit : DESCRIPTION_BITS) {
+            for (int i = 0; i < c.paragraphs.size(); i++) {
+                if ((c.paragraphMasks[i] & bit) == 0) continue;
+                String t = c.paragraphText(i);
+                if (isDescriptionCandidate(t)) paras.add(t);
             }
             if (!paras.isEmpty()) break; // we found some in a good container
         }
 
         // If we still have nothing, fall back to "longest reasonable" paragraph anywhere
         if (paras.isEmpty()) {
-            Elements ps = doc.select("p");
-            for (Element p : ps) {
-                String t = cleanText(p.text());
-                if (t.length() >= 40 && t.length() <= 600 && !BAD_DESC.matcher(t).find()) {
-                    paras.add(t);
-                }
+            for (int i = 0; i < c.paragraphs.size(); i++) {
+                String t = c.paragraphText(i);
+                if (isDescriptionCandidate(t)) paras.add(t);
             }
         }
 
+        String firstP = c.paragraphs.isEmpty() ? "" : c.paragraphText(0);
+        String description = chooseDescription(paras, firstP, title);
+
+        // ----- BREADCRUMBS -----
+        List<String> crumbs = collectBreadcrumbs(c);
+
+        // ----- IMAGE -----
+        List<String> images = rankImageCandidates(url, c, title);
+        String image = images.isEmpty() ? "" : images.get(0);
+
+        result.title = title;
+        result.price = price;
+        result.imageUrl = image;
+        result.imageCandidates = images;
+        result.description = description;
+        result.breadcrumbs = crumbs;
+        result.availability = StructuredData.readAvailability(c.offerDocument(url));
+        result.sku = extractSku(c);
+
+        return result;
+    }
+
+    private static boolean isDescriptionCandidate(String t) {
+        if (t.length() < 40) return false;              // too short
+        if (t.length() > 600) return false;             // probably long blog/help text
+        return !BAD_DESC.matcher(t).find();             // cookie banners etc.
+    }
+
+    /**
+     * Paragraph closest to ~250 chars, else the first paragraph, else the
+     * title; naked URLs stripped, clamped to 500 chars.
+     */
+    static String chooseDescription(List<String> paras, String firstParagraph, String title) {
+        String description = "";
         if (!paras.isEmpty()) {
             // Pick the one closest to ~250 chars (nice concise description)
             description = paras.stream()
@@ -161,15 +270,12 @@ public class DomExtractor {
                     .orElse("");
         }
 
-        if (description.isEmpty()) {
-            Element p = doc.selectFirst("p");
-            if (p != null) {
-                description = cleanText(p.text());
-            }
+        if (description.isEmpty() && firstParagraph != null) {
+            description = firstParagraph;
         }
 
         // Strip naked URLs from the description
-        description = description.replaceAll("https?://\\S+", "").replaceAll("\\s+", " ").trim();
+        description = TextNormalizer.stripUrls(description);
 
         // Final clamp
         if (description.length() > 500) {
@@ -178,29 +284,16 @@ public class DomExtractor {
         if (description.isEmpty()) {
             description = title != null ? title : "";
         }
-
-        // ----- BREADCRUMBS -----
-        List<String> crumbs = collectBreadcrumbs(doc);
-
-        // ----- IMAGE -----
-        String image = pickBestImage(url, doc, title);
-
-        result.title = title;
-        result.price = price;
-        result.imageUrl = image;
-        result.description = description;
-        result.breadcrumbs = crumbs;
-
-        return result;
+        return description;
     }
 
     // ----------------------------------------------------
     // SKU extraction
     // ----------------------------------------------------
 
-    private static String extractSkuFromDocument(Document doc) {
+    private static String extractSku(Candidates c) {
         // 1) Microdata / meta (itemprop="sku")
-        Element skuEl = doc.selectFirst("[itemprop=sku], meta[itemprop=sku]");
+        Element skuEl = c.itempropSku;
         if (skuEl != null) {
             String val = skuEl.hasAttr("content") ? skuEl.attr("content") : skuEl.text();
             val = cleanText(val);
@@ -208,7 +301,7 @@ public class DomExtractor {
         }
 
         // 2) Common data-* attributes
-        Element ds = doc.selectFirst("[data-product-sku], [data-sku]");
+        Element ds = c.dataSku;
         if (ds != null) {
             String val = ds.hasAttr("data-product-sku")
                     ? ds.attr("data-product-sku")
@@ -218,8 +311,7 @@ public class DomExtractor {
         }
 
         // 3) Common class names (sku, product-sku, etc.)
-        Elements skuCandidates = doc.select(".product-sku, .sku, [class*=sku]");
-        for (Element el : skuCandidates) {
+        for (Element el : c.skuClassed) {
             String text = cleanText(el.text());
             if (text.toLowerCase(Locale.ROOT).startsWith("sku")) {
                 text = text.replaceFirst("(?i)^sku[:#\\s]*", "");
@@ -230,8 +322,8 @@ public class DomExtractor {
         }
 
         // 4) Raw text “SKU: XXX” pattern in body
-        String body = doc.text();
-        Matcher m = Pattern.compile("(?i)SKU[:#\\s]+([A-Z0-9\\-_/]+)").matcher(body);
+        String body = c.docText();
+        Matcher m = SKU_TEXT_RE.matcher(body);
         if (m.find()) {
             String val = m.group(1);
             val = cleanText(val);
@@ -245,7 +337,7 @@ public class DomExtractor {
     // Price extraction from plain text
     // ----------------------------------------------------
 
-    private static String extractPriceFromText(String text, String currencyCode) {
+    static String extractPriceFromText(String text, String currencyCode) {
         if (text == null) text = "";
         List<Double> candidates = new ArrayList<>();
 
@@ -259,7 +351,7 @@ public class DomExtractor {
         try {
             Matcher m = priceRe.matcher(text);
             while (m.find()) {
-                String val = normalizeNumberToken(m.group(1));
+                String val = StructuredData.normalizeAmount(m.group(1), currencyCode);
                 try {
                     candidates.add(Double.parseDouble(val));
                 } catch (Exception ignored) {}
@@ -281,7 +373,7 @@ public class DomExtractor {
         return "";
     }
 
-    private static String getCurrencySymbol(String currencyCode) {
+    static String getCurrencySymbol(String currencyCode) {
         if (currencyCode == null) return "";
         String c = currencyCode.toUpperCase(Locale.ROOT);
         return switch (c) {
@@ -293,117 +385,74 @@ public class DomExtractor {
         };
     }
 
-    private static String normalizeNumberToken(String s) {
-        if (s == null) return "";
-        s = s.trim();
-        // If both . and , exist, assume the last separator is the decimal mark
-        int lastDot = s.lastIndexOf('.');
-        int lastComma = s.lastIndexOf(',');
-        if (lastDot >= 0 && lastComma >= 0) {
-            int last = Math.max(lastDot, lastComma);
-            String intPart = s.substring(0, last).replaceAll("[^0-9]", "");
-            String fracPart = s.substring(last + 1).replaceAll("[^0-9]", "");
-            if (fracPart.length() == 0) {
-                return intPart;
-            }
-            return intPart + "." + fracPart;
-        }
-        // Otherwise, just strip all non-digits except dot/comma, then normalise
-        s = s.replaceAll("[^0-9.,]", "");
-        if (s.chars().filter(ch -> ch == ',').count() > 0 &&
-            s.chars().filter(ch -> ch == '.').count() == 0) {
-            // European style: 123,45
-            s = s.replace(',', '.');
-        } else {
-            // 1,234.56 -> 1234.56
-            s = s.replace(",", "");
-        }
-        return s;
-    }
-
     // ----------------------------------------------------
     // Breadcrumbs
     // ----------------------------------------------------
 
-    private static List<String> collectBreadcrumbs(Document doc) {
+    private static List<String> collectBreadcrumbs(Candidates c) {
         List<String> crumbs = new ArrayList<>();
 
         // aria-label based breadcrumbs
-        Elements navs = doc.select("nav[aria-label*=crumb], nav[aria-label*=Crumb], nav.breadcrumb");
-        for (Element nav : navs) {
-            Elements links = nav.select("a, span");
-            for (Element e : links) {
-                String t = cleanText(e.text());
-                if (!t.isEmpty() && t.length() > 2 && !crumbs.contains(t)) {
-                    crumbs.add(t);
-                }
-            }
-        }
+        addCrumbs(c.navCrumbs, crumbs);
 
         // common classes
         if (crumbs.isEmpty()) {
-            Elements bcs = doc.select(".breadcrumb, .breadcrumbs, [class*=breadcrumb]");
-            for (Element bc : bcs) {
-                Elements links = bc.select("a, span, li");
-                for (Element e : links) {
-                    String t = cleanText(e.text());
-                    if (!t.isEmpty() && t.length() > 2 && !crumbs.contains(t)) {
-                        crumbs.add(t);
-                    }
-                }
-            }
+            addCrumbs(c.classCrumbs, crumbs);
         }
 
         return crumbs;
     }
 
+    private static void addCrumbs(List<Element> items, List<String> crumbs) {
+        for (Element e : items) {
+            String t = cleanText(e.text());
+            if (!t.isEmpty() && t.length() > 2 && !crumbs.contains(t)) {
+                crumbs.add(t);
+            }
+        }
+    }
+
     // ----------------------------------------------------
     // Image picking
     // ----------------------------------------------------
 
     public static String pickBestImage(String url, Document doc, String titleText) {
-        List<String> imgUrls = new ArrayList<>();
+        List<String> ranked = rankImageCandidates(url, doc, titleText);
+        return ranked.isEmpty() ? "" : ranked.get(0);
+    }
 
-        String[] sels = {
-                "main img", "article img",
-                "[class*=product] img",
-                "[class*=gallery] img",
-                "[class*=image] img"
-        };
+    /**
+     * All candidate image URLs, best first: images whose URL contains more
+     * words from the title come first, ties keep document/selector order.
+     */
+    public static List<String> rankImageCandidates(String url, Document doc, String titleText) {
+        return rankImageCandidates(url, Candidates.scan(doc), titleText);
+    }
 
-        for (String sel : sels) {
-            Elements imgs = doc.select(sel);
-            for (Element img : imgs) {
-                String src = img.hasAttr("srcset")
-                        ? img.attr("srcset").split("\\s+")[0]
-                        : img.attr("src");
-                if (src == null || src.isBlank()) continue;
-                src = absolutizeUrl(url, src.trim());
-                if (src.isEmpty()) continue;
-                if (BAD_IMG_TERMS.matcher(src).find()) continue;
-                if (!imgUrls.contains(src)) {
-                    imgUrls.add(src);
-                }
+    private static List<String> rankImageCandidates(String url, Candidates c, String titleText) {
+        Set<String> found = new LinkedHashSet<>();
+
+        for (int bit : IMAGE_BITS) {
+            for (int i = 0; i < c.images.size(); i++) {
+                if ((c.imageMasks[i] & bit) == 0) continue;
+                String src = c.imageSrc(i, url);
+                if (!src.isEmpty()) found.add(src);
             }
         }
 
-        if (imgUrls.isEmpty()) {
-            Elements imgs = doc.select("img");
-            for (Element img : imgs) {
-                String src = img.hasAttr("srcset")
-                        ? img.attr("srcset").split("\\s+")[0]
-                        : img.attr("src");
-                if (src == null || src.isBlank()) continue;
-                src = absolutizeUrl(url, src.trim());
-                if (src.isEmpty()) continue;
-                if (BAD_IMG_TERMS.matcher(src).find()) continue;
-                if (!imgUrls.contains(src)) {
-                    imgUrls.add(src);
-                }
+        if (found.isEmpty()) {
+            for (int i = 0; i < c.images.size(); i++) {
+                String src = c.imageSrc(i, url);
+                if (!src.isEmpty()) found.add(src);
             }
         }
 
-        if (imgUrls.isEmpty()) return "";
+        return rankByTitle(new ArrayList<>(found), titleText);
+    }
+
+    /** Sorts in place so URLs containing more title words come first; stable otherwise. */
+    static List<String> rankByTitle(List<String> imgUrls, String titleText) {
+        if (imgUrls.isEmpty()) return imgUrls;
 
         // Prefer images whose URL contains words from the title
         if (titleText != null && !titleText.isBlank()) {
@@ -413,24 +462,187 @@ public class DomExtractor {
                 if (w.length() < 4) continue;
                 good.add(w);
             }
-            String best = null;
-            int bestScore = -1;
+            Map<String, Integer> scores = new HashMap<>();
             for (String u : imgUrls) {
                 String lu = u.toLowerCase(Locale.ROOT);
                 int score = 0;
                 for (String w : good) {
                     if (lu.contains(w)) score++;
                 }
-                if (score > bestScore) {
-                    bestScore = score;
-                    best = u;
+                scores.put(u, score);
+            }
+            // stable sort: equal scores keep their original order
+            imgUrls.sort((a, b) -> Integer.compare(scores.get(b), scores.get(a)));
+        }
+
+        return imgUrls;
+    }
+
+    /** Absolute image URL from srcset/src, or "" when missing or logo-ish. */
+    private static String imageSource(String url, Element img) {
+        String src = img.hasAttr("srcset")
+                ? img.attr("srcset").split("\\s+")[0]
+                : img.attr("src");
+        if (src == null || src.isBlank()) return "";
+        src = absolutizeUrl(url, src.trim());
+        if (src.isEmpty()) return "";
+        if (BAD_IMG_TERMS.matcher(src).find()) return "";
+        return src;
+    }
+
+    // ----------------------------------------------------
+    // Single-pass candidate scan
+    // ----------------------------------------------------
+
+    /**
+     * Everything the heuristics look at, gathered in one walk of the DOM
+     * instead of one select() per selector. Lists are in document order;
+     * the masks say which selector containers each element sits in, so the
+     * per-field selector cascades above give the same answers as before.
+     */
+    private static final class Candidates implements NodeVisitor {
+        final Document doc;
+        Element h1;
+        Element itempropSku;
+        Element dataSku;
+        final List<Element> skuClassed = new ArrayList<>();
+        final List<Element> paragraphs = new ArrayList<>();
+        int[] paragraphMasks = new int[32];
+        final List<Element> images = new ArrayList<>();
+        int[] imageMasks = new int[32];
+        final List<Element> navCrumbs = new ArrayList<>();
+        final List<Element> classCrumbs = new ArrayList<>();
+        final List<Element> offerTags = new ArrayList<>();
+
+        private int[] depthMasks = new int[64];
+        private String[] paragraphTexts;
+        private String[] imageSources;
+        private String docText;
+
+        private Candidates(Document doc) {
+            this.doc = doc;
+        }
+
+        static Candidates scan(Document doc) {
+            Candidates c = new Candidates(doc);
+            NodeTraversor.traverse(c, doc);
+            return c;
+        }
+
+        @Override
+        public void head(Node node, int depth) {
+            if (!(node instanceof Element)) return;
+            Element el = (Element) node;
+            int inherited = depth > 0 ? depthMasks[depth - 1] : 0;
+            String tag = el.normalName();
+            String cls = el.attr("class").toLowerCase(Locale.ROOT);
+
+            int own = 0;
+            if (!cls.isEmpty()) {
+                if (cls.contains("product")) {
+                    own |= IN_PRODUCT;
+                    if (cls.contains("product-description")) own |= IN_PRODUCT_DESCRIPTION;
+                    if (hasClass(cls, "product__description")) own |= IN_PRODUCT__DESCRIPTION;
+                    if (hasClass(cls, "product-single__description")) own |= IN_PRODUCT_SINGLE;
                 }
+                if (cls.contains("description")) own |= IN_DESCRIPTION;
+                if (cls.contains("gallery")) own |= IN_GALLERY;
+                if (cls.contains("image")) own |= IN_IMAGE;
+                if (hasClass(cls, "prose")) own |= IN_PROSE;
+                if (cls.contains("breadcrumb")) own |= IN_CRUMB_CLASS;
+                if (cls.contains("sku")) skuClassed.add(el);
             }
-            if (best != null) return best;
+            if (el.hasAttr("data-product-description")) own |= IN_DATA_DESCRIPTION;
+
+            switch (tag) {
+                case "main" -> own |= IN_MAIN;
+                case "article" -> own |= IN_ARTICLE;
+                case "section" -> own |= IN_SECTION;
+                case "nav" -> {
+                    if (el.attr("aria-label").toLowerCase(Locale.ROOT).contains("crumb")
+                            || hasClass(cls, "breadcrumb")) own |= IN_CRUMB_NAV;
+                }
+                case "h1" -> {
+                    if (h1 == null) h1 = el;
+                }
+                case "p" -> {
+                    paragraphMasks = add(paragraphs, paragraphMasks, el, inherited);
+                }
+                case "img" -> {
+                    imageMasks = add(images, imageMasks, el, inherited);
+                }
+                default -> { }
+            }
+
+            if (tag.equals("a") || tag.equals("span") || tag.equals("li")) {
+                if (!tag.equals("li") && (inherited & IN_CRUMB_NAV) != 0) navCrumbs.add(el);
+                if (((inherited | own) & IN_CRUMB_CLASS) != 0) classCrumbs.add(el);
+            }
+
+            String itemprop = el.attr("itemprop").trim().toLowerCase(Locale.ROOT);
+            if (itempropSku == null && itemprop.equals("sku")) itempropSku = el;
+            if (dataSku == null && (el.hasAttr("data-product-sku") || el.hasAttr("data-sku"))) dataSku = el;
+
+            if (OFFER_ITEMPROPS.contains(itemprop)
+                    || (tag.equals("script") && el.attr("type").trim().equalsIgnoreCase("application/ld+json"))
+                    || (tag.equals("meta") && OFFER_META_PROPERTIES.contains(
+                            el.attr("property").trim().toLowerCase(Locale.ROOT)))) {
+                // nested offer tags travel with their outermost ancestor
+                if ((inherited & IN_OFFER_TAG) == 0) offerTags.add(el);
+                own |= IN_OFFER_TAG;
+            }
+
+            if (depth >= depthMasks.length) depthMasks = Arrays.copyOf(depthMasks, depthMasks.length * 2);
+            depthMasks[depth] = inherited | own;
         }
 
-        // Fallback: just return the first URL
-        return imgUrls.get(0);
+        String paragraphText(int i) {
+            if (paragraphTexts == null) paragraphTexts = new String[paragraphs.size()];
+            String t = paragraphTexts[i];
+            if (t == null) {
+                t = cleanText(paragraphs.get(i).text());
+                paragraphTexts[i] = t;
+            }
+            return t;
+        }
+
+        /** imageSource() of image i; an img inside several containers is resolved once. */
+        String imageSrc(int i, String url) {
+            if (imageSources == null) imageSources = new String[images.size()];
+            String src = imageSources[i];
+            if (src == null) {
+                src = imageSource(url, images.get(i));
+                imageSources[i] = src;
+            }
+            return src;
+        }
+
+        /** doc.text(), computed at most once (price and SKU fallbacks share it). */
+        String docText() {
+            if (docText == null) docText = doc.text();
+            return docText;
+        }
+
+        /** A small document with just the JSON-LD/microdata/OpenGraph offer tags, in page order. */
+        Document offerDocument(String url) {
+            Document d = Document.createShell(url);
+            for (Element el : offerTags) d.body().appendChild(el.clone());
+            return d;
+        }
+
+        private static int[] add(List<Element> list, int[] masks, Element el, int mask) {
+            if (list.size() == masks.length) masks = Arrays.copyOf(masks, masks.length * 2);
+            masks[list.size()] = mask;
+            list.add(el);
+            return masks;
+        }
+
+        private static boolean hasClass(String lowerClassAttr, String name) {
+            for (String c : lowerClassAttr.split("\\s+")) {
+                if (c.equals(name)) return true;
+            }
+            return false;
+        }
     }
 
     // ----------------------------------------------------
@@ -438,11 +650,10 @@ public class DomExtractor {
     // ----------------------------------------------------
 
     private static String cleanText(String t) {
-        if (t == null) return "";
-        return t.replaceAll("\\s+", " ").trim();
+        return TextNormalizer.collapseWhitespace(t);
     }
 
-    private static String absolutizeUrl(String pageUrl, String candidate) {
+    static String absolutizeUrl(String pageUrl, String candidate) {
         if (candidate == null || candidate.isBlank()) return "";
         try {
             URI base = new URI(pageUrl);
@@ -1,26 +1,55 @@
 package com.example.apfeed;
 
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
+import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 
-public class ExcelExporter {
-    private static final String[] HEADERS = {
+/**
+ * .xlsx feed writer. Rows are streamed through POI's SXSSF, so only a small
+ * window of rows is kept in memory however large the feed is.
+ */
+public class ExcelExporter implements FeedWriter {
+    static final String[] HEADERS = {
             "id","title","description","link","condition","price","availability",
             "adult","image link","mpn","brand","product types"
     };
 
-    public void export(List<Product> products, String filename, boolean append) throws Exception {
-        // Simple implementation: always create a fresh workbook
-        Workbook wb = new XSSFWorkbook();
-        Sheet sheet = wb.createSheet("Sheet1");
+    /** Same columns under their Google Merchant attribute names, for TSV/CSV feeds. */
+    static final String[] MERCHANT_HEADERS = {
+            "id","title","description","link","condition","price","availability",
+            "adult","image_link","mpn","brand","product_type"
+    };
+
+    // rows kept in memory before SXSSF flushes them to its temp file
+    private static final int ROW_WINDOW = 200;
+    // Excel's column width limit is 255 characters
+    private static final int MAX_WIDTH_CHARS = 255;
+
+    private String filename;
+    private SXSSFWorkbook wb;
+    private SXSSFSheet sheet;
+    private int rowIdx;
+    private final String[] cells = new String[HEADERS.length];
+    private final int[] maxChars = new int[HEADERS.length];
+
+    /** Use {@link #export(List, String, boolean)} for a one-shot export. */
+    public ExcelExporter() {
+    }
+
+    /** Opens a streaming writer; call {@link #write(Product)} per row and close() to save. */
+    public ExcelExporter(String filename) {
+        this.filename = filename;
+        wb = new SXSSFWorkbook(ROW_WINDOW);
+        sheet = wb.createSheet("Sheet1");
 
         // Header row
-        Row header = sheet.createRow(0);
+        Row header = sheet.createRow(rowIdx++);
         CellStyle headerStyle = wb.createCellStyle();
         Font headerFont = wb.createFont();
         headerFont.setBold(true);
@@ -30,38 +59,69 @@ public class ExcelExporter {
             Cell c = header.createCell(i);
             c.setCellValue(HEADERS[i]);
             c.setCellStyle(headerStyle);
+            maxChars[i] = HEADERS[i].length();
         }
+    }
 
-        // Data rows
-        int rowIdx = 1;
-        for (Product p : products) {
-            Row r = sheet.createRow(rowIdx++);
-            int col = 0;
-            r.createCell(col++).setCellValue(nz(p.id));
-            r.createCell(col++).setCellValue(nz(p.title));
-            r.createCell(col++).setCellValue(nz(p.description));
-            r.createCell(col++).setCellValue(nz(p.link));
-            r.createCell(col++).setCellValue(nz(p.condition));
-            r.createCell(col++).setCellValue(nz(p.price));
-            r.createCell(col++).setCellValue(nz(p.availability));
-            r.createCell(col++).setCellValue(nz(p.adult));
-            r.createCell(col++).setCellValue(nz(p.imageLink));
-            r.createCell(col++).setCellValue(nz(p.mpn));
-            r.createCell(col++).setCellValue(nz(p.brand));
-            r.createCell(col++).setCellValue(nz(p.productTypes));
+    public void export(List<Product> products, String filename, boolean append) throws Exception {
+        // Simple implementation: always create a fresh workbook
+        try (ExcelExporter w = new ExcelExporter(filename)) {
+            w.writeAll(products);
         }
+    }
 
-        for (int i = 0; i < HEADERS.length; i++) {
-            sheet.autoSizeColumn(i);
+    @Override
+    public void write(Product p) {
+        Row r = sheet.createRow(rowIdx++);
+        toColumns(p, cells);
+        for (int i = 0; i < cells.length; i++) {
+            r.createCell(i).setCellValue(cells[i]);
+            if (cells[i].length() > maxChars[i]) maxChars[i] = cells[i].length();
         }
+    }
 
-        try (OutputStream out = Files.newOutputStream(Path.of(filename))) {
-            wb.write(out);
+    @Override
+    public long rows() {
+        return Math.max(0, rowIdx - 1);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (wb == null) return;
+        try {
+            // Width from the longest value seen; font-metric autoSizeColumn is
+            // far too slow to run over a streamed sheet
+            for (int i = 0; i < HEADERS.length; i++) {
+                sheet.setColumnWidth(i, Math.min(MAX_WIDTH_CHARS, maxChars[i] + 2) * 256);
+            }
+            try (OutputStream out = Files.newOutputStream(Path.of(filename))) {
+                wb.write(out);
+            }
+        } finally {
+            wb.dispose();
+            wb.close();
+            wb = null;
         }
-        wb.close();
     }
 
-    private String nz(String s) {
+    /** Product fields in {@link #HEADERS} order, nulls as "". */
+    static void toColumns(Product p, String[] out) {
+        int col = 0;
+        out[col++] = nz(p.id);
+        out[col++] = nz(p.title);
+        out[col++] = nz(p.description);
+        out[col++] = nz(p.link);
+        out[col++] = nz(p.condition);
+        out[col++] = nz(p.price);
+        out[col++] = nz(p.availability);
+        out[col++] = nz(p.adult);
+        out[col++] = nz(p.imageLink);
+        out[col++] = nz(p.mpn);
+        out[col++] = nz(p.brand);
+        out[col++] = nz(p.productTypes);
+    }
+
+    private static String nz(String s) {
         return s == null ? "" : s;
     }
 }
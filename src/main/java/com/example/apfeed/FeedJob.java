@@ -0,0 +1,41 @@
+package com.example.apfeed;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Settings for one merchant feed: who it is for, which URLs to read and where
+ * to write the result. Public fields so it can be bound straight from a
+ * batch manifest.
+ */
+public class FeedJob {
+    public String company;
+    public String currency;
+    public String urls;
+    public String output;
+    /** Optional split of the output, e.g. "type" or "brand,rows=500000" (see {@link PartitionedFeedWriter.Spec}). */
+    public String partition;
+
+    public FeedJob() {
+    }
+
+    public FeedJob(String company, String currency, String urls, String output) {
+        this.company = company;
+        this.currency = currency;
+        this.urls = urls;
+        this.output = output;
+    }
+
+    /** Initials of the company name, used as the MPN prefix ("Grandpas Goody Getter" -> "GGG"). */
+    public String mpnPrefix() {
+        return Arrays.stream(company.split("\\s+"))
+                .filter(s -> !s.isEmpty())
+                .map(s -> s.substring(0, 1).toUpperCase(Locale.ROOT))
+                .collect(Collectors.joining());
+    }
+
+    public String currencyCode() {
+        return currency == null ? "" : currency.trim().toUpperCase(Locale.ROOT);
+    }
+}
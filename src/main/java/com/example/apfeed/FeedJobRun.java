@@ -0,0 +1,471 @@
+package com.example.apfeed;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * One execution of a {@link FeedJob}: streams the input URLs into a frontier,
+ * discovers products from listings, scrapes each product and exports the feed.
+ *
+ * The single-merchant CLI drives it sequentially; the batch runner hands its
+ * steps to a shared worker pool, so scrapeOne() may run on several threads.
+ */
+public class FeedJobRun implements AutoCloseable {
+    private static final int MAX_DISCOVERED_PER_LISTING = 2500;
+    // input lines read ahead so their listings can be discovered concurrently
+    private static final int INPUT_CHUNK = 32;
+
+    public final FeedJob job;
+    private final String logPrefix;
+    private final String mpnPrefix;
+    private final String currencyCode;
+    private final UrlFrontier links = new UrlFrontier();
+
+    // Rows are streamed to the writer in frontier order; results that finish
+    // early (concurrent workers) wait here until the gap before them closes.
+    private final SortedMap<Integer, Product> pending = new TreeMap<>();
+    private FeedWriter writer;
+    private int nextToWrite = 1;
+    private int scraped;
+    private IOException writeError;
+
+    private UrlScheduler scheduler;
+    // HTTP checks running ahead of the scheduler (null = off)
+    private UrlPreflight preflight;
+    private int skipped;
+    // fingerprints of the URLs listed directly in the input; scheduled first
+    private final UrlFrontier.FingerprintSet directInputs = new UrlFrontier.FingerprintSet(1024);
+    // this job's shops' product URL templates, learned from scraped rows
+    private final UrlRules.Learned learned = new UrlRules.Learned();
+    // failed or parked targets waiting for their retry time, earliest first
+    private final PriorityQueue<Target> retries =
+            new PriorityQueue<>(Comparator.comparingLong((Target t) -> t.dueAt));
+    private int retried;
+    private long total;
+    private int uniqueInputs;
+    private int errors;
+    private long startedAt;
+    private long finishedAt;
+    private long firstProductAt;
+
+    public FeedJobRun(FeedJob job, String logPrefix) {
+        this.job = job;
+        this.logPrefix = logPrefix == null ? "" : logPrefix;
+        this.mpnPrefix = job.mpnPrefix();
+        this.currencyCode = job.currencyCode();
+    }
+
+    // -----------------------------
+    // Discovery
+    // -----------------------------
+
+    /**
+     * Streams the URL list into the frontier, expanding listing pages as they
+     * are read. Input is handled in chunks: every listing in a chunk is
+     * discovered statically in parallel (platform API or pagination), the
+     * rest then go through the browser one by one, and the results are added in
+     * input order so the frontier order does not depend on timing.
+     */
+    public void collectLinks(ProductScraper scraper) {
+        collectLinks(scraper, false);
+    }
+
+    /**
+     * As {@link #collectLinks(ProductScraper)}; with fetchEarly, the calling
+     * thread also fetches a chunk's direct product URLs while its listings
+     * are still being discovered, so the first rows are ready as soon as
+     * scraping starts. Only for callers that go on to scrape with the same
+     * scraper (not the sharded coordinator).
+     */
+    public void collectLinks(ProductScraper scraper, boolean fetchEarly) {
+        startedAt = System.currentTimeMillis();
+
+        // Input is streamed line by line; inputs only track fingerprints
+        UrlFrontier.FingerprintSet inputsSeen = new UrlFrontier.FingerprintSet(1024);
+        List<String> chunk = new ArrayList<>(INPUT_CHUNK);
+
+        forEachUrl(job.urls, u -> {
+            if (!inputsSeen.add(UrlFrontier.fingerprint(u))) return;
+            uniqueInputs++;
+            chunk.add(u);
+            if (chunk.size() >= INPUT_CHUNK) {
+                collectChunk(scraper, chunk, fetchEarly);
+                chunk.clear();
+            }
+        });
+        collectChunk(scraper, chunk, fetchEarly);
+
+        log("Got " + uniqueInputs + " unique input URL(s).");
+        log("Total product URLs to scrape: " + links.size());
+
+        synchronized (this) {
+            total = links.size();
+            scheduler = new UrlScheduler(links.iterator(), directInputs, scraper::isKnownWithoutPageLoad,
+                    learned::outsideTemplates);
+            if (scraper.preflightEnabled()) {
+                preflight = new UrlPreflight();
+                preflight.start(links.iterator(), scraper::isKnownWithoutPageLoad);
+            }
+        }
+    }
+
+    private void collectChunk(ProductScraper scraper, List<String> chunk, boolean fetchEarly) {
+        // Kick off static discovery for every listing in the chunk at once
+        Map<String, CompletableFuture<List<String>>> discovery = new HashMap<>();
+        for (String u : chunk) {
+            if (isListing(u)) {
+                discovery.put(u, scraper.discoverStaticAsync(u, MAX_DISCOVERED_PER_LISTING));
+            }
+        }
+
+        // Meanwhile, fetch the direct product URLs instead of waiting
+        if (fetchEarly && !discovery.isEmpty()) {
+            for (String u : chunk) {
+                if (discovery.values().stream().allMatch(CompletableFuture::isDone)) break;
+                if (discovery.containsKey(u)) continue;
+                log("Fetching early while listings are discovered: " + u);
+                if (scraper.prefetch(u, currencyCode)) firstProduct();
+            }
+        }
+
+        for (String u : chunk) {
+            // Always scrape the URLs the user gave directly
+            links.add(u);
+            directInputs.add(UrlFrontier.fingerprint(u));
+
+            CompletableFuture<List<String>> f = discovery.get(u);
+            if (f == null) continue;
+
+            // Discover products from listings/categories
+            log("Discovering product links from listing: " + u);
+            try {
+                List<String> found = f.join();
+                if (found.isEmpty()) {
+                    found = scraper.discoverLinksWithBrowser(u, MAX_DISCOVERED_PER_LISTING);
+                }
+                log("  Found " + found.size() + " product link(s).");
+                for (String l : found) links.add(l);
+            } catch (Exception e) {
+                System.err.println(logPrefix + "  -> Discovery error: " + e.getMessage());
+            }
+        }
+    }
+
+    private static boolean isListing(String u) {
+        return UrlUtils.looksLikeListingUrl(u) && !UrlUtils.looksLikeProductUrl(u);
+    }
+
+    // -----------------------------
+    // Output
+    // -----------------------------
+
+    /** Opens the feed writer; rows are written as they are scraped. */
+    public synchronized void openOutput() throws IOException {
+        if (writer == null) writer = FeedWriters.open(job.output, job.company, job.partition);
+    }
+
+    // -----------------------------
+    // Scraping
+    // -----------------------------
+
+    /** A frontier URL together with its 1-based row number. */
+    public static final class Target {
+        public final String url;
+        public final int idx;
+        /** Attempts made so far (parking on an open circuit does not count). */
+        int attempts;
+        long dueAt;
+        /** Where the pre-flight check found the product now lives; the row's link (null = url). */
+        String canonicalUrl;
+
+        Target(String url, int idx) {
+            this.url = url;
+            this.idx = idx;
+        }
+    }
+
+    /**
+     * Next URL to scrape: a retry whose time has come, else the frontier URL
+     * the {@link UrlScheduler} ranks best. Null if nothing is ready right now;
+     * see {@link #hasNext()} for whether more work will come.
+     */
+    public synchronized Target next() {
+        Target r = retries.peek();
+        if (r != null && r.dueAt <= System.currentTimeMillis()) {
+            retries.poll();
+            if (scheduler != null) scheduler.started(r.url);
+            return r;
+        }
+        if (scheduler == null || !scheduler.hasNext()) return null;
+        return scheduler.next();
+    }
+
+    /** Feeds the scheduler's cost model; elapsedMs &lt; 0 if the attempt was not timed. */
+    void finished(Target t, long elapsedMs) {
+        if (scheduler != null) scheduler.finished(t.url, elapsedMs);
+    }
+
+    /** True while frontier URLs or retries (due or not) remain. */
+    public synchronized boolean hasNext() {
+        return (scheduler != null && scheduler.hasNext()) || !retries.isEmpty();
+    }
+
+    /** Milliseconds until {@link #next()} can return work: 0 if ready, Long.MAX_VALUE if none is left. */
+    public synchronized long millisUntilReady() {
+        if (scheduler != null && scheduler.hasNext()) return 0;
+        Target r = retries.peek();
+        return r == null ? Long.MAX_VALUE : Math.max(0, r.dueAt - System.currentTimeMillis());
+    }
+
+    /** Blocking variant of {@link #next()} for a single caller: waits out retry delays. */
+    public Target awaitNext() throws InterruptedException {
+        while (true) {
+            Target t = next();
+            if (t != null) return t;
+            long wait = millisUntilReady();
+            if (wait == Long.MAX_VALUE) return null;
+            Thread.sleep(Math.max(50, Math.min(wait, 1000)));
+        }
+    }
+
+    public void scrapeOne(ProductScraper scraper, Target t) {
+        if (skipIfDropped(t, true)) return;
+        System.out.printf("%s(%d/%d) Scraping %s%s%n", logPrefix, t.idx, total, t.url,
+                t.attempts > 0 ? " (attempt " + (t.attempts + 1) + ")" : "");
+        long t0 = System.currentTimeMillis();
+        try {
+            Product p = scraper.scrapeProduct(t.url, t.idx, mpnPrefix, currencyCode, job.company);
+            finished(t, System.currentTimeMillis() - t0);
+            complete(t, p);
+            log("  -> OK: " + p.title + " | " + p.price);
+        } catch (HostHealth.HostUnavailableException e) {
+            finished(t, -1);
+            failed(t, e.getMessage(), true, e.retryAfterMs, false);
+        } catch (Exception e) {
+            finished(t, System.currentTimeMillis() - t0);
+            failed(t, e.getMessage(), RetryPolicy.isRetriable(e), RetryPolicy.backoffMs(t.attempts + 1, e), true);
+        }
+    }
+
+    /**
+     * Applies t's pre-flight check (first attempt only): a dead or bounced
+     * URL is recorded as skipped: no row, counted as an error. A URL redirected to a new product URL keeps that URL for its
+     * row; one redirected to another site is flagged and rendered. With
+     * wait, an HTTP check still in flight is waited for; otherwise t is
+     * rendered unchecked.
+     *
+     * @return true if t was skipped
+     */
+    boolean skipIfDropped(Target t, boolean wait) {
+        if (t.attempts > 0) return false;
+        UrlPreflight p;
+        synchronized (this) {
+            p = preflight;
+        }
+        if (p == null) return false;
+        UrlPreflight.Result r = p.take(t.url, wait);
+        if (r.outcome == UrlPreflight.Outcome.REDIRECTED) {
+            t.canonicalUrl = r.finalUrl;
+            log("(" + t.idx + "/" + total + ") Pre-flight: " + t.url + " -> " + r.describe());
+        } else if (r.outcome == UrlPreflight.Outcome.OFFSITE) {
+            log("(" + t.idx + "/" + total + ") Pre-flight: WARNING " + t.url + " -> " + r.describe()
+                    + ", rendering anyway");
+        }
+        if (!r.outcome.drop()) return false;
+        return skip(t, r.describe());
+    }
+
+    private boolean skip(Target t, String reason) {
+        finished(t, -1);
+        log("(" + t.idx + "/" + total + ") Skipped " + t.url + ": " + reason);
+        synchronized (this) {
+            skipped++;
+            errors++;
+            record(t.idx, null);
+        }
+        return true;
+    }
+
+    /**
+     * Handles a failed attempt at t: schedules another attempt after delayMs
+     * if retriable (delayMs < 0 means give up), else records the row as an
+     * error. Parking behind an open circuit does not count as an attempt.
+     *
+     * @return true if another attempt has been scheduled
+     */
+    boolean failed(Target t, String message, boolean retriable, long delayMs, boolean countsAsAttempt) {
+        if (countsAsAttempt) t.attempts++;
+        boolean again = retriable && delayMs >= 0 && t.attempts < RetryPolicy.MAX_ATTEMPTS;
+        if (again) {
+            if (countsAsAttempt) {
+                System.err.println(logPrefix + "  -> " + message + "; retrying in " + (delayMs / 1000) + "s");
+            }
+            retryLater(t, delayMs);
+        } else {
+            complete(t.idx, null);
+            System.err.println(logPrefix + "  -> Error: " + message);
+        }
+        return again;
+    }
+
+    synchronized void retryLater(Target t, long delayMs) {
+        t.dueAt = System.currentTimeMillis() + delayMs;
+        retries.add(t);
+        retried++;
+    }
+
+    /**
+     * {@link #complete(int, Product)} for t, with the canonical URL found by
+     * the pre-flight check as the link. A row with a title and price teaches
+     * the job what its shop's product URLs look like.
+     */
+    void complete(Target t, Product p) {
+        if (p != null && p.title != null && !p.title.isBlank() && p.price != null && !p.price.isBlank()) {
+            learned.confirm(t.url);
+        }
+        if (p != null && t.canonicalUrl != null) p.link = t.canonicalUrl;
+        complete(t.idx, p);
+    }
+
+    /** Records the outcome of row idx (null = failed) and flushes every row that is now in order. */
+    synchronized void complete(int idx, Product p) {
+        if (p == null) errors++;
+        else scraped++;
+        if (p != null) firstProduct();
+        record(idx, p);
+    }
+
+    private void record(int idx, Product p) {
+        pending.put(idx, p);
+        while (!pending.isEmpty() && pending.firstKey() == nextToWrite) {
+            Product next = pending.remove(nextToWrite++);
+            if (next == null || writeError != null) continue;
+            try {
+                openOutput();
+                writer.write(next);
+            } catch (IOException e) {
+                writeError = e;
+            }
+        }
+    }
+
+    // -----------------------------
+    // Export + summary
+    // -----------------------------
+
+    /** Closes the feed file (creating it, possibly empty, if nothing was scraped). */
+    public synchronized void finishOutput() throws IOException {
+        openOutput();
+        try {
+            writer.close();
+        } finally {
+            writer = null;
+        }
+        if (writeError != null) throw writeError;
+        log("Feed written to: " + job.output + " (rows: " + scraped + ")");
+        if (preflight != null && !preflight.summary().isEmpty()) {
+            log("Pre-flight: " + preflight.summary() + ".");
+        }
+    }
+
+    /** Logs the time to the first product, once: since JVM launch and since this job started. */
+    private synchronized void firstProduct() {
+        if (firstProductAt > 0) return;
+        firstProductAt = System.currentTimeMillis();
+        long launched = ManagementFactory.getRuntimeMXBean().getStartTime();
+        log(String.format(Locale.ROOT, "Time to first product: %.1f s after launch (%.1f s into this job)",
+                (firstProductAt - launched) / 1000.0, (firstProductAt - startedAt) / 1000.0));
+    }
+
+    /** When the first product was ready (epoch ms), or 0 if none yet. */
+    public synchronized long firstProductAt() {
+        return firstProductAt;
+    }
+
+    public synchronized void markFinished() {
+        finishedAt = System.currentTimeMillis();
+    }
+
+    public synchronized int scrapedCount() {
+        return scraped;
+    }
+
+    public synchronized int errorCount() {
+        return errors;
+    }
+
+    /** URLs dropped before rendering (gone or redirected away from a product); included in {@link #errorCount()}. */
+    public synchronized int skippedCount() {
+        return skipped;
+    }
+
+    /** Times a URL was put back for a later attempt (retries and breaker parking). */
+    public synchronized int retryCount() {
+        return retried;
+    }
+
+    public synchronized long totalUrls() {
+        return total;
+    }
+
+    public synchronized long elapsedSeconds() {
+        long end = finishedAt > 0 ? finishedAt : System.currentTimeMillis();
+        return startedAt == 0 ? 0 : (end - startedAt) / 1000;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (preflight != null) preflight.close();
+        links.close();
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException ignored) {}
+            writer = null;
+        }
+    }
+
+    private void log(String msg) {
+        System.out.println(logPrefix + msg);
+    }
+
+    // -----------------------------
+    // Helpers
+    // -----------------------------
+
+    /**
+     * Streams the non-blank, non-comment lines of a URL list without loading
+     * the whole file into memory.
+     */
+    static void forEachUrl(String path, Consumer<String> action) {
+        try (BufferedReader br = new BufferedReader(new FileReader(path))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    action.accept(line);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("ERROR reading URL list: " + e.getMessage());
+        }
+    }
+
+    static boolean hasAnyUrl(String path) {
+        try (BufferedReader br = new BufferedReader(new FileReader(path))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) return true;
+            }
+        } catch (IOException e) {
+            System.err.println("ERROR reading URL list: " + e.getMessage());
+        }
+        return false;
+    }
+}
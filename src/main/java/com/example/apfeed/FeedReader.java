@@ -0,0 +1,213 @@
+package com.example.apfeed;
+
+import org.apache.poi.ss.usermodel.*;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads a feed previously written by {@link ExcelExporter},
+ * {@link DelimitedFeedWriter} or {@link MerchantXmlFeedWriter} back into
+ * {@link Product} rows. Columns are matched by header name (the spreadsheet
+ * names or the Merchant attribute names; in XML the &lt;item&gt; child
+ * names), so extra or re-ordered columns are tolerated.
+ */
+public class FeedReader {
+
+    public static List<Product> read(String filename) throws Exception {
+        List<Product> out = new ArrayList<>();
+        read(filename, out::add);
+        return out;
+    }
+
+    /** Reads the feed into a compact {@link ProductBatch} (for very large feeds). */
+    public static ProductBatch readBatch(String filename) throws Exception {
+        ProductBatch out = new ProductBatch();
+        read(filename, out::add);
+        return out;
+    }
+
+    /** Streams each row with a non-empty link to sink. */
+    public static void read(String filename, Consumer<Product> sink) throws Exception {
+        String name = filename.toLowerCase(Locale.ROOT);
+        boolean gzip = name.endsWith(".gz");
+        if (gzip) name = name.substring(0, name.length() - 3);
+
+        if (name.endsWith(".tsv") || name.endsWith(".txt") || name.endsWith(".csv")) {
+            InputStream in = Files.newInputStream(Path.of(filename));
+            if (gzip) in = new GZIPInputStream(in, 1 << 16);
+            try (BufferedReader r = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16)) {
+                readDelimited(r, name.endsWith(".csv") ? ',' : '\t', sink);
+                return;
+            }
+        }
+        if (name.endsWith(".xml")) {
+            InputStream in = Files.newInputStream(Path.of(filename));
+            if (gzip) in = new GZIPInputStream(in, 1 << 16);
+            try (InputStream xml = in) {
+                readXml(xml, sink);
+                return;
+            }
+        }
+        if (!name.endsWith(".xlsx")) {
+            throw new IllegalArgumentException("Cannot read feed " + filename + " (use .xlsx, .tsv, .csv or .xml)");
+        }
+        readExcel(filename, sink);
+    }
+
+    private static void readExcel(String filename, Consumer<Product> sink) throws Exception {
+        DataFormatter fmt = new DataFormatter();
+        try (Workbook wb = WorkbookFactory.create(new File(filename), null, true)) {
+            Sheet sheet = wb.getSheetAt(0);
+            Iterator<Row> rows = sheet.iterator();
+            if (!rows.hasNext()) return;
+
+            Map<String, Integer> cols = new HashMap<>();
+            for (Cell c : rows.next()) {
+                cols.put(fmt.formatCellValue(c).trim().toLowerCase(Locale.ROOT), c.getColumnIndex());
+            }
+
+            while (rows.hasNext()) {
+                Row r = rows.next();
+                String[] vals = new String[ExcelExporter.HEADERS.length];
+                for (int i = 0; i < vals.length; i++) {
+                    Integer idx = cols.getOrDefault(ExcelExporter.HEADERS[i], cols.get(ExcelExporter.MERCHANT_HEADERS[i]));
+                    Cell c = idx == null ? null : r.getCell(idx);
+                    vals[i] = c == null ? "" : fmt.formatCellValue(c);
+                }
+                Product p = fromColumns(vals);
+                if (p.link.isEmpty()) continue;
+                sink.accept(p);
+            }
+        }
+    }
+
+    /** Merchant RSS: one row per &lt;item&gt;, its children (g: or not) matched by local name. */
+    private static void readXml(InputStream in, Consumer<Product> sink) throws Exception {
+        XMLInputFactory f = XMLInputFactory.newFactory();
+        f.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        f.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        XMLStreamReader xml = f.createXMLStreamReader(in, "UTF-8");
+        try {
+            Map<String, String> item = null;
+            while (xml.hasNext()) {
+                int ev = xml.next();
+                if (ev != XMLStreamConstants.START_ELEMENT) {
+                    if (ev == XMLStreamConstants.END_ELEMENT && item != null && xml.getLocalName().equals("item")) {
+                        String[] vals = new String[ExcelExporter.MERCHANT_HEADERS.length];
+                        for (int i = 0; i < vals.length; i++) {
+                            vals[i] = item.getOrDefault(ExcelExporter.MERCHANT_HEADERS[i], "");
+                        }
+                        item = null;
+                        Product p = fromColumns(vals);
+                        if (p.link.isEmpty()) continue;
+                        sink.accept(p);
+                    }
+                    continue;
+                }
+                String local = xml.getLocalName();
+                if (local.equals("item")) {
+                    item = new HashMap<>();
+                } else if (item != null) {
+                    item.putIfAbsent(local.toLowerCase(Locale.ROOT), xml.getElementText().trim());
+                }
+            }
+        } finally {
+            xml.close();
+        }
+    }
+
+    private static void readDelimited(Reader r, char sep, Consumer<Product> sink) throws Exception {
+        List<String> header = nextRecord(r, sep);
+        if (header == null) return;
+
+        int[] idx = new int[ExcelExporter.HEADERS.length];
+        for (int i = 0; i < idx.length; i++) {
+            idx[i] = header.indexOf(ExcelExporter.MERCHANT_HEADERS[i]);
+            if (idx[i] < 0) idx[i] = header.indexOf(ExcelExporter.HEADERS[i]);
+        }
+
+        List<String> rec;
+        while ((rec = nextRecord(r, sep)) != null) {
+            String[] vals = new String[idx.length];
+            for (int i = 0; i < idx.length; i++) {
+                vals[i] = idx[i] >= 0 && idx[i] < rec.size() ? rec.get(idx[i]) : "";
+            }
+            Product p = fromColumns(vals);
+            if (p.link.isEmpty()) continue;
+            sink.accept(p);
+        }
+    }
+
+    /**
+     * One record; TSV has no quoting, CSV follows RFC 4180 (quoted fields may
+     * contain separators, doubled quotes and line breaks). Null at end of input.
+     */
+    private static List<String> nextRecord(Reader r, char sep) throws Exception {
+        List<String> rec = new ArrayList<>();
+        StringBuilder cell = new StringBuilder();
+        boolean quoted = false;
+        boolean any = false;
+        int ch;
+        while ((ch = r.read()) != -1) {
+            any = true;
+            char c = (char) ch;
+            if (quoted) {
+                if (c == '"') {
+                    r.mark(1);
+                    int n = r.read();
+                    if (n == '"') {
+                        cell.append('"');
+                    } else {
+                        quoted = false;
+                        if (n != -1) r.reset();
+                    }
+                } else {
+                    cell.append(c);
+                }
+            } else if (c == '"' && sep == ',' && cell.length() == 0) {
+                quoted = true;
+            } else if (c == sep) {
+                rec.add(cell.toString().trim());
+                cell.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                cell.append(c);
+            }
+        }
+        if (!any) return null;
+        rec.add(cell.toString().trim());
+        return rec;
+    }
+
+    /** Builds a product from values in {@link ExcelExporter#HEADERS} order. */
+    static Product fromColumns(String[] v) {
+        Product p = new Product();
+        p.id = v[0];
+        p.title = v[1];
+        p.description = v[2];
+        p.link = v[3];
+        p.condition = v[4];
+        p.price = v[5];
+        p.availability = v[6];
+        p.adult = v[7];
+        p.imageLink = v[8];
+        p.mpn = v[9];
+        p.brand = v[10];
+        p.productTypes = v[11];
+        return p;
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.apfeed;
+
+import org.jsoup.Connection;
+import org.jsoup.HttpStatusException;
+import org.jsoup.Jsoup;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Refresh mode: re-checks only price and availability of an existing feed.
+ *
+ * Each product is first fetched statically (one HTTP GET, no browser) and read
+ * through {@link StructuredData}; only pages that do not publish both values in
+ * their HTML are rendered in the browser. Writes the merged full feed plus a
+ * "-delta" file holding just the rows whose price or availability changed.
+ *
+ * Stored prices usually came from the full scrape's text heuristic
+ * ({@link DomExtractor}), which can read a page differently from its
+ * structured data. When the two disagree, the page is also read with the
+ * text heuristic, and the price only counts as changed if that moved too.
+ */
+public class FeedRefresher {
+    private static final int STATIC_TIMEOUT_MS = 20000;
+    // product pages past Jsoup's 2 MB default are common (inlined state, SVG sprites)
+    private static final int MAX_PAGE_BYTES = 20 * 1024 * 1024;
+
+    private final String currencyCode;
+    private final int workers;
+    private final ScrapeOptions options;
+
+    private final AtomicInteger staticHits = new AtomicInteger();
+    private final AtomicInteger browserHits = new AtomicInteger();
+    private final AtomicInteger unchecked = new AtomicInteger();
+
+    private FeedRefresher(String currencyCode, int workers, ScrapeOptions options) {
+        this.currencyCode = currencyCode;
+        this.workers = Math.max(1, workers);
+        this.options = options;
+    }
+
+    /** Result of checking one row. */
+    private static final class Check {
+        String price = "";
+        String availability = "";
+        boolean needsBrowser;
+    }
+
+    /**
+     * @param previousFeed feed written by a previous run
+     * @param outputFile merged full feed; the delta goes next to it
+     * @param currencyOverride currency code, or null to take it from the previous prices
+     * @param options browser options for the rendering tier (e.g. persistent profiles)
+     * @return process exit code
+     */
+    public static int run(String previousFeed, String outputFile, String currencyOverride, int workers,
+                          ScrapeOptions options) {
+        // Rows are held columnar: a big marketplace feed stays a few bytes per repeated field
+        ProductBatch rows;
+        try {
+            rows = FeedReader.readBatch(previousFeed);
+        } catch (Exception e) {
+            System.err.println("ERROR reading previous feed: " + e.getMessage());
+            return 1;
+        }
+        if (rows.size() == 0) {
+            System.err.println("ERROR: No rows found in " + previousFeed);
+            return 1;
+        }
+
+        String currency = currencyOverride != null ? currencyOverride : currencyFromFeed(rows);
+        System.out.println("Refreshing " + rows.size() + " row(s) from " + previousFeed +
+                " (currency " + currency + ")");
+
+        FeedRefresher r = new FeedRefresher(currency, workers > 0 ? workers : 8, options);
+        long start = System.currentTimeMillis();
+        // Updated in place; the delta is just the indices of changed rows
+        int[] delta = new int[rows.size()];
+        int changed = 0;
+        try {
+            Check[] checks = r.checkAll(rows);
+            for (int i = 0; i < rows.size(); i++) {
+                Check c = checks[i];
+                if (c == null) continue;
+                String oldPrice = rows.price(i);
+                String oldAvailability = rows.availability(i);
+                if (!c.price.isEmpty()) rows.setPrice(i, c.price);
+                if (!c.availability.isEmpty()) rows.setAvailability(i, c.availability);
+                if (!Objects.equals(oldPrice, rows.price(i))
+                        || !Objects.equals(oldAvailability, rows.availability(i))) {
+                    delta[changed++] = i;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+
+        long elapsed = (System.currentTimeMillis() - start) / 1000;
+        System.out.printf("Done. Checked %d row(s) in %d seconds: %d static, %d rendered, %d unreachable; %d changed.%n",
+                rows.size(), elapsed, r.staticHits.get(), r.browserHits.get(),
+                r.unchecked.get(), changed);
+
+        String deltaFile = deltaName(outputFile);
+        try {
+            try (FeedWriter w = FeedWriters.open(outputFile, rows.brand(0))) {
+                w.writeAll(rows.flyweight());
+            }
+            try (FeedWriter w = FeedWriters.open(deltaFile, rows.brand(0))) {
+                w.writeAll(rows.flyweight(delta, changed));
+            }
+            System.out.println("Feed written to: " + outputFile + " (rows: " + rows.size() + ")");
+            System.out.println("Delta written to: " + deltaFile + " (rows: " + changed + ")");
+        } catch (Exception e) {
+            System.err.println("ERROR writing feed: " + e.getMessage());
+            return 1;
+        }
+        return 0;
+    }
+
+    private Check[] checkAll(ProductBatch rows) throws InterruptedException {
+        Check[] out = new Check[rows.size()];
+
+        // Tier 1: static HTML, highly parallel
+        ExecutorService exec = Executors.newFixedThreadPool(workers);
+        for (int i = 0; i < rows.size(); i++) {
+            final int idx = i;
+            exec.submit(() -> {
+                out[idx] = checkStatic(rows.link(idx), rows.price(idx));
+            });
+        }
+        exec.shutdown();
+        exec.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+        List<Integer> render = new ArrayList<>();
+        for (int i = 0; i < out.length; i++) {
+            if (out[i] != null && out[i].needsBrowser) render.add(i);
+        }
+        if (render.isEmpty()) return out;
+
+        // Tier 2: render only what static HTML could not confirm
+        System.out.println("Rendering " + render.size() + " page(s) that do not publish price/availability statically...");
+        int browserWorkers = Math.min(2, workers);
+        ExecutorService bexec = Executors.newFixedThreadPool(browserWorkers);
+        try (BrowserPool pool = BrowserPool.create(options)) {
+            ProductScraper scraper = new ProductScraper(pool, options);
+            for (int idx : render) {
+                bexec.submit(() -> {
+                    String url = rows.link(idx);
+                    try {
+                        StructuredData.Offer o = scraper.renderOffer(url, currencyCode, rows.price(idx));
+                        Check c = out[idx];
+                        if (c.price.isEmpty()) c.price = o.price;
+                        if (c.availability.isEmpty()) c.availability = o.availability;
+                        browserHits.incrementAndGet();
+                    } catch (Exception e) {
+                        unchecked.incrementAndGet();
+                        System.err.println("  -> Render error for " + url + ": " + e.getMessage());
+                    }
+                });
+            }
+            bexec.shutdown();
+            bexec.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            bexec.shutdownNow();
+        }
+        return out;
+    }
+
+    private Check checkStatic(String url, String previousPrice) {
+        Check c = new Check();
+        try {
+            Connection.Response res = Jsoup.connect(url)
+                    .userAgent(BrowserPool.USER_AGENT)
+                    .timeout(STATIC_TIMEOUT_MS)
+                    .maxBodySize(MAX_PAGE_BYTES)
+                    .followRedirects(true)
+                    .execute();
+
+            // Redirected off the product (typically to the homepage): treat as gone
+            String finalPath = res.url().getPath();
+            if (finalPath == null || finalPath.isEmpty() || finalPath.equals("/")) {
+                c.availability = "out of stock";
+                staticHits.incrementAndGet();
+                return c;
+            }
+
+            String html = res.body();
+            StructuredData.Offer o = StructuredData.readOffer(Jsoup.parse(HtmlPruner.prune(html), url));
+            c.price = StructuredData.formatPrice(o.price, currencyCode);
+            if (differs(c.price, previousPrice)
+                    && DomExtractor.extractFromHtml(html, url, currencyCode).price.equals(previousPrice)) {
+                c.price = previousPrice;    // same extractor as the stored row: unchanged
+            }
+            c.availability = o.availability;
+            c.needsBrowser = c.price.isEmpty() || c.availability.isEmpty();
+            if (!c.needsBrowser) staticHits.incrementAndGet();
+        } catch (HttpStatusException e) {
+            if (e.getStatusCode() == 404 || e.getStatusCode() == 410) {
+                c.availability = "out of stock";
+                staticHits.incrementAndGet();
+            } else {
+                c.needsBrowser = true; // 403/429 etc: often bot protection, try the browser
+            }
+        } catch (Exception e) {
+            c.needsBrowser = true;
+        }
+        return c;
+    }
+
+    // -----------------------------
+    // Helpers
+    // -----------------------------
+
+    /** True if a price was read and it is not the stored one. */
+    static boolean differs(String price, String previousPrice) {
+        return !price.isEmpty() && previousPrice != null && !previousPrice.isEmpty() && !price.equals(previousPrice);
+    }
+
+    /** "12.50 GBP" -> "GBP"; defaults to GBP. */
+    private static String currencyFromFeed(ProductBatch rows) {
+        for (int i = 0; i < rows.size(); i++) {
+            String price = rows.price(i);
+            if (price == null) continue;
+            String[] parts = price.trim().split("\\s+");
+            if (parts.length == 2 && parts[1].matches("[A-Za-z]{3}")) {
+                return parts[1].toUpperCase(Locale.ROOT);
+            }
+        }
+        return "GBP";
+    }
+
+    /** "out/feed.tsv.gz" -> "out/feed-delta.tsv.gz", "feed.v2.tsv" -> "feed.v2-delta.tsv" */
+    static String deltaName(String outputFile) {
+        int sep = Math.max(outputFile.lastIndexOf('/'), outputFile.lastIndexOf('\\'));
+        int end = outputFile.length();
+        if (outputFile.toLowerCase(Locale.ROOT).endsWith(".gz")) end -= 3;
+        int dot = outputFile.lastIndexOf('.', end - 1);
+        if (dot <= sep) return outputFile.substring(0, end) + "-delta" + outputFile.substring(end);
+        return outputFile.substring(0, dot) + "-delta" + outputFile.substring(dot);
+    }
+}
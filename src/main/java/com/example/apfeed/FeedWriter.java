@@ -0,0 +1,22 @@
+package com.example.apfeed;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Sink for feed rows. Implementations write each row as it arrives and keep
+ * at most a small window in memory; close() finishes the file.
+ *
+ * @see FeedWriters#open(String, String) to pick an implementation by file name
+ */
+public interface FeedWriter extends Closeable {
+
+    void write(Product p) throws IOException;
+
+    default void writeAll(Iterable<Product> products) throws IOException {
+        for (Product p : products) write(p);
+    }
+
+    /** Rows written so far. */
+    long rows();
+}
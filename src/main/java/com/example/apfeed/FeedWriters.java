@@ -0,0 +1,68 @@
+package com.example.apfeed;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Chooses a {@link FeedWriter} from the output file name:
+ * <ul>
+ *   <li>.xlsx - {@link ExcelExporter}</li>
+ *   <li>.tsv / .txt - tab separated (Google Merchant, Microsoft Ads)</li>
+ *   <li>.csv - comma separated (Meta)</li>
+ *   <li>.xml / .rss - Google Merchant RSS 2.0</li>
+ * </ul>
+ * Any of the text formats may end in .gz to be gzip-compressed on the fly.
+ */
+public class FeedWriters {
+    private static final int BUFFER = 1 << 16;
+
+    /**
+     * Like {@link #open(String, String)}, but splits the feed over several files
+     * when partition is set (see {@link PartitionedFeedWriter.Spec}).
+     */
+    public static FeedWriter open(String filename, String title, String partition) throws IOException {
+        if (partition == null || partition.isBlank()) return open(filename, title);
+        try {
+            return new PartitionedFeedWriter(filename, title, PartitionedFeedWriter.Spec.parse(partition));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * @param filename output path, format chosen by extension
+     * @param title feed/channel title for formats that carry one (e.g. the company name)
+     */
+    public static FeedWriter open(String filename, String title) throws IOException {
+        String name = filename.toLowerCase(Locale.ROOT);
+        boolean gzip = name.endsWith(".gz");
+        if (gzip) name = name.substring(0, name.length() - 3);
+
+        if (name.endsWith(".xlsx")) {
+            if (gzip) throw new IOException("gzip is not supported for .xlsx (it is already compressed)");
+            return new ExcelExporter(filename);
+        }
+        if (name.endsWith(".tsv") || name.endsWith(".txt")) {
+            return new DelimitedFeedWriter(stream(filename, gzip), '\t');
+        }
+        if (name.endsWith(".csv")) {
+            return new DelimitedFeedWriter(stream(filename, gzip), ',');
+        }
+        if (name.endsWith(".xml") || name.endsWith(".rss")) {
+            return new MerchantXmlFeedWriter(stream(filename, gzip), title);
+        }
+        throw new IOException("Unknown feed format for " + filename +
+                " (use .xlsx, .tsv, .csv or .xml, optionally .gz)");
+    }
+
+    private static OutputStream stream(String filename, boolean gzip) throws IOException {
+        OutputStream out = Files.newOutputStream(Path.of(filename));
+        if (gzip) out = new GZIPOutputStream(out, BUFFER);
+        return new BufferedOutputStream(out, BUFFER);
+    }
+}
@@ -0,0 +1,285 @@
+package com.example.apfeed;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.playwright.Page;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Offline checks of the parsers and platform adapters against recorded
+ * payloads and a local {@link SyntheticStorefront} (--check).
+ * Each case feeds a fixture through the real code and compares one value;
+ * the run prints every mismatch and exits non-zero if there was any.
+ *
+ * With --browser it also runs {@link BrowserExtractor}'s in-page script in
+ * Chromium and compares it with the Jsoup path on the same pages; --record
+ * FILE then saves the script's result on PRODUCT_PAGE, for checking in as
+ * PRODUCT_PAGE_SCRIPT_RESULT.
+ */
+public class FixtureCheck {
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final String PAGE = "https://shop.example/products/linen-apron";
+
+    private int passed;
+    private int failed;
+
+    /**
+     * @param args optional --browser and --record FILE
+     * @return process exit code
+     */
+    public static int run(List<String> args) {
+        FixtureCheck c = new FixtureCheck();
+        int ri = args.indexOf("--record");
+        String record = ri >= 0 && ri + 1 < args.size() ? args.get(ri + 1) : null;
+        try {
+            c.shopifyPrices();
+            c.adapterListings();
+            c.scriptScoring();
+            if (args.contains("--browser")) c.inPageParity(record);
+        } catch (Exception e) {
+            System.err.println("ERROR: " + e);
+            return 1;
+        }
+        System.out.println("Fixture check: " + c.passed + " passed, " + c.failed + " failed.");
+        return c.failed == 0 ? 0 : 2;
+    }
+
+    private void expect(String name, Object expected, Object actual) {
+        if (String.valueOf(expected).equals(String.valueOf(actual))) {
+            passed++;
+        } else {
+            failed++;
+            System.out.println("  FAIL " + name + ": expected <" + expected + "> but was <" + actual + ">");
+        }
+    }
+
+    // -----------------------------
+    // Captured JSON prices
+    // -----------------------------
+
+    /** /products/<handle>.json: decimal strings on the variants. */
+    private static final String SHOPIFY_JSON = """
+            {"product": {"id": 7001, "title": "Linen Apron", "handle": "linen-apron",
+              "body_html": "<p>Stone-washed linen.</p>", "product_type": "Aprons",
+              "variants": [{"id": 1, "price": "19.99", "compare_at_price": "24.99", "sku": "AP-1"}],
+              "images": [{"src": "https://cdn.shopify.com/s/files/apron.jpg"}]}}
+            """;
+
+    /** /products/<handle>.js: whole cents, on the product and its variants. */
+    private static final String SHOPIFY_JS = """
+            {"id": 7001, "title": "Linen Apron", "handle": "linen-apron", "price": 1999,
+              "price_min": 1999, "price_max": 2499, "compare_at_price": 2499, "available": true,
+              "variants": [{"id": 1, "price": 1999, "compare_at_price": 2499, "sku": "AP-1"}],
+              "featured_image": "//cdn.shopify.com/s/files/apron.jpg", "url": "/products/linen-apron"}
+            """;
+
+    /** Same shape as .js but only the variants carry a price. */
+    private static final String SHOPIFY_JS_VARIANTS = """
+            {"title": "Linen Apron", "handle": "linen-apron", "url": "/products/linen-apron",
+              "variants": [{"id": 1, "price": 1999}], "featured_image": "//cdn.shopify.com/s/files/apron.jpg"}
+            """;
+
+    /** Not Shopify: an integer price is a whole amount. */
+    private static final String PLAIN_INTEGER = """
+            {"name": "Linen Apron", "price": 20, "url": "/products/linen-apron", "image": "/apron.jpg"}
+            """;
+
+    private void shopifyPrices() throws Exception {
+        expect("shopify .json price", "19.99", price(SHOPIFY_JSON));
+        expect("shopify .js price", "19.99", price(SHOPIFY_JS));
+        expect("shopify .js variant price", "19.99", price(SHOPIFY_JS_VARIANTS));
+        expect("plain integer price", "20", price(PLAIN_INTEGER));
+        expect("shopify .js feed price", "19.99 GBP",
+                captured(SHOPIFY_JS).get(0).toExtractResult("GBP").price);
+    }
+
+    // -----------------------------
+    // Platform adapter listings
+    // -----------------------------
+
+    /**
+     * Store-wide endpoints only for the store-wide listings; shapes the
+     * adapters do not recognise come back empty (checked against a Shopify
+     * {@link SyntheticStorefront}).
+     */
+    private void adapterListings() throws Exception {
+        SyntheticStorefront.Config config = new SyntheticStorefront.Config();
+        config.products = 60;
+        config.platform = "shopify";
+        try (SyntheticStorefront shop = SyntheticStorefront.start(config, 0)) {
+            String base = shop.baseUrl();
+            ShopifyAdapter shopify = new ShopifyAdapter();
+            expect("shopify /collections/all", 60, shopify.discover(base + "/collections/all", 1000).size());
+            expect("shopify /search", 0, shopify.discover(base + "/search?q=apron", 1000).size());
+            expect("shopify /pages/sale", 0, shopify.discover(base + "/pages/sale", 1000).size());
+            expect("shopify /collections/vendors", 0,
+                    shopify.discover(base + "/collections/vendors?q=Acme", 1000).size());
+
+            WooCommerceAdapter woo = new WooCommerceAdapter();
+            expect("woocommerce /product-tag/linen/", 0, woo.discover(base + "/product-tag/linen/", 1000).size());
+            expect("woocommerce /brand/acme/", 0, woo.discover(base + "/brand/acme/", 1000).size());
+        }
+    }
+
+    // -----------------------------
+    // In-page extraction (--dom-script): Java scoring of a script result
+    // -----------------------------
+
+    private static final String PRODUCT_PAGE = """
+            <html><head><title>Linen Apron | Example Shop</title>
+            <script type="application/ld+json">{"@context": "https://schema.org", "@type": "Product",
+              "name": "Linen Apron", "offers": {"@type": "Offer", "price": "19.99", "priceCurrency": "USD",
+              "availability": "https://schema.org/InStock"}}</script>
+            </head><body>
+            <nav aria-label="Breadcrumb"><a href="/">Home</a> <a href="/collections/kitchen">Kitchen</a>
+              <span>Linen Apron</span></nav>
+            <main>
+              <h1>Linen Apron</h1>
+              <div class="product-gallery"><img src="/img/linen-apron-1.jpg" alt=""><img src="/img/logo.png"></div>
+              <div class="product-price"><span class="price">$19.99</span></div>
+              <div class="product-description">
+                <p>Stone-washed linen apron with two deep pockets and adjustable straps.</p></div>
+              <p class="sku">SKU: AP-100</p>
+            </main></body></html>
+            """;
+
+    /**
+     * A script result for PRODUCT_PAGE, written by hand (not captured from
+     * Chromium): it only exercises the Java side, {@link BrowserExtractor#fromScript}.
+     * Replace it with the output of --check --browser --record FILE.
+     */
+    private static final String PRODUCT_PAGE_SCRIPT_RESULT = """
+            {"title": "Linen Apron",
+             "prices": [{"text": "$19.99", "tag": "span", "cls": "price", "itemprop": "", "struck": false, "fontSize": 16}],
+             "paragraphs": ["Stone-washed linen apron with two deep pockets and adjustable straps."],
+             "firstParagraph": "Stone-washed linen apron with two deep pockets and adjustable straps.",
+             "breadcrumbs": ["Home", "Kitchen", "Linen Apron"],
+             "images": [{"src": "/img/linen-apron-1.jpg", "w": 800, "h": 800}],
+             "sku": "AP-100",
+             "jsonLd": ["{\\"@context\\": \\"https://schema.org\\", \\"@type\\": \\"Product\\", \\"name\\": \\"Linen Apron\\", \\"offers\\": {\\"@type\\": \\"Offer\\", \\"price\\": \\"19.99\\", \\"priceCurrency\\": \\"USD\\", \\"availability\\": \\"https://schema.org/InStock\\"}}"],
+             "tags": []}
+            """;
+
+    /**
+     * fromScript must score PRODUCT_PAGE_SCRIPT_RESULT as the Jsoup path
+     * scores PRODUCT_PAGE. This does not run the in-page JavaScript; see
+     * {@link #inPageParity}.
+     */
+    private void scriptScoring() throws Exception {
+        String url = PAGE;
+        Map<String, Object> recorded = JSON.readValue(PRODUCT_PAGE_SCRIPT_RESULT, new TypeReference<>() {});
+        compareFields("scoring", DomExtractor.extractFromHtml(PRODUCT_PAGE, url, "USD"),
+                BrowserExtractor.fromScript(recorded, url, "USD"));
+
+        // Deliberate difference: a struck-through "was" price is not the price
+        recorded.put("prices", List.of(
+                Map.of("text", "$24.99", "struck", true),
+                Map.of("text", "$19.99", "struck", false)));
+        expect("struck was-price ignored", "19.99 USD", BrowserExtractor.fromScript(recorded, url, "USD").price);
+    }
+
+    private void compareFields(String prefix, DomExtractor.ExtractResult jsoup, DomExtractor.ExtractResult script) {
+        expect(prefix + " title", jsoup.title, script.title);
+        expect(prefix + " price", jsoup.price, script.price);
+        expect(prefix + " description", jsoup.description, script.description);
+        expect(prefix + " breadcrumbs", jsoup.breadcrumbs, script.breadcrumbs);
+        expect(prefix + " image", jsoup.imageUrl, script.imageUrl);
+        expect(prefix + " sku", jsoup.sku, script.sku);
+        expect(prefix + " availability", jsoup.availability, script.availability);
+    }
+
+    // -----------------------------
+    // In-page extraction in Chromium vs the Jsoup path (--browser)
+    // -----------------------------
+
+    /**
+     * Runs the in-page script in Chromium on PRODUCT_PAGE (served locally,
+     * with real images: 800x800, the logo 40x40) and on a {@link SyntheticStorefront} product
+     * page, and compares each with the Jsoup path on the same HTML. Fails
+     * with an error when no browser can be launched.
+     */
+    private void inPageParity(String record) throws Exception {
+        byte[] png = png(800);
+        byte[] logo = png(40);
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", ex -> {
+            try (ex) {
+                String path = ex.getRequestURI().getPath();
+                boolean page = path.equals("/products/linen-apron");
+                byte[] body = page ? PRODUCT_PAGE.getBytes(StandardCharsets.UTF_8) : path.contains("logo") ? logo : png;
+                if (!page && !path.startsWith("/img/")) {
+                    ex.sendResponseHeaders(404, -1);
+                    return;
+                }
+                ex.getResponseHeaders().set("Content-Type", page ? "text/html; charset=utf-8" : "image/png");
+                ex.sendResponseHeaders(200, body.length);
+                try (OutputStream out = ex.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        server.start();
+        SyntheticStorefront.Config config = new SyntheticStorefront.Config();
+        config.products = 3;
+        try (SyntheticStorefront shop = SyntheticStorefront.start(config, 0);
+             BrowserPool pool = new BrowserPool()) {
+            String fixtureUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/products/linen-apron";
+            Map<String, Object> captured = live(pool, "chromium", fixtureUrl, PRODUCT_PAGE, "USD");
+            if (record != null) {
+                JSON.writerWithDefaultPrettyPrinter().writeValue(Path.of(record).toFile(), captured);
+                System.out.println("Script result on PRODUCT_PAGE written to " + record);
+            }
+            String shopUrl = shop.baseUrl() + "/products/item-000001";
+            String html = HttpClient.newHttpClient().send(HttpRequest.newBuilder(URI.create(shopUrl)).build(),
+                    HttpResponse.BodyHandlers.ofString()).body();
+            live(pool, "chromium storefront", shopUrl, html, config.currency);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    /** Compares the script in Chromium with Jsoup on html (served at url); returns the raw script result. */
+    private Map<String, Object> live(BrowserPool pool, String prefix, String url, String html, String currency) {
+        Page page = pool.newPage();
+        try {
+            page.navigate(url);
+            Map<String, Object> raw = new LinkedHashMap<>(BrowserExtractor.runScript(page, currency));
+            compareFields(prefix, DomExtractor.extractFromHtml(html, url, currency),
+                    BrowserExtractor.fromScript(raw, url, currency));
+            return raw;
+        } finally {
+            page.close();
+        }
+    }
+
+    private static byte[] png(int side) throws java.io.IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(side, side, BufferedImage.TYPE_INT_RGB), "png", out);
+        return out.toByteArray();
+    }
+
+    private static List<JsonProductCapture.Captured> captured(String json) throws Exception {
+        return JsonProductCapture.extract(JSON.readTree(json), PAGE);
+    }
+
+    private static String price(String json) throws Exception {
+        List<JsonProductCapture.Captured> found = captured(json);
+        return found.size() == 1 ? found.get(0).price : found.size() + " product(s)";
+    }
+}
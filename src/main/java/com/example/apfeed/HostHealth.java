@@ -0,0 +1,189 @@
+package com.example.apfeed;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-host latency statistics and circuit breaker, shared by every worker.
+ *
+ * Timeouts are derived from the host's recent page-load times (p95 x 3 plus
+ * headroom, clamped to [floor, default]) instead of a fixed 35-45 s, so a dead
+ * page on a fast host fails in seconds. Timeouts are recorded at the timeout
+ * value, which pushes the percentile up again for a host that is merely slow.
+ *
+ * After {@link #FAILURES_TO_OPEN} consecutive failures the host's breaker
+ * opens and {@link #check} rejects work for it until the cool-down passes;
+ * then a single probe request is let through (half-open). Each re-open
+ * doubles the cool-down. A host that trips {@link #TRIPS_TO_GIVE_UP} times is
+ * given up on so its URLs fail fast, for {@link #GIVE_UP_MS}; then one probe
+ * is let through again, and a failed probe gives up once more. The trip count
+ * is forgotten after {@link #SUCCESSES_TO_FORGET} consecutive successes with
+ * the breaker closed, so a host that recovered between trips starts afresh.
+ * (The statistics live as long as the process, which in --serve and --batch
+ * spans many jobs.)
+ */
+public class HostHealth {
+    static final int FAILURES_TO_OPEN = 5;
+    static final int TRIPS_TO_GIVE_UP = 4;
+    static final long GIVE_UP_MS = 30 * 60_000;
+    static final int SUCCESSES_TO_FORGET = 20;
+    private static final long BASE_COOL_DOWN_MS = 15_000;
+    private static final long MAX_COOL_DOWN_MS = 5 * 60_000;
+    private static final int WINDOW = 64;
+    private static final int MIN_SAMPLES = 5;
+    private static final int FLOOR_MS = 8_000;
+    private static final int HEADROOM_MS = 2_000;
+    // a probe that never reports back (e.g. answered from an API) frees its slot after this
+    private static final long PROBE_SLOT_MS = 60_000;
+
+    private static final Map<String, Host> HOSTS = new ConcurrentHashMap<>();
+
+    /** Thrown instead of loading a page on a host whose breaker is open. */
+    public static class HostUnavailableException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        /** Milliseconds until the host may be tried again, or -1 if it has been given up on. */
+        public final long retryAfterMs;
+
+        HostUnavailableException(String host, long retryAfterMs) {
+            super(retryAfterMs < 0
+                    ? "Host " + host + " given up after repeated failures"
+                    : "Host " + host + " paused (circuit open, retry in " + (retryAfterMs / 1000) + "s)");
+            this.retryAfterMs = retryAfterMs;
+        }
+    }
+
+    private static final class Host {
+        final String name;
+        final int[] samples = new int[WINDOW];
+        int count;
+        int next;
+
+        int consecutiveFailures;
+        int consecutiveSuccesses;
+        int trips;
+        long openUntil;
+        long probingSince;
+        long givenUpAt;
+
+        Host(String name) {
+            this.name = name;
+        }
+
+        synchronized int percentile(double q) {
+            int n = Math.min(count, WINDOW);
+            int[] s = Arrays.copyOf(samples, n);
+            Arrays.sort(s);
+            return s[Math.min(n - 1, (int) Math.ceil(q * n) - 1)];
+        }
+    }
+
+    /**
+     * Timeout for a request to url's host. Falls back to defaultMs until the
+     * host has a few samples.
+     */
+    public static int timeoutMs(String url, int defaultMs) {
+        Host h = host(url);
+        if (h == null) return defaultMs;
+        synchronized (h) {
+            if (h.count < MIN_SAMPLES) return defaultMs;
+        }
+        long t = (long) h.percentile(0.95) * 3 + HEADROOM_MS;
+        return (int) Math.max(Math.min(FLOOR_MS, defaultMs), Math.min(defaultMs, t));
+    }
+
+    /**
+     * Throws {@link HostUnavailableException} if url's host should not be
+     * contacted right now. While half-open, only one caller gets through.
+     */
+    public static void check(String url) {
+        Host h = host(url);
+        if (h == null) return;
+        synchronized (h) {
+            long now = System.currentTimeMillis();
+            if (h.trips >= TRIPS_TO_GIVE_UP) {
+                if (now - h.givenUpAt < GIVE_UP_MS) throw new HostUnavailableException(h.name, -1);
+                // given up long enough: half-open, one more failure gives up again
+                h.trips = TRIPS_TO_GIVE_UP - 1;
+                h.openUntil = Math.min(h.openUntil, now);
+                h.probingSince = 0;
+            }
+            if (now < h.openUntil) throw new HostUnavailableException(h.name, h.openUntil - now);
+            if (h.openUntil > 0) {
+                // half-open: one probe at a time
+                if (h.probingSince > 0 && now - h.probingSince < PROBE_SLOT_MS) {
+                    throw new HostUnavailableException(h.name, 1000);
+                }
+                h.probingSince = now;
+            }
+        }
+    }
+
+    /** Records a successful request and its latency. Closes the breaker. */
+    public static void success(String url, long elapsedMs) {
+        Host h = host(url);
+        if (h == null) return;
+        synchronized (h) {
+            sample(h, elapsedMs);
+            h.consecutiveFailures = 0;
+            if (h.openUntil > 0) {
+                System.out.println("  Host " + h.name + " recovered, circuit closed.");
+                h.consecutiveSuccesses = 0;
+            } else if (h.trips > 0 && ++h.consecutiveSuccesses >= SUCCESSES_TO_FORGET) {
+                h.trips = 0;
+                h.consecutiveSuccesses = 0;
+            }
+            h.openUntil = 0;
+            h.probingSince = 0;
+        }
+    }
+
+    /**
+     * Records a failed request. elapsedMs is the time spent (for a timeout,
+     * the timeout itself), so slow hosts earn longer timeouts.
+     */
+    public static void failure(String url, long elapsedMs) {
+        Host h = host(url);
+        if (h == null) return;
+        synchronized (h) {
+            if (elapsedMs > 0) sample(h, elapsedMs);
+            h.consecutiveFailures++;
+            h.consecutiveSuccesses = 0;
+            boolean reopen = h.probingSince > 0;
+            h.probingSince = 0;
+            if (reopen || h.consecutiveFailures >= FAILURES_TO_OPEN) {
+                h.trips++;
+                long coolDown = Math.min(MAX_COOL_DOWN_MS, BASE_COOL_DOWN_MS << Math.min(10, h.trips - 1));
+                h.openUntil = System.currentTimeMillis() + coolDown;
+                h.consecutiveFailures = 0;
+                if (h.trips >= TRIPS_TO_GIVE_UP) {
+                    h.givenUpAt = System.currentTimeMillis();
+                    System.err.println("  Host " + h.name + " keeps failing, giving up on it for "
+                            + (GIVE_UP_MS / 60_000) + " min.");
+                } else {
+                    System.err.println("  Host " + h.name + " failing, circuit open for " + (coolDown / 1000) + "s.");
+                }
+            }
+        }
+    }
+
+    private static void sample(Host h, long ms) {
+        h.samples[h.next] = (int) Math.min(Integer.MAX_VALUE, Math.max(0, ms));
+        h.next = (h.next + 1) % WINDOW;
+        h.count++;
+    }
+
+    private static Host host(String url) {
+        String host;
+        try {
+            host = URI.create(url).getHost();
+        } catch (Exception e) {
+            return null;
+        }
+        if (host == null) return null;
+        return HOSTS.computeIfAbsent(host.toLowerCase(Locale.ROOT), Host::new);
+    }
+}
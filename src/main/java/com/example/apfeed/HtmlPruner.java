@@ -0,0 +1,452 @@
+package com.example.apfeed;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single pass over product page HTML ahead of Jsoup, so the DOM is built only
+ * from what the extractor reads.
+ *
+ * Shop pages are often several MB, most of it inline scripts (app bundles,
+ * analytics, hydration state), critical CSS and comments; Jsoup copies each
+ * one into the tree. {@link #prune} drops the bodies of &lt;script&gt;
+ * elements (except application/ld+json) and &lt;style&gt; elements, and all
+ * comments. The tags themselves stay, so the elements and text the heuristics
+ * see are the same as before. {@link #headJsonLd} reads only the JSON-LD in
+ * &lt;head&gt; and stops there.
+ *
+ * The scan follows Jsoup's tokenizer where it decides what is markup: tag and
+ * attribute syntax, self-closing tags, comments, raw-text elements (title,
+ * textarea, iframe, ...) and script escapes. Where the tree builder changes
+ * the rules (inline &lt;svg&gt;, &lt;select&gt;) it either copies the block
+ * untouched or, for anything it cannot follow exactly, leaves the rest of
+ * the page as it is.
+ *
+ * --no-prune turns {@link #prune} off for the whole process (Jsoup then
+ * parses pages as served); {@link PruneCheck} compares the two parses.
+ */
+public class HtmlPruner {
+    // content is text up to the matching end tag, never markup
+    private static final String[] RAW_TEXT = {"title", "textarea", "xmp", "iframe", "noembed", "noframes"};
+
+    // in a <select> inside a table these close the select; the scan does not track tables, so it stops there
+    private static final String[] TABLE_PARTS = {"caption", "table", "tbody", "tfoot", "thead", "tr", "td", "th"};
+
+    // start tags that leave the parser in <head>
+    private static final String[] HEAD_ELEMENTS = {
+            "html", "head", "base", "basefont", "bgsound", "command", "link", "meta", "title", "noframes",
+            "style", "script", "noscript", "template"};
+
+    // inline SVG elements that keep the tokenizer as it is inside <svg>; anything else ends the pruning
+    private static final String[] SVG_ELEMENTS = {
+            "g", "path", "circle", "rect", "line", "polyline", "polygon", "ellipse", "use", "defs", "symbol",
+            "lineargradient", "radialgradient", "stop", "clippath", "mask", "pattern", "text", "tspan", "marker"};
+
+    private static volatile boolean enabled = true;
+
+    private final String html;
+    private final int n;
+    private final boolean headOnly;
+    private final List<String> jsonLd;
+
+    private StringBuilder out;
+    private int copied;             // html[copied, i) has not been appended yet
+    private boolean inSelect;       // <select> ignores style, title, svg, ... (their content is markup)
+    private boolean inHead = true;  // the parser has not left <head> yet
+    private boolean inHeadNoscript; // <noscript> in <head>: start tags other than style/noframes become text
+
+    // the tag read last by readTag()
+    private int nameEnd;
+    private int contentStart;
+    private boolean selfClosing;
+    private int cutTag = -1;        // a tag ended by the '<' at this index rather than by '>'
+    private int typeStart;
+    private int typeEnd;
+
+    private HtmlPruner(String html, boolean headOnly, List<String> jsonLd) {
+        this.html = html;
+        this.n = html.length();
+        this.headOnly = headOnly;
+        this.jsonLd = jsonLd;
+    }
+
+    /** Switches {@link #prune} on or off (--no-prune). */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /** html without script/style bodies (JSON-LD kept) and comments; html itself when there are none or pruning is off. */
+    public static String prune(String html) {
+        if (html == null) return "";
+        return enabled ? pruned(html) : html;
+    }
+
+    /** {@link #prune} regardless of --no-prune. */
+    static String pruned(String html) {
+        HtmlPruner p = new HtmlPruner(html, false, null);
+        p.scan();
+        if (p.out == null) return html;
+        return p.out.append(html, p.copied, html.length()).toString();
+    }
+
+    /** Bodies of the application/ld+json scripts in &lt;head&gt;, in page order; the scan stops where the head ends. */
+    public static List<String> headJsonLd(String html) {
+        List<String> blocks = new ArrayList<>();
+        if (html != null) new HtmlPruner(html, true, blocks).scan();
+        return blocks;
+    }
+
+    // -----------------------------
+    // Scanner
+    // -----------------------------
+
+    private void scan() {
+        int i = 0;
+        while (i < n && (inHead || !headOnly)) {
+            int lt = html.indexOf('<', i);
+            if (lt < 0 || lt + 1 >= n) return;
+            if (inHead && !inHeadNoscript && !isBlank(i, lt)) {
+                inHead = false;
+                if (headOnly) return;
+            }
+            char c = html.charAt(lt + 1);
+
+            if (c == '!' || c == '?') {
+                if (html.startsWith("<!--", lt)) {
+                    int end = commentEnd(lt);
+                    if (end < 0) return;
+                    // only between tags or words, so the text on either side cannot join into markup
+                    if (lt == 0 || html.charAt(lt - 1) == '>' || (isSpace(html.charAt(lt - 1)) && lt != cutTag)) {
+                        drop(lt, end);
+                    }
+                    i = end;
+                } else if (html.startsWith("<![CDATA[", lt)) {
+                    i = indexAfter("]]>", lt + 9);
+                    if (i < 0) return;
+                    if (!inHeadNoscript && !isBlank(lt + 9, i - 3)) inHead = false;
+                } else {
+                    i = indexAfter(">", lt + 2);        // doctype or bogus comment
+                    if (i < 0) return;
+                }
+                continue;
+            }
+            if (c == '/') {
+                if (lt + 2 >= n) return;
+                char d = html.charAt(lt + 2);
+                if (d == '>') {
+                    i = lt + 3;
+                } else if (!isAsciiLetter(d)) {
+                    i = indexAfter(">", lt + 2);       // bogus comment
+                    if (i < 0) return;
+                } else {
+                    if (!readTag(lt + 2)) return;
+                    if (headOnly && isName(lt + 2, "head")) return;
+                    if (isName(lt + 2, "select")) inSelect = false;
+                    if (inSelect && isOneOf(lt + 2, TABLE_PARTS)) return;
+                    if (inHeadNoscript) {
+                        inHeadNoscript = !isName(lt + 2, "noscript");
+                    } else if (isName(lt + 2, "head") || isName(lt + 2, "body") || isName(lt + 2, "html")
+                            || isName(lt + 2, "br")) {
+                        inHead = false;
+                    }
+                    i = contentStart;
+                }
+                continue;
+            }
+            if (!isAsciiLetter(c)) {
+                if (!inHeadNoscript) inHead = false;   // a '<' that is text
+                i = lt + 1;
+                continue;
+            }
+
+            if (!readTag(lt + 1)) return;
+            i = contentStart;
+            if (headOnly && isName(lt + 1, "body")) return;
+            if (inHeadNoscript) {
+                if (!selfClosing && (isName(lt + 1, "style") || isName(lt + 1, "noframes"))) {
+                    int end = rawTextEnd(contentStart, html.substring(lt + 1, nameEnd));
+                    if (isName(lt + 1, "style") && cutTag != contentStart) drop(contentStart, end);
+                    i = end;
+                }
+                continue;
+            }
+            if (inHead) {
+                if (isName(lt + 1, "noscript")) inHeadNoscript = !selfClosing;
+                else if (!isOneOf(lt + 1, HEAD_ELEMENTS)) inHead = false;
+            }
+            if (inSelect && isOneOf(lt + 1, TABLE_PARTS)) return;
+            boolean select = isName(lt + 1, "select");
+            if (inSelect && (select || isName(lt + 1, "input") || isName(lt + 1, "keygen") || isName(lt + 1, "textarea"))) {
+                inSelect = false;           // closes the open select instead
+                select = false;
+            }
+            if (selfClosing) continue;              // an empty element, whatever the tag
+
+            if (isName(lt + 1, "script")) {
+                int end = scriptEnd(contentStart);
+                String type = typeStart < 0 ? "" : html.substring(typeStart, typeEnd);
+                boolean ldJson = type.trim().equalsIgnoreCase("application/ld+json");
+                if (ldJson && jsonLd != null) jsonLd.add(html.substring(contentStart, end));
+                // an entity in type= could still spell ld+json once decoded
+                if (!ldJson && type.indexOf('&') < 0 && cutTag != contentStart) drop(contentStart, end);
+                i = end;
+            } else if (isName(lt + 1, "textarea")) {
+                i = rawTextEnd(contentStart, "textarea");
+            } else if (inSelect) {
+                continue;
+            } else if (isName(lt + 1, "style")) {
+                int end = rawTextEnd(contentStart, "style");
+                if (cutTag != contentStart) drop(contentStart, end);
+                i = end;
+            } else if (isName(lt + 1, "plaintext")) {
+                return;                             // everything after it is text
+            } else if (select) {
+                inSelect = true;
+            } else if (isName(lt + 1, "svg") || isName(lt + 1, "math")) {
+                i = foreignEnd(lt + 1);
+                if (i < 0) return;
+            } else {
+                for (String raw : RAW_TEXT) {
+                    if (isName(lt + 1, raw)) {
+                        i = rawTextEnd(contentStart, raw);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Removes html[from, to) from the output (nothing in headOnly mode). */
+    private void drop(int from, int to) {
+        if (headOnly || to <= from) return;
+        if (out == null) out = new StringBuilder(n / 2);
+        out.append(html, copied, from);
+        copied = to;
+    }
+
+    // -----------------------------
+    // Tokenizer pieces
+    // -----------------------------
+
+    /**
+     * Reads the tag whose name starts at i: sets nameEnd, contentStart (where
+     * the text after the tag starts), selfClosing and the bounds of the first
+     * type attribute (typeStart -1 if none). False if the input ends inside
+     * the tag, which the tokenizer then drops.
+     */
+    private boolean readTag(int i) {
+        selfClosing = false;
+        typeStart = -1;
+        while (i < n && !isSpace(html.charAt(i)) && "/><".indexOf(html.charAt(i)) < 0) i++;
+        nameEnd = i;
+        boolean afterName = false;      // right after an attribute name, even '<' starts the next one
+        while (i < n) {
+            char c = html.charAt(i);
+            if (!afterName || c == '/' || c == '>') {
+                // before attribute name
+                if (isSpace(c)) {
+                    i++;
+                    continue;
+                }
+                if (c == '/') {
+                    if (i + 1 < n && html.charAt(i + 1) == '>') {
+                        selfClosing = true;
+                        contentStart = i + 2;
+                        return true;
+                    }
+                    afterName = false;
+                    i++;
+                    continue;
+                }
+                if (c == '>' || c == '<') {
+                    // '<' ends the tag and starts the next one
+                    contentStart = c == '>' ? i + 1 : i;
+                    if (c == '<') cutTag = i;
+                    return true;
+                }
+            }
+            afterName = false;
+            // attribute name (its first character can be anything, even '=' or a quote)
+            int attrStart = i++;
+            while (i < n && !isSpace(html.charAt(i)) && "/=>".indexOf(html.charAt(i)) < 0) i++;
+            boolean type = typeStart < 0 && i - attrStart == 4 && html.regionMatches(true, attrStart, "type", 0, 4);
+            while (i < n && isSpace(html.charAt(i))) i++;
+            if (i >= n) return false;
+            c = html.charAt(i);
+            if (c != '=') {
+                if (type) typeStart = typeEnd = attrStart;
+                afterName = true;
+                continue;
+            }
+            // attribute value
+            i++;
+            while (i < n && isSpace(html.charAt(i))) i++;
+            if (i >= n) return false;
+            c = html.charAt(i);
+            int valueStart;
+            int valueEnd;
+            if (c == '"' || c == '\'') {
+                valueStart = i + 1;
+                valueEnd = html.indexOf(c, valueStart);
+                if (valueEnd < 0) return false;
+                i = valueEnd + 1;
+            } else if (c == '>') {
+                valueStart = valueEnd = i;
+            } else {
+                valueStart = i;
+                while (i < n && !isSpace(html.charAt(i)) && html.charAt(i) != '>') i++;
+                valueEnd = i;
+            }
+            if (type) {
+                typeStart = valueStart;
+                typeEnd = valueEnd;
+            }
+        }
+        return false;
+    }
+
+    /** True if the tag name read last, starting at start, is name (any case). */
+    private boolean isName(int start, String name) {
+        return nameEnd - start == name.length() && html.regionMatches(true, start, name, 0, name.length());
+    }
+
+    /** Index just past the comment starting at lt ("&lt;!--"), or -1 if it never ends. */
+    private int commentEnd(int lt) {
+        // "<!-->" and "<!--->" are complete (empty) comments
+        if (html.startsWith(">", lt + 4)) return lt + 5;
+        if (html.startsWith("->", lt + 4)) return lt + 6;
+        for (int j = html.indexOf("--", lt + 4); j >= 0; j = html.indexOf("--", j + 1)) {
+            if (html.startsWith("-->", j)) return j + 3;
+            if (html.startsWith("--!>", j)) return j + 4;
+        }
+        return -1;
+    }
+
+    /** Index just past the first s at or after from, or -1. */
+    private int indexAfter(String s, int from) {
+        int j = html.indexOf(s, from);
+        return j < 0 ? -1 : j + s.length();
+    }
+
+    /** Index of the "&lt;/name" that ends a raw-text element, or n (it runs to the end). */
+    private int rawTextEnd(int from, String name) {
+        for (int j = html.indexOf("</", from); j >= 0; j = html.indexOf("</", j + 2)) {
+            if (isEndOfName(j + 2, name)) return j;
+        }
+        return n;
+    }
+
+    /**
+     * Index of the "&lt;/script" that ends a script body, or n. Inside
+     * "&lt;!-- ... --&gt;" a nested "&lt;script&gt;" hides the next
+     * "&lt;/script&gt;" (the tokenizer's double-escaped state); Jsoup only
+     * recognises that nesting when "script" is written in lower case.
+     */
+    private int scriptEnd(int from) {
+        boolean escaped = false;
+        boolean doubleEscaped = false;
+        int dashes = -1;
+        int j = from;
+        while (j < n) {
+            int lt = html.indexOf('<', j);
+            if (escaped && dashes < j) dashes = html.indexOf("-->", j);
+            if (escaped && dashes >= 0 && (lt < 0 || dashes < lt)) {
+                escaped = false;
+                doubleEscaped = false;
+                j = dashes + 3;
+                continue;
+            }
+            if (lt < 0) return n;
+            if (!escaped && html.startsWith("<!--", lt)) {
+                escaped = true;
+                j = lt + 2;             // "<!-->" already ends the escape
+            } else if (html.startsWith("</", lt) && isEndOfName(lt + 2, "script")) {
+                if (!doubleEscaped) return lt;
+                // only a lower-case name switches the double escape (Jsoup compares it as written)
+                if (html.startsWith("script", lt + 2)) doubleEscaped = false;
+                j = lt + 8;
+            } else if (escaped && !doubleEscaped && html.startsWith("script", lt + 1) && isEndOfName(lt + 1, "script")) {
+                doubleEscaped = true;
+                j = lt + 7;
+            } else {
+                j = lt + 1;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Index just past the end tag closing the &lt;svg&gt; or &lt;math&gt;
+     * whose name starts at start (its start tag already read), or -1 if the
+     * block holds anything the scan cannot follow. The content is foreign to
+     * the tokenizer (style and title inside are markup), so nothing in it is
+     * pruned; plain icons, the common case, are skipped whole.
+     */
+    private int foreignEnd(int start) {
+        String root = html.substring(start, nameEnd);
+        if (!root.equals("svg") && !root.equals("math")) return -1;
+        int depth = 1;
+        int i = contentStart;
+        while (i < n) {
+            int lt = html.indexOf('<', i);
+            if (lt < 0 || lt + 1 >= n) return -1;
+            char c = html.charAt(lt + 1);
+            if (c == '!') {
+                if (!html.startsWith("<!--", lt)) return -1;
+                i = commentEnd(lt);
+                if (i < 0) return -1;
+                continue;
+            }
+            boolean end = c == '/';
+            int name = end ? lt + 2 : lt + 1;
+            if (name >= n || !isAsciiLetter(html.charAt(name))) {
+                if (end || c == '?') return -1;
+                i = lt + 1;
+                continue;
+            }
+            if (!readTag(name)) return -1;
+            i = contentStart;
+            if (isName(name, root)) {
+                if (!html.startsWith(root, name)) return -1;
+                if (end) depth--;
+                else if (!selfClosing) depth++;
+                if (depth == 0) return i;
+            } else if (!root.equals("svg") || !isOneOf(name, SVG_ELEMENTS)) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isOneOf(int start, String[] names) {
+        for (String name : names) {
+            if (isName(start, name)) return true;
+        }
+        return false;
+    }
+
+    /** True if html[from, to) is all whitespace. */
+    private boolean isBlank(int from, int to) {
+        for (int j = from; j < to; j++) {
+            if (!isSpace(html.charAt(j))) return false;
+        }
+        return true;
+    }
+
+    /** True if html has name (any case) at i, followed by whitespace, '/' or '&gt;'. */
+    private boolean isEndOfName(int i, String name) {
+        int end = i + name.length();
+        if (end >= n || !html.regionMatches(true, i, name, 0, name.length())) return false;
+        char c = html.charAt(end);
+        return isSpace(c) || c == '/' || c == '>';
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /** HTML whitespace: tab, line feed, form feed, carriage return, space. */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.apfeed;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Validates image candidates before one is written to the feed.
+ *
+ * The top candidates are probed concurrently with a ranged GET of the first
+ * 64 KB, enough to read the content type and the pixel size from the PNG,
+ * GIF, JPEG or WebP header. At most {@value #MAX_IN_FLIGHT} probes run at once;
+ * the rest wait in a queue without holding a thread. Results are cached by
+ * URL, the {@value #MAX_CACHED} most recently used ones. The
+ * largest valid image that answers within the latency budget wins; if none
+ * does, the extractor's own first choice is kept.
+ */
+public class ImageProber {
+    private static final int HEAD_BYTES = 64 * 1024;
+    private static final int MAX_IN_FLIGHT = 16;
+    private static final int MAX_CACHED = 50_000;
+    private static final int TOP_CANDIDATES = 5;
+    private static final long BUDGET_MS = 2000;
+    // Merchant Center rejects images under 100x100 (250x250 for apparel)
+    private static final int MIN_SIDE = 100;
+
+    /** What a probe learned about one image URL. */
+    public static class Info {
+        public final boolean ok;
+        public final int width;
+        public final int height;
+        public final String contentType;
+
+        Info(boolean ok, int width, int height, String contentType) {
+            this.ok = ok;
+            this.width = width;
+            this.height = height;
+            this.contentType = contentType;
+        }
+
+        long area() {
+            return (long) width * height;
+        }
+
+        static final Info BAD = new Info(false, 0, 0, "");
+    }
+
+    private static final ImageProber SHARED = new ImageProber();
+
+    private final HttpClient http = HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    // probes waiting for one of the MAX_IN_FLIGHT slots; guarded by itself
+    private final ArrayDeque<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+    private int running;
+    private final Map<String, CompletableFuture<Info>> cache = Collections.synchronizedMap(
+            new LinkedHashMap<>(1024, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<Info>> eldest) {
+                    return size() > MAX_CACHED;
+                }
+            });
+
+    public static ImageProber shared() {
+        return SHARED;
+    }
+
+    /**
+     * Picks the best image among ranked candidates (best guess first).
+     * Returns the first candidate if nothing could be validated in time.
+     */
+    public String choose(List<String> ranked) {
+        if (ranked == null || ranked.isEmpty()) return "";
+        List<String> top = new ArrayList<>();
+        for (String u : ranked) {
+            if (u.startsWith("http")) top.add(u);
+            if (top.size() >= TOP_CANDIDATES) break;
+        }
+        if (top.isEmpty()) return ranked.get(0);
+
+        List<CompletableFuture<Info>> probes = new ArrayList<>();
+        for (String u : top) probes.add(probe(u));
+        try {
+            CompletableFuture.allOf(probes.toArray(new CompletableFuture<?>[0]))
+                    .get(BUDGET_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            // use whatever has answered so far
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        String best = null;
+        long bestArea = -1;
+        for (int i = 0; i < top.size(); i++) {
+            Info info = probes.get(i).getNow(null);
+            if (info == null || !info.ok) continue;
+            boolean known = info.width > 0 && info.height > 0;
+            if (known && (info.width < MIN_SIDE || info.height < MIN_SIDE)) continue;
+            // unknown size (svg, avif...) counts as valid but smaller than any measured image
+            long area = known ? info.area() : 0;
+            if (area > bestArea) {
+                bestArea = area;
+                best = top.get(i);
+            }
+        }
+        return best != null ? best : ranked.get(0);
+    }
+
+    /** Cached, concurrency-bounded probe of one image URL. */
+    public CompletableFuture<Info> probe(String url) {
+        return cache.computeIfAbsent(url, this::fetch);
+    }
+
+    private CompletableFuture<Info> fetch(String url) {
+        HttpRequest req;
+        try {
+            req = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(Duration.ofMillis(BUDGET_MS * 2))
+                    .header("User-Agent", BrowserPool.USER_AGENT)
+                    .header("Range", "bytes=0-" + (HEAD_BYTES - 1))
+                    .GET()
+                    .build();
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(Info.BAD);
+        }
+
+        return slot()
+                .thenCompose(v -> http.sendAsync(req, HttpResponse.BodyHandlers.ofInputStream()))
+                .thenApply(res -> {
+                    int status = res.statusCode();
+                    String ct = res.headers().firstValue("content-type").orElse("");
+                    try (var in = res.body()) {
+                        if (status != 200 && status != 206) return Info.BAD;
+                        byte[] head = in.readNBytes(HEAD_BYTES);
+                        if (!ct.isEmpty() && !ct.startsWith("image/") && !ct.startsWith("application/octet-stream")) {
+                            return Info.BAD; // HTML error pages served with 200
+                        }
+                        int[] wh = dimensions(head);
+                        if (wh == null && !ct.startsWith("image/")) return Info.BAD;
+                        return wh == null ? new Info(true, 0, 0, ct) : new Info(true, wh[0], wh[1], ct);
+                    } catch (Exception e) {
+                        return Info.BAD;
+                    }
+                })
+                .exceptionally(e -> Info.BAD)
+                .whenComplete((i, e) -> release());
+    }
+
+    /** Completes when a probe may start: now if a slot is free, else when one is released. */
+    private CompletableFuture<Void> slot() {
+        CompletableFuture<Void> f = new CompletableFuture<>();
+        synchronized (waiting) {
+            if (running >= MAX_IN_FLIGHT) {
+                waiting.add(f);
+                return f;
+            }
+            running++;
+        }
+        f.complete(null);
+        return f;
+    }
+
+    /** Hands the slot to the next waiting probe, if any. */
+    private void release() {
+        CompletableFuture<Void> next;
+        synchronized (waiting) {
+            next = waiting.poll();
+            if (next == null) running--;
+        }
+        if (next != null) next.complete(null);
+    }
+
+    // -----------------------------
+    // Header parsing
+    // -----------------------------
+
+    /** {width, height} from a PNG/GIF/JPEG/WebP header, or null if unknown. */
+    static int[] dimensions(byte[] b) {
+        if (b.length >= 24 && u8(b, 0) == 0x89 && b[1] == 'P' && b[2] == 'N' && b[3] == 'G') {
+            return new int[]{be32(b, 16), be32(b, 20)};
+        }
+        if (b.length >= 10 && b[0] == 'G' && b[1] == 'I' && b[2] == 'F') {
+            return new int[]{le16(b, 6), le16(b, 8)};
+        }
+        if (b.length >= 4 && u8(b, 0) == 0xFF && u8(b, 1) == 0xD8) {
+            return jpeg(b);
+        }
+        if (b.length >= 30 && b[0] == 'R' && b[1] == 'I' && b[2] == 'F' && b[3] == 'F'
+                && b[8] == 'W' && b[9] == 'E' && b[10] == 'B' && b[11] == 'P') {
+            return webp(b);
+        }
+        return null;
+    }
+
+    private static int[] jpeg(byte[] b) {
+        int i = 2;
+        while (i + 9 < b.length) {
+            if (u8(b, i) != 0xFF) {
+                i++;
+                continue;
+            }
+            int marker = u8(b, i + 1);
+            if (marker == 0xFF) {
+                i++;
+                continue;
+            }
+            int len = be16(b, i + 2);
+            // SOF0..SOF15 except DHT(C4), JPG(C8), DAC(CC)
+            if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                return new int[]{be16(b, i + 7), be16(b, i + 5)};
+            }
+            if (len < 2) return null;
+            i += 2 + len;
+        }
+        return null;
+    }
+
+    private static int[] webp(byte[] b) {
+        String chunk = new String(b, 12, 4, java.nio.charset.StandardCharsets.US_ASCII);
+        switch (chunk) {
+            case "VP8 ":
+                return new int[]{le16(b, 26) & 0x3FFF, le16(b, 28) & 0x3FFF};
+            case "VP8L": {
+                int bits = u8(b, 21) | (u8(b, 22) << 8) | (u8(b, 23) << 16) | (u8(b, 24) << 24);
+                return new int[]{(bits & 0x3FFF) + 1, ((bits >> 14) & 0x3FFF) + 1};
+            }
+            case "VP8X":
+                return new int[]{
+                        (u8(b, 24) | (u8(b, 25) << 8) | (u8(b, 26) << 16)) + 1,
+                        (u8(b, 27) | (u8(b, 28) << 8) | (u8(b, 29) << 16)) + 1};
+            default:
+                return null;
+        }
+    }
+
+    private static int u8(byte[] b, int i) {
+        return b[i] & 0xFF;
+    }
+
+    private static int be16(byte[] b, int i) {
+        return (u8(b, i) << 8) | u8(b, i + 1);
+    }
+
+    private static int le16(byte[] b, int i) {
+        return u8(b, i) | (u8(b, i + 1) << 8);
+    }
+
+    private static int be32(byte[] b, int i) {
+        return (u8(b, i) << 24) | (u8(b, i + 1) << 16) | (u8(b, i + 2) << 8) | u8(b, i + 3);
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.apfeed;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+
+import java.net.URI;
+
+/** Small static JSON GET/POST helpers for the platform adapters. */
+class JsonHttp {
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final int TIMEOUT_MS = 20000;
+    private static final int MAX_BODY = 20 * 1024 * 1024;
+
+    /** GET url as JSON; null on any HTTP/parse failure. */
+    static JsonNode get(String url) {
+        return send(url, Connection.Method.GET, null, null);
+    }
+
+    /** POST a JSON body (e.g. GraphQL); null on any failure. */
+    static JsonNode post(String url, Object body, String bearerToken) {
+        try {
+            return send(url, Connection.Method.POST, JSON.writeValueAsString(body), bearerToken);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static JsonNode send(String url, Connection.Method method, String body, String bearer) {
+        try {
+            Connection c = Jsoup.connect(url)
+                    .userAgent(BrowserPool.USER_AGENT)
+                    .timeout(TIMEOUT_MS)
+                    .maxBodySize(MAX_BODY)
+                    .ignoreContentType(true)
+                    .ignoreHttpErrors(true)
+                    .header("Accept", "application/json")
+                    .method(method);
+            if (body != null) {
+                c.header("Content-Type", "application/json").requestBody(body);
+            }
+            if (bearer != null) c.header("Authorization", "Bearer " + bearer);
+            Connection.Response res = c.execute();
+            if (res.statusCode() != 200) return null;
+            String ct = res.contentType();
+            if (ct != null && !ct.contains("json") && !ct.contains("javascript")) return null;
+            return JSON.readTree(res.bodyAsBytes());
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /** "https://shop.test/a/b?x" -> "https://shop.test" */
+    static String origin(String url) {
+        try {
+            URI u = URI.create(url);
+            return u.getScheme() + "://" + u.getRawAuthority();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    static String path(String url) {
+        try {
+            String p = URI.create(url).getPath();
+            return p == null ? "" : p;
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    /** Last non-empty path segment, without a .html-style extension. */
+    static String lastSegment(String url) {
+        String[] parts = path(url).split("/");
+        for (int i = parts.length - 1; i >= 0; i--) {
+            if (!parts[i].isEmpty()) return parts[i].replaceFirst("\\.(html?|php)$", "");
+        }
+        return "";
+    }
+
+    static String text(JsonNode n, String field) {
+        if (n == null) return "";
+        JsonNode v = n.get(field);
+        return v == null || v.isNull() || v.isContainerNode() ? "" : v.asText("").trim();
+    }
+}
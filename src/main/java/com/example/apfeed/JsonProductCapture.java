@@ -0,0 +1,333 @@
+package com.example.apfeed;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.playwright.Page;
+import com.microsoft.playwright.Response;
+import org.jsoup.Jsoup;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Captures product data from the JSON a JS-rendered shop loads for itself
+ * (XHR/fetch responses), so the browser path can skip waiting for it to be
+ * rendered into the DOM and scraped back out.
+ *
+ * Usage: {@link #listen(Page)} right after the page is created, then
+ * {@link #harvest(List, String)} once the page has settled. Product-like
+ * objects are recognised by field names (name/title + price, url, image, sku)
+ * and kept in a store keyed by product URL. The store lives as long as its
+ * scraper (a whole service session), so entries expire after an hour and the
+ * oldest half is dropped when it is full.
+ */
+public class JsonProductCapture {
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final int MAX_BODY_BYTES = 5 * 1024 * 1024;
+    private static final int MAX_STORED = 200_000;
+    private static final long TTL_MS = 60 * 60 * 1000L;
+
+    /** One product as found in a JSON payload. Fields are "" when absent. */
+    public static class Captured {
+        public String url = "";
+        public String title = "";
+        public String price = "";
+        public String currency = "";
+        public String imageUrl = "";
+        public String description = "";
+        public String sku = "";
+        public String availability = "";
+        public List<String> categories = new ArrayList<>();
+        // when it went into the store
+        long storedAt;
+
+        /** Enough to build a feed row without touching the DOM. */
+        public boolean sufficient() {
+            return !title.isEmpty() && !price.isEmpty() && !imageUrl.isEmpty();
+        }
+
+        public DomExtractor.ExtractResult toExtractResult(String currencyCode) {
+            DomExtractor.ExtractResult er = new DomExtractor.ExtractResult();
+            er.title = title;
+            er.price = StructuredData.formatPrice(price, currencyCode);
+            er.imageUrl = imageUrl;
+            er.description = description.isEmpty() ? title : description;
+            if (er.description.length() > 500) er.description = er.description.substring(0, 500);
+            er.breadcrumbs = new ArrayList<>(categories);
+            er.availability = availability;
+            return er;
+        }
+    }
+
+    private final Map<String, Captured> byUrl = new ConcurrentHashMap<>();
+
+    // -----------------------------
+    // Browser hook
+    // -----------------------------
+
+    /** Starts recording JSON responses of the page; the returned list fills as they arrive. */
+    public static List<Response> listen(Page page) {
+        List<Response> responses = Collections.synchronizedList(new ArrayList<>());
+        page.onResponse(r -> {
+            String type = r.request().resourceType();
+            if (!type.equals("xhr") && !type.equals("fetch")) return;
+            String ct = r.headers().getOrDefault("content-type", "");
+            if (!ct.contains("json") || r.status() != 200) return;
+            responses.add(r);
+        });
+        return responses;
+    }
+
+    /**
+     * Parses the recorded responses, stores every product-like object and
+     * returns them in the order they were seen.
+     */
+    public List<Captured> harvest(List<Response> responses, String pageUrl) {
+        List<Captured> found = new ArrayList<>();
+        List<Response> snapshot;
+        synchronized (responses) {
+            snapshot = new ArrayList<>(responses);
+        }
+        for (Response r : snapshot) {
+            try {
+                byte[] body = r.body();
+                if (body == null || body.length == 0 || body.length > MAX_BODY_BYTES) continue;
+                found.addAll(extract(JSON.readTree(body), pageUrl));
+            } catch (Exception ignored) {
+                // body gone (navigation), not JSON after all, etc.
+            }
+        }
+        for (Captured c : found) put(c);
+        return found;
+    }
+
+    public void put(Captured c) {
+        if (c.url.isEmpty()) return;
+        if (byUrl.size() >= MAX_STORED) evict();
+        c.storedAt = System.currentTimeMillis();
+        byUrl.merge(c.url, c, JsonProductCapture::better);
+    }
+
+    /** Captured data for a product URL, or null (also once it is over an hour old). */
+    public Captured get(String url) {
+        Captured c = url == null ? null : byUrl.get(url);
+        return c == null || expired(c) ? null : c;
+    }
+
+    private static Captured better(Captured a, Captured b) {
+        return expired(a) || score(b) > score(a) ? b : a;
+    }
+
+    private static boolean expired(Captured c) {
+        return System.currentTimeMillis() - c.storedAt > TTL_MS;
+    }
+
+    private synchronized void evict() {
+        if (byUrl.size() < MAX_STORED) return;
+        byUrl.values().removeIf(JsonProductCapture::expired);
+        if (byUrl.size() < MAX_STORED * 3 / 4) return;
+        long[] stamps = byUrl.values().stream().mapToLong(c -> c.storedAt).sorted().toArray();
+        long median = stamps[stamps.length / 2];
+        byUrl.values().removeIf(c -> c.storedAt <= median);
+    }
+
+    private static int score(Captured c) {
+        int s = 0;
+        if (!c.title.isEmpty()) s++;
+        if (!c.price.isEmpty()) s++;
+        if (!c.imageUrl.isEmpty()) s++;
+        if (!c.description.isEmpty()) s++;
+        if (!c.sku.isEmpty()) s++;
+        if (!c.availability.isEmpty()) s++;
+        return s;
+    }
+
+    // -----------------------------
+    // Recognising products in arbitrary JSON
+    // -----------------------------
+
+    /** All product-like objects anywhere in the tree. */
+    public static List<Captured> extract(JsonNode root, String pageUrl) {
+        List<Captured> out = new ArrayList<>();
+        walk(root, pageUrl, out, 0);
+        return out;
+    }
+
+    private static void walk(JsonNode n, String pageUrl, List<Captured> out, int depth) {
+        if (n == null || depth > 12) return;
+        if (n.isArray()) {
+            for (JsonNode c : n) walk(c, pageUrl, out, depth + 1);
+            return;
+        }
+        if (!n.isObject()) return;
+
+        Captured c = toProduct(n, pageUrl);
+        if (c != null && !c.price.isEmpty()) {
+            out.add(c);
+            return; // priced product: don't descend into its variants
+        }
+
+        // Un-priced match may be a collection wrapping the real products
+        List<Captured> inner = new ArrayList<>();
+        Iterator<JsonNode> it = n.elements();
+        while (it.hasNext()) walk(it.next(), pageUrl, inner, depth + 1);
+        if (inner.isEmpty() && c != null) out.add(c);
+        else out.addAll(inner);
+    }
+
+    private static Captured toProduct(JsonNode n, String pageUrl) {
+        String title = str(n, "name", "title", "product_name", "productName");
+        if (title.isEmpty()) return null;
+
+        String price = priceOf(n);
+        String url = absolute(pageUrl, str(n, "url", "permalink", "link", "product_url", "productUrl", "href"));
+        String image = imageOf(n, pageUrl);
+        // A product needs a price, or at least a link and a picture
+        if (price.isEmpty() && (url.isEmpty() || image.isEmpty())) return null;
+        if (!url.isEmpty() && !UrlUtils.isSameSite(url, pageUrl)) url = "";
+
+        Captured c = new Captured();
+        c.title = title.trim();
+        c.price = price;
+        c.currency = str(n, "currency", "priceCurrency", "currency_code");
+        c.url = url.isEmpty() ? "" : UrlUtils.normalizeUrl(url, url);
+        c.imageUrl = image;
+        c.sku = str(n, "sku", "SKU", "productSku");
+        c.availability = availabilityOf(n);
+
+        String desc = str(n, "description", "short_description", "body_html", "shortDescription");
+        if (!desc.isEmpty()) {
+            c.description = Jsoup.parse(desc).text().replaceAll("https?://\\S+", "").replaceAll("\\s+", " ").trim();
+        }
+
+        JsonNode cats = first(n, "categories", "product_type", "category", "breadcrumbs");
+        if (cats != null) {
+            if (cats.isArray()) {
+                for (JsonNode x : cats) {
+                    String v = x.isObject() ? str(x, "name", "title") : x.asText("");
+                    if (!v.isBlank()) c.categories.add(v.trim());
+                }
+            } else if (cats.isObject()) {
+                String v = str(cats, "name", "title");
+                if (!v.isBlank()) c.categories.add(v.trim());
+            } else if (!cats.asText("").isBlank()) {
+                c.categories.add(cats.asText().trim());
+            }
+        }
+        return c;
+    }
+
+    private static String priceOf(JsonNode n) {
+        // WooCommerce Store API style: {"prices": {"price": "1999", "currency_minor_unit": 2}}
+        JsonNode prices = n.get("prices");
+        if (prices != null && prices.isObject()) {
+            String p = str(prices, "price", "sale_price", "regular_price");
+            if (!p.isEmpty() && prices.has("currency_minor_unit") && p.matches("\\d+")) {
+                return minorToMajor(p, prices.get("currency_minor_unit").asInt());
+            }
+            if (!p.isEmpty()) return p;
+        }
+        // Shopify AJAX API (/products/<handle>.js): whole cents, {"price": 1999, "variants": [{"price": 1999}]}
+        JsonNode cents = shopifyCents(n);
+        if (cents != null) return minorToMajor(cents.asText(), 2);
+
+        String p = str(n, "price", "sale_price", "salePrice", "final_price", "finalPrice",
+                "regular_price", "regularPrice", "price_min", "min_price", "lowPrice");
+        if (!p.isEmpty()) return p;
+
+        for (String f : new String[]{"offers", "price_range", "priceRange", "variants"}) {
+            JsonNode o = n.get(f);
+            if (o == null) continue;
+            if (o.isArray() && o.size() > 0) o = o.get(0);
+            if (!o.isObject()) continue;
+            p = str(o, "price", "lowPrice", "minimum_price", "min");
+            if (!p.isEmpty()) return p;
+            JsonNode amount = first(o, "minimum_price", "minVariantPrice", "final_price");
+            if (amount != null && amount.isObject()) {
+                p = str(amount, "amount", "value", "price");
+                if (!p.isEmpty()) return p;
+            }
+        }
+        return "";
+    }
+
+    /**
+     * The cents price of a Shopify .js product, or null for any other shape.
+     * The .json endpoints give "19.99" strings; the .js one gives integers
+     * alongside compare_at_price / price_min or integer variant prices.
+     */
+    private static JsonNode shopifyCents(JsonNode n) {
+        if (!n.has("handle")) return null;
+        JsonNode variants = n.get("variants");
+        JsonNode variantPrice = variants != null && variants.isArray() && variants.size() > 0
+                ? variants.get(0).get("price") : null;
+        JsonNode price = n.get("price");
+        if (price != null && price.isIntegralNumber()) {
+            boolean js = n.has("compare_at_price") || n.has("price_min")
+                    || (variantPrice != null && variantPrice.isIntegralNumber());
+            return js ? price : null;
+        }
+        return price == null && variantPrice != null && variantPrice.isIntegralNumber() ? variantPrice : null;
+    }
+
+    private static String imageOf(JsonNode n, String pageUrl) {
+        JsonNode img = first(n, "image", "images", "featured_image", "featuredImage",
+                "image_url", "imageUrl", "thumbnail", "media");
+        if (img == null) return "";
+        if (img.isArray()) {
+            if (img.size() == 0) return "";
+            img = img.get(0);
+        }
+        String src = img.isObject() ? str(img, "src", "url", "original", "large", "thumbnail") : img.asText("");
+        return src.isBlank() ? "" : absolute(pageUrl, src.trim());
+    }
+
+    private static String availabilityOf(JsonNode n) {
+        JsonNode v = first(n, "available", "in_stock", "is_in_stock", "isInStock", "inStock");
+        if (v != null && v.isBoolean()) return v.asBoolean() ? "in stock" : "out of stock";
+        String s = str(n, "availability", "stock_status", "stockStatus");
+        return StructuredData.mapAvailability(s);
+    }
+
+    // -----------------------------
+    // Helpers
+    // -----------------------------
+
+    private static String minorToMajor(String minor, int unit) {
+        try {
+            return new java.math.BigDecimal(minor).movePointLeft(unit).toPlainString();
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    private static JsonNode first(JsonNode n, String... fields) {
+        for (String f : fields) {
+            JsonNode v = n.get(f);
+            if (v != null && !v.isNull()) return v;
+        }
+        return null;
+    }
+
+    private static String str(JsonNode n, String... fields) {
+        for (String f : fields) {
+            JsonNode v = n.get(f);
+            if (v == null || v.isNull() || v.isContainerNode()) continue;
+            String s = v.asText("").trim();
+            if (!s.isEmpty()) return s;
+        }
+        return "";
+    }
+
+    private static String absolute(String base, String href) {
+        if (href == null || href.isEmpty()) return "";
+        try {
+            URI u = new URI(base).resolve(href);
+            String scheme = u.getScheme();
+            return scheme != null && scheme.startsWith("http") ? u.toString() : "";
+        } catch (Exception e) {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.apfeed;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Offline end-to-end benchmark: starts a {@link SyntheticStorefront} in this
+ * JVM and runs the normal pipeline (discovery, scraping, feed export) against
+ * its listing with N worker threads, then prints throughput, latency
+ * percentiles, CPU and peak RSS.
+ *
+ * CPU and RSS cover this JVM (which also hosts the storefront) plus every
+ * browser process it started. Without Chromium only --platform shopify
+ * can run, because that path never opens a page.
+ */
+public class LoadTest {
+    private static final long SAMPLE_MS = 250;
+
+    /** @return process exit code */
+    public static int run(SyntheticStorefront.Config config, int workers, String output, ScrapeOptions options) {
+        workers = Math.max(1, workers);
+        try (SyntheticStorefront shop = SyntheticStorefront.start(config, 0)) {
+            Path urls = Files.createTempFile("apfeed-loadtest", ".txt");
+            Files.writeString(urls, shop.listingUrl() + System.lineSeparator());
+            if (output == null) output = Files.createTempFile("apfeed-loadtest", ".tsv").toString();
+            FeedJob job = new FeedJob("Synthetic Store", config.currency, urls.toString(), output);
+
+            System.out.println("Load test: " + config.products + " product(s) at " + shop.listingUrl()
+                    + " with " + workers + " worker(s)");
+            Sampler sampler = new Sampler();
+            sampler.start();
+            long cpu0 = sampler.cpuNanos();
+
+            long t0 = System.currentTimeMillis();
+            long[] latencies;
+            long discoveryMs;
+            int scraped;
+            int errors;
+            int retries;
+            long firstAt;
+            ProductTypeDetector.preloadInBackground();
+            try (BrowserPool pool = BrowserPool.create(options);
+                 FeedJobRun run = new FeedJobRun(job, "")) {
+                pool.startInBackground();
+                ProductScraper scraper = new ProductScraper(pool, options);
+                run.collectLinks(scraper, true);
+                run.openOutput();
+                discoveryMs = System.currentTimeMillis() - t0;
+
+                List<Long> times = Collections.synchronizedList(new ArrayList<>());
+                List<Thread> threads = new ArrayList<>();
+                for (int i = 1; i <= workers; i++) {
+                    Thread t = new Thread(() -> {
+                        try {
+                            FeedJobRun.Target target;
+                            while ((target = run.awaitNext()) != null) {
+                                long s = System.nanoTime();
+                                run.scrapeOne(scraper, target);
+                                times.add((System.nanoTime() - s) / 1_000_000);
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }, "apfeed-load-" + i);
+                    t.start();
+                    threads.add(t);
+                }
+                for (Thread t : threads) t.join();
+                run.finishOutput();
+                scraped = run.scrapedCount();
+                errors = run.errorCount();
+                retries = run.retryCount();
+                firstAt = run.firstProductAt();
+                latencies = times.stream().mapToLong(Long::longValue).sorted().toArray();
+            }
+            long elapsedMs = System.currentTimeMillis() - t0;
+            long cpuMs = (sampler.cpuNanos() - cpu0) / 1_000_000;
+            sampler.stop();
+
+            SyntheticStorefront.Stats st = shop.stats();
+            long scrapeMs = Math.max(1, elapsedMs - discoveryMs);
+            System.out.println();
+            System.out.println("----- Load test report -----");
+            System.out.printf("Shop:        %s, %s, %s%s%s, latency %d ms, 429 %.1f%%, 5xx %.1f%%%n",
+                    config.platform, config.jsRendered ? "script-rendered" : "server-rendered",
+                    config.infiniteScroll ? "infinite scroll" : "numbered pages",
+                    config.cookieBanner ? ", cookie banner" : "", config.jsonLd ? ", JSON-LD" : "",
+                    config.latencyMs, config.rate429 * 100, config.errorRate * 100);
+            System.out.printf("Products:    %d scraped, %d failed, %d retried%n", scraped, errors, retries);
+            System.out.printf("Time:        %.1f s total (discovery %.1f s, scraping %.1f s)%n",
+                    elapsedMs / 1000.0, discoveryMs / 1000.0, scrapeMs / 1000.0);
+            System.out.printf("Throughput:  %.1f products/s while scraping, %.1f overall%n",
+                    scraped * 1000.0 / scrapeMs, scraped * 1000.0 / Math.max(1, elapsedMs));
+            long launched = ManagementFactory.getRuntimeMXBean().getStartTime();
+            System.out.println("First row:   " + (firstAt == 0 ? "n/a" : String.format(Locale.ROOT,
+                    "%.1f s after launch, %.1f s into the run", (firstAt - launched) / 1000.0, (firstAt - t0) / 1000.0)));
+            System.out.printf("Latency:     p50 %d ms, p95 %d ms, p99 %d ms, max %d ms (per attempt)%n",
+                    percentile(latencies, 50), percentile(latencies, 95), percentile(latencies, 99),
+                    latencies.length == 0 ? 0 : latencies[latencies.length - 1]);
+            System.out.printf("CPU:         %.1f s (%.0f%% of one core)%n",
+                    cpuMs / 1000.0, cpuMs * 100.0 / Math.max(1, elapsedMs));
+            System.out.println("Peak RSS:    " + (sampler.peakRssKb < 0 ? "n/a (needs /proc)"
+                    : (sampler.peakRssKb / 1024) + " MB"));
+            System.out.printf("Storefront:  %d request(s): %d page(s), %d JSON, %d image(s), %d x 429, %d x 503%n",
+                    st.requests, st.pages, st.json, st.images, st.throttled, st.errors);
+            System.out.println("Feed:        " + output);
+            return errors == 0 ? 0 : 2;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        } catch (IOException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    static long percentile(long[] sorted, int p) {
+        if (sorted.length == 0) return 0;
+        int i = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+    }
+
+    // -----------------------------
+    // Resource sampling
+    // -----------------------------
+
+    /**
+     * Polls RSS of this process and its descendants (browsers) for the peak,
+     * and remembers each child's CPU time so exited browsers still count.
+     */
+    private static final class Sampler implements Runnable {
+        private final Map<Long, Long> childCpu = new ConcurrentHashMap<>();
+        private volatile boolean running = true;
+        private volatile long peakRssKb;
+        private Thread thread;
+
+        void start() {
+            thread = new Thread(this, "apfeed-load-sampler");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void stop() {
+            running = false;
+            thread.interrupt();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                sample();
+                try {
+                    Thread.sleep(SAMPLE_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private void sample() {
+            long self = rssKb(ProcessHandle.current().pid());
+            if (self < 0) {
+                peakRssKb = -1;
+                return;
+            }
+            long total = self;
+            for (ProcessHandle h : ProcessHandle.current().descendants().toList()) {
+                long kb = rssKb(h.pid());
+                if (kb > 0) total += kb;
+                h.info().totalCpuDuration().ifPresent(d -> childCpu.merge(h.pid(), d.toNanos(), Math::max));
+            }
+            peakRssKb = Math.max(peakRssKb, total);
+        }
+
+        /** This JVM's CPU time plus the last seen CPU time of every child process. */
+        long cpuNanos() {
+            sample();
+            long own = ((com.sun.management.OperatingSystemMXBean)
+                    ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+            long children = 0;
+            for (long v : childCpu.values()) children += v;
+            return Math.max(0, own) + children;
+        }
+
+        /** VmRSS from /proc/{pid}/status, or -1 where there is no /proc. */
+        private static long rssKb(long pid) {
+            try {
+                for (String line : Files.readAllLines(Path.of("/proc/" + pid + "/status"))) {
+                    if (line.startsWith("VmRSS:")) {
+                        return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                    }
+                }
+            } catch (Exception ignored) {
+                // not Linux, or the process just exited
+            }
+            return -1;
+        }
+    }
+}
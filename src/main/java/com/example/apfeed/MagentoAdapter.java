@@ -0,0 +1,105 @@
+package com.example.apfeed;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.jsoup.Jsoup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Magento 2 / Adobe Commerce storefront GraphQL (/graphql), which is public
+ * for catalogue reads. Category listings are resolved by url_path.
+ */
+public class MagentoAdapter implements PlatformAdapter {
+    private static final int PAGE_SIZE = 100;
+
+    private static final String FIELDS =
+            "items { name sku url_key url_suffix stock_status " +
+            "small_image { url } description { html } categories { name } " +
+            "price_range { minimum_price { final_price { value currency } } } } " +
+            "page_info { total_pages }";
+
+    @Override
+    public String name() {
+        return "magento";
+    }
+
+    @Override
+    public List<JsonProductCapture.Captured> discover(String listingUrl, int maxProducts) {
+        String origin = JsonHttp.origin(listingUrl);
+        List<JsonProductCapture.Captured> out = new ArrayList<>();
+        if (origin == null) return out;
+
+        String path = JsonHttp.path(listingUrl).replaceAll("^/+|/+$", "").replaceFirst("\\.html$", "");
+        String filter;
+        if (path.isEmpty()) {
+            filter = "search: \"\"";
+        } else {
+            String uid = categoryUid(origin, path);
+            if (uid == null) return out;
+            filter = "filter: { category_uid: { eq: \"" + uid + "\" } }";
+        }
+
+        for (int page = 1; out.size() < maxProducts; page++) {
+            JsonNode products = query(origin, "{ products(" + filter + ", pageSize: " + PAGE_SIZE +
+                    ", currentPage: " + page + ") { " + FIELDS + " } }");
+            if (products == null) break;
+            JsonNode items = products.path("items");
+            for (JsonNode it : items) {
+                if (out.size() >= maxProducts) break;
+                out.add(toCaptured(it, origin));
+            }
+            if (items.size() == 0 || page >= products.path("page_info").path("total_pages").asInt(1)) break;
+        }
+        return out;
+    }
+
+    @Override
+    public JsonProductCapture.Captured fetch(String productUrl) {
+        String origin = JsonHttp.origin(productUrl);
+        String key = JsonHttp.lastSegment(productUrl);
+        if (origin == null || key.isEmpty() || !key.matches("[A-Za-z0-9_-]+")) return null;
+
+        JsonNode products = query(origin, "{ products(filter: { url_key: { eq: \"" + key + "\" } }) { " + FIELDS + " } }");
+        JsonNode item = products == null ? null : products.path("items").path(0);
+        return item == null || item.isMissingNode() ? null : toCaptured(item, origin);
+    }
+
+    private static JsonNode query(String origin, String gql) {
+        JsonNode root = JsonHttp.post(origin + "/graphql", Map.of("query", gql), null);
+        if (root == null || root.has("errors")) return null;
+        JsonNode p = root.path("data").path("products");
+        return p.isMissingNode() || p.isNull() ? null : p;
+    }
+
+    private static String categoryUid(String origin, String urlPath) {
+        if (!urlPath.matches("[A-Za-z0-9_/-]+")) return null;
+        JsonNode root = JsonHttp.post(origin + "/graphql", Map.of("query",
+                "{ categoryList(filters: { url_path: { eq: \"" + urlPath + "\" } }) { uid } }"), null);
+        String uid = root == null ? "" : JsonHttp.text(root.path("data").path("categoryList").path(0), "uid");
+        return uid.isEmpty() ? null : uid;
+    }
+
+    private static JsonProductCapture.Captured toCaptured(JsonNode it, String origin) {
+        JsonProductCapture.Captured c = new JsonProductCapture.Captured();
+        c.title = JsonHttp.text(it, "name");
+        c.sku = JsonHttp.text(it, "sku");
+        String key = JsonHttp.text(it, "url_key");
+        if (!key.isEmpty()) c.url = origin + "/" + key + JsonHttp.text(it, "url_suffix");
+        JsonNode price = it.path("price_range").path("minimum_price").path("final_price");
+        c.price = JsonHttp.text(price, "value");
+        c.currency = JsonHttp.text(price, "currency");
+        c.imageUrl = JsonHttp.text(it.path("small_image"), "url");
+        String html = JsonHttp.text(it.path("description"), "html");
+        if (!html.isEmpty()) {
+            c.description = Jsoup.parse(html).text().replaceAll("\\s+", " ").trim();
+        }
+        c.availability = StructuredData.mapAvailability(JsonHttp.text(it, "stock_status"));
+        for (JsonNode cat : it.path("categories")) {
+            String n = JsonHttp.text(cat, "name");
+            if (!n.isEmpty()) c.categories.add(n);
+        }
+        return c;
+    }
+}
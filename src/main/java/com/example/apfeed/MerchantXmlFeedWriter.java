@@ -0,0 +1,111 @@
+package com.example.apfeed;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * Streaming Google Merchant RSS 2.0 feed (also accepted by Meta and
+ * Microsoft Ads). One &lt;item&gt; per product, written as it arrives.
+ */
+public class MerchantXmlFeedWriter implements FeedWriter {
+    private static final String G = "http://base.google.com/ns/1.0";
+
+    private final OutputStream stream;
+    private final XMLStreamWriter xml;
+    private long rows;
+
+    public MerchantXmlFeedWriter(OutputStream stream, String title) throws IOException {
+        this.stream = stream;
+        try {
+            xml = XMLOutputFactory.newFactory().createXMLStreamWriter(stream, "UTF-8");
+            xml.writeStartDocument("UTF-8", "1.0");
+            xml.writeCharacters("\n");
+            xml.writeStartElement("rss");
+            xml.writeAttribute("version", "2.0");
+            xml.writeNamespace("g", G);
+            xml.writeStartElement("channel");
+            element("title", title == null || title.isBlank() ? "Product feed" : title);
+            element("description", "Product feed");
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void write(Product p) throws IOException {
+        try {
+            xml.writeCharacters("\n");
+            xml.writeStartElement("item");
+            gElement("id", p.id);
+            element("title", p.title);
+            element("description", p.description);
+            element("link", p.link);
+            gElement("condition", p.condition);
+            gElement("price", p.price);
+            gElement("availability", p.availability);
+            gElement("adult", p.adult == null ? null : p.adult.toLowerCase(Locale.ROOT));
+            gElement("image_link", p.imageLink);
+            gElement("mpn", p.mpn);
+            gElement("brand", p.brand);
+            gElement("product_type", p.productTypes);
+            xml.writeEndElement();
+            rows++;
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public long rows() {
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            xml.writeCharacters("\n");
+            xml.writeEndElement(); // channel
+            xml.writeEndElement(); // rss
+            xml.writeEndDocument();
+            xml.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            stream.close();
+        }
+    }
+
+    private void element(String name, String value) throws XMLStreamException {
+        if (value == null || value.isEmpty()) return;
+        xml.writeStartElement(name);
+        xml.writeCharacters(xmlSafe(value));
+        xml.writeEndElement();
+    }
+
+    private void gElement(String name, String value) throws XMLStreamException {
+        if (value == null || value.isEmpty()) return;
+        xml.writeStartElement("g", name, G);
+        xml.writeCharacters(xmlSafe(value));
+        xml.writeEndElement();
+    }
+
+    /** Drops control characters that are not allowed anywhere in XML 1.0. */
+    private static String xmlSafe(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x20 && c != '\t' && c != '\n' && c != '\r') {
+                StringBuilder sb = new StringBuilder(s.length());
+                for (int j = 0; j < s.length(); j++) {
+                    char d = s.charAt(j);
+                    if (d >= 0x20 || d == '\t' || d == '\n' || d == '\r') sb.append(d);
+                }
+                return sb.toString();
+            }
+        }
+        return s;
+    }
+}
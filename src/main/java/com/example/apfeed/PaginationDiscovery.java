@@ -0,0 +1,240 @@
+package com.example.apfeed;
+
+import org.jsoup.HttpStatusException;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Browser-free listing discovery for shops with classic pagination
+ * (?page=N, /page/N/, rel="next").
+ *
+ * Page 1 is fetched statically; if it links to a numbered page of the same
+ * listing, the remaining pages are fetched in parallel waves until a page adds
+ * no new product URLs. A page that times out or fails is skipped; only a 404
+ * (or a whole wave of failures) ends the listing. At most {@value #PER_HOST}
+ * pages per host are in flight across all listings. ?p=N is only taken as a
+ * page parameter on Magento pages, where it is the convention; elsewhere it
+ * is too often something else. Returns an empty list when the listing is not
+ * paginated statically (e.g. JS-rendered infinite scroll), so the caller can
+ * fall back to {@link ProductScraper#discoverLinksWithBrowser}.
+ */
+public class PaginationDiscovery {
+    private static final int TIMEOUT_MS = 20000;
+    private static final int PAGE_FANOUT = 6;
+    private static final int MAX_PAGES = 500;
+    private static final int PER_HOST = 4;
+
+    private static final Pattern PAGE_PARAM = Pattern.compile(
+            "([?&](?:page|pg|paged|pagenum|pagenumber|currentpage)=)(\\d+)",
+            Pattern.CASE_INSENSITIVE
+    );
+    private static final Pattern MAGENTO_PAGE_PARAM = Pattern.compile("([?&]p=)(\\d+)");
+    private static final Pattern PAGE_PATH = Pattern.compile("(/page/)(\\d+)(/?)", Pattern.CASE_INSENSITIVE);
+
+    private static final ExecutorService PAGES = daemonPool(PAGE_FANOUT * 2, "apfeed-page");
+    private static final Map<String, Semaphore> HOST_SLOTS = new ConcurrentHashMap<>();
+
+    /** Static paginated discovery; empty if the listing does not paginate statically. */
+    public static List<String> discover(String listingUrl, int maxLinks) {
+        Semaphore slots = HOST_SLOTS.computeIfAbsent(String.valueOf(hostOf(listingUrl)), h -> new Semaphore(PER_HOST));
+        Document first;
+        try {
+            slots.acquire();
+            try {
+                first = fetch(listingUrl);
+            } finally {
+                slots.release();
+            }
+        } catch (Exception e) {
+            return List.of();
+        }
+
+        String template = pageTemplate(first, listingUrl);
+        if (template == null) return List.of();
+
+        LinkedHashSet<String> links = new LinkedHashSet<>(productLinks(first, listingUrl));
+        int pages = 1;
+        int skipped = 0;
+        int page = 2;
+        boolean more = true;
+        AtomicBoolean stop = new AtomicBoolean();
+
+        while (more && links.size() < maxLinks && page <= MAX_PAGES) {
+            List<Future<List<String>>> wave = new ArrayList<>();
+            for (int i = 0; i < PAGE_FANOUT && page + i <= MAX_PAGES; i++) {
+                String url = template.replace("{n}", String.valueOf(page + i));
+                // Taken here, not in the pool, so a busy host never ties up page threads
+                try {
+                    slots.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                wave.add(PAGES.submit(() -> {
+                    try {
+                        return stop.get() ? List.<String>of() : productLinks(fetch(url), listingUrl);
+                    } finally {
+                        slots.release();
+                    }
+                }));
+            }
+            if (wave.isEmpty()) break;
+            int waveStart = page;
+            page += wave.size();
+
+            int failed = 0;
+            for (int i = 0; i < wave.size(); i++) {
+                List<String> found;
+                try {
+                    found = wave.get(i).get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof HttpStatusException h && (h.getStatusCode() == 404 || h.getStatusCode() == 410)) {
+                        found = List.of(); // past the last page
+                    } else {
+                        System.out.println("  Static pagination: skipped page " + (waveStart + i) + " (" + e.getCause() + ")");
+                        skipped++;
+                        failed++;
+                        continue;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    found = List.of();
+                }
+                int before = links.size();
+                for (String u : found) {
+                    if (links.size() >= maxLinks) break;
+                    links.add(u);
+                }
+                if (links.size() == before) {
+                    // Past the last page (or the shop repeats the last page): stop here
+                    more = false;
+                    break;
+                }
+                pages++;
+            }
+            if (failed == wave.size()) more = false; // the shop is not answering: stop
+            // Not cancelled: queued pages must still run to hand back their host slot
+            if (!more) stop.set(true);
+        }
+
+        System.out.println("  Static pagination: " + pages + " page(s), " + links.size() + " product link(s)"
+                + (skipped > 0 ? ", " + skipped + " page(s) skipped." : "."));
+        return new ArrayList<>(links);
+    }
+
+    // -----------------------------
+    // Pagination detection
+    // -----------------------------
+
+    /**
+     * URL of this listing with the page number replaced by "{n}", taken from
+     * rel="next" or any numbered page link of the same listing path. Null if
+     * the page has no recognisable pagination.
+     */
+    static String pageTemplate(Document doc, String listingUrl) {
+        String basePath = stripPage(pathOf(listingUrl));
+        if (basePath == null) return null;
+
+        List<Element> candidates = new ArrayList<>(doc.select("link[rel=next], a[rel=next]"));
+        candidates.addAll(doc.select("a[href]"));
+        boolean magento = looksLikeMagento(doc);
+
+        for (Element el : candidates) {
+            String href = el.attr("href");
+            if (href.isEmpty() || href.startsWith("#")) continue;
+            String abs = UrlUtils.normalizeUrl(listingUrl, href);
+            if (!UrlUtils.isSameSite(abs, listingUrl)) continue;
+
+            String path = pathOf(abs);
+            if (path == null || !basePath.equals(stripPage(path))) continue;
+
+            Matcher q = PAGE_PARAM.matcher(abs);
+            boolean param = q.find();
+            if (!param && magento) {
+                q = MAGENTO_PAGE_PARAM.matcher(abs);
+                param = q.find();
+            }
+            if (param && Integer.parseInt(q.group(2)) >= 2) {
+                return abs.substring(0, q.start(2)) + "{n}" + abs.substring(q.end(2));
+            }
+            Matcher p = PAGE_PATH.matcher(abs);
+            if (p.find() && Integer.parseInt(p.group(2)) >= 2) {
+                return abs.substring(0, p.start(2)) + "{n}" + abs.substring(p.end(2));
+            }
+        }
+        return null;
+    }
+
+    /** Same markers {@link PlatformDetector} uses for Magento. */
+    static boolean looksLikeMagento(Document doc) {
+        return doc.selectFirst("script[type=text/x-magento-init], [data-mage-init], "
+                + "script[src*=Magento_], link[href*=Magento_]") != null;
+    }
+
+    private static String stripPage(String path) {
+        if (path == null) return null;
+        String p = PAGE_PATH.matcher(path).replaceAll("/");
+        return p.endsWith("/") && p.length() > 1 ? p.substring(0, p.length() - 1) : p;
+    }
+
+    private static String pathOf(String url) {
+        try {
+            return URI.create(url).getPath();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String hostOf(String url) {
+        try {
+            return URI.create(url).getHost();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // -----------------------------
+    // Fetch + link extraction
+    // -----------------------------
+
+    private static Document fetch(String url) throws Exception {
+        return Jsoup.connect(url)
+                .userAgent(BrowserPool.USER_AGENT)
+                .timeout(TIMEOUT_MS)
+                .get();
+    }
+
+    /** Same-site product-looking links on a page, in document order (pagination links excluded). */
+    static List<String> productLinks(Document doc, String listingUrl) {
+        String basePath = stripPage(pathOf(listingUrl));
+        String host = hostOf(listingUrl);
+        List<String> out = new ArrayList<>();
+        for (Element a : doc.select("a[href]")) {
+            String href = a.attr("href");
+            if (href.isEmpty() || href.startsWith("#")) continue;
+            String abs = UrlUtils.normalizeUrl(listingUrl, href);
+            if (!UrlUtils.isSameSite(abs, listingUrl)) continue;
+            String path = pathOf(abs);
+            if (path == null || PAGE_PATH.matcher(path).find()) continue;
+            if (path.equals(basePath) || stripPage(path).equals(basePath)) continue;
+            if (UrlUtils.looksLikeProductPath(host, path)) out.add(abs);
+        }
+        return out;
+    }
+
+    static ExecutorService daemonPool(int threads, String name) {
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+}
@@ -0,0 +1,401 @@
+package com.example.apfeed;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Feed writer that splits rows over several files: per product type or brand,
+ * and/or at most N rows or M megabytes per file. Each file is an ordinary
+ * {@link FeedWriters} feed in the output's format, named after the output:
+ * feed.xlsx -> feed-kitchen-001.xlsx, feed-kitchen-002.xlsx, ...
+ *
+ * Every partition is written by its own task on a pool with one thread per
+ * core (a partition's rows stay in arrival order), so formatting, XLSX
+ * zipping and gzip run in parallel. close() waits for all of them and
+ * writes {base}.manifest.json listing each file with its rows, bytes and
+ * SHA-256.
+ *
+ * .xlsx partitions never exceed Excel's sheet limit of 1,048,575 data rows.
+ * At most {@link #MAX_OPEN} files are open at once: when a partition needs
+ * one more, the least recently written partition closes its file and, if
+ * more of its rows come, continues in its next part (-NNN+1).
+ */
+public class PartitionedFeedWriter implements FeedWriter {
+    static final long XLSX_MAX_ROWS = 1_048_575;
+    // rows are handed to a partition's task in batches of this size...
+    private static final int BATCH = 256;
+    // ...and at most this many batches wait across all partitions
+    private static final int MAX_PENDING_BATCHES = 32;
+    // open partition files (each an SXSSF workbook or a gzip stream); a few more while closes catch up
+    static final int MAX_OPEN = 64;
+    private static final int MAX_SLUG = 60;
+
+    private static final ObjectMapper JSON = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    /** How to split: "type" or "brand" and/or "rows=N", "mb=N", comma separated. */
+    public static class Spec {
+        /** "", "type" or "brand". */
+        public String key = "";
+        public long maxRows;
+        public long maxBytes;
+
+        public static Spec parse(String s) {
+            Spec spec = new Spec();
+            for (String part : s.toLowerCase(Locale.ROOT).split(",")) {
+                String p = part.trim();
+                if (p.isEmpty()) continue;
+                if (p.equals("type") || p.equals("brand")) {
+                    spec.key = p;
+                } else if (p.startsWith("rows=")) {
+                    spec.maxRows = Long.parseLong(p.substring(5));
+                } else if (p.startsWith("mb=")) {
+                    spec.maxBytes = (long) (Double.parseDouble(p.substring(3)) * (1 << 20));
+                } else {
+                    throw new IllegalArgumentException("Unknown partition option '" + p
+                            + "' (use type, brand, rows=N, mb=N)");
+                }
+            }
+            return spec;
+        }
+    }
+
+    /** One line of the manifest. */
+    public static class FileInfo {
+        public String file;
+        public String key;
+        public int part;
+        public long rows;
+        public long bytes;
+        public String sha256;
+    }
+
+    /** The manifest file. */
+    public static class Manifest {
+        public String feed;
+        public String created;
+        public String partitionBy;
+        public long maxRows;
+        public long maxBytes;
+        public long rows;
+        public List<FileInfo> files = new ArrayList<>();
+    }
+
+    private final String output;
+    private final String title;
+    private final Spec spec;
+    private final String base;
+    private final String extension;
+    private final long maxRows;
+    private final ExecutorService pool;
+    private final Semaphore pending = new Semaphore(MAX_PENDING_BATCHES);
+    private final Map<String, Partition> partitions = new LinkedHashMap<>();
+    private final List<FileInfo> finished = Collections.synchronizedList(new ArrayList<>());
+    // partitions with an open file, least recently written first; guarded by itself
+    private final LinkedHashMap<Partition, Boolean> open = new LinkedHashMap<>(16, 0.75f, true);
+    private volatile IOException error;
+    private long rows;
+
+    public PartitionedFeedWriter(String output, String title, Spec spec) throws IOException {
+        this.output = output;
+        this.title = title;
+        this.spec = spec;
+        String lower = output.toLowerCase(Locale.ROOT);
+        int dot = lower.endsWith(".gz") ? lower.lastIndexOf('.', lower.length() - 4) : lower.lastIndexOf('.');
+        if (dot <= 0 || dot < output.lastIndexOf('/') || dot < output.lastIndexOf('\\')) {
+            throw new IOException("Partitioned output needs a file extension: " + output);
+        }
+        this.base = output.substring(0, dot);
+        this.extension = output.substring(dot);
+        long cap = spec.maxRows > 0 ? spec.maxRows : Long.MAX_VALUE;
+        this.maxRows = lower.endsWith(".xlsx") ? Math.min(cap, XLSX_MAX_ROWS) : cap;
+        this.pool = PaginationDiscovery.daemonPool(Runtime.getRuntime().availableProcessors(), "apfeed-export");
+    }
+
+    @Override
+    public void write(Product p) throws IOException {
+        if (error != null) throw error;
+        String key = switch (spec.key) {
+            case "type" -> slug(p.productTypes);
+            case "brand" -> slug(p.brand);
+            default -> "";
+        };
+        partitions.computeIfAbsent(key, Partition::new).offer(p);
+        rows++;
+    }
+
+    @Override
+    public long rows() {
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            for (Partition part : partitions.values()) part.finish();
+            if (partitions.isEmpty()) new Partition(spec.key.isEmpty() ? "" : "other").finish();
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while exporting", e);
+        } finally {
+            pool.shutdownNow();
+        }
+        if (error != null) throw error;
+
+        Manifest m = new Manifest();
+        m.feed = Path.of(output).getFileName().toString();
+        m.created = Instant.now().toString();
+        m.partitionBy = spec.key;
+        m.maxRows = maxRows == Long.MAX_VALUE ? 0 : maxRows;
+        m.maxBytes = spec.maxBytes;
+        m.rows = rows;
+        m.files.addAll(finished);
+        m.files.sort(Comparator.comparing((FileInfo f) -> f.key).thenComparingInt(f -> f.part));
+        JSON.writeValue(Path.of(base + ".manifest.json").toFile(), m);
+        System.out.println("Partitioned feed: " + m.files.size() + " file(s), manifest " + base + ".manifest.json");
+    }
+
+    // -----------------------------
+    // Partitions
+    // -----------------------------
+
+    /**
+     * Rows for one key. offer()/finish() are called by the producer, which
+     * fills a batch; drain() runs on the pool, at most one at a time per
+     * partition, and owns the open file.
+     */
+    private final class Partition {
+        final String key;
+        final ConcurrentLinkedQueue<List<Product>> queue = new ConcurrentLinkedQueue<>();
+        private List<Product> batch = new ArrayList<>(BATCH);
+        private boolean scheduled;
+        private boolean closing;
+        // asked to close its file to stay under MAX_OPEN
+        private boolean closeIdle;
+        // owned by the drain task
+        private FeedWriter writer;
+        private Path file;
+        private int part;
+        private long fileRows;
+        private long fileBytes;
+        private final String[] cells = new String[ExcelExporter.HEADERS.length];
+
+        Partition(String key) {
+            this.key = key;
+        }
+
+        void offer(Product p) throws IOException {
+            batch.add(p);
+            if (batch.size() >= BATCH) hand();
+        }
+
+        void finish() throws IOException {
+            if (!batch.isEmpty()) hand();
+            synchronized (this) {
+                closing = true;
+            }
+            schedule();
+        }
+
+        private void hand() throws IOException {
+            try {
+                pending.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while exporting", e);
+            }
+            queue.add(batch);
+            batch = new ArrayList<>(BATCH);
+            schedule();
+        }
+
+        /** Closes the open file once the rows already handed over are written. */
+        void closeWhenIdle() {
+            synchronized (this) {
+                closeIdle = true;
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            synchronized (this) {
+                if (scheduled) return;
+                scheduled = true;
+            }
+            pool.execute(this::drain);
+        }
+
+        private void drain() {
+            while (true) {
+                List<Product> rows;
+                while ((rows = queue.poll()) != null) {
+                    if (writer != null) {
+                        synchronized (open) {
+                            open.get(this);     // most recently used
+                        }
+                    }
+                    try {
+                        for (Product p : rows) {
+                            if (error == null) append(p);
+                        }
+                    } catch (IOException e) {
+                        fail(e);
+                    } finally {
+                        pending.release();
+                    }
+                }
+                boolean close;
+                synchronized (this) {
+                    if (!queue.isEmpty()) continue;
+                    close = closing;
+                    if (!close && !closeIdle) {
+                        scheduled = false;
+                        return;
+                    }
+                    closeIdle = false;
+                }
+                if (!close) {
+                    closeFile();    // rows handed over meanwhile reopen it as the next part
+                    continue;
+                }
+                if (part == 0) {
+                    try {
+                        open();     // an empty partition still gets a (header-only) file
+                    } catch (IOException e) {
+                        fail(e);
+                    }
+                }
+                closeFile();
+                synchronized (this) {
+                    scheduled = false;
+                }
+                return;
+            }
+        }
+
+        private void append(Product p) throws IOException {
+            long size = spec.maxBytes > 0 ? rowBytes(p) : 0;
+            if (writer != null && (fileRows >= maxRows || (spec.maxBytes > 0 && fileRows > 0
+                    && fileBytes + size > spec.maxBytes))) {
+                closeFile();
+            }
+            if (writer == null) open();
+            writer.write(p);
+            fileRows++;
+            fileBytes += size;
+        }
+
+        private void open() throws IOException {
+            part++;
+            StringBuilder name = new StringBuilder(base);
+            if (!key.isEmpty()) name.append('-').append(key);
+            name.append('-').append(String.format(Locale.ROOT, "%03d", part)).append(extension);
+            file = Path.of(name.toString());
+            writer = FeedWriters.open(file.toString(), title);
+            fileRows = 0;
+            fileBytes = 0;
+            Partition evict = null;
+            synchronized (PartitionedFeedWriter.this.open) {
+                PartitionedFeedWriter.this.open.put(this, Boolean.TRUE);
+                if (PartitionedFeedWriter.this.open.size() > MAX_OPEN) {
+                    // out of the map now, so the next open picks another partition
+                    Iterator<Partition> eldest = PartitionedFeedWriter.this.open.keySet().iterator();
+                    evict = eldest.next();
+                    eldest.remove();
+                }
+            }
+            if (evict != null && evict != this) evict.closeWhenIdle();
+        }
+
+        private void closeFile() {
+            if (writer == null) return;
+            synchronized (PartitionedFeedWriter.this.open) {
+                PartitionedFeedWriter.this.open.remove(this);
+            }
+            try {
+                writer.close();
+                FileInfo f = new FileInfo();
+                f.file = file.getFileName().toString();
+                f.key = key;
+                f.part = part;
+                f.rows = fileRows;
+                f.bytes = Files.size(file);
+                f.sha256 = sha256(file);
+                finished.add(f);
+            } catch (IOException e) {
+                fail(e);
+            } finally {
+                writer = null;
+            }
+        }
+
+        /** Uncompressed size of the row as text, a close enough measure for every format. */
+        private long rowBytes(Product p) {
+            ExcelExporter.toColumns(p, cells);
+            long n = cells.length;
+            for (String c : cells) n += c.getBytes(StandardCharsets.UTF_8).length;
+            return n;
+        }
+    }
+
+    private void fail(IOException e) {
+        if (error == null) error = e;
+    }
+
+    // -----------------------------
+    // Helpers
+    // -----------------------------
+
+    /**
+     * File-name-safe partition key; "other" when the value is empty. A key
+     * longer than {@value #MAX_SLUG} characters is cut and ends in a short
+     * hash of the whole value, so long values sharing a prefix stay apart.
+     */
+    static String slug(String value) {
+        if (value == null) return "other";
+        String lower = value.toLowerCase(Locale.ROOT);
+        StringBuilder sb = new StringBuilder();
+        for (char c : lower.toCharArray()) {
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                sb.append(c);
+            } else if (sb.length() > 0 && sb.charAt(sb.length() - 1) != '-') {
+                sb.append('-');
+            }
+        }
+        while (sb.length() > 0 && sb.charAt(sb.length() - 1) == '-') sb.setLength(sb.length() - 1);
+        if (sb.length() > MAX_SLUG) {
+            sb.setLength(MAX_SLUG - 9);
+            while (sb.length() > 0 && sb.charAt(sb.length() - 1) == '-') sb.setLength(sb.length() - 1);
+            try {
+                byte[] h = MessageDigest.getInstance("SHA-256").digest(lower.getBytes(StandardCharsets.UTF_8));
+                sb.append('-').append(HexFormat.of().formatHex(h, 0, 4));
+            } catch (java.security.NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return sb.length() == 0 ? "other" : sb.toString();
+    }
+
+    private static String sha256(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] buf = new byte[1 << 16];
+            int n;
+            while ((n = in.read(buf)) > 0) md.update(buf, 0, n);
+            return HexFormat.of().formatHex(md.digest());
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
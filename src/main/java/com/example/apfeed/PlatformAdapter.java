@@ -0,0 +1,21 @@
+package com.example.apfeed;
+
+import java.util.List;
+
+/**
+ * Browser-free discovery and extraction through an e-commerce platform's
+ * public JSON endpoints. Implementations return empty results (never throw)
+ * when an endpoint is missing or locked down, so the caller can fall back to
+ * the generic HTML/browser path.
+ */
+public interface PlatformAdapter {
+
+    /** Short platform name for logs ("shopify", "woocommerce", ...). */
+    String name();
+
+    /** Products of a listing/category URL (or the whole catalogue); empty if unavailable. */
+    List<JsonProductCapture.Captured> discover(String listingUrl, int maxProducts);
+
+    /** A single product page's data, or null if unavailable. */
+    JsonProductCapture.Captured fetch(String productUrl);
+}
@@ -0,0 +1,63 @@
+package com.example.apfeed;
+
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+
+import java.net.URI;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fingerprints a shop's platform from the first page fetched on its host
+ * (response headers + HTML markers) and hands out the matching
+ * {@link PlatformAdapter}. One static request per host per run.
+ */
+public class PlatformDetector {
+    private static final Map<String, Optional<PlatformAdapter>> BY_HOST = new ConcurrentHashMap<>();
+
+    /** Adapter for the URL's host, or null if the platform is unknown/unsupported. */
+    public static PlatformAdapter forUrl(String url) {
+        String host;
+        try {
+            host = URI.create(url).getHost();
+        } catch (Exception e) {
+            return null;
+        }
+        if (host == null) return null;
+        return BY_HOST.computeIfAbsent(host.toLowerCase(Locale.ROOT), h -> Optional.ofNullable(detect(url)))
+                .orElse(null);
+    }
+
+    private static PlatformAdapter detect(String url) {
+        try {
+            Connection.Response res = Jsoup.connect(url)
+                    .userAgent(BrowserPool.USER_AGENT)
+                    .timeout(20000)
+                    .ignoreHttpErrors(true)
+                    .execute();
+            PlatformAdapter a = fingerprint(res.headers(), res.body());
+            if (a != null) {
+                System.out.println("  Platform: " + a.name() + " (" + URI.create(url).getHost() + ")");
+            }
+            return a;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    static PlatformAdapter fingerprint(Map<String, String> headers, String html) {
+        for (String k : headers.keySet()) {
+            String h = k.toLowerCase(Locale.ROOT);
+            if (h.equals("x-shopid") || h.equals("x-shopify-stage")) return new ShopifyAdapter();
+        }
+        if (html == null) return null;
+        if (html.contains("cdn.shopify.com") || html.contains("Shopify.theme")) return new ShopifyAdapter();
+        if (html.contains("wp-content/plugins/woocommerce") || html.contains("woocommerce-page")
+                || html.contains("wc-block-")) return new WooCommerceAdapter();
+        if (html.contains("text/x-magento-init") || html.contains("Magento_")) return new MagentoAdapter();
+        if (html.contains("cdn11.bigcommerce.com") || html.contains("stencilBootstrap")) return new BigCommerceAdapter();
+        return null;
+    }
+}
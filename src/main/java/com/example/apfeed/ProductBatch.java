@@ -0,0 +1,344 @@
+package com.example.apfeed;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Column-oriented store for many {@link Product} rows.
+ *
+ * A List of Products costs a 64-byte object plus a fresh String per field per
+ * row, although condition, availability, adult and brand are the same on
+ * almost every row and product type and price repeat heavily. Here:
+ * <ul>
+ *   <li>low-cardinality columns are dictionary-encoded (16-bit codes, widened
+ *       to 32 bits only if a column outgrows 65k distinct values);</li>
+ *   <li>prices in the canonical "12.50 GBP" form are kept as minor units plus
+ *       a currency code, anything else goes through a dictionary verbatim;</li>
+ *   <li>id and mpn, normally "prefix + row number", are kept as a prefix code
+ *       plus an int, with a raw fallback for values that do not fit;</li>
+ *   <li>only title, description, link and image link stay plain Strings.</li>
+ * </ul>
+ * Every value round-trips exactly, including nulls.
+ *
+ * {@link #flyweight()} iterates rows through one reused Product, so feed
+ * writers can stream a batch without a per-row object.
+ */
+public class ProductBatch {
+    private int size;
+
+    private String[] title;
+    private String[] description;
+    private String[] link;
+    private String[] imageLink;
+
+    private final NumberedColumn id;
+    private final NumberedColumn mpn;
+    private final DictColumn condition;
+    private final DictColumn availability;
+    private final DictColumn adult;
+    private final DictColumn brand;
+    private final DictColumn productTypes;
+
+    // price: minor units + currency code, or NO_CENTS + code into priceText
+    private static final long NO_CENTS = Long.MIN_VALUE;
+    private long[] priceCents;
+    private final DictColumn priceCode;
+    private final Dict currencies = new Dict();
+    private final Dict priceText = new Dict();
+
+    public ProductBatch() {
+        this(1024);
+    }
+
+    public ProductBatch(int initialCapacity) {
+        int cap = Math.max(16, initialCapacity);
+        title = new String[cap];
+        description = new String[cap];
+        link = new String[cap];
+        imageLink = new String[cap];
+        priceCents = new long[cap];
+        id = new NumberedColumn(cap);
+        mpn = new NumberedColumn(cap);
+        condition = new DictColumn(cap);
+        availability = new DictColumn(cap);
+        adult = new DictColumn(cap);
+        brand = new DictColumn(cap);
+        productTypes = new DictColumn(cap);
+        priceCode = new DictColumn(cap);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Appends a row; the Product itself is not retained. Returns its index. */
+    public int add(Product p) {
+        if (size == link.length) grow();
+        int i = size++;
+        title[i] = p.title;
+        description[i] = p.description;
+        link[i] = p.link;
+        imageLink[i] = p.imageLink;
+        id.set(i, p.id);
+        mpn.set(i, p.mpn);
+        condition.set(i, p.condition);
+        availability.set(i, p.availability);
+        adult.set(i, p.adult);
+        brand.set(i, p.brand);
+        productTypes.set(i, p.productTypes);
+        setPrice(i, p.price);
+        return i;
+    }
+
+    /** Copies row i into the given Product and returns it. */
+    public Product fill(int i, Product into) {
+        check(i);
+        into.id = id.get(i);
+        into.title = title[i];
+        into.description = description[i];
+        into.link = link[i];
+        into.condition = condition.get(i);
+        into.price = price(i);
+        into.availability = availability.get(i);
+        into.adult = adult.get(i);
+        into.imageLink = imageLink[i];
+        into.mpn = mpn.get(i);
+        into.brand = brand.get(i);
+        into.productTypes = productTypes.get(i);
+        return into;
+    }
+
+    /** Row i as a new Product. */
+    public Product get(int i) {
+        return fill(i, new Product());
+    }
+
+    public String link(int i) {
+        check(i);
+        return link[i];
+    }
+
+    public String brand(int i) {
+        check(i);
+        return brand.get(i);
+    }
+
+    public String availability(int i) {
+        check(i);
+        return availability.get(i);
+    }
+
+    public void setAvailability(int i, String value) {
+        check(i);
+        availability.set(i, value);
+    }
+
+    public String price(int i) {
+        check(i);
+        long cents = priceCents[i];
+        int code = priceCode.code(i);
+        if (cents == NO_CENTS) return priceText.value(code);
+        long whole = cents / 100;
+        int frac = (int) (cents % 100);
+        return whole + (frac < 10 ? ".0" : ".") + frac + " " + currencies.value(code);
+    }
+
+    public void setPrice(int i, String value) {
+        long cents = parseCents(value);
+        if (cents == NO_CENTS) {
+            priceCents[i] = NO_CENTS;
+            priceCode.setCode(i, priceText.code(value));
+        } else {
+            priceCents[i] = cents;
+            priceCode.setCode(i, currencies.code(value.substring(value.length() - 3)));
+        }
+    }
+
+    /** Iterates all rows through one reused Product (do not keep references to it). */
+    public Iterable<Product> flyweight() {
+        return flyweight(null, size);
+    }
+
+    /** Iterates the given rows, in order, through one reused Product. */
+    public Iterable<Product> flyweight(int[] rows, int count) {
+        return () -> new Iterator<>() {
+            private final Product row = new Product();
+            private int k;
+
+            @Override
+            public boolean hasNext() {
+                return k < count;
+            }
+
+            @Override
+            public Product next() {
+                if (k >= count) throw new NoSuchElementException();
+                int i = rows == null ? k : rows[k];
+                k++;
+                return fill(i, row);
+            }
+        };
+    }
+
+    private void check(int i) {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException("row " + i + " of " + size);
+    }
+
+    private void grow() {
+        int cap = link.length + (link.length >> 1);
+        title = Arrays.copyOf(title, cap);
+        description = Arrays.copyOf(description, cap);
+        link = Arrays.copyOf(link, cap);
+        imageLink = Arrays.copyOf(imageLink, cap);
+        priceCents = Arrays.copyOf(priceCents, cap);
+        id.grow(cap);
+        mpn.grow(cap);
+        condition.grow(cap);
+        availability.grow(cap);
+        adult.grow(cap);
+        brand.grow(cap);
+        productTypes.grow(cap);
+        priceCode.grow(cap);
+    }
+
+    /**
+     * Minor units for a price written exactly as "123.45 XYZ" (no sign, no
+     * leading zeros, two decimals), else NO_CENTS so it is stored verbatim.
+     */
+    static long parseCents(String s) {
+        if (s == null) return NO_CENTS;
+        int n = s.length();
+        // shortest form: "0.00 XYZ"
+        if (n < 8 || n > 22 || s.charAt(n - 4) != ' ') return NO_CENTS;
+        for (int k = n - 3; k < n; k++) {
+            char c = s.charAt(k);
+            if (c < 'A' || c > 'Z') return NO_CENTS;
+        }
+        int dot = n - 7;
+        if (s.charAt(dot) != '.') return NO_CENTS;
+        if (dot > 1 && s.charAt(0) == '0') return NO_CENTS;
+        long v = 0;
+        for (int k = 0; k < n - 4; k++) {
+            if (k == dot) continue;
+            char c = s.charAt(k);
+            if (c < '0' || c > '9') return NO_CENTS;
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    // -----------------------------
+    // Columns
+    // -----------------------------
+
+    /** Distinct values of one column, interned to codes 0..n-1; null is -1. */
+    static final class Dict {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private String[] values = new String[8];
+        private int n;
+
+        int code(String s) {
+            if (s == null) return -1;
+            Integer c = codes.get(s);
+            if (c != null) return c;
+            if (n == values.length) values = Arrays.copyOf(values, n * 2);
+            values[n] = s;
+            codes.put(s, n);
+            return n++;
+        }
+
+        String value(int code) {
+            return code < 0 ? null : values[code];
+        }
+
+        int size() {
+            return n;
+        }
+    }
+
+    /** Dictionary codes for one column, 16-bit until a wider code is needed. */
+    static final class DictColumn {
+        private final Dict dict = new Dict();
+        private char[] narrow;
+        private int[] wide;
+
+        DictColumn(int cap) {
+            narrow = new char[cap];
+        }
+
+        String get(int i) {
+            return dict.value(code(i));
+        }
+
+        void set(int i, String value) {
+            setCode(i, dict.code(value));
+        }
+
+        // stored as code + 1 so that 0 means null
+        int code(int i) {
+            return (wide != null ? wide[i] : narrow[i]) - 1;
+        }
+
+        void setCode(int i, int code) {
+            int stored = code + 1;
+            if (wide == null && stored > Character.MAX_VALUE) {
+                wide = new int[narrow.length];
+                for (int k = 0; k < narrow.length; k++) wide[k] = narrow[k];
+                narrow = null;
+            }
+            if (wide != null) wide[i] = stored;
+            else narrow[i] = (char) stored;
+        }
+
+        void grow(int cap) {
+            if (wide != null) wide = Arrays.copyOf(wide, cap);
+            else narrow = Arrays.copyOf(narrow, cap);
+        }
+    }
+
+    /**
+     * "prefix" + non-negative int (e.g. "GGG-42" or "42") as a dictionary
+     * prefix plus the number; other values go to a lazily created raw array.
+     */
+    static final class NumberedColumn {
+        private final DictColumn prefix;
+        private int[] number;
+        private String[] raw;
+
+        NumberedColumn(int cap) {
+            prefix = new DictColumn(cap);
+            number = new int[cap];
+        }
+
+        String get(int i) {
+            if (number[i] < 0) return raw[i];
+            String p = prefix.get(i);
+            return p.isEmpty() ? Integer.toString(number[i]) : p + number[i];
+        }
+
+        void set(int i, String s) {
+            int start = s == null ? 0 : s.length();
+            while (start > 0 && Character.isDigit(s.charAt(start - 1)) && s.charAt(start - 1) < 128) start--;
+            int digits = s == null ? 0 : s.length() - start;
+            boolean fits = digits > 0 && digits <= 9 && (digits == 1 || s.charAt(start) != '0');
+            if (fits) {
+                number[i] = Integer.parseInt(s, start, s.length(), 10);
+                prefix.set(i, s.substring(0, start));
+                if (raw != null) raw[i] = null;
+            } else {
+                number[i] = -1;
+                if (raw == null) raw = new String[number.length];
+                raw[i] = s;
+            }
+        }
+
+        void grow(int cap) {
+            prefix.grow(cap);
+            number = Arrays.copyOf(number, cap);
+            if (raw != null) raw = Arrays.copyOf(raw, cap);
+        }
+    }
+}
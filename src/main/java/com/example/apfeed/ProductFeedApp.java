@@ -1,15 +1,146 @@
 package com.example.apfeed;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.net.URI;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class ProductFeedApp {
 
     public static void main(String[] args) {
+        // Behaviour flags (--capture-json, ...) may appear anywhere
+        List<String> argList = new ArrayList<>(Arrays.asList(args));
+        ScrapeOptions options = null;
+        try {
+            options = ScrapeOptions.parse(argList);
+        } catch (IllegalArgumentException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            System.exit(1);
+        }
+        // Output split (single-merchant and sharded modes; batch jobs set it in the manifest)
+        String partition = null;
+        int pi = argList.indexOf("--partition");
+        if (pi >= 0 && pi + 1 < argList.size()) {
+            partition = argList.remove(pi + 1);
+            argList.remove(pi);
+        }
+        args = argList.toArray(new String[0]);
+        HtmlPruner.setEnabled(options.prune);
+        if (options.urlRules != null) {
+            try {
+                UrlRules.load(Path.of(options.urlRules));
+            } catch (Exception e) {
+                System.err.println("ERROR reading URL rules " + options.urlRules + ": " + e.getMessage());
+                System.exit(1);
+            }
+        }
+
+        // -----------------------------
+        // Batch mode: many merchants, one browser fleet
+        // -----------------------------
+        if (args.length >= 2 && args[0].equals("--batch")) {
+            int workers = 0;
+            for (int i = 2; i + 1 < args.length; i++) {
+                if (args[i].equals("--workers")) workers = Integer.parseInt(args[i + 1]);
+            }
+            System.exit(BatchRunner.run(args[1], workers, options));
+        }
+
+        // -----------------------------
+        // Service mode: warm browsers + local job API
+        // -----------------------------
+        if (args.length >= 1 && args[0].equals("--serve")) {
+            int port = 8765;
+            int workers = 2;
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("--workers") && i + 1 < args.length) {
+                    workers = Integer.parseInt(args[++i]);
+                } else if (args[i].matches("\\d+")) {
+                    port = Integer.parseInt(args[i]);
+                }
+            }
+            System.exit(ScrapeService.run(port, workers, options));
+        }
+
+        // -----------------------------
+        // Refresh mode: price + availability only
+        // -----------------------------
+        if (args.length >= 3 && args[0].equals("--refresh")) {
+            String currency = null;
+            int workers = 0;
+            for (int i = 3; i + 1 < args.length; i++) {
+                if (args[i].equals("--currency")) currency = args[i + 1].trim().toUpperCase(Locale.ROOT);
+                if (args[i].equals("--workers")) workers = Integer.parseInt(args[i + 1]);
+            }
+            System.exit(FeedRefresher.run(args[1], args[2], currency, workers, options));
+        }
+
+        // -----------------------------
+        // Sharded mode: coordinator + worker processes
+        // -----------------------------
+        if (args.length >= 5 && args[0].equals("--coordinate")) {
+            FeedJob job = new FeedJob(args[1].trim(), args[2].trim().toUpperCase(Locale.ROOT), args[3], args[4]);
+            job.partition = partition;
+            int spawn = 2;
+            int threads = 1;
+            int port = 8790;
+            String bind = "127.0.0.1";
+            for (int i = 5; i + 1 < args.length; i++) {
+                if (args[i].equals("--spawn")) spawn = Integer.parseInt(args[i + 1]);
+                if (args[i].equals("--workers")) threads = Integer.parseInt(args[i + 1]);
+                if (args[i].equals("--port")) port = Integer.parseInt(args[i + 1]);
+                if (args[i].equals("--bind")) bind = args[i + 1];
+            }
+            System.exit(ShardCoordinator.run(job, bind, port, spawn, threads, options));
+        }
+        if (args.length >= 2 && args[0].equals("--worker")) {
+            String token = System.getenv().getOrDefault(ShardCoordinator.TOKEN_ENV, "");
+            String name = "worker-" + ProcessHandle.current().pid();
+            int threads = 1;
+            for (int i = 2; i + 1 < args.length; i++) {
+                if (args[i].equals("--token")) token = args[i + 1];
+                if (args[i].equals("--name")) name = args[i + 1];
+                if (args[i].equals("--workers")) threads = Integer.parseInt(args[i + 1]);
+            }
+            System.exit(ShardWorker.run(args[1], token, name, threads, options));
+        }
+
+        // -----------------------------
+        // Synthetic storefront + offline load test
+        // -----------------------------
+        if (args.length >= 1 && (args[0].equals("--storefront") || args[0].equals("--loadtest"))) {
+            List<String> rest = new ArrayList<>(Arrays.asList(args).subList(1, args.length));
+            SyntheticStorefront.Config shop = SyntheticStorefront.parse(rest);
+            int port = 8800;
+            int workers = 1;
+            String output = null;
+            for (int i = 0; i < rest.size(); i++) {
+                if (rest.get(i).equals("--workers") && i + 1 < rest.size()) {
+                    workers = Integer.parseInt(rest.get(++i));
+                } else if (rest.get(i).equals("--output") && i + 1 < rest.size()) {
+                    output = rest.get(++i);
+                } else if (rest.get(i).matches("\\d+")) {
+                    port = Integer.parseInt(rest.get(i));
+                }
+            }
+            System.exit(args[0].equals("--storefront")
+                    ? SyntheticStorefront.run(shop, port)
+                    : LoadTest.run(shop, workers, output, options));
+        }
+
+        // -----------------------------
+        // Offline parser checks against recorded fixtures
+        // -----------------------------
+        if (args.length >= 1 && args[0].equals("--check")) {
+            System.exit(FixtureCheck.run(new ArrayList<>(Arrays.asList(args).subList(1, args.length))));
+        }
+
+        // -----------------------------
+        // Pruned vs unpruned Jsoup parses (re-run after Jsoup upgrades)
+        // -----------------------------
+        if (args.length >= 1 && args[0].equals("--prune-check")) {
+            System.exit(PruneCheck.run(new ArrayList<>(Arrays.asList(args).subList(1, args.length))));
+        }
+
         Scanner scanner = new Scanner(System.in);
 
         String companyName;
@@ -36,7 +167,7 @@ public class ProductFeedApp {
                     "URL list file (e.g. Urls.txt)");
 
             outputFile = prompt(scanner,
-                    "Output Excel file (e.g. output.xlsx)");
+                    "Output feed file (e.g. output.xlsx, output.tsv.gz, output.xml)");
         } else {
             // -----------------------------
             // Legacy CLI support
@@ -51,9 +182,12 @@ public class ProductFeedApp {
         System.out.println("Company: " + companyName);
         System.out.println("Currency: " + currencyCode);
         System.out.println("URL list file: " + urlListFile);
-        System.out.println("Output Excel: " + outputFile);
+        System.out.println("Output feed: " + outputFile);
         System.out.println("----------------------\n");
 
+        // Load the product type dictionary while the browser starts and URLs are read
+        ProductTypeDetector.preloadInBackground();
+
         // -----------------------------
         // Validate URL list file
         // -----------------------------
@@ -63,96 +197,53 @@ public class ProductFeedApp {
             System.exit(1);
         }
 
-        List<String> inputUrls = readUrlList(urlListFile);
-        if (inputUrls.isEmpty()) {
+        if (!FeedJobRun.hasAnyUrl(urlListFile)) {
             System.err.println("ERROR: No URLs found in " + urlListFile);
             System.exit(1);
         }
 
-        List<String> deduped = inputUrls.stream().distinct().collect(Collectors.toList());
-        System.out.println("Got " + deduped.size() + " unique input URL(s).");
+        FeedJob job = new FeedJob(companyName, currencyCode, urlListFile, outputFile);
+        job.partition = partition;
 
-        List<Product> scraped = new ArrayList<>();
+        try (BrowserPool pool = BrowserPool.create(options);
+             FeedJobRun run = new FeedJobRun(job, "")) {
+            // Chromium launches alongside discovery; the first page load waits for it if needed
+            pool.startInBackground();
+            ProductScraper scraper = new ProductScraper(pool, options);
 
-        try (BrowserPool pool = new BrowserPool()) {
-            pool.start();
-            ProductScraper scraper = new ProductScraper(pool);
-
-            List<String> allLinks = new ArrayList<>();
-
-            // Always scrape the URLs the user gave directly
-            for (String u : deduped) {
-                allLinks.add(u);
-
-                String path;
-                try {
-                    path = URI.create(u).getPath();
-                } catch (Exception e) {
-                    continue;
-                }
-
-                // Discover products from listings/categories
-                if (UrlUtils.looksLikeListingPath(path) &&
-                    !UrlUtils.looksLikeProductPath(path)) {
-
-                    System.out.println("Discovering product links from listing: " + u);
-                    List<String> found = scraper.discoverLinksWithBrowser(u, 2500);
-                    System.out.println("  Found " + found.size() + " product link(s).");
-                    allLinks.addAll(found);
-                }
+            run.collectLinks(scraper, true);
+            try {
+                run.openOutput();
+            } catch (Exception e) {
+                System.err.println("ERROR writing feed: " + e.getMessage());
+                System.exit(1);
             }
 
-            // Stable de-dup
-            LinkedHashSet<String> seen = new LinkedHashSet<>(allLinks);
-            allLinks = new ArrayList<>(seen);
-
-            System.out.println("Total product URLs to scrape: " + allLinks.size());
-
-            String prefix = Arrays.stream(companyName.split("\\s+"))
-                    .filter(s -> !s.isEmpty())
-                    .map(s -> s.substring(0, 1).toUpperCase(Locale.ROOT))
-                    .collect(Collectors.joining());
-
             long start = System.currentTimeMillis();
-            int idx = 0;
-
-            for (String url : allLinks) {
-                idx++;
-                System.out.printf("(%d/%d) Scraping %s%n",
-                        idx, allLinks.size(), url);
-                try {
-                    Product p = scraper.scrapeProduct(
-                            url, idx, prefix, currencyCode, companyName);
-                    scraped.add(p);
-                    System.out.println("  -> OK: " + p.title + " | " + p.price);
-                } catch (Exception e) {
-                    System.err.println("  -> Error: " + e.getMessage());
-                }
+            FeedJobRun.Target t;
+            while ((t = run.awaitNext()) != null) {
+                run.scrapeOne(scraper, t);
             }
 
             long elapsed = (System.currentTimeMillis() - start) / 1000;
             System.out.printf(
                     "Done. Scraped %d product(s) in %d seconds.%n",
-                    scraped.size(), elapsed
+                    run.scrapedCount(), elapsed
             );
 
+            // -----------------------------
+            // Finish feed file
+            // -----------------------------
+            try {
+                run.finishOutput();
+            } catch (Exception e) {
+                System.err.println("ERROR writing feed: " + e.getMessage());
+                System.exit(1);
+            }
         } catch (Exception e) {
             e.printStackTrace();
             System.exit(1);
         }
-
-        // -----------------------------
-        // Export Excel
-        // -----------------------------
-        try {
-            ExcelExporter exporter = new ExcelExporter();
-            exporter.export(scraped, outputFile, false);
-            System.out.println("Feed written to: " + outputFile +
-                    " (rows: " + scraped.size() + ")");
-        } catch (Exception e) {
-            System.err.println("ERROR writing Excel: " + e.getMessage());
-            System.exit(1);
-        }
     }
 
     // -----------------------------
@@ -167,20 +258,4 @@ public class ProductFeedApp {
         } while (val.isEmpty());
         return val;
     }
-
-    private static List<String> readUrlList(String path) {
-        List<String> urls = new ArrayList<>();
-        try (BufferedReader br = new BufferedReader(new FileReader(path))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                line = line.trim();
-                if (!line.isEmpty() && !line.startsWith("#")) {
-                    urls.add(line);
-                }
-            }
-        } catch (Exception e) {
-            System.err.println("ERROR reading URL list: " + e.getMessage());
-        }
-        return urls;
-    }
 }
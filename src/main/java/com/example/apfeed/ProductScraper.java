@@ -4,79 +4,168 @@ import com.microsoft.playwright.*;
 import com.microsoft.playwright.options.AriaRole;
 import org.jsoup.Jsoup;
 
-import java.net.URI;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.regex.Pattern;
 
 public class ProductScraper {
     private static final int MAX_DISCOVERED_PER_LISTING = 2500;
+    // static (browser-free) listing discovery runs here, several listings at once
+    private static final ExecutorService STATIC_DISCOVERY = PaginationDiscovery.daemonPool(4, "apfeed-listing");
+    // early-fetched pages held at most until their turn
+    private static final int MAX_PREFETCHED = 256;
+
     private final BrowserPool pool;
+    private final ScrapeOptions options;
+    // products already known from JSON (network capture or platform adapters), by URL
+    private final JsonProductCapture capture = new JsonProductCapture();
+    // last run's browser discovery per listing (null = off)
+    private final DiscoveryCache discoveryCache;
+    // pages fetched ahead of their turn by prefetch(), by URL
+    private final Map<String, DomExtractor.ExtractResult> prefetched = new ConcurrentHashMap<>();
 
     public ProductScraper(BrowserPool pool) {
+        this(pool, new ScrapeOptions());
+    }
+
+    public ProductScraper(BrowserPool pool, ScrapeOptions options) {
         this.pool = pool;
+        this.options = options;
+        // captured JSON only comes with a real scroll, and saves a page load per product
+        this.discoveryCache = options.discoveryCache != null && !options.captureJson
+                ? new DiscoveryCache(Path.of(options.discoveryCache)) : null;
+    }
+
+    /**
+     * Browser-free discovery: platform JSON endpoints first, then static
+     * pagination. Empty if neither applies, in which case the caller should
+     * use {@link #discoverLinksWithBrowser}.
+     */
+    public List<String> discoverStatic(String listingUrl, int maxLinks) {
+        if (options.platformAdapters) {
+            PlatformAdapter a = PlatformDetector.forUrl(listingUrl);
+            if (a != null) {
+                List<String> links = new ArrayList<>();
+                for (JsonProductCapture.Captured c : a.discover(listingUrl, maxLinks)) {
+                    if (c.url.isEmpty()) continue;
+                    capture.put(c);
+                    links.add(c.url);
+                }
+                if (!links.isEmpty()) {
+                    System.out.println("  " + a.name() + " API: " + links.size() + " product(s).");
+                    return links;
+                }
+            }
+        }
+        return PaginationDiscovery.discover(listingUrl, maxLinks);
+    }
+
+    public CompletableFuture<List<String>> discoverStaticAsync(String listingUrl, int maxLinks) {
+        return CompletableFuture.supplyAsync(() -> discoverStatic(listingUrl, maxLinks), STATIC_DISCOVERY);
     }
 
     private void dismissCookies(Page page) {
         String[] names = {"accept", "agree", "ok", "got it"};
         for (String n : names) {
             try {
-                page.getByRole(
+                // count() does not wait; a bare click() would wait 30 s for a missing button
+                Locator button = page.getByRole(
                         AriaRole.BUTTON,
                         new Page.GetByRoleOptions().setName(Pattern.compile(n, Pattern.CASE_INSENSITIVE))
-                ).click();
+                );
+                if (button.count() > 0) {
+                    button.first().click(new Locator.ClickOptions().setTimeout(2000));
+                }
             } catch (Exception ignored) {}
         }
     }
 
+    /**
+     * Loads url with a timeout derived from the host's recent latency, feeding
+     * the result back into {@link HostHealth} (callers check the breaker first). Throttling and server errors
+     * (429/5xx) are raised as {@link RetryPolicy.TransientHttpException}.
+     */
+    private static void navigate(Page page, String url, int defaultTimeoutMs) {
+        int timeout = HostHealth.timeoutMs(url, defaultTimeoutMs);
+        long t0 = System.currentTimeMillis();
+        Response res;
+        try {
+            res = page.navigate(url, new Page.NavigateOptions().setTimeout(timeout));
+        } catch (TimeoutError e) {
+            HostHealth.failure(url, timeout);
+            throw e;
+        } catch (RuntimeException e) {
+            HostHealth.failure(url, 0);
+            throw e;
+        }
+        long elapsed = System.currentTimeMillis() - t0;
+        if (res != null && RetryPolicy.isTransientStatus(res.status())) {
+            HostHealth.failure(url, elapsed);
+            throw new RetryPolicy.TransientHttpException(res.status(),
+                    RetryPolicy.retryAfterMs(res.headers().get("retry-after")));
+        }
+        HostHealth.success(url, elapsed);
+    }
+
     public List<String> discoverLinksWithBrowser(String startUrl, int maxLinks) {
-        Page page = pool.newPage();
+        HostHealth.check(startUrl);
+        Page page = pool.newPage(startUrl);
         List<String> links = new ArrayList<>();
-        Set<String> seen = new LinkedHashSet<>();
+        UrlFrontier.FingerprintSet seen = new UrlFrontier.FingerprintSet(256);
+        List<Response> json = options.captureJson ? JsonProductCapture.listen(page) : null;
+        String fingerprint = null;
+        boolean complete = false;
         try {
-            page.navigate(startUrl, new Page.NavigateOptions().setTimeout(45000));
-
-            try {
-                Thread.sleep(2000);
-            } catch (InterruptedException ignored) {}
+            navigate(page, startUrl, 45000);
 
             dismissCookies(page);
+            String base = page.url();
 
-            int lastLen = -1;
-            for (int i = 0; i < 24; i++) {
-                page.evaluate("window.scrollTo(0, document.body.scrollHeight)");
-                try {
-                    Thread.sleep(900);
-                } catch (InterruptedException ignored) {}
-
-                boolean clicked = clickLoadMoreOnce(page);
-                Locator cards = page.locator("a[href*='/product/']");
-                int curLen = cards.count();
-                if (!clicked && curLen == lastLen) break;
-                lastLen = curLen;
+            // Unchanged first screen since the last run: reuse its links, skip the scroll
+            if (discoveryCache != null) {
+                fingerprint = firstScreenFingerprint(page, base, startUrl);
+                List<String> cached = discoveryCache.lookup(startUrl, fingerprint, maxLinks);
+                if (cached != null) {
+                    System.out.println("  Listing unchanged since " + discoveryCache.savedAt(startUrl)
+                            + "; reusing " + cached.size() + " link(s).");
+                    return cached;
+                }
             }
 
-            Locator anchors = page.locator("a[href]");
-            int count = Math.min(anchors.count(), 7000);
-            String base = page.url();
-            for (int i = 0; i < count; i++) {
-                String href;
-                try {
-                    href = anchors.nth(i).getAttribute("href");
-                } catch (Exception e) {
-                    continue;
-                }
-                if (href == null || href.isEmpty() || href.startsWith("#")) continue;
-                String abs = UrlUtils.normalizeUrl(base, href);
-                if (!UrlUtils.isSameSite(abs, startUrl)) continue;
-                String path = URI.create(abs).getPath();
-                if (!UrlUtils.looksLikeProductPath(path)) continue;
-
-                if (!seen.contains(abs)) {
-                    seen.add(abs);
+            // Scroll / load-more and href collection all happen in-page
+            ScrollEngine.Result scroll = ScrollEngine.run(page);
+            System.out.println("  Scroll: " + scroll);
+
+            base = page.url();
+            for (String href : scroll.hrefs) {
+                String abs = productLink(base, href, startUrl);
+                if (abs == null) continue;
+
+                if (seen.add(UrlFrontier.fingerprint(abs))) {
                     links.add(abs);
                     if (links.size() >= maxLinks) break;
                 }
             }
+            // "quiet": no more content appeared, as opposed to the time or round budget running out
+            complete = scroll.reason.equals("quiet") && links.size() < maxLinks;
+
+            // Products the grid was rendered from (priced ones need no path heuristic)
+            if (json != null) {
+                int fromJson = 0;
+                for (JsonProductCapture.Captured c : capture.harvest(json, base)) {
+                    if (c.url.isEmpty() || links.size() >= maxLinks) continue;
+                    // un-priced objects are often collections/menus rather than products
+                    if (c.price.isEmpty() && !UrlUtils.looksLikeProductUrl(c.url)) continue;
+                    if (seen.add(UrlFrontier.fingerprint(c.url))) {
+                        links.add(c.url);
+                        fromJson++;
+                    }
+                }
+                System.out.println("  JSON capture: " + fromJson + " extra product link(s).");
+            }
 
             if (links.isEmpty()) {
                 String html = page.content();
@@ -86,10 +175,8 @@ public class ProductScraper {
                 while (m.find() && links.size() < maxLinks) {
                     String u = m.group();
                     if (!UrlUtils.isSameSite(u, startUrl)) continue;
-                    String path = URI.create(u).getPath();
-                    if (UrlUtils.looksLikeProductPath(path)) {
-                        if (!seen.contains(u)) {
-                            seen.add(u);
+                    if (UrlUtils.looksLikeProductUrl(u)) {
+                        if (seen.add(UrlFrontier.fingerprint(u))) {
                             links.add(u);
                         }
                     }
@@ -98,35 +185,103 @@ public class ProductScraper {
         } finally {
             page.close();
         }
+        if (discoveryCache != null) discoveryCache.store(startUrl, fingerprint, links, complete, maxLinks);
         return links;
     }
 
-    private boolean clickLoadMoreOnce(Page page) {
-        String[] sels = {
-                "button:has-text(\"Load more\")",
-                "button:has-text(\"Load More\")",
-                "button:has-text(\"Show more\")",
-                "button:has-text(\"Show More\")",
-                "a:has-text(\"Load more\")",
-                "a:has-text(\"Show more\")",
-                "button[aria-label*='load']"
-        };
-        for (String sel : sels) {
-            Locator el = page.locator(sel);
-            if (el.count() > 0 && el.first().isVisible()) {
-                try {
-                    el.first().click();
-                    return true;
-                } catch (Exception ignored) {}
-            }
+    /** Absolute same-site product URL for a listing href, or null. */
+    private static String productLink(String base, String href, String startUrl) {
+        if (href == null || href.isEmpty() || href.startsWith("#")) return null;
+        String abs = UrlUtils.normalizeUrl(base, href);
+        if (!UrlUtils.isSameSite(abs, startUrl)) return null;
+        return UrlUtils.looksLikeProductUrl(abs) ? abs : null;
+    }
+
+    /** {@link DiscoveryCache#fingerprint} of the product links and count shown before any scrolling. */
+    @SuppressWarnings("unchecked")
+    private static String firstScreenFingerprint(Page page, String base, String startUrl) {
+        Map<String, Object> m = (Map<String, Object>) page.evaluate("""
+                () => ({
+                  hrefs: Array.from(document.querySelectorAll('a[href]'), a => a.getAttribute('href')),
+                  text: document.body ? document.body.innerText.slice(0, 50000) : ''
+                })""");
+        List<String> links = new ArrayList<>();
+        UrlFrontier.FingerprintSet seen = new UrlFrontier.FingerprintSet(64);
+        for (Object href : (List<Object>) m.getOrDefault("hrefs", List.of())) {
+            String abs = productLink(base, href == null ? null : href.toString(), startUrl);
+            if (abs != null && seen.add(UrlFrontier.fingerprint(abs))) links.add(abs);
+        }
+        return DiscoveryCache.fingerprint(links, String.valueOf(m.getOrDefault("text", "")));
+    }
+
+    /** True if frontier URLs should be HEAD-checked before they are rendered. */
+    boolean preflightEnabled() {
+        return options.preflight;
+    }
+
+    /** True if url's product is already known (from JSON or an early fetch), so scraping it needs no page load. */
+    public boolean isKnownWithoutPageLoad(String url) {
+        if (prefetched.containsKey(url)) return true;
+        JsonProductCapture.Captured c = capture.get(url);
+        return c != null && c.sufficient();
+    }
+
+    /**
+     * Loads and extracts url ahead of its turn, e.g. while listings are
+     * still being discovered; its scrapeProduct() later only builds the row.
+     * A failure is left to the normal, in-order scrape and its retries.
+     *
+     * @return false if the page could not be fetched now or too many are waiting
+     */
+    public boolean prefetch(String url, String currencyCode) {
+        if (isKnownWithoutPageLoad(url)) return true;
+        if (prefetched.size() >= MAX_PREFETCHED) return false;
+        try {
+            prefetched.put(url, extract(url, currencyCode));
+            return true;
+        } catch (Exception e) {
+            System.out.println("  Early fetch failed, will retry in order: " + e.getMessage());
+            return false;
         }
-        return false;
     }
 
     public Product scrapeProduct(String url, int rowId, String mpnPrefix, String currencyCode, String brandName) {
-        Page page = pool.newPage();
+        DomExtractor.ExtractResult er = prefetched.remove(url);
+        if (er != null) {
+            System.out.println("  Fetched early (during discovery)");
+        } else {
+            er = extract(url, currencyCode);
+        }
+        return buildProduct(url, rowId, mpnPrefix, brandName, er);
+    }
+
+    /** The page's fields, with sku filled in ("" when none). */
+    private DomExtractor.ExtractResult extract(String url, String currencyCode) {
+        // Already seen in a listing's JSON with everything we need: no page load at all
+        JsonProductCapture.Captured known = capture.get(url);
+        if (known != null && known.sufficient()) {
+            System.out.println("  From captured JSON (no page load)");
+            return known(known, currencyCode);
+        }
+
+        // Paused or abandoned host: fail fast so the caller can park or drop the URL
+        HostHealth.check(url);
+
+        // Platform product endpoint (e.g. Shopify /products/{handle}.js)
+        if (options.platformAdapters) {
+            PlatformAdapter a = PlatformDetector.forUrl(url);
+            JsonProductCapture.Captured c = a != null ? a.fetch(url) : null;
+            if (c != null && c.sufficient()) {
+                System.out.println("  From " + a.name() + " API (no page load)");
+                capture.put(c);
+                return known(c, currencyCode);
+            }
+        }
+
+        Page page = pool.newPage(url);
+        List<Response> json = options.captureJson ? JsonProductCapture.listen(page) : null;
         try {
-            page.navigate(url, new Page.NavigateOptions().setTimeout(35000));
+            navigate(page, url, 35000);
 
             try {
                 Thread.sleep(1500);
@@ -136,59 +291,127 @@ public class ProductScraper {
 
             String finalUrl = page.url();
             System.out.println("  Landed on: " + finalUrl);
+            // a removed product bounced to the home page or a category would become a bogus row
+            UrlPreflight.Outcome bounce = UrlPreflight.redirectOutcome(url, finalUrl);
+            if (bounce == UrlPreflight.Outcome.HOMEPAGE || bounce == UrlPreflight.Outcome.CATEGORY) {
+                throw new IllegalStateException("Not a product page any more, redirected to " + finalUrl);
+            }
             try {
                 System.out.println("  Page <title>: " + page.title());
             } catch (Exception ignored) {}
 
+            if (json != null) {
+                capture.harvest(json, finalUrl);
+                JsonProductCapture.Captured c = capture.get(url);
+                if (c == null) c = capture.get(UrlUtils.normalizeUrl(finalUrl, finalUrl));
+                if (c != null && c.sufficient()) {
+                    System.out.println("  From captured JSON (DOM parse skipped)");
+                    return known(c, currencyCode);
+                }
+            }
+
             DomExtractor.ExtractResult er;
-            String sku = "";
 
             if (!UrlUtils.isSameSite(finalUrl, url)) {
                 System.out.println("  WARNING: Different host than input. Trying Jsoup fallback for: " + url);
                 try {
+                    long t0 = System.currentTimeMillis();
                     org.jsoup.nodes.Document doc = Jsoup.connect(url)
-                            .userAgent("Mozilla/5.0 (Windows NT 10.0; Win64; x64) " +
-                                       "AppleWebKit/537.36 (KHTML, like Gecko) " +
-                                       "Chrome/124.0.0.0 Safari/537.36")
-                            .timeout(30000)
+                            .userAgent(BrowserPool.USER_AGENT)
+                            .timeout(HostHealth.timeoutMs(url, 30000))
                             .get();
-                    String html = doc.outerHtml();
-                    er = DomExtractor.extractFromHtml(html, url, currencyCode);
-                    sku = DomExtractor.extractSkuFromHtml(html, url);
+                    HostHealth.success(url, System.currentTimeMillis() - t0);
+                    er = DomExtractor.extractFromHtml(doc.outerHtml(), url, currencyCode);
                 } catch (Exception ex) {
                     System.out.println("  Jsoup fallback failed: " + ex.getMessage());
-                    String html = page.content();
                     er = DomExtractor.extractFromDom(page, url, currencyCode);
-                    sku = DomExtractor.extractSkuFromHtml(html, url);
                 }
             } else {
-                String html = page.content();
-                er = DomExtractor.extractFromDom(page, url, currencyCode);
-                sku = DomExtractor.extractSkuFromHtml(html, url);
+                er = null;
+                if (options.headFirst) {
+                    er = DomExtractor.extractFromHead(page, url, currencyCode);
+                    if (er != null) System.out.println("  From <head> JSON-LD (DOM parse skipped)");
+                }
+                if (er == null && options.browserExtract) {
+                    try {
+                        er = BrowserExtractor.extract(page, url, currencyCode);
+                    } catch (Exception ex) {
+                        System.out.println("  In-page extraction failed, using DOM snapshot: " + ex.getMessage());
+                    }
+                }
+                if (er == null) {
+                    er = DomExtractor.extractFromDom(page, url, currencyCode);
+                }
             }
+            return er;
+        } finally {
+            page.close();
+        }
+    }
 
-            // Decide ID: prefer SKU, fallback to numeric row ID
-            String idValue = (sku != null && !sku.isBlank())
-                    ? sku
-                    : String.valueOf(rowId);
-
-            String productType = ProductTypeDetector.detect(er.title, er.description, er.breadcrumbs);
-
-            Product p = new Product();
-            p.id = idValue;
-            p.title = er.title;
-            p.description = er.description;
-            p.link = url;
-            p.condition = "new";
-            p.price = er.price;
-            p.availability = "in stock";
-            p.adult = "No";
-            p.imageLink = er.imageUrl;
-            p.mpn = mpnPrefix + rowId;  // keep existing MPN behaviour
-            p.brand = brandName;
-            p.productTypes = productType;
-
-            return p;
+    private static DomExtractor.ExtractResult known(JsonProductCapture.Captured c, String currencyCode) {
+        DomExtractor.ExtractResult er = c.toExtractResult(currencyCode);
+        er.sku = c.sku;
+        return er;
+    }
+
+    private Product buildProduct(String url, int rowId, String mpnPrefix, String brandName,
+                                 DomExtractor.ExtractResult er) {
+        // Decide ID: prefer SKU, fallback to numeric row ID
+        String idValue = (er.sku != null && !er.sku.isBlank())
+                ? er.sku
+                : String.valueOf(rowId);
+
+        String productType = ProductTypeDetector.detect(er.title, er.description, er.breadcrumbs);
+
+        Product p = new Product();
+        p.id = idValue;
+        p.title = er.title;
+        p.description = er.description;
+        p.link = url;
+        p.condition = "new";
+        p.price = er.price;
+        p.availability = (er.availability != null && !er.availability.isEmpty())
+                ? er.availability
+                : "in stock";
+        p.adult = "No";
+        p.imageLink = (options.probeImages && er.imageCandidates.size() > 1)
+                ? ImageProber.shared().choose(er.imageCandidates)
+                : er.imageUrl;
+        p.mpn = mpnPrefix + rowId;  // keep existing MPN behaviour
+        p.brand = brandName;
+        p.productTypes = productType;
+
+        return p;
+    }
+
+    /**
+     * Renders a page only to read its current price and availability
+     * (refresh mode's expensive tier). Structured data wins; the text price
+     * heuristic is the fallback. previousPrice is the feed's stored price:
+     * when structured data disagrees with it but the text heuristic (which
+     * full scrapes use) still gives it, the price has not changed.
+     */
+    public StructuredData.Offer renderOffer(String url, String currencyCode, String previousPrice) {
+        HostHealth.check(url);
+        Page page = pool.newPage(url);
+        try {
+            navigate(page, url, 35000);
+
+            try {
+                Thread.sleep(1500);
+            } catch (InterruptedException ignored) {}
+
+            dismissCookies(page);
+
+            String html = page.content();
+            StructuredData.Offer offer = StructuredData.readOffer(Jsoup.parse(HtmlPruner.prune(html), url));
+            offer.price = StructuredData.formatPrice(offer.price, currencyCode);
+            if (offer.price.isEmpty() || FeedRefresher.differs(offer.price, previousPrice)) {
+                String textPrice = DomExtractor.extractFromDom(page, url, currencyCode).price;
+                if (offer.price.isEmpty() || textPrice.equals(previousPrice)) offer.price = textPrice;
+            }
+            return offer;
         } finally {
             page.close();
         }
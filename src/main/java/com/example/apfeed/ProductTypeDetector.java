@@ -6,8 +6,6 @@ import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.*;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 public class ProductTypeDetector {
     private static final Set<String> STOPWORDS = Set.of(
@@ -16,14 +14,32 @@ public class ProductTypeDetector {
 
     private static final List<String> dictRaw = new ArrayList<>();
     private static final List<String> dictNorm = new ArrayList<>();
+    // significant words of each entry, for the loose match
+    private static final List<Set<String>> dictWords = new ArrayList<>();
+    // set (once) when loadDictionary() has run, found or not; publishes the lists
+    private static volatile boolean loaded;
 
-    // Load dictionary once, from either classpath or plain file product_types.txt
-    static {
+    /** Forces the dictionary to load now (e.g. to keep a long-running service warm). */
+    public static int preload() {
         loadDictionary();
+        return dictRaw.size();
     }
 
-    private static void loadDictionary() {
-        if (!dictRaw.isEmpty()) return; // already loaded
+    /**
+     * Starts loading the dictionary on a background thread, so start-up can
+     * get on with launching the browser and reading URLs; detect() waits for
+     * the load if it is still running.
+     */
+    public static void preloadInBackground() {
+        if (loaded) return;
+        Thread t = new Thread(ProductTypeDetector::loadDictionary, "apfeed-dictionary");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // Loaded once on first use, from either classpath or plain file product_types.txt
+    private static synchronized void loadDictionary() {
+        if (loaded) return;
 
         InputStream in = null;
         try {
@@ -51,8 +67,10 @@ public class ProductTypeDetector {
                 while ((line = br.readLine()) != null) {
                     line = line.trim();
                     if (!line.isEmpty()) {
+                        String norm = normPhrase(line);
                         dictRaw.add(line);
-                        dictNorm.add(normPhrase(line));
+                        dictNorm.add(norm);
+                        dictWords.add(significantWords(norm));
                     }
                 }
             }
@@ -61,20 +79,28 @@ public class ProductTypeDetector {
 
         } catch (Exception e) {
             System.err.println("ERROR loading product_types.txt: " + e.getMessage());
+        } finally {
+            loaded = true;
         }
     }
 
     private static String normPhrase(String s) {
-        String out = s.toLowerCase();
         // allow +, -, / so things like "t-shirt" or "usb-c" survive
-        out = out.replaceAll("[^a-z0-9\\s\\+\\-/]", " ");
-        out = out.replaceAll("\\s+", " ").trim();
-        return out;
+        return TextNormalizer.phrase(s);
+    }
+
+    /** Words of a normalised phrase that are long enough and not stopwords. */
+    private static Set<String> significantWords(String norm) {
+        Set<String> words = new HashSet<>();
+        for (String t : norm.split(" ")) {
+            if (t.length() >= 3 && !STOPWORDS.contains(t)) words.add(t);
+        }
+        return words;
     }
 
     public static String detect(String title, String description, List<String> breadcrumbs) {
-        // Ensure dictionary is loaded (in case classloader did something weird)
-        if (dictRaw.isEmpty()) {
+        // Load on first use, or wait for a background preload to finish
+        if (!loaded) {
             loadDictionary();
         }
 
@@ -94,8 +120,7 @@ public class ProductTypeDetector {
             String raw = dictRaw.get(i);
             String norm = dictNorm.get(i);
             if (norm.isEmpty()) continue;
-            Pattern p = Pattern.compile("(^|\\W)" + Pattern.quote(norm) + "(\\W|$)");
-            if (p.matcher(hay).find()) {
+            if (TextNormalizer.containsPhrase(hay, norm)) {
                 int len = norm.length();
                 if (len > bestLen) {
                     bestLen = len;
@@ -121,9 +146,7 @@ public class ProductTypeDetector {
         }
 
         // 3) Token overlap scoring (looser match)
-        Set<String> tokens = Arrays.stream(hay.split("\\s+"))
-                .filter(t -> t.length() >= 3 && !STOPWORDS.contains(t))
-                .collect(Collectors.toSet());
+        Set<String> tokens = significantWords(hay);
 
         String bestLoose = null;
         double bestScore = 0.0;
@@ -132,16 +155,15 @@ public class ProductTypeDetector {
             String norm = dictNorm.get(i);
             if (norm.isEmpty()) continue;
 
-            Set<String> words = Arrays.stream(norm.split("\\s+"))
-                    .filter(t -> t.length() >= 3 && !STOPWORDS.contains(t))
-                    .collect(Collectors.toSet());
-
+            Set<String> words = dictWords.get(i);
             if (words.isEmpty()) continue;
 
-            Set<String> inter = new HashSet<>(words);
-            inter.retainAll(tokens);
-            if (!inter.isEmpty()) {
-                double score = inter.size() + 0.25 * norm.length();
+            int inter = 0;
+            for (String w : words) {
+                if (tokens.contains(w)) inter++;
+            }
+            if (inter > 0) {
+                double score = inter + 0.25 * norm.length();
                 if (score > bestScore) {
                     bestScore = score;
                     bestLoose = raw;
@@ -0,0 +1,193 @@
+package com.example.apfeed;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.*;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Differential check of {@link HtmlPruner} (--prune-check): parses each page
+ * with Jsoup as served and after pruning, and compares the two trees in the
+ * form the extractor sees them: elements with their attributes, text, and
+ * JSON-LD. Script and style bodies and comments are left out, since those are
+ * what pruning removes. Also checks that {@link HtmlPruner#headJsonLd} returns
+ * the leading JSON-LD blocks of the parsed &lt;head&gt;.
+ *
+ * The pages are the product and listing pages of local
+ * {@link SyntheticStorefront}s (server-rendered, script-rendered with a cookie
+ * banner, Shopify) plus any saved pages given as files or folders (*.htm,
+ * *.html, read as UTF-8). Re-run it after upgrading Jsoup: the pruner follows
+ * Jsoup's tokenizer, so a change there shows up here first.
+ */
+public class PruneCheck {
+    private static final int MAX_REPORTED = 5;
+    private static final int CONTEXT = 80;
+
+    private final HttpClient http = HttpClient.newHttpClient();
+    private int pages;
+    private int pruned;
+    private int differing;
+    private int headMismatches;
+
+    public static void main(String[] args) {
+        System.exit(run(new ArrayList<>(Arrays.asList(args))));
+    }
+
+    /**
+     * @param args saved pages (files or folders), optionally --products N per storefront (default 40)
+     * @return process exit code: 0 no differences, 2 differences, 1 error
+     */
+    public static int run(List<String> args) {
+        int products = 40;
+        int pi = args.indexOf("--products");
+        if (pi >= 0 && pi + 1 < args.size()) {
+            products = Integer.parseInt(args.remove(pi + 1));
+            args.remove(pi);
+        }
+        PruneCheck c = new PruneCheck();
+        try {
+            c.storefront(products, "html", false);
+            c.storefront(products, "html", true);
+            c.storefront(products, "shopify", false);
+            for (String a : args) c.saved(Path.of(a));
+        } catch (Exception e) {
+            System.err.println("ERROR: " + e);
+            return 1;
+        }
+        System.out.println("Prune check (Jsoup " + jsoupVersion() + "): " + c.pages + " page(s), "
+                + c.pruned + " pruned, " + c.differing + " with a different DOM, "
+                + c.headMismatches + " with different <head> JSON-LD.");
+        return c.differing == 0 && c.headMismatches == 0 ? 0 : 2;
+    }
+
+    // -----------------------------
+    // Page sources
+    // -----------------------------
+
+    private void storefront(int products, String platform, boolean js) throws IOException, InterruptedException {
+        SyntheticStorefront.Config config = new SyntheticStorefront.Config();
+        config.products = products;
+        config.platform = platform;
+        config.jsRendered = js;
+        config.cookieBanner = js;
+        try (SyntheticStorefront shop = SyntheticStorefront.start(config, 0)) {
+            Set<String> links = new LinkedHashSet<>();
+            for (int page = 1; ; page++) {
+                String url = shop.listingUrl() + "?page=" + page;
+                compare(url, get(url));
+                // a script-rendered listing has no cards in its HTML: the fragment it loads has them
+                String cards = get(url + "&view=fragment");
+                int before = links.size();
+                for (Element a : Jsoup.parseBodyFragment(cards, shop.baseUrl()).select("a[href*=/products/]")) {
+                    links.add(a.absUrl("href"));
+                }
+                if (links.size() == before) break;
+            }
+            for (String u : links) compare(u, get(u));
+        }
+    }
+
+    private void saved(Path p) throws IOException {
+        if (Files.isDirectory(p)) {
+            List<Path> files;
+            try (Stream<Path> s = Files.walk(p)) {
+                files = s.filter(f -> {
+                    String n = f.getFileName().toString().toLowerCase(Locale.ROOT);
+                    return Files.isRegularFile(f) && (n.endsWith(".html") || n.endsWith(".htm"));
+                }).sorted().toList();
+            }
+            for (Path f : files) saved(f);
+            return;
+        }
+        compare(p.toUri().toString(), Files.readString(p, StandardCharsets.UTF_8));
+    }
+
+    private String get(String url) throws IOException, InterruptedException {
+        HttpResponse<String> r = http.send(HttpRequest.newBuilder(URI.create(url))
+                .header("User-Agent", BrowserPool.USER_AGENT).build(), HttpResponse.BodyHandlers.ofString());
+        if (r.statusCode() != 200) throw new IOException("HTTP " + r.statusCode() + " for " + url);
+        return r.body();
+    }
+
+    // -----------------------------
+    // Comparison
+    // -----------------------------
+
+    private void compare(String name, String html) {
+        pages++;
+        String prunedHtml = HtmlPruner.pruned(html);
+        if (!prunedHtml.equals(html)) pruned++;
+        Document asServed = Jsoup.parse(html, name);
+        String a = normalForm(asServed);
+        String b = normalForm(Jsoup.parse(prunedHtml, name));
+        if (!a.equals(b)) {
+            if (differing++ < MAX_REPORTED) System.out.println("  DOM differs: " + name + "\n" + firstDifference(a, b));
+        }
+
+        List<String> inHead = new ArrayList<>();
+        for (Element e : asServed.head().select("script")) {
+            if (isJsonLd(e)) inHead.add(e.data());
+        }
+        List<String> read = HtmlPruner.headJsonLd(html);
+        if (read.size() > inHead.size() || !inHead.subList(0, read.size()).equals(read)) {
+            if (headMismatches++ < MAX_REPORTED) {
+                System.out.println("  <head> JSON-LD differs: " + name + " (" + read.size() + " read, "
+                        + inHead.size() + " in the parsed head)");
+            }
+        }
+    }
+
+    /** The tree as text: tags with attributes, text, and the data of JSON-LD scripts only. */
+    static String normalForm(Document doc) {
+        StringBuilder b = new StringBuilder();
+        NodeTraversor.traverse(new NodeVisitor() {
+            @Override
+            public void head(Node n, int depth) {
+                if (n instanceof Element e) {
+                    b.append('<').append(e.normalName());
+                    for (Attribute at : e.attributes()) b.append(' ').append(at.getKey()).append("=\"").append(at.getValue()).append('"');
+                    b.append('>');
+                } else if (n instanceof TextNode t) {
+                    b.append(t.getWholeText());
+                } else if (n instanceof DataNode d && d.parent() instanceof Element p && isJsonLd(p)) {
+                    b.append(d.getWholeData());
+                }
+            }
+
+            @Override
+            public void tail(Node n, int depth) {
+                if (n instanceof Element e) b.append("</").append(e.normalName()).append('>');
+            }
+        }, doc);
+        return b.toString();
+    }
+
+    private static boolean isJsonLd(Element e) {
+        return e.normalName().equals("script") && e.attr("type").trim().equalsIgnoreCase("application/ld+json");
+    }
+
+    private static String firstDifference(String a, String b) {
+        int i = 0;
+        int n = Math.min(a.length(), b.length());
+        while (i < n && a.charAt(i) == b.charAt(i)) i++;
+        int from = Math.max(0, i - CONTEXT);
+        return "    as served: ..." + a.substring(from, Math.min(a.length(), i + CONTEXT)) + "\n"
+                + "    pruned:    ..." + b.substring(from, Math.min(b.length(), i + CONTEXT));
+    }
+
+    private static String jsoupVersion() {
+        String v = Jsoup.class.getPackage().getImplementationVersion();
+        return v != null ? v : "?";
+    }
+}
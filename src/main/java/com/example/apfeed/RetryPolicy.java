@@ -0,0 +1,75 @@
+package com.example.apfeed;
+
+import com.microsoft.playwright.PlaywrightException;
+import com.microsoft.playwright.TimeoutError;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Which scrape failures are worth another attempt, and when.
+ *
+ * Backoff is exponential with jitter (a random delay between a quarter of
+ * and the full base * 2^attempt, capped) so retries against the same host
+ * spread out instead of arriving together. A server-supplied Retry-After wins if it
+ * is longer.
+ */
+public class RetryPolicy {
+    public static final int MAX_ATTEMPTS = 3;
+    private static final long BASE_DELAY_MS = 2_000;
+    private static final long MAX_DELAY_MS = 60_000;
+
+    /** A page answered with a status that says "try again later" (429/5xx). */
+    public static class TransientHttpException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public final int status;
+        public final long retryAfterMs;
+
+        public TransientHttpException(int status, long retryAfterMs) {
+            super("HTTP " + status);
+            this.status = status;
+            this.retryAfterMs = retryAfterMs;
+        }
+    }
+
+    public static boolean isTransientStatus(int status) {
+        return status == 408 || status == 425 || status == 429 || (status >= 500 && status <= 599);
+    }
+
+    /** Timeouts, connection errors and 429/5xx are retried; everything else is not. */
+    public static boolean isRetriable(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof TimeoutError || t instanceof SocketTimeoutException) return true;
+            if (t instanceof TransientHttpException) return true;
+            if (t instanceof IOException) return true;
+            if (t instanceof PlaywrightException) {
+                String m = String.valueOf(t.getMessage());
+                if (m.contains("net::ERR_") || m.contains("NS_ERROR_") || m.contains("Timeout")) return true;
+            }
+            if (t.getCause() == t) break;
+        }
+        return false;
+    }
+
+    /** Delay before attempt number attempt+1 (attempt counts from 1). */
+    public static long backoffMs(int attempt, Throwable cause) {
+        long cap = Math.min(MAX_DELAY_MS, BASE_DELAY_MS << Math.min(10, attempt));
+        long delay = ThreadLocalRandom.current().nextLong(cap / 4, cap + 1);
+        if (cause instanceof TransientHttpException) {
+            delay = Math.max(delay, Math.min(MAX_DELAY_MS, ((TransientHttpException) cause).retryAfterMs));
+        }
+        return delay;
+    }
+
+    /** Parses a Retry-After header given in seconds (HTTP dates are ignored). */
+    static long retryAfterMs(String header) {
+        if (header == null) return 0;
+        try {
+            return Long.parseLong(header.trim()) * 1000;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.apfeed;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Optional scraping behaviours, switched on with command-line flags. Flags are
+ * removed from the argument list so the positional arguments keep working.
+ */
+public class ScrapeOptions {
+    /** --capture-json: read products from the site's own JSON XHR/fetch responses. */
+    public boolean captureJson;
+
+    /** Use Shopify/WooCommerce/Magento/BigCommerce JSON endpoints when detected (--no-platform to disable). */
+    public boolean platformAdapters = true;
+
+    /** --probe-images: check the top image candidates over HTTP and keep the largest valid one. */
+    public boolean probeImages;
+
+    /** --dom-script: extract inside the page with one script instead of serialising the DOM to Jsoup. */
+    public boolean browserExtract;
+
+    /** --profile-dir DIR: keep per-host browser profiles (HTTP cache, cookies) in DIR between runs. */
+    public String profileDir;
+
+    /** --profile-max-mb N: total disk budget for those profiles. */
+    public long profileMaxMb = 2048;
+
+    /** HEAD-check frontier URLs and skip dead or redirected products before rendering (--no-preflight to disable). */
+    public boolean preflight = true;
+
+    /** --discovery-cache DIR: reuse last run's listing discovery when the listing's first screen is unchanged. */
+    public String discoveryCache;
+
+    /** --url-rules FILE: global and per-shop product/listing/exclude path rules (see {@link UrlRules.Config}). */
+    public String urlRules;
+
+    /** --head-first: take the row from the JSON-LD in &lt;head&gt; when it has title, price and image, before parsing the page. */
+    public boolean headFirst;
+
+    /** Strip script/style bodies and comments before Jsoup parses a page (--no-prune to disable, see {@link HtmlPruner}). */
+    public boolean prune = true;
+
+    /** The flags that reproduce these options (e.g. for worker processes). */
+    public List<String> toArgs() {
+        List<String> out = new ArrayList<>();
+        if (captureJson) out.add("--capture-json");
+        if (!platformAdapters) out.add("--no-platform");
+        if (!preflight) out.add("--no-preflight");
+        if (probeImages) out.add("--probe-images");
+        if (browserExtract) out.add("--dom-script");
+        if (headFirst) out.add("--head-first");
+        if (!prune) out.add("--no-prune");
+        if (profileDir != null) {
+            out.add("--profile-dir");
+            out.add(profileDir);
+            out.add("--profile-max-mb");
+            out.add(String.valueOf(profileMaxMb));
+        }
+        if (discoveryCache != null) {
+            out.add("--discovery-cache");
+            out.add(discoveryCache);
+        }
+        if (urlRules != null) {
+            out.add("--url-rules");
+            out.add(urlRules);
+        }
+        return out;
+    }
+
+    /**
+     * Removes recognised flags from args and returns the resulting options.
+     * @throws IllegalArgumentException when a flag lacks its value or the value is not valid
+     */
+    public static ScrapeOptions parse(List<String> args) {
+        ScrapeOptions o = new ScrapeOptions();
+        Iterator<String> it = args.iterator();
+        while (it.hasNext()) {
+            String a = it.next();
+            switch (a) {
+                case "--capture-json" -> o.captureJson = true;
+                case "--no-platform" -> o.platformAdapters = false;
+                case "--no-preflight" -> o.preflight = false;
+                case "--probe-images" -> o.probeImages = true;
+                case "--dom-script" -> o.browserExtract = true;
+                case "--head-first" -> o.headFirst = true;
+                case "--no-prune" -> o.prune = false;
+                case "--profile-dir" -> {
+                    it.remove();
+                    o.profileDir = value(it, a, "a folder");
+                }
+                case "--discovery-cache" -> {
+                    it.remove();
+                    o.discoveryCache = value(it, a, "a folder");
+                }
+                case "--url-rules" -> {
+                    it.remove();
+                    o.urlRules = value(it, a, "a rules file");
+                }
+                case "--profile-max-mb" -> {
+                    it.remove();
+                    String mb = value(it, a, "a size in MB");
+                    try {
+                        o.profileMaxMb = Long.parseLong(mb);
+                    } catch (NumberFormatException e) {
+                        o.profileMaxMb = -1;
+                    }
+                    if (o.profileMaxMb <= 0 || o.profileMaxMb > Long.MAX_VALUE >> 20) {
+                        throw new IllegalArgumentException(a + " needs a size in MB (a whole number above 0), not '" + mb + "'");
+                    }
+                }
+                default -> {
+                    continue;
+                }
+            }
+            it.remove();
+        }
+        return o;
+    }
+
+    /** The value after a flag; what says what the flag expects. */
+    private static String value(Iterator<String> it, String flag, String what) {
+        if (!it.hasNext()) throw new IllegalArgumentException(flag + " needs " + what);
+        String v = it.next();
+        if (v.startsWith("--")) throw new IllegalArgumentException(flag + " needs " + what + ", not " + v);
+        return v;
+    }
+}
@@ -0,0 +1,498 @@
+package com.example.apfeed;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-running scrape daemon. Keeps the {@link BrowserPool} and the
+ * {@link ProductTypeDetector} dictionary warm and takes jobs over a local
+ * HTTP API (bound to 127.0.0.1 only):
+ *
+ * <pre>
+ * POST /jobs              {"type":"scrape","urls":[...],"company":"..","currency":"GBP","priority":5}
+ *                         {"type":"discover","urls":[listing urls],"max":2500}
+ *                         {"type":"extract","url":"..","html":"..","currency":"GBP"}
+ *                         -> {"id":"3","state":"QUEUED"}
+ * GET  /jobs/{id}         -> status snapshot
+ * GET  /jobs/{id}/events  -> NDJSON stream of progress/result events until the job ends
+ * POST /shutdown          -> stop accepting, drain queued work, exit
+ * </pre>
+ *
+ * Every request carries the header X-Apfeed-Token with the token printed at
+ * start-up (or set beforehand in {@value #TOKEN_ENV}), and job bodies are sent
+ * as Content-Type: application/json. A web page open in the operator's
+ * browser can reach 127.0.0.1 too, but can send neither without a CORS
+ * preflight, which the service refuses.
+ *
+ * Each URL (or document) is queued as its own task with the job's priority, so
+ * a small high-priority job overtakes a big batch that is already running.
+ * Tasks that fail transiently, or hit a host whose circuit is open, are held
+ * on a timer and re-queued later instead of occupying a worker.
+ *
+ * Finished jobs stay queryable for an hour (the latest 200 at most), and
+ * each job keeps its latest events only, so the service does not grow with
+ * every job it has ever run.
+ */
+public class ScrapeService {
+    static final String TOKEN_ENV = "APFEED_SERVICE_TOKEN";
+
+    private static final ObjectMapper JSON = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    // finished jobs are forgotten after this long, and beyond this many
+    private static final long FINISHED_TTL_MS = 60 * 60 * 1000L;
+    private static final int MAX_FINISHED = 200;
+    // events kept per job; older ones are dropped (a late /events reader starts at the oldest kept)
+    private static final int MAX_EVENTS = 10_000;
+
+    /** POST /jobs body. */
+    public static class JobRequest {
+        public String type = "scrape";
+        public List<String> urls = new ArrayList<>();
+        public String url;
+        public String html;
+        public String company = "";
+        public String currency = "GBP";
+        public int priority;
+        public int max = 2500;
+    }
+
+    private static final class Job {
+        final String id;
+        final JobRequest req;
+        final String mpnPrefix;
+        final List<Map<String, Object>> events = new ArrayList<>();
+        long dropped;       // events removed from the front of the list
+        long finishedAt;
+        int total;
+        int done;
+        int errors;
+        String state = "QUEUED";
+
+        Job(String id, JobRequest req) {
+            this.id = id;
+            this.req = req;
+            this.mpnPrefix = req.company == null || req.company.isBlank()
+                    ? "" : new FeedJob(req.company, req.currency, null, null).mpnPrefix();
+        }
+
+        synchronized void emit(Map<String, Object> ev) {
+            events.add(ev);
+            if (events.size() > MAX_EVENTS) {
+                int cut = events.size() - MAX_EVENTS / 2;
+                events.subList(0, cut).clear();
+                dropped += cut;
+            }
+            notifyAll();
+        }
+
+        /** Number of events emitted so far, including dropped ones. */
+        long emitted() {
+            return dropped + events.size();
+        }
+
+        synchronized Map<String, Object> snapshot() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("id", id);
+            m.put("type", req.type);
+            m.put("state", state);
+            m.put("priority", req.priority);
+            m.put("total", total);
+            m.put("done", done);
+            m.put("errors", errors);
+            return m;
+        }
+    }
+
+    private static final class Task implements Comparable<Task> {
+        final Job job;
+        final int idx;
+        final long seq;
+        int attempts;
+
+        Task(Job job, int idx, long seq) {
+            this.job = job;
+            this.idx = idx;
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo(Task o) {
+            int c = Integer.compare(o.job.req.priority, job.req.priority);
+            return c != 0 ? c : Long.compare(seq, o.seq);
+        }
+    }
+
+    private final int port;
+    private final int workers;
+    private final BrowserPool pool;
+    private final ProductScraper scraper;
+    private final PriorityBlockingQueue<Task> queue = new PriorityBlockingQueue<>();
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private final AtomicLong seq = new AtomicLong();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final String token;
+    private final byte[] tokenBytes;
+    // retry queue: tasks waiting out a backoff or an open circuit
+    private final ScheduledExecutorService retryTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "apfeed-retry");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicInteger delayed = new AtomicInteger();
+
+    private volatile boolean accepting = true;
+    private HttpServer server;
+    private ExecutorService workerPool;
+
+    public ScrapeService(int port, int workers, ScrapeOptions options) {
+        this.port = port;
+        this.workers = Math.max(1, workers);
+        this.pool = BrowserPool.create(options);
+        this.scraper = new ProductScraper(pool, options);
+        String fixed = System.getenv(TOKEN_ENV);
+        this.token = fixed != null && !fixed.isBlank() ? fixed.trim() : ShardCoordinator.newToken();
+        this.tokenBytes = token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Starts the service and blocks until it has been shut down and drained. */
+    public static int run(int port, int workers, ScrapeOptions options) {
+        ScrapeService svc = new ScrapeService(port, workers, options);
+        try {
+            svc.start();
+        } catch (IOException e) {
+            System.err.println("ERROR starting service: " + e.getMessage());
+            return 1;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(svc::shutdown));
+        try {
+            svc.stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return 0;
+    }
+
+    public void start() throws IOException {
+        ProductTypeDetector.preload();
+
+        workerPool = Executors.newFixedThreadPool(workers);
+        CountDownLatch warm = new CountDownLatch(workers);
+        for (int i = 0; i < workers; i++) {
+            workerPool.submit(() -> {
+                try {
+                    pool.start(); // launch this worker's browser up front
+                } catch (Exception e) {
+                    System.err.println("WARNING: browser warm-up failed: " + e.getMessage());
+                } finally {
+                    warm.countDown();
+                }
+                workLoop();
+            });
+        }
+        try {
+            warm.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/jobs", this::handleJobs);
+        server.createContext("/shutdown", ex -> {
+            if (!authorized(ex)) return;
+            if (!ex.getRequestMethod().equals("POST")) {
+                respond(ex, 405, Map.of("error", "use POST"));
+                return;
+            }
+            respond(ex, 202, Map.of("state", "DRAINING"));
+            new Thread(this::shutdown, "apfeed-shutdown").start();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        System.out.println("Scrape service listening on http://127.0.0.1:" + port +
+                " with " + workers + " warm browser(s).");
+        if (System.getenv(TOKEN_ENV) == null) {
+            System.out.println("Send header " + ShardCoordinator.TOKEN_HEADER + ": " + token + " with every request.");
+        }
+    }
+
+    /** Stops accepting jobs, lets queued and running tasks finish, then releases the browsers. */
+    public synchronized void shutdown() {
+        if (!accepting) return;
+        accepting = false;
+        System.out.println("Draining " + queue.size() + " queued task(s)...");
+        workerPool.shutdown();
+        // Workers exit once the queue is empty (see workLoop)
+        try {
+            workerPool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        server.stop(1);
+        retryTimer.shutdownNow();
+        pool.close();
+        System.out.println("Scrape service stopped.");
+        stopped.countDown();
+    }
+
+    // -----------------------------
+    // HTTP
+    // -----------------------------
+
+    /** False (and answered 403) unless ex carries the service token. */
+    private boolean authorized(HttpExchange ex) throws IOException {
+        String given = ex.getRequestHeaders().getFirst(ShardCoordinator.TOKEN_HEADER);
+        if (given != null && MessageDigest.isEqual(tokenBytes, given.getBytes(StandardCharsets.UTF_8))) return true;
+        respond(ex, 403, Map.of("error", "bad token"));
+        return false;
+    }
+
+    private void handleJobs(HttpExchange ex) throws IOException {
+        if (!authorized(ex)) return;
+        String path = ex.getRequestURI().getPath();
+        String method = ex.getRequestMethod();
+        String[] parts = path.replaceAll("/+$", "").split("/");
+
+        if (parts.length == 2 && method.equals("POST")) {
+            if (!accepting) {
+                respond(ex, 503, Map.of("error", "service is draining"));
+                return;
+            }
+            String type = ex.getRequestHeaders().getFirst("Content-Type");
+            if (type == null || !type.toLowerCase(Locale.ROOT).startsWith("application/json")) {
+                respond(ex, 415, Map.of("error", "Content-Type must be application/json"));
+                return;
+            }
+            JobRequest req;
+            try {
+                req = JSON.readValue(ex.getRequestBody(), JobRequest.class);
+            } catch (Exception e) {
+                respond(ex, 400, Map.of("error", "bad job JSON: " + e.getMessage()));
+                return;
+            }
+            String err = validate(req);
+            if (err != null) {
+                respond(ex, 400, Map.of("error", err));
+                return;
+            }
+            respond(ex, 202, submit(req).snapshot());
+            return;
+        }
+        if (parts.length == 2 && method.equals("GET")) {
+            List<Map<String, Object>> all = new ArrayList<>();
+            for (Job j : jobs.values()) all.add(j.snapshot());
+            respond(ex, 200, all);
+            return;
+        }
+
+        Job job = parts.length >= 3 ? jobs.get(parts[2]) : null;
+        if (job == null) {
+            respond(ex, 404, Map.of("error", "no such job"));
+            return;
+        }
+        if (parts.length == 3) {
+            respond(ex, 200, job.snapshot());
+        } else if (parts.length == 4 && parts[3].equals("events")) {
+            streamEvents(ex, job);
+        } else {
+            respond(ex, 404, Map.of("error", "unknown endpoint"));
+        }
+    }
+
+    private static String validate(JobRequest req) {
+        if (req.type == null) return "type is required";
+        switch (req.type) {
+            case "scrape", "discover" -> {
+                if (req.urls == null || req.urls.isEmpty()) return "urls is required";
+            }
+            case "extract" -> {
+                if (req.url == null || req.html == null) return "url and html are required";
+            }
+            default -> {
+                return "unknown job type: " + req.type;
+            }
+        }
+        return null;
+    }
+
+    private Job submit(JobRequest req) {
+        evictFinished();
+        Job job = new Job(String.valueOf(ids.incrementAndGet()), req);
+        int n = req.type.equals("extract") ? 1 : req.urls.size();
+        job.total = n;
+        jobs.put(job.id, job);
+        job.emit(Map.of("event", "queued", "tasks", n));
+        for (int i = 0; i < n; i++) {
+            queue.add(new Task(job, i, seq.incrementAndGet()));
+        }
+        System.out.println("Job " + job.id + " queued: " + req.type + " x" + n +
+                " (priority " + req.priority + ")");
+        return job;
+    }
+
+    // -----------------------------
+    // Workers
+    // -----------------------------
+
+    private void workLoop() {
+        while (true) {
+            Task t;
+            try {
+                t = queue.poll(500, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (t == null) {
+                if (!accepting && delayed.get() == 0) return; // drained
+                continue;
+            }
+            runTask(t);
+        }
+    }
+
+    private void runTask(Task t) {
+        Job job = t.job;
+        JobRequest req = job.req;
+        synchronized (job) {
+            if (job.state.equals("QUEUED")) job.state = "RUNNING";
+        }
+
+        Map<String, Object> ev = new LinkedHashMap<>();
+        ev.put("index", t.idx);
+        try {
+            switch (req.type) {
+                case "scrape" -> {
+                    String url = req.urls.get(t.idx);
+                    ev.put("url", url);
+                    ev.put("product", scraper.scrapeProduct(
+                            url, t.idx + 1, job.mpnPrefix, req.currency, req.company));
+                }
+                case "discover" -> {
+                    String url = req.urls.get(t.idx);
+                    ev.put("url", url);
+                    ev.put("links", scraper.discoverLinksWithBrowser(url, req.max));
+                }
+                case "extract" -> {
+                    ev.put("url", req.url);
+                    DomExtractor.ExtractResult er = DomExtractor.extractFromHtml(req.html, req.url, req.currency);
+                    ev.put("result", er);
+                    ev.put("sku", er.sku);
+                    ev.put("productType", ProductTypeDetector.detect(er.title, er.description, er.breadcrumbs));
+                }
+                default -> throw new IllegalStateException("unknown job type: " + req.type);
+            }
+            ev.put("event", "result");
+        } catch (HostHealth.HostUnavailableException e) {
+            if (e.retryAfterMs >= 0) {
+                retryLater(t, e.retryAfterMs);
+                return;
+            }
+            ev.put("event", "error");
+            ev.put("error", String.valueOf(e.getMessage()));
+        } catch (Exception e) {
+            t.attempts++;
+            if (t.attempts < RetryPolicy.MAX_ATTEMPTS && RetryPolicy.isRetriable(e)) {
+                retryLater(t, RetryPolicy.backoffMs(t.attempts, e));
+                return;
+            }
+            ev.put("event", "error");
+            ev.put("error", String.valueOf(e.getMessage()));
+        }
+
+        synchronized (job) {
+            job.done++;
+            if (ev.get("event").equals("error")) job.errors++;
+            ev.put("done", job.done);
+            ev.put("total", job.total);
+            job.emit(ev);
+            if (job.done == job.total) {
+                job.state = "DONE";
+                job.finishedAt = System.currentTimeMillis();
+                job.emit(Map.of("event", "done", "done", job.done, "errors", job.errors));
+                System.out.println("Job " + job.id + " done (" + job.done + " task(s), " +
+                        job.errors + " error(s)).");
+            }
+        }
+    }
+
+    /** Forgets finished jobs older than FINISHED_TTL_MS, and the oldest beyond MAX_FINISHED. */
+    private void evictFinished() {
+        long cutoff = System.currentTimeMillis() - FINISHED_TTL_MS;
+        List<Job> finished = new ArrayList<>();
+        for (Job j : jobs.values()) {
+            synchronized (j) {
+                if (!j.state.equals("DONE")) continue;
+                if (j.finishedAt < cutoff) jobs.remove(j.id);
+                else finished.add(j);
+            }
+        }
+        if (finished.size() <= MAX_FINISHED) return;
+        finished.sort(Comparator.comparingLong(j -> j.finishedAt));
+        for (Job j : finished.subList(0, finished.size() - MAX_FINISHED)) jobs.remove(j.id);
+    }
+
+    private void retryLater(Task t, long delayMs) {
+        delayed.incrementAndGet();
+        retryTimer.schedule(() -> {
+            queue.add(t);
+            delayed.decrementAndGet();
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void streamEvents(HttpExchange ex, Job job) throws IOException {
+        ex.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+        ex.sendResponseHeaders(200, 0); // chunked
+        try (OutputStream out = ex.getResponseBody()) {
+            long sent = 0;
+            while (true) {
+                List<Map<String, Object>> batch;
+                boolean end;
+                synchronized (job) {
+                    while (sent == job.emitted() && !job.state.equals("DONE")) {
+                        try {
+                            job.wait(15000);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                        if (sent == job.emitted() && !job.state.equals("DONE")) break; // keep-alive
+                    }
+                    sent = Math.max(sent, job.dropped);     // skip what was dropped meanwhile
+                    batch = new ArrayList<>(job.events.subList((int) (sent - job.dropped), job.events.size()));
+                    end = job.state.equals("DONE") && sent + batch.size() == job.emitted();
+                }
+                for (Map<String, Object> ev : batch) {
+                    out.write(JSON.writeValueAsBytes(ev));
+                    out.write('\n');
+                }
+                if (batch.isEmpty()) out.write('\n');
+                out.flush();
+                sent += batch.size();
+                if (end) return;
+            }
+        }
+    }
+
+    private static void respond(HttpExchange ex, int status, Object body) throws IOException {
+        byte[] bytes = JSON.writeValueAsBytes(body);
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
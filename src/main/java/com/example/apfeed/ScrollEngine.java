@@ -0,0 +1,133 @@
+package com.example.apfeed;
+
+import com.microsoft.playwright.Page;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Infinite-scroll / "load more" driver that runs entirely inside the page.
+ *
+ * One evaluate() call scrolls, finds and clicks a load-more control, and
+ * watches the DOM with a MutationObserver for new link hrefs. It stops once no
+ * new href has appeared for quietMs (and there is nothing left to click), or
+ * when the round/time budget is spent. All hrefs seen along the way are
+ * returned, so virtualised grids that recycle nodes lose nothing.
+ */
+public class ScrollEngine {
+    public static final int DEFAULT_QUIET_MS = 1500;
+    public static final int DEFAULT_MAX_MS = 60000;
+    public static final int DEFAULT_MAX_ROUNDS = 60;
+
+    private static final String SCRIPT = """
+            async (opts) => {
+              const start = performance.now();
+              const seen = new Set();
+              const links = [];
+              const scan = () => {
+                for (const a of document.querySelectorAll('a[href]')) {
+                  const h = a.getAttribute('href');
+                  if (h && !seen.has(h)) { seen.add(h); links.push(h); }
+                }
+              };
+              let queued = false;
+              const obs = new MutationObserver(() => {
+                if (queued) return;
+                queued = true;
+                setTimeout(() => { queued = false; scan(); }, 50);
+              });
+              obs.observe(document.body || document.documentElement, {childList: true, subtree: true});
+
+              const sleep = ms => new Promise(r => setTimeout(r, ms));
+              const moreRe = /^(load|show|view|see)\\s+(more|all)\\b|^more\\s+(products|items|results)\\b/i;
+              const visible = el => {
+                const r = el.getBoundingClientRect();
+                const s = getComputedStyle(el);
+                return r.width > 0 && r.height > 0 && s.visibility !== 'hidden' && !el.disabled;
+              };
+              const findMore = () => {
+                for (const el of document.querySelectorAll('button, a, [role=button], input[type=button]')) {
+                  const t = (el.innerText || el.value || el.getAttribute('aria-label') || '').trim();
+                  if (!t || t.length > 40 || !moreRe.test(t)) continue;
+                  const href = el.tagName === 'A' ? (el.getAttribute('href') || '') : '';
+                  // real navigation links would unload the page
+                  if (href && !href.startsWith('#') && !href.startsWith('javascript')) continue;
+                  if (visible(el)) return el;
+                }
+                return null;
+              };
+
+              scan();
+              let rounds = 0, clicks = 0, stale = 0, reason = 'max-rounds';
+              while (rounds < opts.maxRounds) {
+                if (performance.now() - start > opts.maxMs) { reason = 'time-budget'; break; }
+                rounds++;
+                const before = seen.size;
+                window.scrollTo(0, document.documentElement.scrollHeight);
+                const more = findMore();
+                if (more) { try { more.click(); clicks++; } catch (e) {} }
+
+                const roundStart = performance.now();
+                while (performance.now() - roundStart < opts.quietMs && seen.size === before) {
+                  await sleep(100);
+                  scan();
+                }
+                if (seen.size === before) {
+                  stale++;
+                  if (!findMore() || stale >= 2) { reason = 'quiet'; break; }
+                } else {
+                  stale = 0;
+                }
+              }
+              obs.disconnect();
+              return {rounds, clicks, reason, elapsedMs: Math.round(performance.now() - start), links};
+            }
+            """;
+
+    /** Outcome of one listing's scroll session. */
+    public static class Result {
+        public int rounds;
+        public int clicks;
+        public long elapsedMs;
+        public String reason = "";
+        public List<String> hrefs = new ArrayList<>();
+
+        @Override
+        public String toString() {
+            return rounds + " round(s), " + clicks + " click(s), " + hrefs.size() +
+                    " href(s) in " + elapsedMs + " ms (stop: " + reason + ")";
+        }
+    }
+
+    public static Result run(Page page) {
+        return run(page, DEFAULT_QUIET_MS, DEFAULT_MAX_MS, DEFAULT_MAX_ROUNDS);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Result run(Page page, int quietMs, int maxMs, int maxRounds) {
+        Object raw = page.evaluate(SCRIPT, Map.of(
+                "quietMs", quietMs,
+                "maxMs", maxMs,
+                "maxRounds", maxRounds));
+
+        Result r = new Result();
+        if (!(raw instanceof Map)) return r;
+        Map<String, Object> m = (Map<String, Object>) raw;
+        r.rounds = num(m.get("rounds"));
+        r.clicks = num(m.get("clicks"));
+        r.elapsedMs = num(m.get("elapsedMs"));
+        r.reason = String.valueOf(m.get("reason"));
+        Object links = m.get("links");
+        if (links instanceof List) {
+            for (Object o : (List<Object>) links) {
+                if (o != null) r.hrefs.add(o.toString());
+            }
+        }
+        return r;
+    }
+
+    private static int num(Object o) {
+        return o instanceof Number ? ((Number) o).intValue() : 0;
+    }
+}
@@ -0,0 +1,320 @@
+package com.example.apfeed;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coordinator for multi-process scraping: one feed, N worker processes.
+ *
+ * The coordinator discovers the frontier itself, then hands URLs out through a
+ * small HTTP work queue. Workers ({@link ShardWorker}, here or on other
+ * machines) lease a few URLs at a time, scrape them with their own browsers and
+ * post each product back. Results go through the run's reorder buffer, so the
+ * feed is written once, by the coordinator, in the original row order.
+ *
+ * A lease expires after {@link #LEASE_MS} without contact from its worker
+ * (every request renews all of that worker's leases); expired URLs are handed
+ * out again, and if two results arrive for a row the first one wins. Failed
+ * rows are retried through the run's normal retry queue.
+ *
+ * <pre>
+ * GET  /job      -> {"company","currency"}
+ * POST /lease    {"worker":"w1","max":4} -> {"tasks":[{"idx":1,"url":".."}],"done":false,"waitMs":0}
+ * POST /result   {"worker":"w1","idx":1,"product":{..}}
+ *                {"worker":"w1","idx":1,"error":"..","retriable":true,"retryAfterMs":2000,"attempt":true}
+ * POST /heartbeat {"worker":"w1","active":[1,2]} -> {"ok":true}
+ * </pre>
+ * A lease lasts {@link #LEASE_MS}; the worker's heartbeat renews the rows it
+ * still holds, but never beyond {@link #MAX_LEASE_MS} after the row was
+ * leased, so a row stuck in a hung or crashing browser is taken back. An
+ * expired lease counts as a failed attempt, so a row that keeps killing its
+ * worker ends up as an error instead of being handed out forever.
+ * Every request carries the header X-Apfeed-Token printed at start-up.
+ * Spawned workers get the token through the {@value #TOKEN_ENV} environment
+ * variable rather than their command line, which other local users can read.
+ */
+public class ShardCoordinator {
+    static final long LEASE_MS = 120_000;
+    static final long MAX_LEASE_MS = 10 * 60_000;
+    static final String TOKEN_HEADER = "X-Apfeed-Token";
+    static final String TOKEN_ENV = "APFEED_WORKER_TOKEN";
+    private static final long IDLE_POLL_MS = 500;
+
+    private static final ObjectMapper JSON = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /** POST /lease and /result body. */
+    public static class Message {
+        public String worker = "";
+        public int max = 1;
+        public int idx;
+        public Product product;
+        public String error;
+        public boolean retriable;
+        public long retryAfterMs;
+        public boolean attempt = true;
+        /** Rows the worker still holds (heartbeat). */
+        public List<Integer> active = new ArrayList<>();
+    }
+
+    private static final class Lease {
+        final FeedJobRun.Target target;
+        final String worker;
+        final long leasedAt = System.currentTimeMillis();
+        long expiresAt;
+
+        Lease(FeedJobRun.Target target, String worker) {
+            this.target = target;
+            this.worker = worker;
+        }
+    }
+
+    private final FeedJobRun run;
+    private final byte[] tokenBytes;
+    private final Map<Integer, Lease> leases = new HashMap<>();
+    private final BitSet completed = new BitSet();
+    private final Map<String, Integer> perWorker = new TreeMap<>();
+    private long lastContact = System.currentTimeMillis();
+    private boolean done;
+
+    private ShardCoordinator(FeedJobRun run, String token) {
+        this.run = run;
+        this.tokenBytes = token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param spawn worker processes to start on this machine (0 = only wait for remote ones)
+     * @param threadsPerWorker scraping threads inside each spawned worker
+     * @return process exit code
+     */
+    public static int run(FeedJob job, String bind, int port, int spawn, int threadsPerWorker,
+                          ScrapeOptions options) {
+        if (!FeedJobRun.hasAnyUrl(job.urls)) {
+            System.err.println("ERROR: No URLs found in " + job.urls);
+            return 1;
+        }
+        String token = newToken();
+        long start = System.currentTimeMillis();
+
+        List<Process> children = new ArrayList<>();
+        HttpServer server = null;
+        try (FeedJobRun run = new FeedJobRun(job, "")) {
+            // Discovery stays here (static first, browser only for script-rendered listings);
+            // the workers have their own browsers, so ours are closed once it is done
+            try (BrowserPool pool = BrowserPool.create(options)) {
+                run.collectLinks(new ProductScraper(pool, options));
+            }
+            run.openOutput();
+
+            ShardCoordinator c = new ShardCoordinator(run, token);
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getByName(bind), port), 0);
+            server.createContext("/", c::handle);
+            server.start();
+            String url = "http://" + (bind.equals("0.0.0.0") ? InetAddress.getLocalHost().getHostName() : bind)
+                    + ":" + server.getAddress().getPort();
+            System.out.println("Coordinator on " + url + " (token " + token + ")");
+            System.out.println("Remote workers: --worker " + url + " --token " + token + " --workers N");
+
+            for (int i = 0; i < spawn; i++) {
+                children.add(spawnWorker(url, token, "local-" + (i + 1), threadsPerWorker, options));
+            }
+
+            if (!c.awaitCompletion(children)) return 1;
+
+            run.markFinished();
+            run.finishOutput();
+            long elapsed = (System.currentTimeMillis() - start) / 1000;
+            System.out.printf("Done. Scraped %d product(s), %d error(s), %d retr(ies) in %d seconds.%n",
+                    run.scrapedCount(), run.errorCount(), run.retryCount(), elapsed);
+            synchronized (c) {
+                for (Map.Entry<String, Integer> e : c.perWorker.entrySet()) {
+                    System.out.println("  " + e.getKey() + ": " + e.getValue() + " row(s)");
+                }
+            }
+            return 0;
+        } catch (Exception e) {
+            System.err.println("ERROR: " + e.getMessage());
+            return 1;
+        } finally {
+            // Workers see done=true on their next lease and exit; give them a moment
+            for (Process p : children) {
+                try {
+                    if (!p.waitFor(10, TimeUnit.SECONDS)) p.destroy();
+                } catch (InterruptedException e) {
+                    p.destroy();
+                }
+            }
+            if (server != null) server.stop(0);
+        }
+    }
+
+    /** Blocks until every row is complete. False if all spawned workers died first. */
+    private synchronized boolean awaitCompletion(List<Process> children) throws InterruptedException {
+        long lastReport = 0;
+        while (run.hasNext() || !leases.isEmpty()) {
+            wait(1000);
+            reclaimExpired();
+            long now = System.currentTimeMillis();
+            if (now - lastReport > 10_000) {
+                lastReport = now;
+                System.out.printf("Progress: %d/%d row(s), %d leased, %d worker(s) seen.%n",
+                        run.scrapedCount() + run.errorCount(), run.totalUrls(), leases.size(), perWorker.size());
+            }
+            if (!children.isEmpty() && children.stream().noneMatch(Process::isAlive)
+                    && now - lastContact > LEASE_MS) {
+                System.err.println("ERROR: all worker processes exited with work remaining.");
+                return false;
+            }
+        }
+        done = true;
+        return true;
+    }
+
+    // -----------------------------
+    // HTTP
+    // -----------------------------
+
+    private void handle(HttpExchange ex) throws IOException {
+        String given = ex.getRequestHeaders().getFirst(TOKEN_HEADER);
+        if (given == null || !MessageDigest.isEqual(tokenBytes, given.getBytes(StandardCharsets.UTF_8))) {
+            respond(ex, 403, Map.of("error", "bad token"));
+            return;
+        }
+        String path = ex.getRequestURI().getPath();
+        try {
+            switch (path) {
+                case "/job" -> respond(ex, 200, Map.of(
+                        "company", run.job.company, "currency", run.job.currencyCode()));
+                case "/lease" -> respond(ex, 200, lease(JSON.readValue(ex.getRequestBody(), Message.class)));
+                case "/result" -> {
+                    result(JSON.readValue(ex.getRequestBody(), Message.class));
+                    respond(ex, 200, Map.of("ok", true));
+                }
+                case "/heartbeat" -> {
+                    heartbeat(JSON.readValue(ex.getRequestBody(), Message.class));
+                    respond(ex, 200, Map.of("ok", true));
+                }
+                default -> respond(ex, 404, Map.of("error", "unknown endpoint"));
+            }
+        } catch (IOException e) {
+            respond(ex, 400, Map.of("error", String.valueOf(e.getMessage())));
+        }
+    }
+
+    private synchronized Map<String, Object> lease(Message m) {
+        touch(m.worker);
+        reclaimExpired();
+        List<Map<String, Object>> tasks = new ArrayList<>();
+        while (tasks.size() < Math.max(1, Math.min(16, m.max))) {
+            FeedJobRun.Target t = run.next();
+            if (t == null) break;
+            if (completed.get(t.idx)) continue; // late duplicate of a reclaimed lease
+            if (run.skipIfDropped(t, false)) {
+                completed.set(t.idx);
+                continue;
+            }
+            Lease l = new Lease(t, m.worker);
+            l.expiresAt = System.currentTimeMillis() + LEASE_MS;
+            leases.put(t.idx, l);
+            tasks.add(Map.of("idx", t.idx, "url", t.url, "attempt", t.attempts + 1));
+        }
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("tasks", tasks);
+        out.put("done", done || (!run.hasNext() && leases.isEmpty()));
+        long ready = run.millisUntilReady();
+        out.put("waitMs", tasks.isEmpty() ? Math.min(ready == Long.MAX_VALUE ? IDLE_POLL_MS * 4 : ready, 5000) : 0);
+        return out;
+    }
+
+    private synchronized void result(Message m) {
+        touch(m.worker);
+        Lease l = leases.remove(m.idx);
+        if (l == null || completed.get(m.idx)) return; // already answered by another worker
+        run.finished(l.target, System.currentTimeMillis() - l.leasedAt);
+        if (m.product != null) {
+            completed.set(m.idx);
+            run.complete(l.target, m.product);
+            perWorker.merge(m.worker, 1, Integer::sum);
+        } else {
+            String msg = "[" + m.worker + "] " + l.target.url + ": " + m.error;
+            if (!run.failed(l.target, msg, m.retriable, m.retryAfterMs, m.attempt)) completed.set(m.idx);
+        }
+        notifyAll();
+    }
+
+    private void touch(String worker) {
+        lastContact = System.currentTimeMillis();
+        perWorker.putIfAbsent(worker, 0);
+    }
+
+    /** Renews the leases the worker says it still holds, up to MAX_LEASE_MS after each was leased. */
+    private synchronized void heartbeat(Message m) {
+        touch(m.worker);
+        long now = System.currentTimeMillis();
+        for (Integer idx : m.active) {
+            Lease l = leases.get(idx);
+            if (l != null && l.worker.equals(m.worker)) {
+                l.expiresAt = Math.min(now + LEASE_MS, l.leasedAt + MAX_LEASE_MS);
+            }
+        }
+    }
+
+    private void reclaimExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Lease> it = leases.values().iterator();
+        while (it.hasNext()) {
+            Lease l = it.next();
+            if (l.expiresAt > now) continue;
+            it.remove();
+            run.finished(l.target, -1);
+            String msg = "[" + l.worker + "] " + l.target.url + ": lease expired";
+            long backoff = RetryPolicy.backoffMs(l.target.attempts + 1, null);
+            if (!run.failed(l.target, msg, true, backoff, true)) completed.set(l.target.idx);
+        }
+    }
+
+    // -----------------------------
+    // Helpers
+    // -----------------------------
+
+    private static Process spawnWorker(String url, String token, String name, int threads,
+                                       ScrapeOptions options) throws IOException {
+        String java = ProcessHandle.current().info().command()
+                .orElse(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        List<String> cmd = new ArrayList<>(List.of(java, "-cp", System.getProperty("java.class.path"),
+                ProductFeedApp.class.getName(),
+                "--worker", url, "--name", name, "--workers", String.valueOf(threads)));
+        cmd.addAll(options.toArgs());
+        ProcessBuilder pb = new ProcessBuilder(cmd).inheritIO();
+        pb.environment().put(TOKEN_ENV, token);
+        return pb.start();
+    }
+
+    static String newToken() {
+        byte[] b = new byte[12];
+        new SecureRandom().nextBytes(b);
+        return HexFormat.of().formatHex(b);
+    }
+
+    private static void respond(HttpExchange ex, int status, Object body) throws IOException {
+        byte[] bytes = JSON.writeValueAsBytes(body);
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
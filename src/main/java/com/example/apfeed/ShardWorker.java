@@ -0,0 +1,171 @@
+package com.example.apfeed;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Worker process for {@link ShardCoordinator}: leases URLs, scrapes them with
+ * its own browsers (one per thread) and posts each result back. Retries are
+ * decided by the coordinator, so a worker never sleeps on a backoff. A
+ * heartbeat thread tells the coordinator which leased rows are still held.
+ */
+public class ShardWorker {
+    private static final ObjectMapper JSON = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    // URLs leased per request, per thread
+    private static final int LEASE_BATCH = 2;
+    private static final long HEARTBEAT_MS = ShardCoordinator.LEASE_MS / 4;
+
+    private final String base;
+    private final String token;
+    private final String name;
+    // rows leased and not yet reported
+    private final Set<Integer> held = ConcurrentHashMap.newKeySet();
+    private final HttpClient http = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private ShardWorker(String base, String token, String name) {
+        this.base = base.replaceAll("/+$", "");
+        this.token = token;
+        this.name = name;
+    }
+
+    /** @return process exit code */
+    public static int run(String coordinatorUrl, String token, String name, int threads, ScrapeOptions options) {
+        ProductTypeDetector.preloadInBackground();
+        ShardWorker w = new ShardWorker(coordinatorUrl, token, name);
+        FeedJob job;
+        try {
+            JsonNode j = w.call("GET", "/job", null);
+            job = new FeedJob(j.path("company").asText(), j.path("currency").asText(), null, null);
+        } catch (Exception e) {
+            System.err.println("ERROR contacting coordinator " + coordinatorUrl + ": " + e.getMessage());
+            return 1;
+        }
+        System.out.println("[" + name + "] Worker for " + job.company + " with " + threads + " thread(s).");
+
+        Thread heartbeat = new Thread(w::heartbeat, name + "-heartbeat");
+        heartbeat.setDaemon(true);
+        heartbeat.start();
+
+        List<Thread> all = new ArrayList<>();
+        try (BrowserPool pool = BrowserPool.create(options)) {
+            pool.startInBackground();
+            ProductScraper scraper = new ProductScraper(pool, options);
+            for (int i = 1; i <= Math.max(1, threads); i++) {
+                Thread t = new Thread(() -> w.loop(scraper, job), name + "-" + i);
+                t.start();
+                all.add(t);
+            }
+            for (Thread t : all) t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+        return 0;
+    }
+
+    private void loop(ProductScraper scraper, FeedJob job) {
+        String mpnPrefix = job.mpnPrefix();
+        String currency = job.currencyCode();
+        int contactFailures = 0;
+        while (true) {
+            JsonNode lease;
+            try {
+                lease = call("POST", "/lease", Map.of("worker", name, "max", LEASE_BATCH));
+                contactFailures = 0;
+            } catch (Exception e) {
+                // coordinator gone (finished or crashed): stop after a few tries
+                if (++contactFailures >= 5) return;
+                sleep(1000L * contactFailures);
+                continue;
+            }
+            if (lease.path("tasks").isEmpty()) {
+                if (lease.path("done").asBoolean()) return;
+                sleep(Math.max(100, lease.path("waitMs").asLong(500)));
+                continue;
+            }
+            for (JsonNode task : lease.path("tasks")) held.add(task.path("idx").asInt());
+            for (JsonNode task : lease.path("tasks")) {
+                int idx = task.path("idx").asInt();
+                String url = task.path("url").asText();
+                System.out.printf("[%s] (row %d) Scraping %s%n", name, idx, url);
+                Map<String, Object> result;
+                try {
+                    Product p = scraper.scrapeProduct(url, idx, mpnPrefix, currency, job.company);
+                    result = Map.of("worker", name, "idx", idx, "product", p);
+                } catch (HostHealth.HostUnavailableException e) {
+                    result = Map.of("worker", name, "idx", idx, "error", String.valueOf(e.getMessage()),
+                            "retriable", true, "retryAfterMs", e.retryAfterMs, "attempt", false);
+                } catch (Exception e) {
+                    result = Map.of("worker", name, "idx", idx, "error", String.valueOf(e.getMessage()),
+                            "retriable", RetryPolicy.isRetriable(e),
+                            "retryAfterMs", RetryPolicy.backoffMs(task.path("attempt").asInt(1), e),
+                            "attempt", true);
+                }
+                postResult(result);
+                held.remove(idx);
+            }
+        }
+    }
+
+    private void heartbeat() {
+        while (true) {
+            sleep(HEARTBEAT_MS);
+            if (held.isEmpty()) continue;
+            try {
+                call("POST", "/heartbeat", Map.of("worker", name, "active", new ArrayList<>(held)));
+            } catch (Exception e) {
+                // the leases run out and the rows are handed out again
+            }
+        }
+    }
+
+    private void postResult(Map<String, Object> result) {
+        for (int i = 1; i <= 5; i++) {
+            try {
+                call("POST", "/result", result);
+                return;
+            } catch (Exception e) {
+                sleep(500L * i);
+            }
+        }
+        // the lease expires and the coordinator hands the row out again
+        System.err.println("[" + name + "] Could not report row " + result.get("idx") + ".");
+    }
+
+    private JsonNode call(String method, String path, Object body) throws Exception {
+        HttpRequest.Builder b = HttpRequest.newBuilder(URI.create(base + path))
+                .timeout(Duration.ofSeconds(30))
+                .header(ShardCoordinator.TOKEN_HEADER, token)
+                .header("Content-Type", "application/json");
+        if (body == null) b.GET();
+        else b.method(method, HttpRequest.BodyPublishers.ofByteArray(JSON.writeValueAsBytes(body)));
+        HttpResponse<byte[]> res = http.send(b.build(), HttpResponse.BodyHandlers.ofByteArray());
+        if (res.statusCode() != 200) {
+            throw new IllegalStateException("coordinator answered HTTP " + res.statusCode());
+        }
+        return JSON.readTree(res.body());
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.apfeed;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.jsoup.Jsoup;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Shopify: /products.json and /collections/{handle}/products.json (250 per
+ * page) for discovery, /products/{handle}.js for single products. Only
+ * /collections/all lists the whole store; any other listing shape (search,
+ * pages, vendors) returns nothing so the caller falls back to the page.
+ */
+public class ShopifyAdapter implements PlatformAdapter {
+    private static final int PAGE_SIZE = 250;
+    private static final Pattern COLLECTION = Pattern.compile("/collections/([^/]+)");
+    private static final Pattern PRODUCT = Pattern.compile("/products/([^/?#.]+)");
+
+    @Override
+    public String name() {
+        return "shopify";
+    }
+
+    @Override
+    public List<JsonProductCapture.Captured> discover(String listingUrl, int maxProducts) {
+        String origin = JsonHttp.origin(listingUrl);
+        List<JsonProductCapture.Captured> out = new ArrayList<>();
+        if (origin == null) return out;
+
+        Matcher m = COLLECTION.matcher(JsonHttp.path(listingUrl));
+        // /collections/vendors?q= and /collections/types?q= are filtered views, not collections
+        if (!m.find() || m.group(1).equals("vendors") || m.group(1).equals("types")) return out;
+        String base = m.group(1).equals("all")
+                ? origin + "/products.json"
+                : origin + "/collections/" + m.group(1) + "/products.json";
+
+        for (int page = 1; out.size() < maxProducts; page++) {
+            JsonNode root = JsonHttp.get(base + "?limit=" + PAGE_SIZE + "&page=" + page);
+            JsonNode products = root == null ? null : root.get("products");
+            if (products == null || !products.isArray() || products.size() == 0) break;
+            for (JsonNode p : products) {
+                if (out.size() >= maxProducts) break;
+                JsonProductCapture.Captured c = fromProductsJson(p, origin);
+                if (c != null) out.add(c);
+            }
+            if (products.size() < PAGE_SIZE) break;
+        }
+        return out;
+    }
+
+    @Override
+    public JsonProductCapture.Captured fetch(String productUrl) {
+        String origin = JsonHttp.origin(productUrl);
+        Matcher m = PRODUCT.matcher(JsonHttp.path(productUrl));
+        if (origin == null || !m.find()) return null;
+
+        // .js variant: prices in cents, has "available" and "featured_image"
+        JsonNode p = JsonHttp.get(origin + "/products/" + m.group(1) + ".js");
+        if (p == null || !p.has("title")) return null;
+
+        JsonProductCapture.Captured c = new JsonProductCapture.Captured();
+        c.url = origin + "/products/" + JsonHttp.text(p, "handle");
+        c.title = JsonHttp.text(p, "title");
+        String cents = JsonHttp.text(p, "price");
+        c.price = cents.matches("\\d+") ? new BigDecimal(cents).movePointLeft(2).toPlainString() : "";
+        c.imageUrl = absolute(JsonHttp.text(p, "featured_image"));
+        c.description = plain(JsonHttp.text(p, "description"));
+        c.availability = p.path("available").asBoolean(true) ? "in stock" : "out of stock";
+        JsonNode v = p.path("variants").path(0);
+        c.sku = JsonHttp.text(v, "sku");
+        String type = JsonHttp.text(p, "type");
+        if (!type.isEmpty()) c.categories.add(type);
+        return c;
+    }
+
+    /** One entry of products.json (prices as decimal strings on the variants). */
+    private static JsonProductCapture.Captured fromProductsJson(JsonNode p, String origin) {
+        String handle = JsonHttp.text(p, "handle");
+        if (handle.isEmpty()) return null;
+
+        JsonProductCapture.Captured c = new JsonProductCapture.Captured();
+        c.url = origin + "/products/" + handle;
+        c.title = JsonHttp.text(p, "title");
+        c.description = plain(JsonHttp.text(p, "body_html"));
+
+        JsonNode variants = p.path("variants");
+        boolean anyAvailable = false;
+        for (JsonNode v : variants) {
+            if (c.price.isEmpty()) c.price = JsonHttp.text(v, "price");
+            if (c.sku.isEmpty()) c.sku = JsonHttp.text(v, "sku");
+            anyAvailable |= v.path("available").asBoolean(false);
+        }
+        if (variants.size() > 0 && variants.get(0).has("available")) {
+            c.availability = anyAvailable ? "in stock" : "out of stock";
+        }
+        c.imageUrl = absolute(JsonHttp.text(p.path("images").path(0), "src"));
+        String type = JsonHttp.text(p, "product_type");
+        if (!type.isEmpty()) c.categories.add(type);
+        return c;
+    }
+
+    private static String absolute(String src) {
+        if (src.isEmpty()) return "";
+        return src.startsWith("//") ? "https:" + src : src;
+    }
+
+    private static String plain(String html) {
+        if (html.isEmpty()) return "";
+        String t = Jsoup.parse(html).text().replaceAll("https?://\\S+", "").replaceAll("\\s+", " ").trim();
+        return t.length() > 500 ? t.substring(0, 500) : t;
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.apfeed;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Reads the machine-readable offer a product page publishes about itself:
+ * JSON-LD (schema.org Product/Offer), microdata (itemprop) and OpenGraph
+ * product meta tags. Much cheaper and more reliable than scanning body text,
+ * and available in the static HTML on most shops.
+ */
+public class StructuredData {
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final Set<String> THREE_DECIMAL_CURRENCIES = Set.of("BHD", "IQD", "JOD", "KWD", "LYD", "OMR", "TND");
+
+    /** Price/availability as published by the page; fields are "" when not present. */
+    public static class Offer {
+        public String price = "";
+        public String currency = "";
+        public String availability = "";
+
+        public boolean hasPrice() {
+            return !price.isEmpty();
+        }
+
+        public boolean hasAvailability() {
+            return !availability.isEmpty();
+        }
+    }
+
+    public static Offer readOffer(Document doc) {
+        // 1) JSON-LD
+        Offer o = jsonLdOffer(jsonLdProducts(doc));
+        if (o.hasPrice() && o.hasAvailability()) return o;
+
+        // 2) Microdata
+        if (o.price.isEmpty()) {
+            Element el = doc.selectFirst("[itemprop=price]");
+            if (el != null) {
+                o.price = el.hasAttr("content") ? el.attr("content").trim() : el.text().trim();
+                Element cur = doc.selectFirst("[itemprop=priceCurrency]");
+                if (cur != null) o.currency = cur.hasAttr("content") ? cur.attr("content") : cur.text();
+            }
+        }
+        if (o.availability.isEmpty()) {
+            Element el = doc.selectFirst("[itemprop=availability]");
+            if (el != null) {
+                String v = el.hasAttr("href") ? el.attr("href")
+                        : el.hasAttr("content") ? el.attr("content") : el.text();
+                o.availability = mapAvailability(v);
+            }
+        }
+
+        // 3) OpenGraph / Facebook product tags
+        if (o.price.isEmpty()) {
+            Element el = doc.selectFirst("meta[property=product:price:amount], meta[property=og:price:amount]");
+            if (el != null) {
+                o.price = el.attr("content").trim();
+                Element cur = doc.selectFirst("meta[property=product:price:currency], meta[property=og:price:currency]");
+                if (cur != null) o.currency = cur.attr("content").trim();
+            }
+        }
+        if (o.availability.isEmpty()) {
+            Element el = doc.selectFirst("meta[property=product:availability], meta[property=og:availability]");
+            if (el != null) o.availability = mapAvailability(el.attr("content"));
+        }
+
+        return o;
+    }
+
+    /** Price and availability from the offers of these JSON-LD products (the first of each found). */
+    public static Offer jsonLdOffer(List<JsonNode> products) {
+        Offer o = new Offer();
+        for (JsonNode product : products) {
+            JsonNode offers = product.get("offers");
+            if (offers == null) continue;
+            List<JsonNode> list = new ArrayList<>();
+            if (offers.isArray()) offers.forEach(list::add);
+            else list.add(offers);
+            for (JsonNode off : list) {
+                if (o.price.isEmpty()) {
+                    String p = text(off, "price");
+                    if (p.isEmpty()) p = text(off, "lowPrice");
+                    if (p.isEmpty() && off.has("priceSpecification")) {
+                        p = text(off.get("priceSpecification"), "price");
+                    }
+                    o.price = p;
+                    if (!p.isEmpty()) o.currency = text(off, "priceCurrency");
+                }
+                if (o.availability.isEmpty()) {
+                    o.availability = mapAvailability(text(off, "availability"));
+                }
+            }
+            if (o.hasPrice() && o.hasAvailability()) break;
+        }
+        return o;
+    }
+
+    /** Availability only; "" when the page does not declare it. */
+    public static String readAvailability(Document doc) {
+        return readOffer(doc).availability;
+    }
+
+    /**
+     * Formats a structured price the same way the text extractor does
+     * ("12.50 GBP"), or "" if it is not a usable number.
+     */
+    public static String formatPrice(String raw, String currencyCode) {
+        if (raw == null) return "";
+        String s = normalizeAmount(raw, currencyCode);
+        if (s.isEmpty()) return "";
+        try {
+            double v = Double.parseDouble(s);
+            if (v <= 0) return "";
+            return String.format(Locale.US, "%.2f %s", v, currencyCode);
+        } catch (NumberFormatException e) {
+            return "";
+        }
+    }
+
+    /**
+     * A price as written on a page ("1.234,56", "1,234.56", "12,50", "1.234")
+     * as a plain decimal ("1234.56", "12.50", "1234"); shared by structured data
+     * and the text extractor. With both separators the last one is the decimal
+     * mark. A single separator followed by exactly three digits, after one to
+     * three leading digits, is a thousands separator ("1.234" = 1234) unless
+     * the currency has three decimals (KWD, BHD, ...).
+     */
+    static String normalizeAmount(String raw, String currencyCode) {
+        String s = raw.replaceAll("[^0-9.,]", "");
+        int lastDot = s.lastIndexOf('.');
+        int lastComma = s.lastIndexOf(',');
+        if (lastDot >= 0 && lastComma >= 0) {
+            int last = Math.max(lastDot, lastComma);
+            String intPart = s.substring(0, last).replaceAll("[^0-9]", "");
+            String fracPart = s.substring(last + 1).replaceAll("[^0-9]", "");
+            return fracPart.isEmpty() ? intPart : intPart + "." + fracPart;
+        }
+        int sep = Math.max(lastDot, lastComma);
+        if (sep < 0) return s;
+        char mark = s.charAt(sep);
+        if (s.indexOf(mark) != sep) {
+            // repeated: thousands separators ("1.234.567"); anything else is left unparseable
+            return s.matches("[0-9]{1,3}([.,][0-9]{3})+") ? s.replace(String.valueOf(mark), "") : s;
+        }
+        boolean thousands = s.length() - sep == 4 && sep >= 1 && sep <= 3 && s.charAt(0) != '0'
+                && !THREE_DECIMAL_CURRENCIES.contains(currencyCode == null ? "" : currencyCode.toUpperCase(Locale.ROOT));
+        return thousands ? s.substring(0, sep) + s.substring(sep + 1) : s.replace(',', '.');
+    }
+
+    /**
+     * Maps schema.org / OpenGraph availability values onto the feed vocabulary
+     * (in stock, out of stock, preorder, backorder). "" if unrecognised.
+     */
+    public static String mapAvailability(String v) {
+        if (v == null) return "";
+        String s = v.toLowerCase(Locale.ROOT).replaceAll("[^a-z]", "");
+        if (s.isEmpty()) return "";
+        if (s.endsWith("outofstock") || s.endsWith("soldout") || s.endsWith("discontinued")) return "out of stock";
+        if (s.endsWith("preorder") || s.endsWith("presale")) return "preorder";
+        if (s.endsWith("backorder")) return "backorder";
+        if (s.endsWith("instock") || s.endsWith("limitedavailability")
+                || s.endsWith("onlineonly") || s.endsWith("instoreonly")) return "in stock";
+        return "";
+    }
+
+    // -----------------------------
+    // JSON-LD helpers
+    // -----------------------------
+
+    /** All schema.org Product nodes found in ld+json blocks (including inside @graph). */
+    public static List<JsonNode> jsonLdProducts(Document doc) {
+        List<String> blocks = new ArrayList<>();
+        for (Element s : doc.select("script[type=application/ld+json]")) blocks.add(s.data());
+        return jsonLdProducts(blocks);
+    }
+
+    /** The same, from the text of the ld+json blocks. */
+    public static List<JsonNode> jsonLdProducts(List<String> blocks) {
+        List<JsonNode> out = new ArrayList<>();
+        for (String block : blocks) {
+            try {
+                collectProducts(JSON.readTree(block), out);
+            } catch (Exception ignored) {
+                // broken JSON-LD is common; just skip the block
+            }
+        }
+        return out;
+    }
+
+    private static void collectProducts(JsonNode n, List<JsonNode> out) {
+        if (n == null) return;
+        if (n.isArray()) {
+            for (JsonNode c : n) collectProducts(c, out);
+            return;
+        }
+        if (!n.isObject()) return;
+        if (isType(n, "Product") || isType(n, "ProductGroup")) out.add(n);
+        if (n.has("@graph")) collectProducts(n.get("@graph"), out);
+        if (n.has("mainEntity")) collectProducts(n.get("mainEntity"), out);
+    }
+
+    private static boolean isType(JsonNode n, String type) {
+        JsonNode t = n.get("@type");
+        if (t == null) return false;
+        if (t.isArray()) {
+            for (JsonNode x : t) {
+                if (type.equalsIgnoreCase(x.asText())) return true;
+            }
+            return false;
+        }
+        return type.equalsIgnoreCase(t.asText());
+    }
+
+    private static String text(JsonNode n, String field) {
+        if (n == null) return "";
+        JsonNode v = n.get(field);
+        if (v == null || v.isNull() || v.isContainerNode()) return "";
+        return v.asText().trim();
+    }
+}
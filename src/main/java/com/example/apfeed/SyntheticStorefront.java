@@ -0,0 +1,574 @@
+package com.example.apfeed;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Embedded fake shop for offline throughput and load testing. Serves a
+ * deterministic catalogue on 127.0.0.1:
+ *
+ * <pre>
+ * GET /collections/all?page=N    listing (numbered pages, or "load more" infinite scroll)
+ * GET /products/{handle}         product page (server-rendered, or built by a script)
+ * GET /api/products/{handle}     product JSON the script-rendered page fetches
+ * GET /products.json?page=N      Shopify-style catalogue  (platform=shopify only)
+ * GET /products/{handle}.js      Shopify-style product    (platform=shopify only)
+ * GET /img/{handle}-N.png        400x400 PNG
+ * GET /__stats                   request counters
+ * </pre>
+ *
+ * Latency, 429s and 5xx are injected on pages and JSON (not images or
+ * stats), so retry and circuit-breaker behaviour can be exercised too.
+ */
+public class SyntheticStorefront implements AutoCloseable {
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final Pattern PRODUCT = Pattern.compile("/products/([a-z0-9-]+)(\\.js)?");
+    private static final Pattern API_PRODUCT = Pattern.compile("/api/products/([a-z0-9-]+)");
+    private static final Pattern PAGE = Pattern.compile("[?&]page=(\\d+)");
+
+    private static final String[] ADJECTIVES = {
+            "Copper", "Walnut", "Linen", "Ceramic", "Merino", "Oak", "Enamel", "Brass",
+            "Cotton", "Stoneware", "Bamboo", "Leather", "Glass", "Slate", "Wool", "Steel"
+    };
+    private static final String[] NOUNS = {
+            "Kettle", "Chopping Board", "Throw", "Mug", "Scarf", "Side Table", "Teapot", "Lamp",
+            "Tote Bag", "Bowl", "Planter", "Notebook", "Vase", "Coaster Set", "Blanket", "Saucepan"
+    };
+
+    /** Shop shape and injected faults; public fields, set from the command line by {@link #parse}. */
+    public static class Config {
+        public int products = 500;
+        public int pageSize = 24;
+        /** Product and listing pages built in the browser from JSON instead of served as HTML. */
+        public boolean jsRendered;
+        /** Listing grows through a "load more" button instead of numbered pages. */
+        public boolean infiniteScroll;
+        public boolean cookieBanner;
+        public boolean jsonLd = true;
+        /** "html" (generic shop) or "shopify" (also serves the Shopify JSON endpoints). */
+        public String platform = "html";
+        public String currency = "GBP";
+        /** Mean added latency per page/JSON request; each request gets 50-150% of it. */
+        public int latencyMs;
+        /** Share of page/JSON requests answered 429 with Retry-After: 1. */
+        public double rate429;
+        /** Share of page/JSON requests answered 503. */
+        public double errorRate;
+        public long seed = 1;
+    }
+
+    /**
+     * Reads storefront flags out of args (removing them), e.g.
+     * --products 2000 --js --scroll --cookie-banner --no-jsonld --platform shopify
+     * --latency-ms 150 --rate-429 0.02 --error-rate 0.01 --page-size 48 --seed 7
+     */
+    public static Config parse(List<String> args) {
+        Config c = new Config();
+        for (int i = 0; i < args.size(); i++) {
+            String a = args.get(i);
+            boolean hasValue = i + 1 < args.size();
+            switch (a) {
+                case "--js" -> c.jsRendered = true;
+                case "--scroll" -> c.infiniteScroll = true;
+                case "--cookie-banner" -> c.cookieBanner = true;
+                case "--no-jsonld" -> c.jsonLd = false;
+                default -> {
+                    if (!hasValue) continue;
+                    String v = args.get(i + 1);
+                    switch (a) {
+                        case "--products" -> c.products = Integer.parseInt(v);
+                        case "--page-size" -> c.pageSize = Math.max(1, Integer.parseInt(v));
+                        case "--platform" -> c.platform = v.toLowerCase(Locale.ROOT);
+                        case "--currency" -> c.currency = v.toUpperCase(Locale.ROOT);
+                        case "--latency-ms" -> c.latencyMs = Integer.parseInt(v);
+                        case "--rate-429" -> c.rate429 = Double.parseDouble(v);
+                        case "--error-rate" -> c.errorRate = Double.parseDouble(v);
+                        case "--seed" -> c.seed = Long.parseLong(v);
+                        default -> {
+                            continue;
+                        }
+                    }
+                    args.remove(i + 1);
+                }
+            }
+            args.remove(i--);
+        }
+        return c;
+    }
+
+    /** Request counters, as returned by /__stats. */
+    public static class Stats {
+        public long requests;
+        public long pages;
+        public long json;
+        public long images;
+        public long throttled;
+        public long errors;
+    }
+
+    private final Config config;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final byte[] png;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong pages = new AtomicLong();
+    private final AtomicLong json = new AtomicLong();
+    private final AtomicLong images = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    private SyntheticStorefront(Config config, int port) throws IOException {
+        this.config = config;
+        this.png = renderPng();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        // injected latency sleeps on the handler thread, so allow plenty of them
+        this.executor = PaginationDiscovery.daemonPool(64, "apfeed-storefront");
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    /** Starts a storefront on port (0 = any free port). */
+    public static SyntheticStorefront start(Config config, int port) throws IOException {
+        SyntheticStorefront s = new SyntheticStorefront(config, port);
+        s.server.start();
+        return s;
+    }
+
+    /** Standalone mode: serve until the process is killed. */
+    public static int run(Config config, int port) {
+        try {
+            SyntheticStorefront s = start(config, port);
+            System.out.println("Synthetic storefront: " + s.config.products + " product(s), "
+                    + (s.config.jsRendered ? "script-rendered" : "server-rendered") + ", "
+                    + (s.config.infiniteScroll ? "infinite scroll" : "numbered pages")
+                    + (s.config.platform.equals("shopify") ? ", Shopify endpoints" : ""));
+            System.out.println("Listing: " + s.listingUrl());
+            System.out.println("Counters: " + s.baseUrl() + "/__stats   (Ctrl+C to stop)");
+            Thread.currentThread().join();
+            return 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } catch (IOException e) {
+            System.err.println("ERROR starting storefront: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public String listingUrl() {
+        return baseUrl() + "/collections/all";
+    }
+
+    public Stats stats() {
+        Stats s = new Stats();
+        s.requests = requests.get();
+        s.pages = pages.get();
+        s.json = json.get();
+        s.images = images.get();
+        s.throttled = throttled.get();
+        s.errors = errors.get();
+        return s;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    // -----------------------------
+    // Routing
+    // -----------------------------
+
+    private void handle(HttpExchange ex) throws IOException {
+        requests.incrementAndGet();
+        try (ex) {
+            String path = ex.getRequestURI().getPath();
+            String query = ex.getRequestURI().getRawQuery() == null ? "" : "?" + ex.getRequestURI().getRawQuery();
+            boolean shopify = config.platform.equals("shopify");
+
+            if (path.equals("/__stats")) {
+                send(ex, 200, "application/json", JSON.writeValueAsBytes(stats()));
+                return;
+            }
+            if (path.startsWith("/img/")) {
+                images.incrementAndGet();
+                send(ex, 200, "image/png", png);
+                return;
+            }
+            if (!injectFaults(ex)) return;
+
+            Matcher m;
+            if (path.equals("/") || path.equals("/collections/all")) {
+                pages.incrementAndGet();
+                int page = pageParam(query);
+                boolean fragment = query.contains("view=fragment");
+                html(ex, fragment ? listingFragment(page) : listingPage(page));
+            } else if (shopify && path.equals("/products.json")) {
+                json.incrementAndGet();
+                send(ex, 200, "application/json", JSON.writeValueAsBytes(shopifyCatalogue(pageParam(query))));
+            } else if ((m = API_PRODUCT.matcher(path)).matches() && index(m.group(1)) >= 0) {
+                json.incrementAndGet();
+                send(ex, 200, "application/json", JSON.writeValueAsBytes(productJson(index(m.group(1)))));
+            } else if ((m = PRODUCT.matcher(path)).matches() && index(m.group(1)) >= 0) {
+                int i = index(m.group(1));
+                if (m.group(2) != null) {
+                    if (!shopify) {
+                        send(ex, 404, "text/plain", "not found".getBytes(StandardCharsets.UTF_8));
+                        return;
+                    }
+                    json.incrementAndGet();
+                    send(ex, 200, "application/json", JSON.writeValueAsBytes(shopifyProduct(i)));
+                } else {
+                    pages.incrementAndGet();
+                    html(ex, productPage(i));
+                }
+            } else {
+                send(ex, 404, "text/plain", "not found".getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (Exception e) {
+            // client hung up mid-response; nothing useful to do
+        }
+    }
+
+    /** Sleeps the configured latency and maybe answers 429/503; false if the response was sent. */
+    private boolean injectFaults(HttpExchange ex) throws IOException {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        if (config.latencyMs > 0) {
+            try {
+                Thread.sleep(config.latencyMs / 2 + r.nextInt(config.latencyMs + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        double roll = r.nextDouble();
+        if (roll < config.rate429) {
+            throttled.incrementAndGet();
+            ex.getResponseHeaders().set("Retry-After", "1");
+            send(ex, 429, "text/plain", "slow down".getBytes(StandardCharsets.UTF_8));
+            return false;
+        }
+        if (roll < config.rate429 + config.errorRate) {
+            errors.incrementAndGet();
+            send(ex, 503, "text/plain", "unavailable".getBytes(StandardCharsets.UTF_8));
+            return false;
+        }
+        return true;
+    }
+
+    // -----------------------------
+    // Catalogue
+    // -----------------------------
+
+    private static String handle(int i) {
+        return String.format(Locale.ROOT, "item-%06d", i);
+    }
+
+    /** Catalogue index for a handle, or -1. */
+    private int index(String handle) {
+        if (!handle.startsWith("item-")) return -1;
+        try {
+            int i = Integer.parseInt(handle.substring(5));
+            return i >= 0 && i < config.products ? i : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private SplittableRandom rng(int i) {
+        return new SplittableRandom(config.seed * 1_000_003L + i);
+    }
+
+    private String title(int i) {
+        SplittableRandom r = rng(i);
+        return ADJECTIVES[r.nextInt(ADJECTIVES.length)] + " " + NOUNS[r.nextInt(NOUNS.length)] + " No. " + (i + 1);
+    }
+
+    private long priceCents(int i) {
+        SplittableRandom r = rng(i);
+        r.nextInt();
+        r.nextInt();
+        return (4 + r.nextInt(196)) * 100L + 99;   // 4.99 .. 199.99
+    }
+
+    private boolean available(int i) {
+        return i % 7 != 3;
+    }
+
+    private String sku(int i) {
+        return String.format(Locale.ROOT, "SYN-%06d", i);
+    }
+
+    private String description(int i) {
+        String t = title(i).toLowerCase(Locale.ROOT);
+        return "Our " + t + " is made in small batches and finished by hand. "
+                + "Every piece is checked before it leaves the workshop and ships within two working days.";
+    }
+
+    private String price(int i) {
+        return String.format(Locale.US, "%.2f", priceCents(i) / 100.0);
+    }
+
+    private String symbol() {
+        return switch (config.currency) {
+            case "GBP" -> "\u00a3";
+            case "EUR" -> "\u20ac";
+            default -> "$";
+        };
+    }
+
+    private Map<String, Object> productJson(int i) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("handle", handle(i));
+        m.put("title", title(i));
+        m.put("price", price(i));
+        m.put("currency", config.currency);
+        m.put("sku", sku(i));
+        m.put("available", available(i));
+        m.put("description", description(i));
+        m.put("images", List.of("/img/" + handle(i) + "-1.png", "/img/" + handle(i) + "-2.png"));
+        return m;
+    }
+
+    private String jsonLd(int i) {
+        Map<String, Object> offer = new LinkedHashMap<>();
+        offer.put("@type", "Offer");
+        offer.put("price", price(i));
+        offer.put("priceCurrency", config.currency);
+        offer.put("availability", "https://schema.org/" + (available(i) ? "InStock" : "OutOfStock"));
+        Map<String, Object> p = new LinkedHashMap<>();
+        p.put("@context", "https://schema.org");
+        p.put("@type", "Product");
+        p.put("name", title(i));
+        p.put("sku", sku(i));
+        p.put("offers", offer);
+        try {
+            return JSON.writeValueAsString(p);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Map<String, Object> shopifyCatalogue(int page) {
+        List<Map<String, Object>> list = new ArrayList<>();
+        int per = 250;
+        for (int i = (page - 1) * per; i < Math.min(config.products, page * per); i++) {
+            Map<String, Object> v = new LinkedHashMap<>();
+            v.put("price", price(i));
+            v.put("sku", sku(i));
+            v.put("available", available(i));
+            Map<String, Object> p = new LinkedHashMap<>();
+            p.put("title", title(i));
+            p.put("handle", handle(i));
+            p.put("body_html", "<p>" + description(i) + "</p>");
+            p.put("product_type", "Homeware");
+            p.put("variants", List.of(v));
+            p.put("images", List.of(Map.of("src", baseUrl() + "/img/" + handle(i) + "-1.png")));
+            list.add(p);
+        }
+        return Map.of("products", list);
+    }
+
+    private Map<String, Object> shopifyProduct(int i) {
+        Map<String, Object> v = new LinkedHashMap<>();
+        v.put("sku", sku(i));
+        v.put("price", priceCents(i));
+        v.put("available", available(i));
+        Map<String, Object> p = new LinkedHashMap<>();
+        p.put("title", title(i));
+        p.put("handle", handle(i));
+        p.put("description", "<p>" + description(i) + "</p>");
+        p.put("type", "Homeware");
+        p.put("price", priceCents(i));
+        p.put("available", available(i));
+        p.put("variants", List.of(v));
+        p.put("featured_image", baseUrl() + "/img/" + handle(i) + "-1.png");
+        return p;
+    }
+
+    // -----------------------------
+    // HTML
+    // -----------------------------
+
+    private StringBuilder head(String title) {
+        StringBuilder b = new StringBuilder(4096);
+        b.append("<!doctype html><html><head><meta charset=\"utf-8\"><title>")
+                .append(esc(title)).append(" | Synthetic Store</title>");
+        if (config.platform.equals("shopify")) {
+            // what PlatformDetector looks for on a real Shopify theme
+            b.append("<script src=\"https://cdn.shopify.com/s/synthetic/theme.js\" async></script>");
+        }
+        return b;
+    }
+
+    private void bodyStart(StringBuilder b) {
+        b.append("</head><body><header class=\"site-header\"><a href=\"/\">Synthetic Store</a></header>");
+        if (config.cookieBanner) {
+            b.append("<div id=\"cookie-banner\" class=\"cookie-banner\" style=\"position:fixed;bottom:0;left:0;right:0\">")
+                    .append("<p>We use cookies to make this site work and to understand how it is used.</p>")
+                    .append("<button id=\"onetrust-accept-btn-handler\" onclick=\"this.parentNode.remove()\">Accept all cookies</button></div>");
+        }
+    }
+
+    private String listingPage(int page) {
+        int pagesTotal = Math.max(1, (config.products + config.pageSize - 1) / config.pageSize);
+        StringBuilder b = head("All products");
+        bodyStart(b);
+        b.append("<main><h1>All products</h1><ul id=\"grid\" class=\"product-grid\">");
+        if (config.jsRendered) {
+            b.append("</ul>");
+        } else {
+            b.append(listingFragment(page)).append("</ul>");
+        }
+        if (config.infiniteScroll) {
+            b.append("<button id=\"load-more\" type=\"button\">Load more</button>");
+            b.append("<script>(function(){var next=").append(config.jsRendered ? 1 : page + 1)
+                    .append(",last=").append(pagesTotal).append(",busy=false;")
+                    .append("var btn=document.getElementById('load-more');")
+                    .append("function more(){if(busy||next>last)return;busy=true;")
+                    .append("fetch('/collections/all?view=fragment&page='+next).then(function(r){return r.text();})")
+                    .append(".then(function(h){document.getElementById('grid').insertAdjacentHTML('beforeend',h);next++;busy=false;")
+                    .append("if(next>last)btn.remove();}).catch(function(){busy=false;});}")
+                    .append("btn.addEventListener('click',more);")
+                    .append("window.addEventListener('scroll',function(){if(window.innerHeight+window.scrollY>=document.body.offsetHeight-200)more();});")
+                    .append(config.jsRendered ? "more();" : "")
+                    .append("})();</script>");
+        } else {
+            if (config.jsRendered) {
+                b.append("<script>fetch('/collections/all?view=fragment&page=").append(page)
+                        .append("').then(function(r){return r.text();}).then(function(h){")
+                        .append("document.getElementById('grid').innerHTML=h;});</script>");
+            }
+            b.append("<nav class=\"pagination\">");
+            if (page > 1) b.append("<a rel=\"prev\" href=\"/collections/all?page=").append(page - 1).append("\">Previous</a> ");
+            for (int p = 1; p <= pagesTotal; p++) {
+                b.append("<a href=\"/collections/all?page=").append(p).append("\">").append(p).append("</a> ");
+            }
+            if (page < pagesTotal) b.append("<a rel=\"next\" href=\"/collections/all?page=").append(page + 1).append("\">Next</a>");
+            b.append("</nav>");
+        }
+        return b.append("</main></body></html>").toString();
+    }
+
+    private String listingFragment(int page) {
+        StringBuilder b = new StringBuilder();
+        int from = (page - 1) * config.pageSize;
+        for (int i = from; i < Math.min(config.products, from + config.pageSize); i++) {
+            b.append("<li class=\"product-card\"><a href=\"/products/").append(handle(i)).append("\">")
+                    .append("<img src=\"/img/").append(handle(i)).append("-1.png\" alt=\"\" loading=\"lazy\">")
+                    .append("<span class=\"product-card__title\">").append(esc(title(i))).append("</span></a>")
+                    .append("<span class=\"price\">").append(symbol()).append(price(i)).append("</span></li>");
+        }
+        return b.toString();
+    }
+
+    private String productPage(int i) {
+        StringBuilder b = head(title(i));
+        if (config.jsonLd && !config.jsRendered) {
+            b.append("<script type=\"application/ld+json\">").append(jsonLd(i)).append("</script>");
+        }
+        bodyStart(b);
+        if (config.jsRendered) {
+            b.append("<main id=\"app\"><p class=\"loading\">Loading...</p></main><script>")
+                    .append("fetch('/api/products/").append(handle(i)).append("').then(function(r){return r.json();}).then(function(p){")
+                    .append("var e=function(s){var d=document.createElement('div');d.textContent=s;return d.innerHTML;};")
+                    .append("document.getElementById('app').innerHTML=")
+                    .append("'<nav aria-label=\"Breadcrumb\"><a href=\"/\">Home</a> <a href=\"/collections/all\">All products</a> <span>'+e(p.title)+'</span></nav>'")
+                    .append("+'<div class=\"product\"><div class=\"product-gallery\">'+p.images.map(function(s){return '<img src=\"'+s+'\">';}).join('')+'</div>'")
+                    .append("+'<h1>'+e(p.title)+'</h1><div class=\"price\">").append(symbol()).append("'+p.price+'</div>'")
+                    .append("+'<span class=\"sku\">SKU: '+p.sku+'</span><p class=\"stock\">'+(p.available?'In stock':'Sold out')+'</p>'")
+                    .append("+'<div class=\"product-description\"><p>'+e(p.description)+'</p></div></div>';");
+            if (config.jsonLd) {
+                b.append("var ld=document.createElement('script');ld.type='application/ld+json';ld.textContent=")
+                        .append("JSON.stringify({'@context':'https://schema.org','@type':'Product','name':p.title,'sku':p.sku,")
+                        .append("'offers':{'@type':'Offer','price':p.price,'priceCurrency':p.currency,")
+                        .append("'availability':'https://schema.org/'+(p.available?'InStock':'OutOfStock')}});")
+                        .append("document.head.appendChild(ld);");
+            }
+            b.append("});</script>");
+        } else {
+            b.append("<nav aria-label=\"Breadcrumb\"><a href=\"/\">Home</a> <a href=\"/collections/all\">All products</a> <span>")
+                    .append(esc(title(i))).append("</span></nav>");
+            b.append("<main><div class=\"product\"><div class=\"product-gallery\">")
+                    .append("<img src=\"/img/").append(handle(i)).append("-1.png\" alt=\"\">")
+                    .append("<img src=\"/img/").append(handle(i)).append("-2.png\" alt=\"\"></div>")
+                    .append("<h1>").append(esc(title(i))).append("</h1>")
+                    .append("<div class=\"price\">").append(symbol()).append(price(i)).append("</div>")
+                    .append("<span class=\"sku\">SKU: ").append(sku(i)).append("</span>")
+                    .append("<p class=\"stock\">").append(available(i) ? "In stock" : "Sold out").append("</p>")
+                    .append("<div class=\"product-description\"><p>").append(esc(description(i))).append("</p></div>")
+                    .append("</div></main>");
+        }
+        // some related products, as real product pages have
+        b.append("<section class=\"related\"><h2>You may also like</h2><ul>");
+        for (int k = 1; k <= 4; k++) {
+            int j = (i + k * 37) % config.products;
+            b.append("<li><a href=\"/products/").append(handle(j)).append("\">").append(esc(title(j))).append("</a></li>");
+        }
+        return b.append("</ul></section></body></html>").toString();
+    }
+
+    // -----------------------------
+    // Helpers
+    // -----------------------------
+
+    private static int pageParam(String query) {
+        Matcher m = PAGE.matcher(query);
+        return m.find() ? Math.max(1, Integer.parseInt(m.group(1))) : 1;
+    }
+
+    private static String esc(String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static byte[] renderPng() {
+        BufferedImage img = new BufferedImage(400, 400, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(new Color(0xd8, 0xc3, 0xa5));
+        g.fillRect(0, 0, 400, 400);
+        g.setColor(new Color(0x8e, 0x5b, 0x3e));
+        g.fillOval(80, 80, 240, 240);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(img, "png", out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static void html(HttpExchange ex, String body) throws IOException {
+        send(ex, 200, "text/html; charset=utf-8", body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange ex, int status, String contentType, byte[] bytes) throws IOException {
+        ex.getResponseHeaders().set("Content-Type", contentType);
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
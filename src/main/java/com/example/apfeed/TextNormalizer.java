@@ -0,0 +1,212 @@
+package com.example.apfeed;
+
+/**
+ * Character-level text cleanup for the per-product hot path, in place of
+ * String.replaceAll/matches: no regex, one reusable buffer per thread, and
+ * the input string itself is returned when nothing needs to change (Jsoup's
+ * text() is usually already clean).
+ *
+ * "Whitespace" means what regex \s means (space, tab, line feed, vertical tab,
+ * form feed, carriage return) and trimming follows String.trim(), so results
+ * match the regex versions they replace.
+ */
+public class TextNormalizer {
+    // buffers that grew past this are dropped instead of kept for the thread
+    private static final int KEEP_CAPACITY = 1 << 16;
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+    private static final String[] PAGE_EXTENSIONS = {".html", ".htm", ".php", ".asp", ".aspx"};
+
+    /** Same as s.replaceAll("\\s+", " ").trim(); "" for null. */
+    public static String collapseWhitespace(String s) {
+        if (s == null) return "";
+        if (isCollapsed(s)) return s;
+        StringBuilder b = buffer();
+        boolean space = false;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (isSpace(c)) {
+                space = true;
+            } else {
+                if (space) b.append(' ');
+                space = false;
+                b.append(c);
+            }
+        }
+        if (space) b.append(' ');
+        return trimmed(b, s);
+    }
+
+    /**
+     * Same as s.replaceAll("https?://\\S+", "").replaceAll("\\s+", " ").trim():
+     * naked URLs removed, whitespace collapsed.
+     */
+    public static String stripUrls(String s) {
+        if (s == null) return "";
+        if (s.indexOf("://") < 0) return collapseWhitespace(s);
+        StringBuilder b = buffer();
+        boolean space = false;
+        int n = s.length();
+        int i = 0;
+        while (i < n) {
+            int url = urlLength(s, i);
+            if (url > 0) {
+                i += url;
+                continue;
+            }
+            char c = s.charAt(i++);
+            if (isSpace(c)) {
+                space = true;
+            } else {
+                if (space) b.append(' ');
+                space = false;
+                b.append(c);
+            }
+        }
+        if (space) b.append(' ');
+        return trimmed(b, s);
+    }
+
+    /**
+     * Lower-cased phrase for dictionary matching: letters, digits and + - /
+     * are kept (so "t-shirt" and "usb-c" survive), every other run of
+     * characters becomes one space, ends trimmed.
+     */
+    public static String phrase(String s) {
+        if (s == null) return "";
+        StringBuilder b = buffer();
+        boolean sep = false;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            char l;
+            if (c < 128) {
+                l = c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+            } else if (c == '\u0130') {
+                // String.toLowerCase() gives "i" plus a combining dot, which is not kept
+                if (sep && b.length() > 0) b.append(' ');
+                b.append('i');
+                sep = true;
+                continue;
+            } else {
+                l = Character.toLowerCase(c);
+            }
+            if ((l >= 'a' && l <= 'z') || (l >= '0' && l <= '9') || l == '+' || l == '-' || l == '/') {
+                if (sep && b.length() > 0) b.append(' ');
+                sep = false;
+                b.append(l);
+            } else {
+                sep = true;
+            }
+        }
+        return b.length() == s.length() && s.contentEquals(b) ? s : b.toString();
+    }
+
+    /**
+     * True if phrase occurs in text as whole words, i.e. not directly preceded
+     * or followed by a letter, digit or underscore. Same as finding
+     * "(^|\\W)" + Pattern.quote(phrase) + "(\\W|$)" in text.
+     */
+    public static boolean containsPhrase(String text, String phrase) {
+        int m = phrase.length();
+        if (m == 0) return false;
+        int end = text.length() - m;
+        for (int i = text.indexOf(phrase); i >= 0 && i <= end; i = text.indexOf(phrase, i + 1)) {
+            if ((i == 0 || !isWordChar(text.charAt(i - 1)))
+                    && (i == end || !isWordChar(text.charAt(i + m)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Same as s.replaceAll("/{2,}", "/"). */
+    public static String collapseSlashes(String s) {
+        if (s == null || s.indexOf("//") < 0) return s;
+        StringBuilder b = buffer();
+        char prev = 0;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c != '/' || prev != '/') b.append(c);
+            prev = c;
+        }
+        return b.toString();
+    }
+
+    /** s without a trailing .html/.htm/.php/.asp/.aspx (case as given). */
+    public static String stripPageExtension(String s) {
+        for (String ext : PAGE_EXTENSIONS) {
+            if (s.endsWith(ext)) return s.substring(0, s.length() - ext.length());
+        }
+        return s;
+    }
+
+    public static boolean hasDigit(CharSequence s) {
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') return true;
+        }
+        return false;
+    }
+
+    // -----------------------------
+    // Helpers
+    // -----------------------------
+
+    /** Regex \s. */
+    static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /** Regex \w. */
+    static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    /** True if collapseWhitespace(s) would return s unchanged. */
+    private static boolean isCollapsed(String s) {
+        int n = s.length();
+        if (n == 0) return true;
+        if (s.charAt(0) <= ' ' || s.charAt(n - 1) <= ' ') return false;
+        boolean prevSpace = false;
+        for (int i = 1; i < n - 1; i++) {
+            char c = s.charAt(i);
+            if (isSpace(c)) {
+                if (c != ' ' || prevSpace) return false;
+                prevSpace = true;
+            } else {
+                prevSpace = false;
+            }
+        }
+        return true;
+    }
+
+    /** Length of the "http(s)://..." run (up to whitespace) starting at i, or 0. */
+    private static int urlLength(String s, int i) {
+        int start;
+        if (s.startsWith("http://", i)) start = i + 7;
+        else if (s.startsWith("https://", i)) start = i + 8;
+        else return 0;
+        int j = start;
+        while (j < s.length() && !isSpace(s.charAt(j))) j++;
+        return j > start ? j - i : 0;
+    }
+
+    /** b trimmed like String.trim(), as a String (original if equal). */
+    private static String trimmed(StringBuilder b, String original) {
+        int from = 0;
+        int to = b.length();
+        while (from < to && b.charAt(from) <= ' ') from++;
+        while (to > from && b.charAt(to - 1) <= ' ') to--;
+        if (from == 0 && to == original.length() && original.contentEquals(b)) return original;
+        return b.substring(from, to);
+    }
+
+    private static StringBuilder buffer() {
+        StringBuilder b = BUFFER.get();
+        if (b.capacity() > KEEP_CAPACITY) {
+            b = new StringBuilder(256);
+            BUFFER.set(b);
+        }
+        b.setLength(0);
+        return b;
+    }
+}
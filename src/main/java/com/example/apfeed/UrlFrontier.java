@@ -0,0 +1,248 @@
+package com.example.apfeed;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Append-only, de-duplicating queue of URLs in discovery order.
+ *
+ * Instead of keeping every URL as a String in a LinkedHashSet, membership is
+ * tracked with 64-bit fingerprints in a primitive open-addressing table
+ * (8 bytes per URL). Queued URLs are kept in a small in-memory tail which is
+ * spilled to an on-disk segment file once it grows past spillThreshold, so a
+ * catalogue with millions of URLs costs a few MB of heap plus a temp file.
+ *
+ * Iteration replays the segment file and then the in-memory tail, so the order
+ * is exactly the order in which URLs were first added.
+ */
+public class UrlFrontier implements Iterable<String>, AutoCloseable {
+    public static final int DEFAULT_SPILL_THRESHOLD = 50_000;
+
+    private final FingerprintSet seen = new FingerprintSet(1024);
+    private final int spillThreshold;
+    private final List<String> tail = new ArrayList<>();
+
+    private Path segment;
+    private BufferedWriter segmentOut;
+    private long spilled;
+
+    public UrlFrontier() {
+        this(DEFAULT_SPILL_THRESHOLD);
+    }
+
+    public UrlFrontier(int spillThreshold) {
+        this.spillThreshold = Math.max(1, spillThreshold);
+    }
+
+    /**
+     * Adds a URL if it has not been seen before.
+     *
+     * @return true if the URL was new and has been queued
+     */
+    public synchronized boolean add(String url) {
+        if (url == null || url.isEmpty()) return false;
+        if (!seen.add(fingerprint(url))) return false;
+        tail.add(url);
+        if (tail.size() >= spillThreshold) spill();
+        return true;
+    }
+
+    public synchronized boolean contains(String url) {
+        return url != null && seen.contains(fingerprint(url));
+    }
+
+    public synchronized long size() {
+        return spilled + tail.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Iterates all queued URLs in insertion order. URLs added while iterating
+     * are not guaranteed to be visited.
+     */
+    @Override
+    public synchronized Iterator<String> iterator() {
+        try {
+            if (segmentOut != null) segmentOut.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new FrontierIterator(segment, spilled, new ArrayList<>(tail));
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (segmentOut != null) segmentOut.close();
+        } catch (IOException ignored) {}
+        try {
+            if (segment != null) Files.deleteIfExists(segment);
+        } catch (IOException ignored) {}
+        segmentOut = null;
+        segment = null;
+    }
+
+    private void spill() {
+        try {
+            if (segmentOut == null) {
+                segment = Files.createTempFile("apfeed-frontier-", ".seg");
+                segment.toFile().deleteOnExit();
+                segmentOut = Files.newBufferedWriter(segment, StandardCharsets.UTF_8,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            }
+            for (String u : tail) {
+                // URLs never contain raw line breaks once trimmed/normalised
+                segmentOut.write(u);
+                segmentOut.write('\n');
+            }
+            spilled += tail.size();
+            tail.clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not spill URL frontier to disk", e);
+        }
+    }
+
+    // -----------------------------
+    // Fingerprinting
+    // -----------------------------
+
+    /**
+     * 64-bit FNV-1a over the UTF-16 chars, finished with a murmur3 mix so the
+     * low bits are usable directly as a table index.
+     */
+    static long fingerprint(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Open-addressing (linear probing) set of longs. Zero is the empty marker,
+     * so a real zero fingerprint is remapped to a fixed non-zero value.
+     */
+    static final class FingerprintSet {
+        private long[] table;
+        private int size;
+
+        FingerprintSet(int initialCapacity) {
+            int cap = Integer.highestOneBit(Math.max(16, initialCapacity) - 1) << 1;
+            table = new long[cap];
+        }
+
+        boolean add(long fp) {
+            if (fp == 0) fp = 1;
+            if ((size + 1) * 4L > table.length * 3L) grow();
+            if (insert(table, fp)) {
+                size++;
+                return true;
+            }
+            return false;
+        }
+
+        boolean contains(long fp) {
+            if (fp == 0) fp = 1;
+            int mask = table.length - 1;
+            int i = (int) fp & mask;
+            while (true) {
+                long v = table[i];
+                if (v == 0) return false;
+                if (v == fp) return true;
+                i = (i + 1) & mask;
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        private static boolean insert(long[] t, long fp) {
+            int mask = t.length - 1;
+            int i = (int) fp & mask;
+            while (true) {
+                long v = t[i];
+                if (v == 0) {
+                    t[i] = fp;
+                    return true;
+                }
+                if (v == fp) return false;
+                i = (i + 1) & mask;
+            }
+        }
+
+        private void grow() {
+            long[] next = new long[table.length << 1];
+            for (long v : table) {
+                if (v != 0) insert(next, v);
+            }
+            table = next;
+        }
+    }
+
+    // -----------------------------
+    // Iteration (segment file, then memory tail)
+    // -----------------------------
+
+    private static final class FrontierIterator implements Iterator<String> {
+        private BufferedReader reader;
+        private long remainingOnDisk;
+        private final List<String> tail;
+        private int tailIdx;
+
+        FrontierIterator(Path segment, long spilled, List<String> tail) {
+            this.tail = tail;
+            this.remainingOnDisk = spilled;
+            if (segment != null && spilled > 0) {
+                try {
+                    reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remainingOnDisk > 0 || tailIdx < tail.size();
+        }
+
+        @Override
+        public String next() {
+            if (remainingOnDisk > 0) {
+                try {
+                    String line = reader.readLine();
+                    remainingOnDisk--;
+                    if (remainingOnDisk == 0 || line == null) {
+                        remainingOnDisk = 0;
+                        reader.close();
+                    }
+                    if (line != null) return line;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            if (tailIdx < tail.size()) return tail.get(tailIdx++);
+            throw new NoSuchElementException();
+        }
+    }
+}
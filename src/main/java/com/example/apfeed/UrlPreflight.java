@@ -0,0 +1,340 @@
+package com.example.apfeed;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Cheap HTTP check of frontier URLs before they reach the browser.
+ *
+ * A feeder thread walks the frontier in row order, at most {@link #LOOKAHEAD}
+ * URLs ahead of the scrapers, and sends each URL a HEAD request (a one-byte
+ * ranged GET where HEAD is refused) that follows redirects. Requests are
+ * asynchronous, at most {@link #MAX_IN_FLIGHT} at once and
+ * {@link #MAX_PER_HOST} per host; a URL whose host is saturated waits in
+ * that host's queue while the feeder moves on to other hosts. By the time
+ * the scheduler hands a URL out, its answer is usually in:
+ * <ul>
+ *   <li>404/410: the product is gone;</li>
+ *   <li>a redirect to the home page or a category page: rendering it would
+ *       only produce a bogus row;</li>
+ *   <li>a redirect within the product pages: still scraped, and the final
+ *       (canonical) URL becomes the row's link;</li>
+ *   <li>a redirect to another site (another registrable domain): logged
+ *       and still rendered, since shops move between domains;</li>
+ *   <li>anything else (200, 403 bot walls, 429/5xx, timeouts): left to the
+ *       browser and its usual retries.</li>
+ * </ul>
+ * URLs already known without a page load (platform JSON, early fetches) are
+ * not checked.
+ */
+public class UrlPreflight implements AutoCloseable {
+    static final int LOOKAHEAD = 1024;
+    static final int MAX_IN_FLIGHT = 64;
+    static final int MAX_PER_HOST = 6;
+    // beyond this many URLs queued for one busy host, further ones go unchecked
+    private static final int MAX_QUEUED_PER_HOST = LOOKAHEAD / 4;
+    private static final long TIMEOUT_MS = 10_000;
+    // a scraper waits this long for a check still in flight, then renders anyway
+    private static final long AWAIT_MS = 15_000;
+    // "/", "/en", "/en-gb/": a shop's (localised) home page
+    private static final Pattern HOME_PATH = Pattern.compile("/?([a-z]{2}([-_][a-z]{2})?/?)?", Pattern.CASE_INSENSITIVE);
+
+    public enum Outcome {
+        LIVE, REDIRECTED, DEAD, HOMEPAGE, CATEGORY, OFFSITE, UNCHECKED;
+
+        /** True if the URL should not be rendered at all. */
+        public boolean drop() {
+            return this == DEAD || this == HOMEPAGE || this == CATEGORY;
+        }
+    }
+
+    /** What the check found for one URL. */
+    public static class Result {
+        public final Outcome outcome;
+        /** Final HTTP status, 0 when there was no answer. */
+        public final int status;
+        /** URL after redirects (the URL itself when not redirected). */
+        public final String finalUrl;
+
+        Result(Outcome outcome, int status, String finalUrl) {
+            this.outcome = outcome;
+            this.status = status;
+            this.finalUrl = finalUrl;
+        }
+
+        /** One-line reason, e.g. "HTTP 404" or "redirected to the home page (https://shop.com/)". */
+        public String describe() {
+            return switch (outcome) {
+                case DEAD -> "HTTP " + status;
+                case HOMEPAGE -> "redirected to the home page (" + finalUrl + ")";
+                case CATEGORY -> "redirected to a category page (" + finalUrl + ")";
+                case OFFSITE -> "redirected to another site (" + finalUrl + ")";
+                case REDIRECTED -> "canonical URL " + finalUrl;
+                default -> status > 0 ? "HTTP " + status : "no answer";
+            };
+        }
+
+        static final Result UNCHECKED = new Result(Outcome.UNCHECKED, 0, "");
+    }
+
+    private static final HttpClient HTTP = HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    // placed by take() for a URL the feeder has not reached yet, so it is skipped
+    private static final CompletableFuture<Result> TAKEN = CompletableFuture.completedFuture(Result.UNCHECKED);
+
+    private final Map<String, CompletableFuture<Result>> checks = new ConcurrentHashMap<>();
+    // checks running and waiting per host; guarded by itself
+    private final Map<String, HostQueue> hosts = new HashMap<>();
+    private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+    private final Semaphore ahead = new Semaphore(LOOKAHEAD);
+    private final Map<Outcome, Integer> counts = new EnumMap<>(Outcome.class);
+    private volatile boolean closed;
+    private volatile Predicate<String> skip = u -> false;
+    private Thread feeder;
+
+    private static final class HostQueue {
+        int running;
+        final ArrayDeque<String> queued = new ArrayDeque<>();
+    }
+
+    /**
+     * Starts checking urls (frontier order) on a daemon thread.
+     *
+     * @param skip URLs not worth a check, e.g. already known without a page load
+     */
+    public void start(Iterator<String> urls, Predicate<String> skip) {
+        this.skip = skip;
+        feeder = new Thread(() -> feed(urls), "apfeed-preflight");
+        feeder.setDaemon(true);
+        feeder.start();
+    }
+
+    private void feed(Iterator<String> urls) {
+        try {
+            while (!closed && urls.hasNext()) {
+                String url = urls.next();
+                if (skip.test(url)) continue;
+                ahead.acquire();
+                CompletableFuture<Result> f = new CompletableFuture<>();
+                if (checks.putIfAbsent(url, f) != null) {
+                    // already handed out (scheduled ahead of the feeder): nothing to check
+                    checks.remove(url);
+                    ahead.release();
+                    continue;
+                }
+                HostQueue host;
+                boolean now;
+                boolean queued = false;
+                synchronized (hosts) {
+                    host = hosts.computeIfAbsent(host(url), h -> new HostQueue());
+                    now = host.running < MAX_PER_HOST;
+                    if (now) host.running++;
+                    else if (host.queued.size() < MAX_QUEUED_PER_HOST) queued = host.queued.add(url);
+                }
+                if (now) {
+                    inFlight.acquire();
+                    launch(url, f, host);
+                } else if (!queued) {
+                    // one host fills the look-ahead: leave this one to the browser
+                    checks.remove(url, f);
+                    ahead.release();
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } catch (RuntimeException e) {
+            // e.g. the frontier's spill file was removed; unchecked URLs are simply rendered
+            if (!closed) System.err.println("Pre-flight stopped: " + e.getMessage());
+        }
+    }
+
+    /** Runs the check for url; when it ends, its host and in-flight slots pass to the host's next queued URL. */
+    private void launch(String url, CompletableFuture<Result> f, HostQueue host) {
+        check(url).whenComplete((r, e) -> {
+            f.complete(e == null ? r : Result.UNCHECKED);
+            String next;
+            CompletableFuture<Result> nf = null;
+            synchronized (hosts) {
+                while ((next = host.queued.poll()) != null) {
+                    nf = checks.get(next);
+                    // taken (and answered UNCHECKED) while queued: no point checking it now
+                    if (nf != null && nf != TAKEN && !nf.isDone()) break;
+                }
+                if (next == null) host.running--;
+            }
+            if (next == null || closed) {
+                inFlight.release();
+                if (next != null) nf.complete(Result.UNCHECKED);
+                return;
+            }
+            launch(next, nf, host);
+        });
+    }
+
+    /**
+     * The check for url, consumed: waits for it if still in flight (wait), or
+     * returns UNCHECKED when it is not ready (or was never started).
+     */
+    public Result take(String url, boolean wait) {
+        // skipped by the feeder too (a URL only ever becomes known, never unknown)
+        if (!checks.containsKey(url) && skip.test(url)) return Result.UNCHECKED;
+        CompletableFuture<Result> f = checks.putIfAbsent(url, TAKEN);
+        if (f == null || f == TAKEN) return Result.UNCHECKED;
+        checks.remove(url);
+        ahead.release();
+        Result r;
+        try {
+            r = wait ? f.get(AWAIT_MS, TimeUnit.MILLISECONDS) : f.getNow(Result.UNCHECKED);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            r = Result.UNCHECKED;
+        } catch (ExecutionException | TimeoutException e) {
+            r = Result.UNCHECKED;
+        }
+        f.complete(Result.UNCHECKED);   // no-op if answered; else a queued check is not started
+        synchronized (counts) {
+            counts.merge(r.outcome, 1, Integer::sum);
+        }
+        return r;
+    }
+
+    /** "3 gone, 1 to the home page, ..." for the URLs taken so far; "" if nothing was dropped or redirected. */
+    public String summary() {
+        Map<Outcome, Integer> c;
+        synchronized (counts) {
+            c = new EnumMap<>(counts);
+        }
+        List<String> parts = new ArrayList<>();
+        if (c.containsKey(Outcome.DEAD)) parts.add(c.get(Outcome.DEAD) + " gone (404/410)");
+        if (c.containsKey(Outcome.HOMEPAGE)) parts.add(c.get(Outcome.HOMEPAGE) + " redirected to the home page");
+        if (c.containsKey(Outcome.CATEGORY)) parts.add(c.get(Outcome.CATEGORY) + " redirected to a category");
+        if (c.containsKey(Outcome.OFFSITE)) parts.add(c.get(Outcome.OFFSITE) + " redirected off-site (rendered)");
+        if (c.containsKey(Outcome.REDIRECTED)) parts.add(c.get(Outcome.REDIRECTED) + " with a new canonical URL");
+        return String.join(", ", parts);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (feeder != null) feeder.interrupt();
+    }
+
+    // -----------------------------
+    // HTTP
+    // -----------------------------
+
+    private static CompletableFuture<Result> check(String url) {
+        URI uri;
+        try {
+            uri = URI.create(url);
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(Result.UNCHECKED);
+        }
+        return HTTP.sendAsync(request(uri).method("HEAD", HttpRequest.BodyPublishers.noBody()).build(),
+                        HttpResponse.BodyHandlers.discarding())
+                .thenCompose(res -> {
+                    int s = res.statusCode();
+                    // HEAD not allowed (or blocked by a CDN rule): ask for the first byte instead
+                    if (s == 403 || s == 405 || s == 501) {
+                        return HTTP.sendAsync(request(uri).header("Range", "bytes=0-0").GET().build(),
+                                        HttpResponse.BodyHandlers.ofInputStream())
+                                .thenApply(r -> {
+                                    try {
+                                        // closing unread aborts a server that ignored the range
+                                        r.body().close();
+                                    } catch (Exception ignored) {}
+                                    return classify(url, r.statusCode(), r.uri().toString());
+                                });
+                    }
+                    return CompletableFuture.completedFuture(classify(url, s, res.uri().toString()));
+                })
+                .exceptionally(e -> Result.UNCHECKED);
+    }
+
+    private static HttpRequest.Builder request(URI uri) {
+        return HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofMillis(TIMEOUT_MS))
+                .header("User-Agent", BrowserPool.USER_AGENT)
+                .header("Accept", "text/html,application/xhtml+xml");
+    }
+
+    // -----------------------------
+    // Classification
+    // -----------------------------
+
+    static Result classify(String url, int status, String finalUrl) {
+        if (status == 404 || status == 410) return new Result(Outcome.DEAD, status, finalUrl);
+        Outcome redirect = redirectOutcome(url, finalUrl);
+        if (redirect != null) return new Result(redirect, status, finalUrl);
+        if (status >= 200 && status < 400) return new Result(Outcome.LIVE, status, finalUrl);
+        return new Result(Outcome.UNCHECKED, status, finalUrl);
+    }
+
+    /**
+     * How a redirect from url to finalUrl should be treated: null when there
+     * was no redirect, REDIRECTED when it stays among the shop's product
+     * pages, else HOMEPAGE, CATEGORY or OFFSITE. Also used on the browser's
+     * landing URL.
+     */
+    static Outcome redirectOutcome(String url, String finalUrl) {
+        if (finalUrl == null || finalUrl.isEmpty() || finalUrl.equals(url)) return null;
+        URI a;
+        URI b;
+        try {
+            a = URI.create(url);
+            b = URI.create(finalUrl);
+        } catch (Exception e) {
+            return null;
+        }
+        if (!sameShop(a.getHost(), b.getHost())) return Outcome.OFFSITE;
+        String from = a.getPath() == null ? "" : a.getPath();
+        String to = b.getPath() == null ? "" : b.getPath();
+        if (from.equals(to)) return null;   // http -> https, query or trailing-slash changes
+        if (HOME_PATH.matcher(to).matches() && !HOME_PATH.matcher(from).matches()) return Outcome.HOMEPAGE;
+        if (UrlUtils.looksLikeProductPath(a.getHost(), from) && UrlUtils.looksLikeListingPath(b.getHost(), to)
+                && !UrlUtils.looksLikeProductPath(b.getHost(), to)) {
+            return Outcome.CATEGORY;
+        }
+        return Outcome.REDIRECTED;
+    }
+
+    /** Same registrable domain: www.shop.com, shop.com and eu.shop.com are one shop. */
+    private static boolean sameShop(String a, String b) {
+        if (a == null || b == null) return false;
+        return registrableDomain(a).equals(registrableDomain(b));
+    }
+
+    // second-level labels under a country code that are public suffixes themselves (shop.co.uk, shop.com.au)
+    private static final Set<String> COUNTRY_SECOND_LEVEL = Set.of(
+            "co", "com", "net", "org", "gov", "edu", "ac", "ne", "or", "ltd", "plc", "gen", "biz");
+
+    /** "shop.co.uk" for "www.eu.shop.co.uk"; an IP address or single label is returned as is. */
+    static String registrableDomain(String host) {
+        String h = host.toLowerCase(Locale.ROOT);
+        if (h.endsWith(".")) h = h.substring(0, h.length() - 1);
+        if (h.indexOf(':') >= 0 || h.matches("[0-9.]+")) return h;
+        String[] l = h.split("\\.");
+        if (l.length <= 2) return h;
+        int keep = l[l.length - 1].length() == 2 && COUNTRY_SECOND_LEVEL.contains(l[l.length - 2]) ? 3 : 2;
+        return String.join(".", Arrays.copyOfRange(l, l.length - keep, l.length));
+    }
+
+    private static String host(String url) {
+        try {
+            String h = URI.create(url).getHost();
+            return h == null ? "" : h.toLowerCase(Locale.ROOT);
+        } catch (Exception e) {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,466 @@
+package com.example.apfeed;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides whether a URL path is a product page, a listing or neither.
+ *
+ * Rules are path patterns, compiled into one segment trie per rule set, so a
+ * path is classified in a single walk over its segments with no regex:
+ * <ul>
+ *   <li>segments match case-insensitively; empty ones (// or a trailing /) are ignored;</li>
+ *   <li>{@code *} is any one segment, {@code **} any number of segments (or none);</li>
+ *   <li>{@code cart*} is a segment starting with "cart", {@code *.pdf} one ending in ".pdf".</li>
+ * </ul>
+ * Built-in global rules cover the usual shop layouts; {@code --url-rules FILE}
+ * adds global and per-shop rules (see {@link Config}).
+ *
+ * A path is a product page if, first match wins: the shop's exclude rules
+ * (no), the shop's product rules (yes), the global exclude rules (no), the
+ * global product rules (yes), and else a last segment that looks like a slug
+ * ("hair-scissors-123").
+ *
+ * Each job also learns its shops' product URL templates ({@link Learned})
+ * from pages that scraped to a real product (title and price), by
+ * generalising their paths position by position: "/products/blue-mug" and
+ * "/products/red-cup" give "/products/*". They only rank URLs; nothing is
+ * rejected on them.
+ */
+public class UrlRules {
+    /** Distinct confirmed products a shop needs before its templates are trusted. */
+    static final int MIN_CONFIRMED = 5;
+    // ...and the share of them (percent) the templates must cover
+    private static final int MIN_COVERAGE = 90;
+    private static final int MAX_TEMPLATES = 8;
+    // learning stops after this many distinct products per shop
+    private static final int MAX_LEARNED = 500;
+
+    static final int EXCLUDE = 1;
+    static final int PRODUCT = 2;
+    static final int LISTING = 4;
+
+    // cart, account and info pages, and files that are not pages at all
+    private static final String[] DEFAULT_EXCLUDE = {
+            "/**/cart*/**", "/**/basket*/**", "/**/checkout*/**", "/**/account*/**", "/**/login*/**",
+            "/**/register*/**", "/**/wishlist*/**", "/**/search*/**", "/**/filter*/**",
+            "/**/tag/*/**", "/**/tags/*/**", "/**/privacy*/**", "/**/terms*/**", "/**/contact*/**",
+            "/**/about*/**", "/**/faq*/**", "/**/help*/**",
+            "/**/*.pdf", "/**/*.jpg", "/**/*.jpeg", "/**/*.png", "/**/*.gif", "/**/*.webp", "/**/*.svg",
+            "/**/*.ico", "/**/*.css", "/**/*.js", "/**/*.mp4", "/**/*.webm"
+    };
+    // classic e-commerce product paths: /products/{slug}, /p/{id}, ...
+    private static final String[] DEFAULT_PRODUCT = {
+            "/**/product/*/**", "/**/products/*/**", "/**/item/*/**", "/**/sku/*/**", "/**/shop/*/**",
+            "/**/store/*/**", "/**/p/*/**", "/**/pd/*/**", "/**/prod/*/**"
+    };
+    private static final String[] DEFAULT_LISTING = {
+            "/**/category*/**", "/**/categories*/**", "/**/collection*/**", "/**/catalog*/**", "/**/shop*/**", "/**/store*/**",
+            "/products"
+    };
+
+    private static final ObjectMapper JSON = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /** Path patterns of one rule set. */
+    public static class Rules {
+        public List<String> product = new ArrayList<>();
+        public List<String> listing = new ArrayList<>();
+        public List<String> exclude = new ArrayList<>();
+    }
+
+    /**
+     * The --url-rules file (JSON): global rules, added to the built-in ones,
+     * plus rules per shop host ("www." ignored). For example
+     * <pre>
+     * {"exclude": ["/blogs/**"],
+     *  "sites": {"shop.example": {"product": ["/p/*"], "listing": ["/c/**"]}}}
+     * </pre>
+     */
+    public static class Config extends Rules {
+        public Map<String, Rules> sites = new LinkedHashMap<>();
+    }
+
+    private static volatile SegmentTrie global = defaults(null);
+    // per-shop rules from the --url-rules file
+    private static volatile Map<String, SegmentTrie> sites = Map.of();
+
+    /** Adds the rules in a --url-rules file; IllegalArgumentException for a bad pattern. */
+    public static void load(Path file) throws IOException {
+        Config c = JSON.readValue(file.toFile(), Config.class);
+        SegmentTrie g = defaults(c);
+        Map<String, SegmentTrie> own = new HashMap<>(sites);
+        for (Map.Entry<String, Rules> e : c.sites.entrySet()) {
+            if (e.getValue() != null) own.put(siteKey(e.getKey()), compile(e.getValue(), new SegmentTrie()));
+        }
+        global = g;
+        sites = own;
+        System.out.println("URL rules: " + (c.product.size() + c.listing.size() + c.exclude.size())
+                + " global, " + c.sites.size() + " shop(s) from " + file);
+    }
+
+    public static boolean isProduct(String host, String path) {
+        if (path == null) return false;
+        String lower = path.toLowerCase(Locale.ROOT);
+        String[] segs = segments(lower);
+        SegmentTrie own = host == null ? null : sites.get(siteKey(host));
+        if (own != null) {
+            int k = own.match(segs);
+            if ((k & EXCLUDE) != 0) return false;
+            if ((k & PRODUCT) != 0) return true;
+        }
+        int k = global.match(segs);
+        if ((k & EXCLUDE) != 0) return false;
+        return (k & PRODUCT) != 0 || looksLikeSlug(lower);
+    }
+
+    public static boolean isListing(String host, String path) {
+        if (path == null) return false;
+        String[] segs = segments(path.toLowerCase(Locale.ROOT));
+        SegmentTrie own = host == null ? null : sites.get(siteKey(host));
+        if (own != null) {
+            int k = own.match(segs);
+            if ((k & EXCLUDE) != 0) return false;
+            if ((k & LISTING) != 0) return true;
+        }
+        int k = global.match(segs);
+        return (k & EXCLUDE) == 0 && (k & LISTING) != 0;
+    }
+
+    /** Kinds (EXCLUDE, PRODUCT, LISTING) of every rule, global or the shop's own, that matches segs. */
+    private static int ruleKinds(String host, String[] segs) {
+        SegmentTrie own = sites.get(siteKey(host));
+        return own == null ? global.match(segs) : own.match(segs) | global.match(segs);
+    }
+
+    // -----------------------------
+    // Compiled rules
+    // -----------------------------
+
+    /** All patterns of a rule set, as one trie; match() returns the kinds (EXCLUDE, ...) of every pattern that matches. */
+    static final class SegmentTrie {
+        final Node root = new Node();
+
+        void add(String pattern, int kind) {
+            String p = pattern.trim().toLowerCase(Locale.ROOT);
+            if (!p.startsWith("/")) {
+                throw new IllegalArgumentException("URL rule '" + pattern + "' must start with /");
+            }
+            String[] tokens = segments(p);
+            Node n = root;
+            for (int i = 0; i < tokens.length; i++) {
+                String t = tokens[i];
+                if (t.equals("**")) {
+                    if (i == tokens.length - 1) {
+                        n.rest |= kind;
+                        return;
+                    }
+                    if (tokens[i + 1].equals("**")) continue;
+                    if (n.deep == null) n.deep = new Node();
+                    n = n.deep;
+                } else {
+                    n = n.child(t, pattern);
+                }
+            }
+            n.end |= kind;
+        }
+
+        int match(String[] segs) {
+            return root.match(segs, 0);
+        }
+    }
+
+    private static final class Node {
+        Map<String, Node> exact;
+        List<Edge> prefixes;
+        List<Edge> suffixes;
+        Node any;
+        // continues after skipping any number of segments
+        Node deep;
+        // kinds of the patterns that end here, and of those that end here in "**"
+        int end;
+        int rest;
+
+        Node child(String token, String pattern) {
+            if (token.equals("*")) {
+                if (any == null) any = new Node();
+                return any;
+            }
+            int star = token.indexOf('*');
+            if (star < 0) {
+                if (exact == null) exact = new HashMap<>();
+                return exact.computeIfAbsent(token, t -> new Node());
+            }
+            if (token.indexOf('*', star + 1) < 0 && star == token.length() - 1) {
+                if (prefixes == null) prefixes = new ArrayList<>();
+                return Edge.get(prefixes, token.substring(0, star));
+            }
+            if (token.indexOf('*', star + 1) < 0 && star == 0) {
+                if (suffixes == null) suffixes = new ArrayList<>();
+                return Edge.get(suffixes, token.substring(1));
+            }
+            throw new IllegalArgumentException("URL rule '" + pattern
+                    + "': use *, **, abc* or *.ext as a segment, not '" + token + "'");
+        }
+
+        int match(String[] segs, int i) {
+            int kinds = rest;
+            if (i == segs.length) kinds |= end;
+            if (deep != null) {
+                for (int j = i; j <= segs.length; j++) kinds |= deep.match(segs, j);
+            }
+            if (i == segs.length) return kinds;
+            String s = segs[i];
+            if (exact != null) {
+                Node n = exact.get(s);
+                if (n != null) kinds |= n.match(segs, i + 1);
+            }
+            if (prefixes != null) {
+                for (Edge e : prefixes) {
+                    if (s.startsWith(e.text)) kinds |= e.node.match(segs, i + 1);
+                }
+            }
+            if (suffixes != null) {
+                for (Edge e : suffixes) {
+                    if (s.endsWith(e.text)) kinds |= e.node.match(segs, i + 1);
+                }
+            }
+            if (any != null) kinds |= any.match(segs, i + 1);
+            return kinds;
+        }
+    }
+
+    private static final class Edge {
+        final String text;
+        final Node node = new Node();
+
+        Edge(String text) {
+            this.text = text;
+        }
+
+        static Node get(List<Edge> edges, String text) {
+            for (Edge e : edges) {
+                if (e.text.equals(text)) return e.node;
+            }
+            Edge e = new Edge(text);
+            edges.add(e);
+            return e.node;
+        }
+    }
+
+    private static SegmentTrie defaults(Rules extra) {
+        SegmentTrie t = new SegmentTrie();
+        for (String p : DEFAULT_EXCLUDE) t.add(p, EXCLUDE);
+        for (String p : DEFAULT_PRODUCT) t.add(p, PRODUCT);
+        for (String p : DEFAULT_LISTING) t.add(p, LISTING);
+        return extra == null ? t : compile(extra, t);
+    }
+
+    private static SegmentTrie compile(Rules r, SegmentTrie t) {
+        if (r.exclude != null) for (String p : r.exclude) t.add(p, EXCLUDE);
+        if (r.product != null) for (String p : r.product) t.add(p, PRODUCT);
+        if (r.listing != null) for (String p : r.listing) t.add(p, LISTING);
+        return t;
+    }
+
+    // -----------------------------
+    // Learned templates
+    // -----------------------------
+
+    /**
+     * The product URL templates of one job's shops. Once
+     * {@link #MIN_CONFIRMED} of a shop's products fit a few templates, they
+     * are trusted, and a discovered URL that fits none of them (and no
+     * product rule) is {@link #outsideTemplates outside} them: scraped after
+     * the others, never skipped.
+     */
+    public static class Learned {
+        private final Map<String, Site> shops = new ConcurrentHashMap<>();
+
+        /** Records that url is a product page: it scraped to a row with a title and price. */
+        public void confirm(String url) {
+            URI u;
+            try {
+                u = URI.create(url);
+            } catch (Exception e) {
+                return;
+            }
+            if (u.getHost() == null || u.getPath() == null) return;
+            String lower = u.getPath().toLowerCase(Locale.ROOT);
+            String[] segs = segments(lower);
+            if (segs.length == 0) return;
+            // a category page that happened to show a price does not teach a product template
+            int k = ruleKinds(u.getHost(), segs);
+            if ((k & EXCLUDE) != 0 || ((k & LISTING) != 0 && (k & PRODUCT) == 0)) return;
+            shops.computeIfAbsent(siteKey(u.getHost()), h -> new Site()).learn(segs, lower, u.getHost());
+        }
+
+        /** True if url's shop has trusted templates and url fits none of them nor any product rule. */
+        public boolean outsideTemplates(String url) {
+            URI u;
+            try {
+                u = URI.create(url);
+            } catch (Exception e) {
+                return false;
+            }
+            if (u.getHost() == null || u.getPath() == null) return false;
+            Site site = shops.get(siteKey(u.getHost()));
+            if (site == null || !site.trusted) return false;
+            String[] segs = segments(u.getPath().toLowerCase(Locale.ROOT));
+            return !site.fits(segs) && (ruleKinds(u.getHost(), segs) & PRODUCT) == 0;
+        }
+    }
+
+    private static final class Site {
+        // replaced, never modified, so readers need no lock
+        volatile Template[] templates = new Template[0];
+        volatile boolean trusted;
+        private final Set<String> confirmed = new HashSet<>();
+
+        synchronized void learn(String[] segs, String path, String host) {
+            if (confirmed.size() >= MAX_LEARNED || !confirmed.add(path)) return;
+            List<Template> ts = new ArrayList<>(Arrays.asList(templates));
+            boolean merged = false;
+            for (int i = 0; i < ts.size() && !merged; i++) {
+                String[] m = ts.get(i).merge(segs);
+                if (m != null) {
+                    ts.set(i, new Template(m, ts.get(i).count + 1));
+                    merged = true;
+                }
+            }
+            if (!merged && ts.size() < MAX_TEMPLATES) ts.add(new Template(segs, 1));
+            templates = ts.toArray(new Template[0]);
+
+            int covered = 0;
+            for (Template t : templates) {
+                if (t.usable()) covered += t.count;
+            }
+            boolean now = confirmed.size() >= MIN_CONFIRMED && covered * 100 >= confirmed.size() * MIN_COVERAGE;
+            if (now && !trusted) {
+                System.out.println("Learned product URLs of " + host + ": " + describe()
+                        + " (" + covered + " of " + confirmed.size() + " products)");
+            }
+            trusted = now;
+        }
+
+        boolean fits(String[] segs) {
+            for (Template t : templates) {
+                if (t.usable() && t.matches(segs)) return true;
+            }
+            return false;
+        }
+
+        String describe() {
+            StringJoiner j = new StringJoiner(", ");
+            for (Template t : templates) {
+                if (t.usable()) j.add(t.toString());
+            }
+            return j.toString();
+        }
+    }
+
+    /** A generalised product path: literal segments, "*" or "*.ext". */
+    private static final class Template {
+        final String[] parts;
+        final int count;
+
+        Template(String[] parts, int count) {
+            this.parts = parts;
+            this.count = count;
+        }
+
+        /** Seen more than once, with something left to tell a product path apart. */
+        boolean usable() {
+            if (count < 2) return false;
+            for (String p : parts) {
+                if (!p.equals("*")) return true;
+            }
+            return false;
+        }
+
+        boolean matches(String[] segs) {
+            if (segs.length != parts.length) return false;
+            for (int i = 0; i < parts.length; i++) {
+                String p = parts[i];
+                String s = segs[i];
+                if (p.equals("*") || p.equals(s)) continue;
+                int n = p.length() - 1;
+                if (p.charAt(0) != '*' || !s.regionMatches(s.length() - n, p, 1, n)) return false;
+            }
+            return true;
+        }
+
+        /** This template widened to cover segs, or null if that would leave no literal part. */
+        String[] merge(String[] segs) {
+            if (segs.length != parts.length) return null;
+            String[] out = new String[parts.length];
+            boolean literal = false;
+            for (int i = 0; i < parts.length; i++) {
+                String p = parts[i];
+                if (p.equals(segs[i])) {
+                    out[i] = p;
+                } else {
+                    String ext = extension(p);
+                    out[i] = ext != null && ext.equals(extension(segs[i])) ? "*" + ext : "*";
+                }
+                if (!out[i].equals("*")) literal = true;
+            }
+            return literal ? out : null;
+        }
+
+        @Override
+        public String toString() {
+            return "/" + String.join("/", parts);
+        }
+    }
+
+    /** ".html" for "blue-mug.html" or "*.html"; null when there is no short extension. */
+    private static String extension(String segment) {
+        int dot = segment.lastIndexOf('.');
+        return dot > 0 && segment.length() - dot <= 6 ? segment.substring(dot) : null;
+    }
+
+    // -----------------------------
+    // Helpers
+    // -----------------------------
+
+    private static String siteKey(String host) {
+        String h = host.toLowerCase(Locale.ROOT);
+        return h.startsWith("www.") ? h.substring(4) : h;
+    }
+
+    /** The non-empty segments of a path. */
+    static String[] segments(String path) {
+        int n = 0;
+        for (int i = 0, len = path.length(); i < len; i++) {
+            if (path.charAt(i) != '/' && (i == 0 || path.charAt(i - 1) == '/')) n++;
+        }
+        String[] out = new String[n];
+        int k = 0;
+        int start = -1;
+        for (int i = 0, len = path.length(); i <= len; i++) {
+            boolean slash = i == len || path.charAt(i) == '/';
+            if (slash && start >= 0) {
+                out[k++] = path.substring(start, i);
+                start = -1;
+            } else if (!slash && start < 0) {
+                start = i;
+            }
+        }
+        return out;
+    }
+
+    /** Last segment looks like a product slug: 5+ characters with a dash or a digit. */
+    private static boolean looksLikeSlug(String lowerPath) {
+        String last = lowerPath.substring(lowerPath.lastIndexOf('/') + 1);
+        if (last.isBlank()) return false;
+        last = TextNormalizer.stripPageExtension(last);
+        return last.length() >= 5 && (last.indexOf('-') >= 0 || TextNormalizer.hasDigit(last));
+    }
+}
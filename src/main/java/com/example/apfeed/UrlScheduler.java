@@ -0,0 +1,217 @@
+package com.example.apfeed;
+
+import java.net.URI;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Chooses which frontier URL to scrape next.
+ *
+ * Row numbers are fixed in frontier order as URLs are read; each URL's host,
+ * path pattern and whether it was given directly are worked out once, then.
+ * The scheduler picks:
+ * <ol>
+ *   <li>URLs the user listed directly, before discovered ones, from up to
+ *       {@link #LOOKAHEAD} URLs ahead (not just the window);</li>
+ *   <li>then, within a look-ahead window of {@link #WINDOW} discovered URLs,
+ *       the lowest estimated cost, where the cost of a host's URL is
+ *       multiplied by (1 + that host's URLs in flight) so hosts interleave
+ *       instead of one slow merchant section blocking the queue; URLs
+ *       outside their shop's learned product templates (judged as they enter
+ *       the window) come after all the others.</li>
+ * </ol>
+ * Costs are learned per tier, host and path pattern ("/products/*") as an
+ * exponential moving average of observed scrape times. The tier is "static"
+ * for URLs already answered by a platform API or captured JSON, "browser"
+ * for the rest, so the quick API answers never make a pattern's page loads
+ * look cheap. One URL of every new browser pattern is tried early to learn
+ * it. A URL that has been passed over {@link #MAX_BYPASS} times is taken next
+ * regardless, so nothing starves and the reorder buffer stays bounded.
+ *
+ * The feed itself is still written by row number, so output order does not
+ * depend on the schedule.
+ */
+public class UrlScheduler {
+    static final int WINDOW = 256;
+    static final int LOOKAHEAD = 64 * WINDOW;
+    static final int MAX_BYPASS = 4 * WINDOW;
+    private static final double ALPHA = 0.3;
+    private static final double UNKNOWN_MS = 5000;
+    private static final double CHEAP_MS = 50;
+
+    /** A frontier URL, classified once as it is read. */
+    private static final class Entry {
+        final FeedJobRun.Target target;
+        final String host;
+        final String pattern;
+        final boolean direct;
+        int enteredAt;
+        boolean unlikely;
+
+        Entry(FeedJobRun.Target target, boolean direct) {
+            this.target = target;
+            this.host = host(target.url);
+            this.pattern = pattern(target.url);
+            this.direct = direct;
+        }
+    }
+
+    private final Iterator<String> source;
+    private final UrlFrontier.FingerprintSet direct;
+    private final Predicate<String> cheap;
+    private final Predicate<String> unlikely;
+    // discovered URLs being ranked, oldest first
+    private final List<Entry> window = new ArrayList<>();
+    // discovered URLs read past the window, waiting for room in it
+    private final ArrayDeque<Entry> ahead = new ArrayDeque<>();
+    // direct inputs read so far, wherever they are in the frontier
+    private final List<Entry> directs = new ArrayList<>();
+    private final Map<String, Double> hostCost = new HashMap<>();
+    private final Map<String, Double> patternCost = new HashMap<>();
+    private final Map<String, Integer> inFlight = new HashMap<>();
+    private final Map<String, Integer> patternsInFlight = new HashMap<>();
+    // tier each URL in flight was started in (true = static)
+    private final Map<String, Boolean> startedStatic = new HashMap<>();
+    private int nextIdx;
+    private int picks;
+
+    /**
+     * @param source frontier URLs in row order
+     * @param direct fingerprints of URLs given directly as input
+     * @param cheap true for URLs whose product is already known without a page load
+     * @param unlikely true for discovered URLs that are probably not product pages
+     */
+    public UrlScheduler(Iterator<String> source, UrlFrontier.FingerprintSet direct, Predicate<String> cheap,
+                        Predicate<String> unlikely) {
+        this.source = source;
+        this.direct = direct;
+        this.cheap = cheap;
+        this.unlikely = unlikely;
+    }
+
+    public synchronized boolean hasNext() {
+        return !window.isEmpty() || !directs.isEmpty() || !ahead.isEmpty() || source.hasNext();
+    }
+
+    /** Best URL to scrape now, or null if none are left. */
+    public synchronized FeedJobRun.Target next() {
+        fill();
+        if (window.isEmpty() && directs.isEmpty()) return null;
+
+        Entry e;
+        // window.get(0) is the oldest: take it if it has waited long enough
+        if (!window.isEmpty() && picks - window.get(0).enteredAt >= MAX_BYPASS) {
+            e = window.remove(0);
+        } else if (!directs.isEmpty()) {
+            e = directs.remove(cheapest(directs));
+        } else {
+            e = window.remove(cheapest(window));
+        }
+        picks++;
+        started(e.target.url, e.host, e.pattern);
+        return e.target;
+    }
+
+    private void fill() {
+        while (window.size() < WINDOW && !ahead.isEmpty()) enter(ahead.poll());
+        while ((window.size() < WINDOW || ahead.size() < LOOKAHEAD) && source.hasNext()) {
+            String url = source.next();
+            Entry e = new Entry(new FeedJobRun.Target(url, ++nextIdx), direct.contains(UrlFrontier.fingerprint(url)));
+            if (e.direct) directs.add(e);
+            else if (window.size() < WINDOW) enter(e);
+            else ahead.add(e);
+        }
+    }
+
+    private void enter(Entry e) {
+        e.enteredAt = picks;
+        e.unlikely = unlikely.test(e.target.url);
+        window.add(e);
+    }
+
+    private int cheapest(List<Entry> entries) {
+        int best = 0;
+        boolean bestUnlikely = true;
+        double bestScore = Double.MAX_VALUE;
+        for (int i = 0; i < entries.size(); i++) {
+            Entry e = entries.get(i);
+            if (e.unlikely && !bestUnlikely) continue;
+            double score = estimate(e.target.url, e.host, e.pattern) * (1 + inFlight.getOrDefault(e.host, 0));
+            if (score < bestScore || (bestUnlikely && !e.unlikely)) {
+                bestScore = score;
+                bestUnlikely = e.unlikely;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /** A URL was handed out again (retry); counts as in flight for its host. */
+    public synchronized void started(String url) {
+        started(url, host(url), pattern(url));
+    }
+
+    private void started(String url, String host, String pattern) {
+        boolean isStatic = cheap.test(url);
+        startedStatic.put(url, isStatic);
+        inFlight.merge(host, 1, Integer::sum);
+        if (!isStatic) patternsInFlight.merge(pattern, 1, Integer::sum);
+    }
+
+    /** A scrape of url ended after elapsedMs (negative: no timing, e.g. a lost lease). */
+    public synchronized void finished(String url, long elapsedMs) {
+        String h = host(url);
+        String pattern = pattern(url);
+        Boolean isStatic = startedStatic.remove(url);
+        boolean wasStatic = Boolean.TRUE.equals(isStatic);
+        inFlight.computeIfPresent(h, (k, n) -> n <= 1 ? null : n - 1);
+        if (!wasStatic) patternsInFlight.computeIfPresent(pattern, (k, n) -> n <= 1 ? null : n - 1);
+        if (elapsedMs < 0 || isStatic == null) return;
+        String tier = tier(wasStatic);
+        hostCost.merge(tier + h, (double) elapsedMs, (old, v) -> old + ALPHA * (v - old));
+        patternCost.merge(tier + pattern, (double) elapsedMs, (old, v) -> old + ALPHA * (v - old));
+    }
+
+    double estimate(String url) {
+        return estimate(url, host(url), pattern(url));
+    }
+
+    private double estimate(String url, String host, String pattern) {
+        boolean isStatic = cheap.test(url);
+        String tier = tier(isStatic);
+        Double p = patternCost.get(tier + pattern);
+        if (p != null) return p;
+        Double h = hostCost.get(tier + host);
+        if (isStatic) return h != null ? h : CHEAP_MS;
+        // never timed: sample one URL of the pattern early so its cost is learned
+        if (!patternsInFlight.containsKey(pattern)) return 0;
+        return h != null ? h : UNKNOWN_MS;
+    }
+
+    private static String tier(boolean isStatic) {
+        return isStatic ? "static " : "browser ";
+    }
+
+    private static String host(String url) {
+        try {
+            String h = URI.create(url).getHost();
+            return h == null ? "" : h.toLowerCase(Locale.ROOT);
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    /** "https://shop.com/p/blue-sofa?x=1" -> "shop.com/p/*" (digit runs in the directory part become #). */
+    static String pattern(String url) {
+        String path;
+        try {
+            path = URI.create(url).getPath();
+        } catch (Exception e) {
+            path = null;
+        }
+        if (path == null) path = "";
+        int slash = path.lastIndexOf('/');
+        String dir = slash >= 0 ? path.substring(0, slash) : "";
+        return host(url) + dir.replaceAll("[0-9]+", "#") + "/*";
+    }
+}
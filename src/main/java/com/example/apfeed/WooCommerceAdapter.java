@@ -0,0 +1,76 @@
+package com.example.apfeed;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * WooCommerce Store API (/wp-json/wc/store/v1/products, 100 per page). The
+ * response shape is already understood by {@link JsonProductCapture}. Only
+ * /shop lists the whole store and /product-category/... one category; other
+ * listings (tags, search, brand pages) return nothing.
+ */
+public class WooCommerceAdapter implements PlatformAdapter {
+    private static final int PAGE_SIZE = 100;
+    private static final String API = "/wp-json/wc/store/v1/products";
+    private static final Pattern CATEGORY = Pattern.compile("/product-category/(?:[^/]+/)*([^/]+)/?$");
+    private static final Pattern SHOP = Pattern.compile("/shop/?");
+
+    @Override
+    public String name() {
+        return "woocommerce";
+    }
+
+    @Override
+    public List<JsonProductCapture.Captured> discover(String listingUrl, int maxProducts) {
+        String origin = JsonHttp.origin(listingUrl);
+        List<JsonProductCapture.Captured> out = new ArrayList<>();
+        if (origin == null) return out;
+
+        String filter = "";
+        String path = JsonHttp.path(listingUrl);
+        Matcher m = CATEGORY.matcher(path);
+        if (m.find()) {
+            String id = categoryId(origin, m.group(1));
+            if (id == null) return out; // unknown category: let the generic path handle it
+            filter = "&category=" + id;
+        } else if (!SHOP.matcher(path).matches()) {
+            return out;
+        }
+
+        for (int page = 1; out.size() < maxProducts; page++) {
+            JsonNode products = JsonHttp.get(origin + API + "?per_page=" + PAGE_SIZE + "&page=" + page + filter);
+            if (products == null || !products.isArray() || products.size() == 0) break;
+            for (JsonProductCapture.Captured c : JsonProductCapture.extract(products, origin + "/")) {
+                if (out.size() >= maxProducts) break;
+                if (!c.url.isEmpty()) out.add(c);
+            }
+            if (products.size() < PAGE_SIZE) break;
+        }
+        return out;
+    }
+
+    @Override
+    public JsonProductCapture.Captured fetch(String productUrl) {
+        String origin = JsonHttp.origin(productUrl);
+        String slug = JsonHttp.lastSegment(productUrl);
+        if (origin == null || slug.isEmpty()) return null;
+
+        JsonNode products = JsonHttp.get(origin + API + "?slug=" + slug);
+        if (products == null) return null;
+        List<JsonProductCapture.Captured> found = JsonProductCapture.extract(products, productUrl);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    private static String categoryId(String origin, String slug) {
+        JsonNode cats = JsonHttp.get(origin + API + "/categories");
+        if (cats == null || !cats.isArray()) return null;
+        for (JsonNode c : cats) {
+            if (slug.equals(JsonHttp.text(c, "slug"))) return JsonHttp.text(c, "id");
+        }
+        return null;
+    }
+}